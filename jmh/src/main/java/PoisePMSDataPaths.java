@@ -0,0 +1,347 @@
+
+// import Java packages
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// import MariaDB4j packages
+import ch.vorburger.mariadb4j.DB;
+import ch.vorburger.mariadb4j.DBConfigurationBuilder;
+
+// import benchmark packages
+import poisepms.jmh.DataPaths;
+
+/**
+ * class for running the PoisePMS data paths from the JMH benchmarks against
+ * an embedded MariaDB server (MySQL compatible, so the programme runs
+ * unchanged)
+ *
+ * the database is created from PoisePMS.sql (run over JDBC, so the server's
+ * command line client and the libraries it needs are not required) and filled
+ * by DataGenerator up to
+ * the number of projects benchmarked; its files are kept (in
+ * target/jmh-data/<projects>, or the directory given with
+ * -Dpoisepms.jmh.data, which must not be in the system's temporary
+ * directory as MariaDB4j empties data directories there) so each size is only
+ * generated once
+ *
+ * the operations are the ones the benchmark command times (see
+ * PoisePMSBenchmark), with the search index and deadline tracker kept up to
+ * date as in the menu; projects are added with IDs starting "jmh-" and
+ * deleted again
+ */
+public class PoisePMSDataPaths implements DataPaths {
+
+    /**
+     * default directory for the database files of each size
+     */
+    private static final String DEFAULT_DATA_DIRECTORY = "target/jmh-data";
+
+    /**
+     * number of projects updated in turn by the update benchmark
+     */
+    private static final int UPDATE_PROJECTS = 100;
+
+    /**
+     * options of every connection to the server
+     */
+    private static final String URL_OPTIONS = "?useSSL=false&allowPublicKeyRetrieval=true"
+            + "&rewriteBatchedStatements=true&useCursorFetch=true";
+
+    // embedded database server
+    private DB database;
+
+    // connection pool for executing queries
+    private ConnectionPool pool;
+
+    // in-memory structures the menu uses
+    private final ProjectSearchIndex searchIndex = new ProjectSearchIndex();
+    private final DeadlineTracker deadlineTracker = new DeadlineTracker();
+    private final PersonCache personCache = new PersonCache(10_000, 0);
+
+    // pager for the view-all benchmark
+    private KeysetPager pager;
+
+    // search queries built from existing project names
+    private List<String> queries;
+
+    // projects updated by the update benchmark
+    private final List<Project> updated = new ArrayList<>();
+
+    // projects added by the insert benchmark and not yet deleted
+    private final List<Project> inserted = new ArrayList<>();
+
+    // projects added for the delete-cascade benchmark and not yet deleted
+    private final List<Project> doomed = new ArrayList<>();
+
+    // prefix of the IDs of this run's projects and people
+    private final String runID = "jmh-" + Long.toString(System.currentTimeMillis(), 36);
+
+    // number of the next benchmark project within the run
+    private int next;
+
+    // number of operations run (for choosing projects and queries in turn)
+    private int operations;
+
+    // source of random values (seeded so runs can be compared)
+    private final Random random = new Random(PoisePMSBenchmark.SEED);
+
+    /**
+     * method to start the database and fill it with the given number of
+     * projects (if it does not already hold them)
+     *
+     * @param projects the number of projects to benchmark against
+     * @throws Exception if the database cannot be started or filled
+     */
+    @Override
+    public void open(int projects) throws Exception {
+        // start the server on a free port, keeping the files of each size
+        Path dataDirectory = Paths.get(System.getProperty("poisepms.jmh.data", DEFAULT_DATA_DIRECTORY))
+                .resolve(Integer.toString(projects)).toAbsolutePath();
+        boolean filled = Files.isDirectory(dataDirectory.resolve("PoisePMS"));
+        DBConfigurationBuilder configuration = DBConfigurationBuilder.newBuilder().setPort(0)
+                .setDataDir(dataDirectory.toString()).setDeletingTemporaryBaseAndDataDirsOnShutdown(false);
+        // the server refuses to run as root unless told to
+        if ("root".equals(System.getProperty("user.name"))) {
+            configuration.addArg("--user=root");
+        }
+        database = DB.newEmbeddedDB(configuration.build());
+        database.start();
+
+        // stop the server again if it cannot be filled (JMH does not tear
+        // down after a failed setup)
+        try {
+            String server = "jdbc:mysql://localhost:" + database.getConfiguration().getPort() + "/";
+
+            // create the schema and sample data on first use
+            if (!filled) {
+                source(server + URL_OPTIONS, "PoisePMS.sql");
+            }
+
+            pool = new ConnectionPool(server + "PoisePMS" + URL_OPTIONS, "root", "", 10, 64, 10_000);
+            SchemaMigrations.migrate(pool);
+            fill(projects);
+        } catch (Exception e) {
+            try {
+                close();
+            } catch (Exception closeError) {
+                e.addSuppressed(closeError);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * helper method to add generated projects up to the size benchmarked and
+     * set up the structures the operations use
+     *
+     * @param projects the number of projects to benchmark against
+     * @throws SQLException if a database access error occurs
+     */
+    private void fill(int projects) throws SQLException {
+        // add generated projects up to the size benchmarked
+        long existing = PoisePMSBenchmark.countProjects(pool);
+        if (existing < projects) {
+            DataGenerator.run(pool, new String[] { "generate", Long.toString(projects - existing) });
+        }
+
+        // build the in-memory structures and keep them up to date, as the
+        // menu does
+        searchIndex.build(pool);
+        deadlineTracker.load(pool);
+        ChangeNotifier.register(searchIndex);
+        ChangeNotifier.register(deadlineTracker);
+        ChangeNotifier.register(personCache);
+
+        queries = PoisePMSBenchmark.sampleQueries(PoisePMSBenchmark.projectTexts(pool), random);
+        pager = new KeysetPager("Projects", String.join(", ", ProjectDetails.PROJECT_COLUMNS), "project_number",
+                null, KeysetPager.DEFAULT_PAGE_SIZE);
+        for (int i = 0; i < UPDATE_PROJECTS; i++) {
+            updated.add(PoisePMSBenchmark.insertBenchProject(pool, runID, next++, random));
+        }
+    }
+
+    /**
+     * helper method to run an SQL script from the classpath, one statement at
+     * a time (statements end with a semicolon at the end of a line, and lines
+     * starting with "--" are comments)
+     *
+     * @param url      the URL of the server
+     * @param resource the name of the script
+     * @throws IOException  if the script cannot be read
+     * @throws SQLException if a statement fails
+     */
+    private static void source(String url, String resource) throws IOException, SQLException {
+        InputStream input = PoisePMSDataPaths.class.getClassLoader().getResourceAsStream(resource);
+        if (input == null) {
+            throw new IOException(resource + " was not found on the classpath.");
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+                Connection connection = DriverManager.getConnection(url, "root", "");
+                Statement statement = connection.createStatement()) {
+            StringBuilder sql = new StringBuilder();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String trimmed = line.trim();
+                if (trimmed.isEmpty() || trimmed.startsWith("--")) {
+                    continue;
+                }
+                sql.append(line).append('\n');
+                if (trimmed.endsWith(";")) {
+                    statement.execute(sql.substring(0, sql.lastIndexOf(";")));
+                    sql.setLength(0);
+                }
+            }
+        }
+    }
+
+    /**
+     * method to add a project with three new people
+     *
+     * @return the new project number
+     * @throws Exception if the project cannot be added
+     */
+    @Override
+    public int insert() throws Exception {
+        Project project = PoisePMSBenchmark.insertBenchProject(pool, runID, next++, random);
+        inserted.add(project);
+        return project.projectNumber;
+    }
+
+    /**
+     * method to change the fee and deadline of a project (only those columns
+     * are written)
+     *
+     * @return the number of the project changed
+     * @throws Exception if the project cannot be updated
+     */
+    @Override
+    public int update() throws Exception {
+        int i = operations++ % updated.size();
+        Project current = updated.get(i);
+        Project project = current.copy();
+        project.totalFee = 10_000 + random.nextInt(990_000);
+        project.projectDeadline = LocalDate.now().plusDays(random.nextInt(730) - 365);
+        if (!BatchRunner.checkUpdate(ProjectRepository.updateProject(pool, current, project),
+                "Project Number " + current.projectNumber)) {
+            throw new IllegalStateException("Project Number " + current.projectNumber + " was not updated.");
+        }
+        updated.set(i, project);
+        return project.projectNumber;
+    }
+
+    /**
+     * method to search the project search index with words taken from
+     * existing projects
+     *
+     * @return the number of projects found
+     */
+    @Override
+    public int search() {
+        return searchIndex.search(queries.get(operations++ % queries.size()),
+                ProjectSearchIndex.DEFAULT_RESULT_LIMIT).size();
+    }
+
+    /**
+     * method to find and display the first page of overdue projects (output
+     * discarded)
+     *
+     * @return the number of overdue projects
+     * @throws Exception if the projects cannot be read
+     */
+    @Override
+    public int overdue() throws Exception {
+        List<Integer> overdue = deadlineTracker.overdue(LocalDate.now());
+        PoisePMSBenchmark.silently(i -> PoisePMS.printProjects(pool,
+                overdue.subList(0, Math.min(overdue.size(), KeysetPager.DEFAULT_PAGE_SIZE)), "Overdue Projects:"));
+        return overdue.size();
+    }
+
+    /**
+     * method to read and render the next page of all projects (starting again
+     * after the last page)
+     *
+     * @return the number of rows rendered
+     * @throws Exception if the projects cannot be read
+     */
+    @Override
+    public int viewAll() throws Exception {
+        List<Object[]> rows = pager.hasNext() ? pager.next(pool) : pager.first(pool);
+        PoisePMSBenchmark.render(rows, ResultRenderer.Format.TABLE);
+        return rows.size();
+    }
+
+    /**
+     * method to add the project deleted by the next call to deleteCascade()
+     *
+     * @throws Exception if the project cannot be added
+     */
+    @Override
+    public void prepareDelete() throws Exception {
+        doomed.add(PoisePMSBenchmark.insertBenchProject(pool, runID, next++, random));
+    }
+
+    /**
+     * method to delete the project added by prepareDelete() and the people
+     * linked only to it
+     *
+     * @return the number of the deleted project
+     * @throws Exception if the project cannot be deleted
+     */
+    @Override
+    public int deleteCascade() throws Exception {
+        Project project = doomed.remove(doomed.size() - 1);
+        PoisePMSBenchmark.deleteBenchProject(pool, project);
+        return project.projectNumber;
+    }
+
+    /**
+     * method to delete the projects added by insert() so far
+     *
+     * @throws Exception if the projects cannot be deleted
+     */
+    @Override
+    public void removeInserted() throws Exception {
+        PoisePMSBenchmark.deleteBenchProjects(pool, inserted);
+        inserted.clear();
+    }
+
+    /**
+     * method to delete every benchmark project and stop the database
+     *
+     * @throws Exception if the database cannot be stopped
+     */
+    @Override
+    public void close() throws Exception {
+        try {
+            if (pool != null) {
+                removeInserted();
+                PoisePMSBenchmark.deleteBenchProjects(pool, updated);
+                PoisePMSBenchmark.deleteBenchProjects(pool, doomed);
+            }
+        } finally {
+            ChangeNotifier.unregister(searchIndex);
+            ChangeNotifier.unregister(deadlineTracker);
+            ChangeNotifier.unregister(personCache);
+            if (pool != null) {
+                pool.close();
+            }
+            if (database != null) {
+                database.stop();
+            }
+        }
+    }
+}
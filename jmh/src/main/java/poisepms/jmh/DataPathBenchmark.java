@@ -0,0 +1,167 @@
+
+package poisepms.jmh;
+
+// import Java packages
+import java.util.concurrent.TimeUnit;
+
+// import JMH packages
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * class for the JMH benchmarks of the main PoisePMS data paths: insert,
+ * update, search, overdue lookup, view-all rendering and delete-cascade, each
+ * against a database of 1k, 100k and 1M projects
+ *
+ * each benchmark and size runs in its own JVM fork against an embedded
+ * MariaDB server (see PoisePMSDataPaths); projects added while measuring are
+ * deleted after every iteration, so the size stays as given
+ *
+ * run a single size with e.g. java -jar jmh/target/benchmarks.jar -p
+ * projects=1000
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class DataPathBenchmark {
+
+    /**
+     * number of projects in the database
+     */
+    @Param({ "1000", "100000", "1000000" })
+    public int projects;
+
+    // the data paths being measured
+    private DataPaths paths;
+
+    /**
+     * class for the project deleted by each deleteCascade() call, added before
+     * the call so only the delete is measured
+     */
+    @State(Scope.Thread)
+    public static class Doomed {
+
+        /**
+         * method to add the project to delete
+         *
+         * @param benchmark the benchmark state (with the opened data paths)
+         * @throws Exception if the project cannot be added
+         */
+        @Setup(Level.Invocation)
+        public void add(DataPathBenchmark benchmark) throws Exception {
+            benchmark.paths.prepareDelete();
+        }
+    }
+
+    /**
+     * method to start the database and fill it with the projects
+     *
+     * @throws Exception if the database cannot be started or filled
+     */
+    @Setup(Level.Trial)
+    public void open() throws Exception {
+        paths = DataPaths.load();
+        paths.open(projects);
+    }
+
+    /**
+     * method to delete the projects inserted during an iteration
+     *
+     * @throws Exception if the projects cannot be deleted
+     */
+    @TearDown(Level.Iteration)
+    public void removeInserted() throws Exception {
+        paths.removeInserted();
+    }
+
+    /**
+     * method to delete the benchmark projects and stop the database
+     *
+     * @throws Exception if the database cannot be stopped
+     */
+    @TearDown(Level.Trial)
+    public void close() throws Exception {
+        paths.close();
+    }
+
+    /**
+     * benchmark adding a project with three new people
+     *
+     * @return the new project number
+     * @throws Exception if the project cannot be added
+     */
+    @Benchmark
+    public int insert() throws Exception {
+        return paths.insert();
+    }
+
+    /**
+     * benchmark changing the fee and deadline of a project
+     *
+     * @return the number of the project changed
+     * @throws Exception if the project cannot be updated
+     */
+    @Benchmark
+    public int update() throws Exception {
+        return paths.update();
+    }
+
+    /**
+     * benchmark searching the project search index
+     *
+     * @return the number of projects found
+     * @throws Exception if the search fails
+     */
+    @Benchmark
+    public int search() throws Exception {
+        return paths.search();
+    }
+
+    /**
+     * benchmark finding and displaying the first page of overdue projects
+     *
+     * @return the number of overdue projects
+     * @throws Exception if the projects cannot be read
+     */
+    @Benchmark
+    public int overdue() throws Exception {
+        return paths.overdue();
+    }
+
+    /**
+     * benchmark reading and rendering successive pages of all projects
+     *
+     * @return the number of rows rendered
+     * @throws Exception if the projects cannot be read
+     */
+    @Benchmark
+    public int viewAll() throws Exception {
+        return paths.viewAll();
+    }
+
+    /**
+     * benchmark deleting a project and the people linked only to it
+     *
+     * @param doomed the state that added the project
+     * @return the number of the deleted project
+     * @throws Exception if the project cannot be deleted
+     */
+    @Benchmark
+    public int deleteCascade(Doomed doomed) throws Exception {
+        return paths.deleteCascade();
+    }
+}
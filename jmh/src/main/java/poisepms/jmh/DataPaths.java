@@ -0,0 +1,109 @@
+
+package poisepms.jmh;
+
+/**
+ * interface for the PoisePMS data paths measured by DataPathBenchmark
+ *
+ * JMH only generates benchmarks for classes in a named package, and classes
+ * in a named package cannot refer to the programme's classes (which are in
+ * the default package), so the benchmarks run the programme through an
+ * implementation of this interface in the default package (PoisePMSDataPaths)
+ */
+public interface DataPaths {
+
+    /**
+     * name of the class implementing the data paths
+     */
+    String IMPLEMENTATION = "PoisePMSDataPaths";
+
+    /**
+     * method to create the data paths implementation
+     *
+     * @return the data paths, not yet opened
+     * @throws ReflectiveOperationException if the implementation cannot be
+     *                                      created
+     */
+    static DataPaths load() throws ReflectiveOperationException {
+        return Class.forName(IMPLEMENTATION).asSubclass(DataPaths.class).getDeclaredConstructor().newInstance();
+    }
+
+    /**
+     * method to start the database and fill it with the given number of
+     * projects (if it does not already hold them)
+     *
+     * @param projects the number of projects to benchmark against
+     * @throws Exception if the database cannot be started or filled
+     */
+    void open(int projects) throws Exception;
+
+    /**
+     * method to add a project with three new people
+     *
+     * @return the new project number
+     * @throws Exception if the project cannot be added
+     */
+    int insert() throws Exception;
+
+    /**
+     * method to change the fee and deadline of a project
+     *
+     * @return the number of the project changed
+     * @throws Exception if the project cannot be updated
+     */
+    int update() throws Exception;
+
+    /**
+     * method to search the project search index
+     *
+     * @return the number of projects found
+     * @throws Exception if the search fails
+     */
+    int search() throws Exception;
+
+    /**
+     * method to find and display the first page of overdue projects
+     *
+     * @return the number of overdue projects
+     * @throws Exception if the projects cannot be read
+     */
+    int overdue() throws Exception;
+
+    /**
+     * method to read and render the next page of all projects
+     *
+     * @return the number of rows rendered
+     * @throws Exception if the projects cannot be read
+     */
+    int viewAll() throws Exception;
+
+    /**
+     * method to add the project deleted by the next call to deleteCascade()
+     *
+     * @throws Exception if the project cannot be added
+     */
+    void prepareDelete() throws Exception;
+
+    /**
+     * method to delete the project added by prepareDelete() and the people
+     * linked only to it
+     *
+     * @return the number of the deleted project
+     * @throws Exception if the project cannot be deleted
+     */
+    int deleteCascade() throws Exception;
+
+    /**
+     * method to delete the projects added by insert() so far, so the number
+     * of projects stays close to the size benchmarked
+     *
+     * @throws Exception if the projects cannot be deleted
+     */
+    void removeInserted() throws Exception;
+
+    /**
+     * method to delete every benchmark project and stop the database
+     *
+     * @throws Exception if the database cannot be stopped
+     */
+    void close() throws Exception;
+}
@@ -0,0 +1,1001 @@
+
+// import Java packages
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * class for serving the PoisePMS operations as a JSON API over HTTP
+ * (PoisePMS serve [--port N] [--host address]), so several people or site apps
+ * can use the system at once; it listens on port 8080 unless --port is given
+ * and runs until stopped with Ctrl+C
+ *
+ * the server uses the JDK's built-in HTTP server with one virtual thread per
+ * request (on JDK 21 or later; a pooled thread per request on older JDKs),
+ * so thousands of requests can wait at once while only the pooled
+ * connections talk to the database; searches and deadline lists are answered
+ * from the in-memory index and tracker, and people are read through the
+ * person cache
+ *
+ * endpoints (request bodies are flat JSON objects with the column names used
+ * by the batch commands):
+ *
+ * GET /projects?after=N&amp;limit=N, POST /projects
+ * GET, PUT (changed columns only), DELETE /projects/{n} (people linked to
+ * other projects are kept)
+ * POST /projects/{n}/finalise ({"completion_date": "YYYY-MM-DD"}, today by
+ * default)
+ * GET /projects/incomplete, /projects/overdue, /projects/due-soon?days=N
+ * GET /search?q=words&amp;limit=N
+ * GET /customers?after=ID&amp;limit=N, POST /customers, GET and PUT
+ * /customers/{id} (likewise /architects and /contractors)
+ * GET /summary (project counts and outstanding totals from the summary
+ * tables)
+ * GET /metrics (request count, errors and p50/p90/p99/max latency per
+ * endpoint and pool usage, also printed when the server stops)
+ *
+ * the server has no authentication, so it listens on the loopback address
+ * only unless --host names another (e.g. 0.0.0.0 for every interface)
+ *
+ * writes are recorded in the change journal as the user named in the X-User
+ * request header followed by the client's address (e.g. jo@10.0.0.5), or as
+ * api@ and the address if there is none; the header is a label the client
+ * chooses, not a checked identity
+ *
+ * projects and people are returned with their row version; a PUT may give
+ * the version it read ("version": N) and gets 409 Conflict (with nothing
+ * written) if the record has been changed since
+ */
+public class ApiServer {
+
+    /**
+     * default port to listen on
+     */
+    public static final int DEFAULT_PORT = 8080;
+
+    /**
+     * default and maximum number of records returned by a list endpoint
+     */
+    private static final int DEFAULT_LIMIT = 100;
+    private static final int MAX_LIMIT = 1000;
+
+    /**
+     * number of connections allowed to queue while the server is busy
+     */
+    private static final int BACKLOG = 4096;
+
+    /**
+     * default number of days looked ahead by /projects/due-soon
+     */
+    private static final int DEFAULT_DUE_DAYS = 7;
+
+    /**
+     * pattern of a JSON number
+     */
+    private static final Pattern JSON_NUMBER = Pattern.compile("-?(0|[1-9][0-9]*)(\\.[0-9]+)?([eE][+-]?[0-9]+)?");
+
+    // connection pool shared by every request
+    private final ConnectionPool pool;
+
+    // in-memory structures kept up to date with writes
+    private final ProjectSearchIndex searchIndex = new ProjectSearchIndex();
+    private final DeadlineTracker deadlineTracker = new DeadlineTracker();
+    private final PersonCache personCache = new PersonCache(10_000, 5 * 60_000);
+
+    // latency and error count of each endpoint, e.g. "GET /projects/{n}"
+    private final Map<String, LatencyHistogram> latencies = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+
+    /**
+     * class for an error reported to the client with an HTTP status
+     */
+    private static final class ApiException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        // HTTP status code
+        final int status;
+
+        /**
+         * constructor to create an error
+         *
+         * @param status  the HTTP status code
+         * @param message the error message
+         */
+        ApiException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    /**
+     * class for a request: method, path segments, query parameters and body
+     */
+    private static final class Request {
+
+        // HTTP method, e.g. GET
+        final String method;
+        // path segments, e.g. [projects, 12]
+        final String[] path;
+        // decoded query parameters
+        final Map<String, String> query;
+        // the exchange (for reading the body)
+        final HttpExchange exchange;
+
+        /**
+         * constructor to read a request
+         *
+         * @param exchange the HTTP exchange
+         */
+        Request(HttpExchange exchange) {
+            this.exchange = exchange;
+            this.method = exchange.getRequestMethod();
+            String rawPath = exchange.getRequestURI().getPath();
+            this.path = rawPath.replaceAll("^/+|/+$", "").split("/+");
+            this.query = parseQuery(exchange.getRequestURI().getRawQuery());
+        }
+
+        /**
+         * method to get a query parameter as a limit between 1 and MAX_LIMIT
+         *
+         * @return the limit
+         */
+        int limit() {
+            return Math.min(integer("limit", DEFAULT_LIMIT), MAX_LIMIT);
+        }
+
+        /**
+         * method to get a positive integer query parameter
+         *
+         * @param name         the parameter name
+         * @param defaultValue the value to use if it is not given
+         * @return the value
+         */
+        int integer(String name, int defaultValue) {
+            String value = query.get(name);
+            if (value == null) {
+                return defaultValue;
+            }
+            int number = InputValidation.parseInteger(value);
+            if (number < 1) {
+                throw new ApiException(400, name + " must be a positive integer.");
+            }
+            return number;
+        }
+
+        /**
+         * method to read the body as a flat JSON object
+         *
+         * @param command the name of the operation (for argument errors)
+         * @return the values as batch command arguments
+         * @throws IOException if the body cannot be read
+         */
+        BatchRunner.Arguments body(String command) throws IOException {
+            try (InputStream in = exchange.getRequestBody()) {
+                String text = new String(in.readAllBytes(), StandardCharsets.UTF_8).trim();
+                return new BatchRunner.Arguments(command, text.isEmpty() ? Map.of() : parseJsonObject(text));
+            }
+        }
+    }
+
+    /**
+     * constructor to create a server over a connection pool
+     *
+     * @param pool the connection pool for executing queries
+     */
+    private ApiServer(ConnectionPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * method to run the server from the command line arguments until the
+     * process is stopped (e.g. with Ctrl+C)
+     *
+     * @param pool the connection pool for executing queries
+     * @param args the command arguments: serve [--port N] [--host address]
+     * @throws Exception if the server cannot be started
+     */
+    public static void run(ConnectionPool pool, String[] args) throws Exception {
+        // get the port and address to listen on (this machine only by default,
+        // as the API has no authentication)
+        int port = DEFAULT_PORT;
+        InetAddress host = InetAddress.getLoopbackAddress();
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("--port") && i + 1 < args.length && InputValidation.parseInteger(args[i + 1]) > 0) {
+                port = InputValidation.parseInteger(args[++i]);
+            } else if (args[i].equals("--host") && i + 1 < args.length) {
+                host = InetAddress.getByName(args[++i]);
+            } else {
+                System.out.println("Usage: PoisePMS serve [--port N] [--host address]");
+                return;
+            }
+        }
+
+        // build the in-memory structures and keep them up to date with writes,
+        // reloading them after writes made elsewhere
+        ApiServer api = new ApiServer(pool);
+        DataRefresher refresher = new DataRefresher(pool, api.searchIndex, api.deadlineTracker);
+        long start = System.nanoTime();
+        int indexed = api.searchIndex.build(pool);
+        int tracked = api.deadlineTracker.load(pool);
+        System.out.printf("Indexed %d projects and tracked %d deadlines in %.0f ms.%n", indexed, tracked,
+                (System.nanoTime() - start) / 1e6);
+        ChangeNotifier.register(api.searchIndex);
+        ChangeNotifier.register(api.deadlineTracker);
+        ChangeNotifier.register(api.personCache);
+        refresher.start();
+
+        // serve each request on its own (virtual, on JDK 21) thread
+        HttpServer server = HttpServer.create(new InetSocketAddress(host, port), BACKLOG);
+        ExecutorService executor = requestExecutor();
+        server.setExecutor(executor);
+        server.createContext("/", api::handle);
+        server.start();
+        System.out.println("Serving the PoisePMS API on http://" + host.getHostAddress() + ":" + port
+                + "/ (Ctrl+C to stop).");
+
+        // stop cleanly when the process is stopped, letting this thread close
+        // the pool before the process exits
+        CountDownLatch stopped = new CountDownLatch(1);
+        Thread mainThread = Thread.currentThread();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop(1);
+            stopped.countDown();
+            try {
+                mainThread.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        stopped.await();
+
+        executor.shutdown();
+        executor.awaitTermination(5, TimeUnit.SECONDS);
+        refresher.close();
+        ChangeNotifier.unregister(api.searchIndex);
+        ChangeNotifier.unregister(api.deadlineTracker);
+        ChangeNotifier.unregister(api.personCache);
+
+        // display the latency of each endpoint
+        System.out.println();
+        api.printLatencies();
+    }
+
+    /**
+     * helper method to create the executor requests run on: one virtual
+     * thread per request on JDK 21 or later, otherwise a thread per request
+     * from a cached pool (found by reflection, so the programme still
+     * compiles and runs on JDK 17)
+     *
+     * @return the executor
+     */
+    private static ExecutorService requestExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    /**
+     * helper method to answer one request and record its latency
+     *
+     * @param exchange the HTTP exchange
+     * @throws IOException if the response cannot be written
+     */
+    private void handle(HttpExchange exchange) throws IOException {
+        long start = System.nanoTime();
+        String endpoint = exchange.getRequestMethod() + " " + exchange.getRequestURI().getPath();
+        int status = 200;
+        Object body;
+        // record writes in the change journal as the user named in the
+        // X-User header (a label the client chooses, so the client's address
+        // is kept with it), or as api at the client's address
+        String user = exchange.getRequestHeaders().getFirst("X-User");
+        ChangeJournal.setActor((user != null && !user.isBlank() ? user.trim() : "api") + "@"
+                + exchange.getRemoteAddress().getAddress().getHostAddress());
+        try {
+            Request request = new Request(exchange);
+            endpoint = request.method + " " + pattern(request.path);
+            body = route(request);
+            if (request.method.equals("POST") && request.path.length == 1) {
+                status = 201;
+            }
+        } catch (ApiException e) {
+            status = e.status;
+            body = Map.of("error", e.getMessage());
+        } catch (BatchRunner.ConflictException e) {
+            // the record was changed after the client (or the server) read it
+            status = 409;
+            body = Map.of("error", e.getMessage());
+        } catch (IllegalArgumentException e) {
+            // invalid values in the request body
+            status = 400;
+            body = Map.of("error", e.getMessage());
+        } catch (SQLIntegrityConstraintViolationException e) {
+            // e.g. a person ID that already exists
+            status = 409;
+            body = Map.of("error", String.valueOf(e.getMessage()));
+        } catch (SQLException e) {
+            // too busy if no connection became free in time, otherwise failed
+            status = String.valueOf(e.getMessage()).startsWith("Timed out") ? 503 : 500;
+            body = Map.of("error", String.valueOf(e.getMessage()));
+        } catch (IOException | RuntimeException e) {
+            // e.g. the request body could not be read, or an unexpected error,
+            // answered rather than dropping the connection
+            status = 500;
+            body = Map.of("error", "Internal error: " + e);
+        } finally {
+            ChangeJournal.clearActor();
+        }
+
+        // write the response
+        StringBuilder json = new StringBuilder(256);
+        ResultRenderer.appendJsonValue(json, body);
+        byte[] bytes = json.append('\n').toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+
+        // record the latency (and any error) of the endpoint
+        latencies.computeIfAbsent(endpoint, name -> new LatencyHistogram()).record(System.nanoTime() - start);
+        if (status >= 400) {
+            errors.computeIfAbsent(endpoint, name -> new LongAdder()).increment();
+        }
+    }
+
+    /**
+     * helper method to run the operation a request asks for
+     *
+     * @param request the request
+     * @return the response body (a map, list or value written as JSON)
+     * @throws IOException  if the request body cannot be read
+     * @throws SQLException if a database access error occurs
+     */
+    private Object route(Request request) throws IOException, SQLException {
+        String[] path = request.path;
+        String method = request.method;
+        switch (path[0]) {
+            case "projects":
+                if (path.length == 1) {
+                    return method.equals("POST") ? addProject(request) : listProjects(request, method);
+                }
+                switch (path[1]) {
+                    case "incomplete":
+                        requireGet(method);
+                        return projectList(deadlineTracker.incomplete(), request.limit());
+                    case "overdue":
+                        requireGet(method);
+                        return projectList(deadlineTracker.overdue(LocalDate.now()), request.limit());
+                    case "due-soon":
+                        requireGet(method);
+                        return projectList(deadlineTracker.dueWithin(LocalDate.now(),
+                                request.integer("days", DEFAULT_DUE_DAYS)), request.limit());
+                    default:
+                        return path.length == 3 && path[2].equals("finalise") && method.equals("POST")
+                                ? finaliseProject(request, projectNumber(path[1]))
+                                : project(request, path, method);
+                }
+
+            case "search": {
+                requireGet(method);
+                String words = request.query.getOrDefault("q", "");
+                List<Integer> matches = searchIndex.search(words, request.limit());
+                return Map.of("projects", projectValues(ProjectRepository.findProjects(pool, matches)));
+            }
+
+            case "summary":
+                requireGet(method);
+                return summary();
+
+            case "metrics":
+                requireGet(method);
+                return metrics();
+
+            default:
+                PersonTable personTable = personTable(path[0]);
+                if (personTable == null || path.length > 2) {
+                    throw new ApiException(404, "No such endpoint.");
+                }
+                return path.length == 1 ? people(request, personTable, method)
+                        : person(request, personTable, path[1], method);
+        }
+    }
+
+    /**
+     * helper method to list projects in project number order
+     *
+     * @param request the request (after=N, limit=N)
+     * @param method  the HTTP method
+     * @return the projects and the number to continue after (null on the last
+     *         page)
+     * @throws SQLException if a database access error occurs
+     */
+    private Object listProjects(Request request, String method) throws SQLException {
+        requireGet(method);
+        int after = request.query.containsKey("after") ? request.integer("after", 0) : 0;
+        int limit = request.limit();
+        List<Project> projects = ProjectRepository.findProjectsAfter(pool, after, limit);
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("projects", projectValues(projects));
+        response.put("next", projects.size() == limit ? projects.get(projects.size() - 1).projectNumber : null);
+        return response;
+    }
+
+    /**
+     * helper method to add a project from the request body
+     *
+     * @param request the request
+     * @return the new project number
+     * @throws IOException  if the request body cannot be read
+     * @throws SQLException if a database access error occurs
+     */
+    private Object addProject(Request request) throws IOException, SQLException {
+        Project project = BatchRunner.parseProject(request.body("add-project"), null);
+        return Map.of("project_number", ProjectRepository.insertProject(pool, project));
+    }
+
+    /**
+     * helper method to read, update or delete one project
+     *
+     * @param request the request
+     * @param path    the path segments (projects, n)
+     * @param method  the HTTP method
+     * @return the response body
+     * @throws IOException  if the request body cannot be read
+     * @throws SQLException if a database access error occurs
+     */
+    private Object project(Request request, String[] path, String method) throws IOException, SQLException {
+        if (path.length != 2) {
+            throw new ApiException(404, "No such endpoint.");
+        }
+        int projectNumber = projectNumber(path[1]);
+
+        switch (method) {
+            // read the project with its people
+            case "GET": {
+                Project project = requireProject(projectNumber);
+                Map<String, Object> response = BatchRunner.projectValues(project);
+                response.put("architect", personCache.get(pool, PersonTable.ARCHITECTS, project.architectID));
+                response.put("contractor", personCache.get(pool, PersonTable.CONTRACTORS, project.contractorID));
+                response.put("customer", personCache.get(pool, PersonTable.CUSTOMERS, project.customerID));
+                return response;
+            }
+
+            // change the columns given in the body (only those that differ are
+            // written)
+            case "PUT": {
+                Project current = requireProject(projectNumber);
+                Project project = BatchRunner.parseProject(request.body("update-project"), current.copy());
+                // a version given in the body must still be the row's
+                current.version = project.version;
+                ProjectRepository.UpdateResult outcome = ProjectRepository.updateProject(pool, current, project);
+                return Map.of("project_number", projectNumber, "changed",
+                        BatchRunner.checkUpdate(outcome, "Project Number " + projectNumber));
+            }
+
+            // delete the project and the people linked only to it
+            case "DELETE": {
+                ProjectDeleter.DeletePlan plan = ProjectDeleter.plan(pool, projectNumber);
+                if (plan.projectNumbers.length == 0) {
+                    throw new ApiException(404, "Project Number " + projectNumber + " not found.");
+                }
+                int people = 0;
+                for (ProjectDeleter.LinkedPerson person : plan.people) {
+                    people += person.delete ? 1 : 0;
+                }
+                Map<String, Object> response = new LinkedHashMap<>();
+                response.put("projects", ProjectDeleter.delete(pool, plan));
+                response.put("people", people);
+                response.put("kept", plan.getSharedPeople().size());
+                return response;
+            }
+
+            default:
+                throw new ApiException(405, method + " is not allowed here.");
+        }
+    }
+
+    /**
+     * helper method to finalise a project
+     *
+     * @param request       the request (body may give completion_date)
+     * @param projectNumber the project number
+     * @return whether the project was finalised
+     * @throws IOException  if the request body cannot be read
+     * @throws SQLException if a database access error occurs
+     */
+    private Object finaliseProject(Request request, int projectNumber) throws IOException, SQLException {
+        BatchRunner.Arguments arguments = request.body("finalise");
+        LocalDate completionDate = arguments.date("completion_date", LocalDate.now());
+        arguments.checkAllUsed();
+        requireProject(projectNumber);
+        return Map.of("project_number", projectNumber, "finalised",
+                ProjectRepository.finaliseProject(pool, projectNumber, completionDate));
+    }
+
+    /**
+     * helper method to list or add people
+     *
+     * @param request     the request (after=ID, limit=N, or a body)
+     * @param personTable the table of the people
+     * @param method      the HTTP method
+     * @return the response body
+     * @throws IOException  if the request body cannot be read
+     * @throws SQLException if a database access error occurs
+     */
+    private Object people(Request request, PersonTable personTable, String method)
+            throws IOException, SQLException {
+        switch (method) {
+            case "GET": {
+                int limit = request.limit();
+                List<Map<String, Object>> people = ProjectRepository.findPeopleAfter(pool, personTable,
+                        request.query.getOrDefault("after", ""), limit);
+                Map<String, Object> response = new LinkedHashMap<>();
+                response.put(personTable.getTable().toLowerCase(), people);
+                response.put("next", people.size() == limit
+                        ? people.get(people.size() - 1).get(personTable.getIdColumn())
+                        : null);
+                return response;
+            }
+            case "POST": {
+                String[] values = BatchRunner.parsePerson(request.body("add-person"), personTable);
+                ProjectRepository.insertPerson(pool, personTable, values);
+                return Map.of("id", values[0]);
+            }
+            default:
+                throw new ApiException(405, method + " is not allowed here.");
+        }
+    }
+
+    /**
+     * helper method to read or update one person
+     *
+     * @param request     the request
+     * @param personTable the table of the person
+     * @param id          the ID of the person
+     * @param method      the HTTP method
+     * @return the response body
+     * @throws IOException  if the request body cannot be read
+     * @throws SQLException if a database access error occurs
+     */
+    private Object person(Request request, PersonTable personTable, String id, String method)
+            throws IOException, SQLException {
+        Map<String, Object> current = personCache.get(pool, personTable, id);
+        if (current == null) {
+            throw new ApiException(404, "No " + personTable.getRole() + " with ID " + id + " found.");
+        }
+        switch (method) {
+            case "GET":
+                return current;
+            case "PUT": {
+                BatchRunner.Arguments arguments = request.body("update-person");
+                Map<String, Object> expected = BatchRunner.expectVersion(arguments, current);
+                String[] details = BatchRunner.parsePersonDetails(arguments, personTable, expected);
+                ProjectRepository.UpdateResult outcome = ProjectRepository.updatePerson(pool, personTable, expected,
+                        details);
+                return Map.of("id", id, "changed",
+                        BatchRunner.checkUpdate(outcome, "The " + personTable.getRole() + " with ID " + id));
+            }
+            default:
+                throw new ApiException(405, method + " is not allowed here.");
+        }
+    }
+
+    /**
+     * helper method to read the first projects of a list
+     *
+     * @param projectNumbers the numbers of the projects in order
+     * @param limit          the maximum number of projects to read
+     * @return the total number of projects and the first ones
+     * @throws SQLException if a database access error occurs
+     */
+    private Object projectList(List<Integer> projectNumbers, int limit) throws SQLException {
+        List<Integer> first = projectNumbers.subList(0, Math.min(limit, projectNumbers.size()));
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("total", projectNumbers.size());
+        response.put("projects", projectValues(ProjectRepository.findProjects(pool, first)));
+        return response;
+    }
+
+    /**
+     * helper method to get the project counts and outstanding totals
+     *
+     * @return the summary figures
+     * @throws SQLException if a database access error occurs
+     */
+    private Object summary() throws SQLException {
+        ProjectSummary.Summary summary = ProjectSummary.read(pool, LocalDate.now());
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("projects", summary.projects);
+        response.put("incomplete", summary.open);
+        response.put("overdue", summary.overdue);
+        response.put("finalised", summary.finalised);
+        response.put("total_fee", summary.totalFee);
+        response.put("amount_paid", summary.amountPaid);
+        response.put("outstanding", summary.outstanding);
+        response.put("overdue_outstanding", summary.overdueOutstanding);
+        response.put("finalised_outstanding", summary.finalisedOutstanding);
+        return response;
+    }
+
+    /**
+     * helper method to get the latency of each endpoint and the pool usage
+     *
+     * @return the metrics
+     */
+    private Object metrics() {
+        Map<String, Object> endpoints = new TreeMap<>();
+        for (Map.Entry<String, LatencyHistogram> entry : latencies.entrySet()) {
+            LatencyHistogram histogram = entry.getValue();
+            Map<String, Object> values = new LinkedHashMap<>();
+            values.put("count", histogram.getCount());
+            LongAdder failed = errors.get(entry.getKey());
+            values.put("errors", failed == null ? 0 : failed.sum());
+            values.put("mean_ms", round(histogram.getMean()));
+            values.put("p50_ms", round(histogram.getPercentile(50)));
+            values.put("p90_ms", round(histogram.getPercentile(90)));
+            values.put("p99_ms", round(histogram.getPercentile(99)));
+            values.put("max_ms", round(histogram.getMax()));
+            endpoints.put(entry.getKey(), values);
+        }
+
+        Map<String, Object> connections = new LinkedHashMap<>();
+        connections.put("active", pool.getActiveCount());
+        connections.put("idle", pool.getIdleCount());
+        connections.put("max", pool.getMaxSize());
+        connections.put("avg_wait_ms", round(pool.getAverageWaitMillis() * 1e6));
+        connections.put("max_wait_ms", round(pool.getMaxWaitMillis() * 1e6));
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("endpoints", endpoints);
+        response.put("pool", connections);
+        return response;
+    }
+
+    /**
+     * helper method to display the latency of each endpoint
+     */
+    private void printLatencies() {
+        System.out.printf("%-32s %8s %7s %9s %9s %9s %9s%n", "Endpoint", "Requests", "Errors", "p50 ms", "p90 ms",
+                "p99 ms", "Max ms");
+        for (String endpoint : new TreeMap<>(latencies).keySet()) {
+            LatencyHistogram histogram = latencies.get(endpoint);
+            LongAdder failed = errors.get(endpoint);
+            System.out.printf("%-32s %8d %7d %9.3f %9.3f %9.3f %9.3f%n", endpoint, histogram.getCount(),
+                    failed == null ? 0 : failed.sum(), histogram.getPercentile(50) / 1e6,
+                    histogram.getPercentile(90) / 1e6, histogram.getPercentile(99) / 1e6,
+                    histogram.getMax() / 1e6);
+        }
+    }
+
+    /**
+     * helper method to read a project or report that it does not exist
+     *
+     * @param projectNumber the project number
+     * @return the project
+     * @throws SQLException if a database access error occurs
+     */
+    private Project requireProject(int projectNumber) throws SQLException {
+        Project project = ProjectRepository.findProject(pool, projectNumber);
+        if (project == null) {
+            throw new ApiException(404, "Project Number " + projectNumber + " not found.");
+        }
+        return project;
+    }
+
+    /**
+     * helper method to get the columns of each project
+     *
+     * @param projects the projects
+     * @return the values of each project by column
+     */
+    private static List<Map<String, Object>> projectValues(List<Project> projects) {
+        List<Map<String, Object>> values = new ArrayList<>(projects.size());
+        for (Project project : projects) {
+            values.add(BatchRunner.projectValues(project));
+        }
+        return values;
+    }
+
+    /**
+     * helper method to check that a read-only endpoint was called with GET
+     *
+     * @param method the HTTP method
+     */
+    private static void requireGet(String method) {
+        if (!method.equals("GET")) {
+            throw new ApiException(405, method + " is not allowed here.");
+        }
+    }
+
+    /**
+     * helper method to read a project number from the path
+     *
+     * @param text the path segment
+     * @return the project number
+     */
+    private static int projectNumber(String text) {
+        int projectNumber = InputValidation.parseInteger(text);
+        if (projectNumber < 1) {
+            throw new ApiException(404, "No such endpoint.");
+        }
+        return projectNumber;
+    }
+
+    /**
+     * helper method to get the person table named in the path
+     *
+     * @param name the path segment, e.g. customers
+     * @return the person table, or null if there is none with that name
+     */
+    private static PersonTable personTable(String name) {
+        for (PersonTable personTable : PersonTable.values()) {
+            if (personTable.getTable().equalsIgnoreCase(name)) {
+                return personTable;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * helper method to get the endpoint of a path for the latency metrics
+     * (project numbers and person IDs are replaced by placeholders, and
+     * unknown paths are grouped, so the number of endpoints stays fixed)
+     *
+     * @param path the path segments
+     * @return the endpoint, e.g. /projects/{n}/finalise
+     */
+    private static String pattern(String[] path) {
+        String first = path[0];
+        if (first.equals("projects")) {
+            if (path.length == 1) {
+                return "/projects";
+            }
+            boolean number = InputValidation.isDigits(path[1]);
+            if (path.length == 2 && number) {
+                return "/projects/{n}";
+            }
+            if (path.length == 2 && (path[1].equals("incomplete") || path[1].equals("overdue")
+                    || path[1].equals("due-soon"))) {
+                return "/projects/" + path[1];
+            }
+            if (path.length == 3 && number && path[2].equals("finalise")) {
+                return "/projects/{n}/finalise";
+            }
+        } else if (first.equals("search") || first.equals("summary") || first.equals("metrics")) {
+            if (path.length == 1) {
+                return "/" + first;
+            }
+        } else if (personTable(first) != null) {
+            if (path.length <= 2) {
+                return "/" + first.toLowerCase() + (path.length == 2 ? "/{id}" : "");
+            }
+        }
+        return "/(unknown)";
+    }
+
+    /**
+     * helper method to round nanoseconds to milliseconds with three decimals
+     *
+     * @param nanos the time in nanoseconds
+     * @return the time in milliseconds
+     */
+    private static double round(double nanos) {
+        return Math.round(nanos / 1e3) / 1e3;
+    }
+
+    /**
+     * helper method to decode a query string
+     *
+     * @param rawQuery the raw query (or null)
+     * @return the parameters by name
+     */
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> query = new LinkedHashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return query;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int equals = pair.indexOf('=');
+            String name = equals < 0 ? pair : pair.substring(0, equals);
+            String value = equals < 0 ? "" : pair.substring(equals + 1);
+            query.put(URLDecoder.decode(name, StandardCharsets.UTF_8), URLDecoder.decode(value,
+                    StandardCharsets.UTF_8));
+        }
+        return query;
+    }
+
+    /**
+     * helper method to parse a flat JSON object of strings, numbers, booleans
+     * and nulls (null values are left out)
+     *
+     * @param text the JSON text
+     * @return the values as text, by name
+     */
+    static Map<String, String> parseJsonObject(String text) {
+        Map<String, String> values = new LinkedHashMap<>();
+        int[] position = { skipSpace(text, 0) };
+        expect(text, position, '{');
+        if (peek(text, position) == '}') {
+            position[0]++;
+        } else {
+            while (true) {
+                String name = readString(text, position);
+                expect(text, position, ':');
+                String value = readValue(text, position);
+                if (value != null) {
+                    values.put(name, value);
+                }
+                char next = peek(text, position);
+                position[0]++;
+                if (next == '}') {
+                    break;
+                } else if (next != ',') {
+                    throw new ApiException(400, "Expected , or } at character " + position[0] + ".");
+                }
+            }
+        }
+        if (skipSpace(text, position[0]) != text.length()) {
+            throw new ApiException(400, "Unexpected text after the JSON object.");
+        }
+        return values;
+    }
+
+    /**
+     * helper method to read a JSON value as text
+     *
+     * @param text     the JSON text
+     * @param position the current position (advanced past the value)
+     * @return the value as text, or null for a JSON null
+     */
+    private static String readValue(String text, int[] position) {
+        char c = peek(text, position);
+        if (c == '"') {
+            return readString(text, position);
+        }
+        if (c == '{' || c == '[') {
+            throw new ApiException(400, "Nested objects and arrays are not supported.");
+        }
+
+        // a number, true, false or null runs until the next delimiter
+        int start = position[0];
+        int end = start;
+        while (end < text.length() && ",}] \t\r\n".indexOf(text.charAt(end)) < 0) {
+            end++;
+        }
+        String literal = text.substring(start, end);
+        position[0] = end;
+        if (literal.equals("null")) {
+            return null;
+        }
+        if (!literal.equals("true") && !literal.equals("false") && !JSON_NUMBER.matcher(literal).matches()) {
+            throw new ApiException(400, "Invalid value '" + literal + "'.");
+        }
+        return literal;
+    }
+
+    /**
+     * helper method to read a JSON string
+     *
+     * @param text     the JSON text
+     * @param position the current position (advanced past the string)
+     * @return the string
+     */
+    private static String readString(String text, int[] position) {
+        expect(text, position, '"');
+        StringBuilder value = new StringBuilder();
+        int i = position[0];
+        while (i < text.length() && text.charAt(i) != '"') {
+            char c = text.charAt(i++);
+            if (c == '\\' && i < text.length()) {
+                char escaped = text.charAt(i++);
+                switch (escaped) {
+                    case 'n':
+                        value.append('\n');
+                        break;
+                    case 'r':
+                        value.append('\r');
+                        break;
+                    case 't':
+                        value.append('\t');
+                        break;
+                    case 'b':
+                        value.append('\b');
+                        break;
+                    case 'f':
+                        value.append('\f');
+                        break;
+                    case 'u':
+                        if (i + 4 > text.length()) {
+                            throw new ApiException(400, "Invalid \\u escape.");
+                        }
+                        try {
+                            value.append((char) Integer.parseInt(text.substring(i, i + 4), 16));
+                        } catch (NumberFormatException e) {
+                            throw new ApiException(400, "Invalid \\u escape.");
+                        }
+                        i += 4;
+                        break;
+                    default:
+                        // \" \\ and \/
+                        value.append(escaped);
+                }
+            } else {
+                value.append(c);
+            }
+        }
+        if (i >= text.length()) {
+            throw new ApiException(400, "Missing closing quote.");
+        }
+        position[0] = i + 1;
+        return value.toString();
+    }
+
+    /**
+     * helper method to get the next character that is not white space
+     *
+     * @param text     the JSON text
+     * @param position the current position (advanced to the character)
+     * @return the character
+     */
+    private static char peek(String text, int[] position) {
+        position[0] = skipSpace(text, position[0]);
+        if (position[0] >= text.length()) {
+            throw new ApiException(400, "Unexpected end of JSON.");
+        }
+        return text.charAt(position[0]);
+    }
+
+    /**
+     * helper method to check for and skip an expected character
+     *
+     * @param text     the JSON text
+     * @param position the current position (advanced past the character)
+     * @param expected the character expected
+     */
+    private static void expect(String text, int[] position, char expected) {
+        if (peek(text, position) != expected) {
+            throw new ApiException(400, "Expected " + expected + " at character " + position[0] + ".");
+        }
+        position[0]++;
+    }
+
+    /**
+     * helper method to skip white space
+     *
+     * @param text  the JSON text
+     * @param index the position to start at
+     * @return the position of the next character that is not white space
+     */
+    private static int skipSpace(String text, int index) {
+        while (index < text.length() && Character.isWhitespace(text.charAt(index))) {
+            index++;
+        }
+        return index;
+    }
+}
@@ -0,0 +1,920 @@
+
+// import Java packages
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * class for running PoisePMS operations without the menu, either many at a
+ * time from a command file (run commands.txt, or run - for standard input) or
+ * one at a time as command-line arguments (e.g. finalise 3,7,10-20)
+ *
+ * each line of a command file is a command followed by its arguments, which
+ * are positional values or name=value pairs; values containing spaces are
+ * wrapped in double quotes, and blank lines and lines starting with # are
+ * skipped, e.g.
+ *
+ * add-project architect_id=ARCH9 contractor_id=CONT9 customer_id=CUST9
+ * building_type=House physical_address="1 Main Road, Durban" erf_number=12
+ * total_fee=500000 amount_paid=0 project_deadline=2025-06-30
+ *
+ * every command writes one JSON object on its own line to standard output
+ * (line, command, ok, and either the results or an error), so the output can
+ * be read by another programme; a summary is written to standard error
+ *
+ * commands run against a ProjectStore (the MySQL database, or the embedded
+ * file store chosen with -Dpoisepms.store=file), whose connections, caches
+ * and in-memory indexes stay warm for the whole file; consecutive
+ * add-project commands are inserted as one batch, all or none
+ */
+public class BatchRunner {
+
+    /**
+     * names of the available commands
+     */
+    private static final String[] COMMANDS = { "add-project", "update-project", "finalise",
+            "finalise-paid-overdue", "delete", "add-person", "update-person", "get-project", "search",
+            "incomplete", "overdue", "due-soon" };
+
+    /**
+     * maximum number of consecutive add-project commands inserted as one batch
+     */
+    public static final int PIPELINE_SIZE = 1000;
+
+    /**
+     * default number of days looked ahead by due-soon
+     */
+    private static final int DEFAULT_DUE_DAYS = 7;
+
+    // store shared by every command (owned by the caller)
+    private final ProjectStore store;
+
+    // buffered standard output for the results
+    private final Writer out;
+
+    // add-project commands waiting to be inserted, with their line numbers
+    private final List<Project> pendingProjects = new ArrayList<>();
+    private final List<Long> pendingLines = new ArrayList<>();
+
+    // number of commands run and failed
+    private long commandCount;
+    private long failureCount;
+
+    /**
+     * constructor to create a runner writing its results to standard output
+     *
+     * @param store the store the commands run against
+     */
+    private BatchRunner(ProjectStore store) {
+        this.store = store;
+        this.out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), 64 * 1024);
+    }
+
+    /**
+     * method to check if a name is one of the batch commands
+     *
+     * @param name the command name
+     * @return true if the command can be run by this class
+     */
+    public static boolean isCommand(String name) {
+        return Arrays.asList(COMMANDS).contains(name);
+    }
+
+    /**
+     * method to run every command in a file from the command line arguments
+     * e.g. run commands.txt --stop-on-error
+     *
+     * @param store the store the commands run against
+     * @param args  the command arguments: run file|- [--stop-on-error]
+     * @return true if every command succeeded
+     * @throws IOException if the command file cannot be read or the results
+     *                     cannot be written
+     */
+    public static boolean run(ProjectStore store, String[] args) throws IOException {
+        // check that a file was given
+        if (args.length < 2 || (args.length > 2 && !args[2].equals("--stop-on-error"))) {
+            System.out.println("Usage: PoisePMS run <file|-> [--stop-on-error]");
+            System.out.println("Commands: " + String.join(", ", COMMANDS));
+            return false;
+        }
+        boolean stopOnError = args.length > 2;
+
+        // read the commands from standard input or the file
+        long start = System.nanoTime();
+        BatchRunner runner = new BatchRunner(store);
+        try (BufferedReader reader = args[1].equals("-")
+                ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))
+                : Files.newBufferedReader(Paths.get(args[1]), StandardCharsets.UTF_8)) {
+            long lineNumber = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+
+                // skip blank lines and comments
+                String trimmed = line.trim();
+                if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                    continue;
+                }
+
+                // run the command (an invalid line is reported like a failed command)
+                boolean succeeded;
+                try {
+                    succeeded = runner.execute(lineNumber, tokenize(trimmed));
+                } catch (IllegalArgumentException e) {
+                    succeeded = runner.fail(lineNumber, "", e.getMessage());
+                }
+                if (!succeeded && stopOnError) {
+                    break;
+                }
+
+                // send queued work and results before waiting for more piped input
+                if (!reader.ready()) {
+                    runner.flushPending();
+                    runner.out.flush();
+                }
+            }
+            runner.flushPending();
+        } finally {
+            runner.close();
+        }
+
+        // display summary
+        double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+        System.err.println(runner.commandCount + " commands run, " + runner.failureCount + " failed in "
+                + String.format("%.2f", seconds) + " s (" + String.format("%.0f",
+                        seconds > 0 ? runner.commandCount / seconds : 0) + " commands/s).");
+        return runner.failureCount == 0;
+    }
+
+    /**
+     * method to run a single command given as command-line arguments
+     * e.g. finalise 3,7,10-20 completion_date=2024-06-30
+     *
+     * @param store the store the command runs against
+     * @param args  the command name followed by its arguments
+     * @return true if the command succeeded
+     * @throws IOException if the result cannot be written
+     */
+    public static boolean runOnce(ProjectStore store, String[] args) throws IOException {
+        BatchRunner runner = new BatchRunner(store);
+        try {
+            runner.execute(1, Arrays.asList(args));
+            runner.flushPending();
+        } finally {
+            runner.close();
+        }
+        return runner.failureCount == 0;
+    }
+
+    /**
+     * helper method to run one command
+     *
+     * add-project commands are queued and inserted together (their results are
+     * written when the queue is sent); any other command first sends the
+     * queue, so commands still take effect in file order
+     *
+     * @param lineNumber the line number of the command
+     * @param tokens     the command name followed by its arguments
+     * @return true if the command succeeded (or was queued)
+     * @throws IOException if the result cannot be written
+     */
+    private boolean execute(long lineNumber, List<String> tokens) throws IOException {
+        String command = tokens.get(0);
+        Arguments arguments = new Arguments(tokens);
+
+        // queue new projects so consecutive ones are inserted together
+        if (command.equals("add-project")) {
+            try {
+                pendingProjects.add(parseProject(arguments, null));
+                pendingLines.add(lineNumber);
+            } catch (IllegalArgumentException e) {
+                return fail(lineNumber, command, e.getMessage());
+            }
+            return pendingProjects.size() < PIPELINE_SIZE || flushPending();
+        }
+
+        // run any queued inserts first
+        boolean succeeded = flushPending();
+
+        long start = System.nanoTime();
+        try {
+            Result result = new Result(lineNumber, command, true);
+            switch (command) {
+                // change the given columns of a project (only those that differ
+                // are written)
+                case "update-project": {
+                    int projectNumber = arguments.projectNumber();
+                    Project current = store.findProject(projectNumber);
+                    if (current == null) {
+                        throw new IllegalArgumentException("Project Number " + projectNumber + " not found.");
+                    }
+                    Project project = parseProject(arguments, current.copy());
+                    // a version given with the command must still be the row's
+                    current.version = project.version;
+                    ProjectRepository.UpdateResult outcome = store.updateProject(current, project);
+                    result.put("project_number", projectNumber);
+                    result.put("changed", checkUpdate(outcome, "Project Number " + projectNumber));
+                    break;
+                }
+
+                // finalise projects by number
+                case "finalise": {
+                    int[] projectNumbers = arguments.projectNumbers();
+                    LocalDate completionDate = arguments.date("completion_date", LocalDate.now());
+                    arguments.checkAllUsed();
+                    result.put("rows", store.finaliseProjects(projectNumbers, completionDate));
+                    break;
+                }
+
+                // finalise every fully paid project past its deadline
+                case "finalise-paid-overdue": {
+                    LocalDate today = arguments.date("today", LocalDate.now());
+                    LocalDate completionDate = arguments.date("completion_date", today);
+                    arguments.checkAllUsed();
+                    result.put("rows", store.finaliseFullyPaidOverdue(today, completionDate));
+                    break;
+                }
+
+                // delete projects and the people linked only to them (people
+                // shared with other projects are kept)
+                case "delete": {
+                    int[] projectNumbers = arguments.projectNumbers();
+                    arguments.checkAllUsed();
+
+                    ProjectDeleter.DeletePlan plan = store.planDelete(projectNumbers);
+                    int people = 0;
+                    for (ProjectDeleter.LinkedPerson person : plan.people) {
+                        people += person.delete ? 1 : 0;
+                    }
+                    result.put("projects", store.delete(plan));
+                    result.put("people", people);
+                    result.put("kept", plan.getSharedPeople().size());
+                    break;
+                }
+
+                // add an architect, contractor or customer
+                case "add-person": {
+                    PersonTable personTable = arguments.personTable();
+                    String[] values = parsePerson(arguments, personTable);
+                    store.insertPerson(personTable, values);
+                    result.put("id", values[0]);
+                    break;
+                }
+
+                // change the given details of a person (only those that differ
+                // are written)
+                case "update-person": {
+                    PersonTable personTable = arguments.personTable();
+                    String id = arguments.positional(2, "ID");
+                    Map<String, Object> current = store.findPerson(personTable, id);
+                    if (current == null) {
+                        throw new IllegalArgumentException("No " + personTable.getRole() + " with ID " + id
+                                + " found.");
+                    }
+                    current = expectVersion(arguments, current);
+                    String[] details = parsePersonDetails(arguments, personTable, current);
+                    ProjectRepository.UpdateResult outcome = store.updatePerson(personTable, current,
+                            details);
+                    result.put("id", id);
+                    result.put("changed", checkUpdate(outcome, "The " + personTable.getRole() + " with ID " + id));
+                    break;
+                }
+
+                // read one project
+                case "get-project": {
+                    int projectNumber = arguments.projectNumber();
+                    arguments.checkAllUsed();
+                    Project project = store.findProject(projectNumber);
+                    if (project == null) {
+                        throw new IllegalArgumentException("Project Number " + projectNumber + " not found.");
+                    }
+                    result.put("project", projectValues(project));
+                    break;
+                }
+
+                // search projects by word
+                case "search": {
+                    String query = arguments.joinPositional(" ");
+                    int limit = arguments.integer("limit", ProjectSearchIndex.DEFAULT_RESULT_LIMIT);
+                    arguments.checkAllUsed();
+                    result.put("projects", store.search(query, limit));
+                    break;
+                }
+
+                // list unfinalised projects by deadline
+                case "incomplete":
+                    arguments.checkAllUsed();
+                    result.put("projects", store.incomplete());
+                    break;
+                case "overdue": {
+                    LocalDate today = arguments.date("today", LocalDate.now());
+                    arguments.checkAllUsed();
+                    result.put("projects", store.overdue(today));
+                    break;
+                }
+                case "due-soon": {
+                    LocalDate today = arguments.date("today", LocalDate.now());
+                    int days = arguments.integer("days", DEFAULT_DUE_DAYS);
+                    arguments.checkAllUsed();
+                    result.put("projects", store.dueWithin(today, days));
+                    break;
+                }
+
+                // unknown command
+                default:
+                    throw new IllegalArgumentException("Unknown command '" + command + "'. Available commands: "
+                            + String.join(", ", COMMANDS));
+            }
+
+            // write the result
+            result.put("ms", (System.nanoTime() - start) / 1e6);
+            write(result);
+            return succeeded;
+        } catch (IllegalArgumentException | SQLException e) {
+            fail(lineNumber, command, e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * helper method to insert the queued add-project commands as one batch and
+     * write their results
+     *
+     * @return true if the batch was inserted (or nothing was queued)
+     * @throws IOException if the results cannot be written
+     */
+    private boolean flushPending() throws IOException {
+        if (pendingProjects.isEmpty()) {
+            return true;
+        }
+
+        boolean succeeded = true;
+        try {
+            long start = System.nanoTime();
+            store.insertProjects(pendingProjects);
+            double millis = (System.nanoTime() - start) / 1e6;
+
+            for (int i = 0; i < pendingProjects.size(); i++) {
+                Result result = new Result(pendingLines.get(i), "add-project", true);
+                result.put("project_number", pendingProjects.get(i).projectNumber);
+                result.put("batch", pendingProjects.size());
+                result.put("ms", millis);
+                write(result);
+            }
+        } catch (ProjectRepository.CommitUnknownException e) {
+            // the commit itself failed, so the batch may have been saved
+            for (long lineNumber : pendingLines) {
+                fail(lineNumber, "add-project", "Batch of " + pendingProjects.size() + " may have been saved: "
+                        + e.getMessage());
+            }
+            succeeded = false;
+        } catch (SQLException e) {
+            // the batch failed before it was committed, so it is rolled back and
+            // every queued command failed
+            for (long lineNumber : pendingLines) {
+                fail(lineNumber, "add-project", "Batch of " + pendingProjects.size() + " rolled back: "
+                        + e.getMessage());
+            }
+            succeeded = false;
+        }
+        pendingProjects.clear();
+        pendingLines.clear();
+        return succeeded;
+    }
+
+    /**
+     * helper method to write the result of a failed command
+     *
+     * @param lineNumber the line number of the command
+     * @param command    the command name
+     * @param message    the error message
+     * @return false (so callers can return it)
+     * @throws IOException if the result cannot be written
+     */
+    private boolean fail(long lineNumber, String command, String message) throws IOException {
+        Result result = new Result(lineNumber, command, false);
+        result.put("error", message);
+        write(result);
+        failureCount++;
+        return false;
+    }
+
+    /**
+     * helper method to write a result line
+     *
+     * @param result the result
+     * @throws IOException if the result cannot be written
+     */
+    private void write(Result result) throws IOException {
+        out.write(result.toString());
+        out.write('\n');
+        commandCount++;
+    }
+
+    /**
+     * helper method to write any buffered results (the store is left open)
+     *
+     * @throws IOException if the results cannot be written
+     */
+    private void close() throws IOException {
+        out.flush();
+    }
+
+    /**
+     * helper method to read the project columns of an add-project or
+     * update-project command
+     *
+     * @param arguments the command arguments
+     * @param project   the current project to change, or null to create a new
+     *                  project (every column except project_name,
+     *                  project_finalised and completion_date is then required)
+     * @return the project with the given columns set
+     */
+    static Project parseProject(Arguments arguments, Project project) {
+        boolean adding = project == null;
+        if (adding) {
+            project = new Project();
+            project.projectName = "";
+        }
+
+        // an update may give the version it read, so it fails if the project
+        // has been changed since
+        if (!adding) {
+            project.version = arguments.integer("version", project.version);
+        }
+
+        project.architectID = arguments.text("architect_id", project.architectID, adding);
+        project.contractorID = arguments.text("contractor_id", project.contractorID, adding);
+        project.customerID = arguments.text("customer_id", project.customerID, adding);
+        project.projectName = arguments.text("project_name", project.projectName, false);
+        project.buildingType = arguments.text("building_type", project.buildingType, adding);
+        project.physicalAddress = arguments.text("physical_address", project.physicalAddress, adding);
+        project.erfNumber = arguments.text("erf_number", project.erfNumber, adding);
+        project.totalFee = arguments.decimal("total_fee", project.totalFee, adding);
+        project.amountPaid = arguments.decimal("amount_paid", project.amountPaid, adding);
+        project.projectDeadline = arguments.date("project_deadline", project.projectDeadline);
+        if (project.projectDeadline == null) {
+            throw new IllegalArgumentException("project_deadline is required.");
+        }
+
+        // a finalised project needs a completion date, an open project has none
+        project.projectFinalised = arguments.bool("project_finalised", project.projectFinalised);
+        project.completionDate = arguments.date("completion_date", project.completionDate);
+        if (!project.projectFinalised) {
+            project.completionDate = null;
+        } else if (project.completionDate == null) {
+            throw new IllegalArgumentException("completion_date is required for a finalised project.");
+        }
+
+        arguments.checkAllUsed();
+        return project;
+    }
+
+    /**
+     * helper method to read every column of a new person (all are required)
+     *
+     * @param arguments   the command arguments
+     * @param personTable the table of the person
+     * @return the values in column order (ID first)
+     */
+    static String[] parsePerson(Arguments arguments, PersonTable personTable) {
+        String[] columns = personTable.getColumns();
+        String[] values = new String[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            values[i] = arguments.text(columns[i], null, true);
+        }
+        arguments.checkAllUsed();
+        return values;
+    }
+
+    /**
+     * helper method to apply the version given with a person update (the
+     * version the caller read), so the update fails if the person has been
+     * changed since
+     *
+     * @param arguments the command arguments (version=N is optional)
+     * @param current   the person's current values by column
+     * @return the values to update from, with the version expected
+     */
+    static Map<String, Object> expectVersion(Arguments arguments, Map<String, Object> current) {
+        int version = ((Number) current.get(ProjectRepository.VERSION_COLUMN)).intValue();
+        Map<String, Object> expected = new LinkedHashMap<>(current);
+        expected.put(ProjectRepository.VERSION_COLUMN, arguments.integer(ProjectRepository.VERSION_COLUMN, version));
+        return expected;
+    }
+
+    /**
+     * helper method to read the details of a person to update, keeping the
+     * current value of any column not given
+     *
+     * @param arguments   the command arguments
+     * @param personTable the table of the person
+     * @param current     the person's current values by column
+     * @return the details in column order (without the ID)
+     */
+    static String[] parsePersonDetails(Arguments arguments, PersonTable personTable, Map<String, Object> current) {
+        String[] columns = personTable.getColumns();
+        String[] details = new String[columns.length - 1];
+        for (int i = 1; i < columns.length; i++) {
+            details[i - 1] = arguments.text(columns[i], String.valueOf(current.get(columns[i])), false);
+        }
+        arguments.checkAllUsed();
+        return details;
+    }
+
+    /**
+     * helper method to check the outcome of an update
+     *
+     * @param outcome the outcome
+     * @param record  the record updated, e.g. Project Number 3
+     * @return true if columns were written, false if nothing had changed
+     * @throws IllegalArgumentException if the record was deleted
+     * @throws ConflictException        if the record was changed by someone
+     *                                  else after it was read
+     */
+    static boolean checkUpdate(ProjectRepository.UpdateResult outcome, String record) {
+        switch (outcome) {
+            case NOT_FOUND:
+                throw new IllegalArgumentException(record + " no longer exists.");
+            case CONFLICT:
+                throw new ConflictException(record + " was changed by someone else after it was read, "
+                        + "so nothing was written - read it again and retry.");
+            default:
+                return outcome == ProjectRepository.UpdateResult.UPDATED;
+        }
+    }
+
+    /**
+     * helper method to get the columns of a project in display order
+     *
+     * @param project the project
+     * @return the values by column name
+     */
+    static Map<String, Object> projectValues(Project project) {
+        Map<String, Object> values = new LinkedHashMap<>();
+        values.put("project_number", project.projectNumber);
+        values.put("project_name", project.projectName);
+        values.put("building_type", project.buildingType);
+        values.put("physical_address", project.physicalAddress);
+        values.put("erf_number", project.erfNumber);
+        values.put("total_fee", project.totalFee);
+        values.put("amount_paid", project.amountPaid);
+        values.put("project_deadline", project.projectDeadline);
+        values.put("project_finalised", project.projectFinalised);
+        values.put("completion_date", project.completionDate);
+        values.put("architect_id", project.architectID);
+        values.put("contractor_id", project.contractorID);
+        values.put("customer_id", project.customerID);
+        values.put("version", project.version);
+        return values;
+    }
+
+    /**
+     * helper method to split a command line into tokens
+     *
+     * tokens are separated by whitespace; double quotes group text containing
+     * spaces and are removed, and \" or \\ inside quotes stand for " and \
+     *
+     * @param line the command line
+     * @return the tokens (at least one)
+     * @throws IllegalArgumentException if a quote is not closed
+     */
+    static List<String> tokenize(String line) {
+        List<String> tokens = new ArrayList<>();
+        StringBuilder token = new StringBuilder();
+        boolean inToken = false;
+        boolean quoted = false;
+
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '\\' && i + 1 < line.length() && (line.charAt(i + 1) == '"' || line.charAt(i + 1) == '\\')) {
+                    token.append(line.charAt(++i));
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    token.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+                inToken = true;
+            } else if (Character.isWhitespace(c)) {
+                if (inToken) {
+                    tokens.add(token.toString());
+                    token.setLength(0);
+                    inToken = false;
+                }
+            } else {
+                token.append(c);
+                inToken = true;
+            }
+        }
+
+        if (quoted) {
+            throw new IllegalArgumentException("Missing closing quote.");
+        }
+        if (inToken) {
+            tokens.add(token.toString());
+        }
+        return tokens;
+    }
+
+    /**
+     * class for the exception thrown when an update finds the record was
+     * changed by someone else after it was read (reported like an invalid
+     * command, or as 409 Conflict by the API)
+     */
+    static final class ConflictException extends IllegalArgumentException {
+
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * constructor to create the exception
+         *
+         * @param message the message
+         */
+        ConflictException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * class for the arguments of a command: positional values and name=value
+     * pairs
+     */
+    static final class Arguments {
+
+        // command name followed by the positional values
+        private final List<String> positional = new ArrayList<>();
+
+        // named values in the order given
+        private final Map<String, String> named = new LinkedHashMap<>();
+
+        // names read so far (any others are reported as unknown)
+        private final Set<String> used = new HashSet<>();
+
+        /**
+         * constructor to sort the tokens of a command into positional and
+         * named values
+         *
+         * @param tokens the command name followed by its arguments
+         */
+        Arguments(List<String> tokens) {
+            for (String token : tokens) {
+                int equals = token.indexOf('=');
+                if (equals > 0 && !positional.isEmpty()) {
+                    named.put(token.substring(0, equals), token.substring(equals + 1));
+                } else {
+                    positional.add(token);
+                }
+            }
+        }
+
+        /**
+         * constructor to use named values read from elsewhere (e.g. a JSON
+         * request body)
+         *
+         * @param command the command name
+         * @param named   the named values
+         */
+        Arguments(String command, Map<String, String> named) {
+            positional.add(command);
+            this.named.putAll(named);
+        }
+
+        /**
+         * method to get a positional value
+         *
+         * @param index the position (1 is the first argument after the
+         *              command)
+         * @param name  the name of the value (for the error message)
+         * @return the value
+         */
+        String positional(int index, String name) {
+            if (index >= positional.size()) {
+                throw new IllegalArgumentException(name + " is required.");
+            }
+            return positional.get(index);
+        }
+
+        /**
+         * method to join every positional value
+         *
+         * @param separator the text placed between values
+         * @return the joined values
+         */
+        String joinPositional(String separator) {
+            return String.join(separator, positional.subList(1, positional.size()));
+        }
+
+        /**
+         * method to get the project number given as the first argument
+         *
+         * @return the project number
+         */
+        int projectNumber() {
+            int projectNumber = InputValidation.parseInteger(positional(1, "Project number"));
+            if (projectNumber < 0) {
+                throw new IllegalArgumentException("Project number must be a positive integer.");
+            }
+            return projectNumber;
+        }
+
+        /**
+         * method to get the project numbers given as the positional arguments
+         * e.g. 3, 7, 10-20
+         *
+         * @return the distinct project numbers in ascending order
+         */
+        int[] projectNumbers() {
+            positional(1, "Project numbers");
+            int[] projectNumbers = InputValidation.parseProjectNumbers(joinPositional(""));
+            if (projectNumbers == null) {
+                throw new IllegalArgumentException("Project numbers must be numbers and ranges such as 3,7,10-20.");
+            }
+            return projectNumbers;
+        }
+
+        /**
+         * method to get the person table named by the first argument
+         *
+         * @return the person table
+         */
+        PersonTable personTable() {
+            String role = positional(1, "Role (architect, contractor or customer)");
+            for (PersonTable personTable : PersonTable.values()) {
+                if (personTable.getRole().equals(role)) {
+                    return personTable;
+                }
+            }
+            throw new IllegalArgumentException("Role must be architect, contractor or customer.");
+        }
+
+        /**
+         * method to get a named text value
+         *
+         * @param name         the name of the value
+         * @param defaultValue the value to use if it is not given
+         * @param required     true if the value must be given
+         * @return the value
+         */
+        String text(String name, String defaultValue, boolean required) {
+            used.add(name);
+            String value = named.get(name);
+            if (value == null && required) {
+                throw new IllegalArgumentException(name + " is required.");
+            }
+            return value == null ? defaultValue : value;
+        }
+
+        /**
+         * method to get a named decimal value
+         *
+         * @param name         the name of the value
+         * @param defaultValue the value to use if it is not given
+         * @param required     true if the value must be given
+         * @return the value
+         */
+        double decimal(String name, double defaultValue, boolean required) {
+            String value = text(name, null, required);
+            if (value == null) {
+                return defaultValue;
+            }
+            double number = InputValidation.parseDecimal(value);
+            if (Double.isNaN(number)) {
+                throw new IllegalArgumentException(name + " must be a number.");
+            }
+            return number;
+        }
+
+        /**
+         * method to get a named positive integer value
+         *
+         * @param name         the name of the value
+         * @param defaultValue the value to use if it is not given
+         * @return the value
+         */
+        int integer(String name, int defaultValue) {
+            String value = text(name, null, false);
+            if (value == null) {
+                return defaultValue;
+            }
+            int number = InputValidation.parseInteger(value);
+            if (number < 0) {
+                throw new IllegalArgumentException(name + " must be a positive integer.");
+            }
+            return number;
+        }
+
+        /**
+         * method to get a named date value (YYYY-MM-DD)
+         *
+         * @param name         the name of the value
+         * @param defaultValue the value to use if it is not given
+         * @return the value
+         */
+        LocalDate date(String name, LocalDate defaultValue) {
+            String value = text(name, null, false);
+            if (value == null) {
+                return defaultValue;
+            }
+            LocalDate date = InputValidation.parseIsoDate(value);
+            if (date == null) {
+                throw new IllegalArgumentException(name + " must be a date in YYYY-MM-DD format.");
+            }
+            return date;
+        }
+
+        /**
+         * method to get a named boolean value (true/false)
+         *
+         * @param name         the name of the value
+         * @param defaultValue the value to use if it is not given
+         * @return the value
+         */
+        boolean bool(String name, boolean defaultValue) {
+            String value = text(name, null, false);
+            if (value == null) {
+                return defaultValue;
+            }
+            if (!value.equals("true") && !value.equals("false")) {
+                throw new IllegalArgumentException(name + " must be true or false.");
+            }
+            return value.equals("true");
+        }
+
+        /**
+         * method to check that every named value was read
+         *
+         * @throws IllegalArgumentException if an unknown name was given
+         */
+        void checkAllUsed() {
+            for (String name : named.keySet()) {
+                if (!used.contains(name)) {
+                    throw new IllegalArgumentException("Unknown argument '" + name + "'.");
+                }
+            }
+        }
+    }
+
+    /**
+     * class for building one JSON result line
+     */
+    private static final class Result {
+
+        // JSON text so far (without the closing brace)
+        private final StringBuilder json = new StringBuilder(128);
+
+        /**
+         * constructor to start a result
+         *
+         * @param lineNumber the line number of the command
+         * @param command    the command name
+         * @param ok         true if the command succeeded
+         */
+        Result(long lineNumber, String command, boolean ok) {
+            json.append("{\"line\":").append(lineNumber).append(",\"command\":");
+            ResultRenderer.appendJsonString(json, command);
+            json.append(",\"ok\":").append(ok);
+        }
+
+        /**
+         * method to add a named value (numbers and booleans unquoted, lists as
+         * arrays, maps as objects, anything else as a string)
+         *
+         * @param name  the name of the value
+         * @param value the value (or null)
+         */
+        void put(String name, Object value) {
+            json.append(',');
+            ResultRenderer.appendJsonString(json, name);
+            json.append(':');
+            ResultRenderer.appendJsonValue(json, value);
+        }
+
+        /**
+         * method to get the finished JSON object
+         *
+         * @return the JSON text
+         */
+        @Override
+        public String toString() {
+            return json + "}";
+        }
+    }
+}
@@ -0,0 +1,977 @@
+// import Java packages
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * class for the change journal: an append-only history of every project and
+ * person write made through the programme, with the row before and after the
+ * change, who made it and when
+ *
+ * each write hands its entries to a queue once it has committed, and a
+ * background thread appends them to memory-mapped segment files, so a write
+ * pays no extra database round trip or file I/O for its history (the row
+ * before a project write is the one already read to lock it)
+ *
+ * each process writes its own series of segments, named by its start time and
+ * process ID and rolled over once a segment is full, so the menu, the API
+ * server and batch runs can all journal at once; entries are framed as a
+ * 4-byte length followed by the entry, and the length is written last, so an
+ * entry cut short by a crash (or one damaged on disk) reads as the end of its
+ * segment
+ *
+ * every add, update, finalise and delete made through the menu, run or serve
+ * is recorded, as the operating system user unless setActor() names someone
+ * else (the API server names the X-User header and client address); imports
+ * and generated data are not recorded row by row
+ */
+public class ChangeJournal implements AutoCloseable {
+
+    /**
+     * default size of a segment file in bytes
+     */
+    public static final int DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+
+    /**
+     * directory the journal is written to unless -Dpoisepms.journal=path is set
+     * (or off, to disable the journal)
+     */
+    public static final String DEFAULT_DIRECTORY = "journal";
+
+    /**
+     * default number of entries listed by the history command (the latest)
+     */
+    public static final int DEFAULT_LIMIT = 1000;
+
+    /**
+     * number of entries that can wait to be written before a write has to
+     * wait for the journal to catch up
+     */
+    private static final int QUEUE_CAPACITY = 65_536;
+
+    /**
+     * longest time written entries are left before they are forced to disk
+     */
+    private static final long FORCE_INTERVAL_MILLIS = 1_000;
+
+    // segment file name prefix and suffix
+    private static final String SEGMENT_PREFIX = "changes-";
+    private static final String SEGMENT_SUFFIX = ".journal";
+
+    // format of the times displayed and of the series name
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS");
+    private static final DateTimeFormatter SERIES_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    // columns of the history listing
+    private static final String[] COLUMNS = { "time", "actor", "operation", "table", "key", "changes" };
+    private static final String[] LABELS = { "Time", "Actor", "Operation", "Table", "Key", "Changes" };
+
+    /**
+     * journal entries are written to (null if the journal is not open)
+     */
+    private static volatile ChangeJournal current;
+
+    /**
+     * name recorded as the actor of writes made on the current thread (the
+     * operating system user unless set, e.g. per API request)
+     */
+    private static final ThreadLocal<String> actor = ThreadLocal
+            .withInitial(() -> System.getProperty("user.name", "unknown"));
+
+    /**
+     * class for one journal entry
+     */
+    static final class Entry {
+
+        // time of the write (milliseconds since the epoch) and who made it
+        final long time;
+        final String actor;
+
+        // insert, update, finalise or delete
+        final String operation;
+
+        // table and primary key of the row written
+        final String table;
+        final String key;
+
+        // column values before and after the write (null before an insert and
+        // after a delete)
+        final Map<String, String> before;
+        final Map<String, String> after;
+
+        /**
+         * constructor to create an entry
+         *
+         * @param time      the time of the write
+         * @param actor     who made the write
+         * @param operation the operation
+         * @param table     the table written
+         * @param key       the primary key of the row
+         * @param before    the values before the write (or null)
+         * @param after     the values after the write (or null)
+         */
+        Entry(long time, String actor, String operation, String table, String key, Map<String, String> before,
+                Map<String, String> after) {
+            this.time = time;
+            this.actor = actor;
+            this.operation = operation;
+            this.table = table;
+            this.key = key;
+            this.before = before;
+            this.after = after;
+        }
+    }
+
+    // entry that tells the writer thread to stop
+    private static final Entry STOP = new Entry(0, null, null, null, null, null, null);
+
+    // directory of the segments, name of this process's series and segment size
+    private final Path directory;
+    private final String series;
+    private final int segmentSize;
+
+    // entries waiting to be written, and the thread writing them
+    private final BlockingQueue<Entry> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final Thread writer;
+
+    // set once the journal is closed, or if it can no longer be written
+    private volatile boolean closed;
+    private volatile boolean failed;
+
+    // writes queue entries under the read lock and close queues STOP under the
+    // write lock, so no entry is queued behind STOP and lost
+    private final ReentrantReadWriteLock closeLock = new ReentrantReadWriteLock();
+
+    // segment being written, its mapped buffer and the part not yet forced
+    // (used only by the writer thread)
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int segmentNumber;
+    private int forcedTo;
+    private long lastForce;
+
+    // reusable buffer an entry is encoded into before it is appended
+    private ByteBuffer scratch = ByteBuffer.allocate(16 * 1024);
+
+    /**
+     * constructor to start a journal (the first segment is created when the
+     * first entry is written)
+     *
+     * @param directory   the directory of the segments
+     * @param segmentSize the size of each segment in bytes
+     * @throws IOException if the directory cannot be created
+     */
+    private ChangeJournal(Path directory, int segmentSize) throws IOException {
+        Files.createDirectories(directory);
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.series = SEGMENT_PREFIX + LocalDateTime.now().format(SERIES_FORMAT) + "-"
+                + ProcessHandle.current().pid();
+        this.writer = new Thread(this::writeLoop, "change-journal");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * method to open the journal that writes made by this process are recorded
+     * in (closed automatically when the programme exits)
+     *
+     * @param directory   the directory of the segments
+     * @param segmentSize the size of each segment in bytes
+     * @return the journal
+     * @throws IOException if the directory cannot be created
+     */
+    public static synchronized ChangeJournal open(Path directory, int segmentSize) throws IOException {
+        if (current == null) {
+            ChangeJournal journal = new ChangeJournal(directory, segmentSize);
+            Runtime.getRuntime().addShutdownHook(new Thread(journal::close));
+            current = journal;
+        }
+        return current;
+    }
+
+    /**
+     * method to get the journal directory chosen with -Dpoisepms.journal=path
+     *
+     * @return the directory, or null if the journal is turned off
+     */
+    public static Path configuredDirectory() {
+        String directory = System.getProperty("poisepms.journal", DEFAULT_DIRECTORY);
+        return directory.equalsIgnoreCase("off") ? null : Paths.get(directory);
+    }
+
+    /**
+     * method to check if writes are being journaled (so a write only reads a
+     * row it would not otherwise read when its history is kept)
+     *
+     * @return true if the journal is open
+     */
+    public static boolean isEnabled() {
+        ChangeJournal journal = current;
+        return journal != null && !journal.closed && !journal.failed;
+    }
+
+    /**
+     * method to set who the writes made on the current thread are recorded as
+     *
+     * @param name the actor name
+     */
+    public static void setActor(String name) {
+        actor.set(name);
+    }
+
+    /**
+     * method to record writes made on the current thread as the operating
+     * system user again
+     */
+    public static void clearActor() {
+        actor.remove();
+    }
+
+    /**
+     * method to record a committed write (nothing is done if the journal is not
+     * open)
+     *
+     * the entry is queued and written by the journal thread; the caller only
+     * waits if the journal has fallen QUEUE_CAPACITY entries behind (or while
+     * the journal is being closed, after which nothing more is recorded)
+     *
+     * @param operation the operation, e.g. update
+     * @param table     the table written
+     * @param key       the primary key of the row
+     * @param before    the values before the write (null for an insert)
+     * @param after     the values after the write (null for a delete)
+     */
+    public static void record(String operation, String table, Object key, Map<String, String> before,
+            Map<String, String> after) {
+        ChangeJournal journal = current;
+        if (journal == null) {
+            return;
+        }
+        Entry entry = new Entry(System.currentTimeMillis(), actor.get(), operation, table, String.valueOf(key),
+                before, after);
+        journal.closeLock.readLock().lock();
+        try {
+            // wait for room, giving up if the writer thread stops
+            while (!journal.closed && !journal.failed
+                    && !journal.queue.offer(entry, FORCE_INTERVAL_MILLIS, TimeUnit.MILLISECONDS)) {
+                // try again
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            journal.closeLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * method to get the column values of a project as recorded in the journal
+     *
+     * @param project the project
+     * @return the values by column name
+     */
+    static Map<String, String> image(Project project) {
+        Map<String, String> values = new LinkedHashMap<>();
+        values.put("project_number", Integer.toString(project.projectNumber));
+        values.put("architect_id", project.architectID);
+        values.put("contractor_id", project.contractorID);
+        values.put("customer_id", project.customerID);
+        values.put("project_name", project.projectName);
+        values.put("building_type", project.buildingType);
+        values.put("physical_address", project.physicalAddress);
+        values.put("erf_number", project.erfNumber);
+        values.put("total_fee", money(project.totalFee));
+        values.put("amount_paid", money(project.amountPaid));
+        values.put("project_deadline", Objects.toString(project.projectDeadline, null));
+        values.put("project_finalised", Boolean.toString(project.projectFinalised));
+        values.put("completion_date", Objects.toString(project.completionDate, null));
+        return values;
+    }
+
+    /**
+     * method to get the column values of a person as recorded in the journal
+     *
+     * @param personTable the table of the person
+     * @param values      the ID followed by the details, in the order of
+     *                    PersonTable.getColumns()
+     * @return the values by column name
+     */
+    static Map<String, String> image(PersonTable personTable, String... values) {
+        String[] columns = personTable.getColumns();
+        Map<String, String> image = new LinkedHashMap<>();
+        for (int i = 0; i < columns.length; i++) {
+            image.put(columns[i], values[i]);
+        }
+        return image;
+    }
+
+    /**
+     * method to stop the journal once the queued entries are written and
+     * forced to disk
+     */
+    @Override
+    public void close() {
+        synchronized (ChangeJournal.class) {
+            if (current == this) {
+                current = null;
+            }
+        }
+        closeLock.writeLock().lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            // writes already queued are ahead of STOP, and later ones see closed
+            while (!failed && !queue.offer(STOP, FORCE_INTERVAL_MILLIS, TimeUnit.MILLISECONDS)) {
+                // try again
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } finally {
+            closeLock.writeLock().unlock();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * helper method run by the writer thread: append queued entries, forcing
+     * them to disk at least once a second, until the journal is closed
+     */
+    private void writeLoop() {
+        List<Entry> batch = new ArrayList<>();
+        try {
+            boolean stopping = false;
+            while (!stopping) {
+                Entry first = queue.poll(FORCE_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch);
+                    for (Entry entry : batch) {
+                        if (entry == STOP) {
+                            stopping = true;
+                        } else {
+                            append(entry);
+                        }
+                    }
+                    batch.clear();
+                }
+                if (stopping || System.currentTimeMillis() - lastForce >= FORCE_INTERVAL_MILLIS) {
+                    force();
+                }
+            }
+            closeSegment();
+        } catch (IOException | RuntimeException e) {
+            // stop journaling rather than hold up writes (they are still made)
+            failed = true;
+            queue.clear();
+            System.err.println("Change journal stopped, later changes are not recorded: " + e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * helper method to append an entry to the current segment, starting a new
+     * segment if it does not fit
+     *
+     * @param entry the entry
+     * @throws IOException if the segment cannot be written
+     */
+    private void append(Entry entry) throws IOException {
+        // encode the entry (growing the reusable buffer if it is too small)
+        while (true) {
+            try {
+                scratch.clear();
+                encode(scratch, entry);
+                scratch.flip();
+                break;
+            } catch (BufferOverflowException e) {
+                scratch = ByteBuffer.allocate(scratch.capacity() * 2);
+            }
+        }
+
+        int length = scratch.remaining();
+        if (buffer == null || buffer.remaining() < 4 + length) {
+            roll(4 + length);
+        }
+
+        // write the entry, then its length (which makes it visible to readers)
+        int start = buffer.position();
+        buffer.position(start + 4);
+        buffer.put(scratch);
+        buffer.putInt(start, length);
+    }
+
+    /**
+     * helper method to close the current segment and start the next one
+     *
+     * @param minimum the number of bytes the new segment must hold
+     * @throws IOException if the segment cannot be created
+     */
+    private void roll(int minimum) throws IOException {
+        closeSegment();
+        segmentNumber++;
+        Path file = directory.resolve(String.format("%s-%05d%s", series, segmentNumber, SEGMENT_SUFFIX));
+        channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        // mapping the file extends it to the segment size (filled with zeros,
+        // which read as the end of the segment)
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(segmentSize, minimum));
+        forcedTo = 0;
+    }
+
+    /**
+     * helper method to force the entries written since the last force to disk
+     */
+    private void force() {
+        if (buffer != null && buffer.position() > forcedTo) {
+            buffer.force(forcedTo, buffer.position() - forcedTo);
+            forcedTo = buffer.position();
+        }
+        lastForce = System.currentTimeMillis();
+    }
+
+    /**
+     * helper method to force and close the current segment, cutting the file
+     * to the bytes written
+     *
+     * @throws IOException if the segment cannot be closed
+     */
+    private void closeSegment() throws IOException {
+        if (channel == null) {
+            return;
+        }
+        force();
+        try {
+            channel.truncate(buffer.position());
+        } catch (IOException e) {
+            // some platforms cannot shorten a mapped file; the unused (zero)
+            // tail then reads as the end of the segment
+        }
+        channel.close();
+        channel = null;
+        buffer = null;
+    }
+
+    // reading the journal
+
+    /**
+     * method to read the latest journal entries that match a filter, from
+     * every segment in the directory, in time order
+     *
+     * @param directory the directory of the segments
+     * @param filter    the entries to keep
+     * @param limit     the maximum number of entries (the latest are kept, so
+     *                  memory use is bounded however long the journal is)
+     * @return the matching entries
+     * @throws IOException if a segment cannot be read
+     */
+    static List<Entry> read(Path directory, Predicate<Entry> filter, int limit) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return entries;
+        }
+
+        List<Path> segments;
+        try (Stream<Path> files = Files.list(directory)) {
+            segments = files.filter(file -> {
+                String name = file.getFileName().toString();
+                return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+            }).sorted().toList();
+        }
+
+        for (Path segment : segments) {
+            try (FileChannel file = FileChannel.open(segment, StandardOpenOption.READ)) {
+                MappedByteBuffer mapped = file.map(FileChannel.MapMode.READ_ONLY, 0, file.size());
+                // a zero (or impossible) length marks the end of the entries
+                while (mapped.remaining() >= 4) {
+                    int length = mapped.getInt();
+                    if (length <= 0 || length > mapped.remaining()) {
+                        break;
+                    }
+                    ByteBuffer slice = mapped.slice(mapped.position(), length);
+                    mapped.position(mapped.position() + length);
+                    // a damaged entry also marks the end of the segment
+                    Entry entry;
+                    try {
+                        entry = decode(slice);
+                    } catch (BufferUnderflowException e) {
+                        break;
+                    }
+                    if (filter.test(entry)) {
+                        entries.add(entry);
+                        // drop the oldest entries once twice the limit are held
+                        if (limit <= Integer.MAX_VALUE / 2 && entries.size() >= 2 * limit) {
+                            trim(entries, limit);
+                        }
+                    }
+                }
+            }
+        }
+
+        trim(entries, limit);
+        return entries;
+    }
+
+    /**
+     * helper method to sort entries by time and keep the latest
+     *
+     * segments of several processes interleave in time; the sort is stable,
+     * so it keeps each process's own order for entries made in the same
+     * millisecond
+     *
+     * @param entries the entries
+     * @param limit   the number of entries to keep
+     */
+    private static void trim(List<Entry> entries, int limit) {
+        entries.sort(Comparator.comparingLong(entry -> entry.time));
+        if (entries.size() > limit) {
+            entries.subList(0, entries.size() - limit).clear();
+        }
+    }
+
+    /**
+     * method to run the history tool from the command line arguments
+     * e.g. history --project 12 or history --person CUST001 --as-of 2024-06-01
+     *
+     * @param args the command arguments: history [--project N | --person ID]
+     *             [--since date] [--until date] [--as-of date] [--limit N]
+     *             [--format table|tsv|json]
+     * @throws IOException if the journal cannot be read
+     */
+    public static void run(String[] args) throws IOException {
+        String usage = "Usage: PoisePMS history [--project N | --person ID] [--since yyyy-mm-dd[Thh:mm[:ss]]]"
+                + " [--until ...] [--as-of ...] [--limit N] [--format table|tsv|json]";
+        Path directory = configuredDirectory();
+        if (directory == null) {
+            System.out.println("The change journal is turned off (-Dpoisepms.journal=off).");
+            return;
+        }
+
+        // read the options
+        Integer projectNumber = null;
+        String personID = null;
+        long since = Long.MIN_VALUE;
+        long until = Long.MAX_VALUE;
+        Long asOf = null;
+        int limit = DEFAULT_LIMIT;
+        ResultRenderer.Format format = ResultRenderer.Format.configured();
+        try {
+            for (int i = 1; i < args.length; i++) {
+                if (args[i].equals("--project") && i + 1 < args.length) {
+                    projectNumber = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("--person") && i + 1 < args.length) {
+                    personID = args[++i];
+                } else if (args[i].equals("--since") && i + 1 < args.length) {
+                    since = parseTime(args[++i], false);
+                } else if (args[i].equals("--until") && i + 1 < args.length) {
+                    until = parseTime(args[++i], true);
+                } else if (args[i].equals("--as-of") && i + 1 < args.length) {
+                    asOf = parseTime(args[++i], true);
+                } else if (args[i].equals("--limit") && i + 1 < args.length) {
+                    limit = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("--format") && i + 1 < args.length
+                        && ResultRenderer.Format.parse(args[i + 1]) != null) {
+                    format = ResultRenderer.Format.parse(args[++i]);
+                } else {
+                    System.out.println(usage);
+                    return;
+                }
+            }
+        } catch (NumberFormatException | DateTimeParseException e) {
+            System.out.println(usage);
+            return;
+        }
+        if (projectNumber != null && personID != null) {
+            System.out.println(usage);
+            return;
+        }
+
+        if (asOf != null) {
+            if (projectNumber == null && personID == null) {
+                System.out.println("--as-of needs a --project or --person to replay.");
+                return;
+            }
+            replay(directory, projectNumber, personID, asOf);
+        } else {
+            print(directory, projectNumber, personID, since, until, limit, format);
+        }
+    }
+
+    /**
+     * method to display the history of a project, a person (including the
+     * projects linked to them), or every write
+     *
+     * @param directory     the directory of the segments
+     * @param projectNumber the project to show (or null)
+     * @param personID      the person to show (or null)
+     * @param since         the earliest time to show (milliseconds)
+     * @param until         the latest time to show (milliseconds)
+     * @param limit         the maximum number of entries (the latest are shown)
+     * @param format        the output format
+     * @throws IOException if the journal cannot be read
+     */
+    public static void print(Path directory, Integer projectNumber, String personID, long since, long until,
+            int limit, ResultRenderer.Format format) throws IOException {
+        Predicate<Entry> filter = entry -> entry.time >= since && entry.time <= until;
+        if (projectNumber != null) {
+            filter = filter.and(isProject(projectNumber));
+        } else if (personID != null) {
+            filter = filter.and(isPerson(personID).or(linksPerson(personID)));
+        }
+        List<Entry> entries = read(directory, filter, limit);
+        if (entries.isEmpty()) {
+            System.out.println("No recorded changes found.");
+            return;
+        }
+
+        // JSON lines carry the full rows before and after each write
+        if (format == ResultRenderer.Format.JSON) {
+            StringBuilder json = new StringBuilder();
+            for (Entry entry : entries) {
+                Map<String, Object> values = new LinkedHashMap<>();
+                values.put("time", formatTime(entry.time));
+                values.put("actor", entry.actor);
+                values.put("operation", entry.operation);
+                values.put("table", entry.table);
+                values.put("key", entry.key);
+                values.put("before", entry.before);
+                values.put("after", entry.after);
+                ResultRenderer.appendJsonValue(json, values);
+                json.append('\n');
+            }
+            System.out.print(json);
+            System.out.flush();
+            return;
+        }
+
+        // a table or TSV lists what each write changed
+        ResultRenderer renderer = ResultRenderer.toConsole(format, COLUMNS, LABELS);
+        renderer.start("Change History:");
+        for (Entry entry : entries) {
+            renderer.add(new Object[] { formatTime(entry.time), entry.actor, entry.operation, entry.table,
+                    entry.key, describe(entry) });
+        }
+        renderer.endBlock();
+    }
+
+    /**
+     * method to display the state of a project or person at a point in time,
+     * by replaying their journal entries up to it
+     *
+     * @param directory     the directory of the segments
+     * @param projectNumber the project to replay (or null)
+     * @param personID      the person to replay (or null)
+     * @param asOf          the point in time (milliseconds)
+     * @throws IOException if the journal cannot be read
+     */
+    public static void replay(Path directory, Integer projectNumber, String personID, long asOf)
+            throws IOException {
+        List<Entry> entries = read(directory, (projectNumber != null ? isProject(projectNumber)
+                : isPerson(personID)).and(entry -> entry.time <= asOf), Integer.MAX_VALUE);
+        if (entries.isEmpty()) {
+            System.out.println("No recorded changes found up to " + formatTime(asOf) + ".");
+            return;
+        }
+
+        // the last entry of each row gives its state (a person ID may be used
+        // in more than one table)
+        Map<String, Entry> last = new LinkedHashMap<>();
+        for (Entry entry : entries) {
+            last.put(entry.table + ":" + entry.key, entry);
+        }
+        for (Entry entry : last.values()) {
+            System.out.println(entry.table + " " + entry.key + " as of " + formatTime(asOf) + " (last "
+                    + entry.operation + " at " + formatTime(entry.time) + " by " + entry.actor + "):");
+            if (entry.after == null) {
+                System.out.println("  deleted");
+            } else {
+                for (Map.Entry<String, String> column : entry.after.entrySet()) {
+                    System.out.println("  " + column.getKey() + ": " + column.getValue());
+                }
+            }
+        }
+    }
+
+    // helpers
+
+    /**
+     * helper method to match the entries of a project
+     *
+     * @param projectNumber the project number
+     * @return the filter
+     */
+    private static Predicate<Entry> isProject(int projectNumber) {
+        String key = Integer.toString(projectNumber);
+        return entry -> entry.table.equals("Projects") && entry.key.equals(key);
+    }
+
+    /**
+     * helper method to match the entries of a person (in any person table)
+     *
+     * @param id the person's ID
+     * @return the filter
+     */
+    private static Predicate<Entry> isPerson(String id) {
+        return entry -> !entry.table.equals("Projects") && entry.key.equals(id);
+    }
+
+    /**
+     * helper method to match the project entries that link to a person before
+     * or after the write
+     *
+     * @param id the person's ID
+     * @return the filter
+     */
+    private static Predicate<Entry> linksPerson(String id) {
+        return entry -> entry.table.equals("Projects") && (links(entry.before, id) || links(entry.after, id));
+    }
+
+    /**
+     * helper method to check if a project's values link to a person
+     *
+     * @param values the project's values (or null)
+     * @param id     the person's ID
+     * @return true if the project links to the person
+     */
+    private static boolean links(Map<String, String> values, String id) {
+        if (values == null) {
+            return false;
+        }
+        for (PersonTable personTable : PersonTable.values()) {
+            if (id.equals(values.get(personTable.getIdColumn()))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * helper method to describe what a write changed
+     *
+     * @param entry the entry
+     * @return the changed columns with their old and new values
+     */
+    private static String describe(Entry entry) {
+        if (entry.before == null) {
+            return "added";
+        }
+        if (entry.after == null) {
+            return "deleted";
+        }
+        StringBuilder changes = new StringBuilder();
+        for (Map.Entry<String, String> column : entry.after.entrySet()) {
+            String before = entry.before.get(column.getKey());
+            if (!Objects.equals(before, column.getValue())) {
+                changes.append(changes.length() > 0 ? "; " : "").append(column.getKey()).append(": ")
+                        .append(before).append(" -> ").append(column.getValue());
+            }
+        }
+        return changes.length() > 0 ? changes.toString() : "no changes";
+    }
+
+    /**
+     * helper method to parse a date or date and time given on the command line
+     * (in the local time zone)
+     *
+     * @param text  the date (yyyy-mm-dd) or date and time (yyyy-mm-ddThh:mm[:ss])
+     * @param toEnd true to take a date alone as the end of that day
+     * @return the time in milliseconds since the epoch
+     * @throws DateTimeParseException if the text is not a date or date and time
+     */
+    private static long parseTime(String text, boolean toEnd) {
+        LocalDateTime time = text.contains("T") ? LocalDateTime.parse(text)
+                : toEnd ? LocalDate.parse(text).plusDays(1).atStartOfDay().minusNanos(1_000_000)
+                        : LocalDate.parse(text).atStartOfDay();
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    /**
+     * helper method to display a time in the local time zone
+     *
+     * @param millis the time in milliseconds since the epoch
+     * @return the time, e.g. 2024-06-01 14:03:27.125
+     */
+    private static String formatTime(long millis) {
+        return TIME_FORMAT.format(Instant.ofEpochMilli(millis).atZone(ZoneId.systemDefault()));
+    }
+
+    /**
+     * helper method to format an amount with two decimal places
+     *
+     * @param amount the amount
+     * @return the amount, e.g. 1582000.10
+     */
+    private static String money(double amount) {
+        return BigDecimal.valueOf(amount).setScale(2, RoundingMode.HALF_UP).toPlainString();
+    }
+
+    /**
+     * helper method to encode an entry
+     *
+     * @param out   the buffer to write to
+     * @param entry the entry
+     * @throws BufferOverflowException if the buffer is too small
+     */
+    private static void encode(ByteBuffer out, Entry entry) {
+        out.putLong(entry.time);
+        putString(out, entry.actor);
+        putString(out, entry.operation);
+        putString(out, entry.table);
+        putString(out, entry.key);
+        putImage(out, entry.before);
+
+        // after an update only the changed columns are stored (the rest are
+        // taken from the row before when the entry is read)
+        if (entry.before != null && entry.after != null) {
+            out.put((byte) 1);
+            Map<String, String> changed = new LinkedHashMap<>();
+            for (Map.Entry<String, String> column : entry.after.entrySet()) {
+                if (!Objects.equals(entry.before.get(column.getKey()), column.getValue())) {
+                    changed.put(column.getKey(), column.getValue());
+                }
+            }
+            putImage(out, changed);
+        } else {
+            out.put((byte) 0);
+            putImage(out, entry.after);
+        }
+    }
+
+    /**
+     * helper method to decode an entry
+     *
+     * @param in the buffer holding the entry
+     * @return the entry
+     * @throws BufferUnderflowException if the entry is damaged (shorter than
+     *                                  its contents say)
+     */
+    private static Entry decode(ByteBuffer in) {
+        long time = in.getLong();
+        String actor = getString(in);
+        String operation = getString(in);
+        String table = getString(in);
+        String key = getString(in);
+        Map<String, String> before = getImage(in);
+        boolean changesOnly = in.get() == 1;
+        Map<String, String> after = getImage(in);
+        if (changesOnly) {
+            Map<String, String> changed = after;
+            after = new LinkedHashMap<>(before);
+            after.putAll(changed);
+            after = Collections.unmodifiableMap(after);
+        }
+        return new Entry(time, actor, operation, table, key, before, after);
+    }
+
+    /**
+     * helper method to encode a row image as its number of columns followed
+     * by each column name and value (-1 for no image)
+     *
+     * @param out    the buffer to write to
+     * @param values the values by column, or null
+     */
+    private static void putImage(ByteBuffer out, Map<String, String> values) {
+        if (values == null) {
+            out.putInt(-1);
+            return;
+        }
+        out.putInt(values.size());
+        for (Map.Entry<String, String> value : values.entrySet()) {
+            putString(out, value.getKey());
+            putString(out, value.getValue());
+        }
+    }
+
+    /**
+     * helper method to decode a row image written by putImage()
+     *
+     * @param in the buffer positioned on the image
+     * @return the values by column (read-only), or null if there was no image
+     * @throws BufferUnderflowException if the image is damaged
+     */
+    private static Map<String, String> getImage(ByteBuffer in) {
+        int size = in.getInt();
+        if (size < 0) {
+            return null;
+        }
+        Map<String, String> values = new LinkedHashMap<>();
+        for (int i = 0; i < size; i++) {
+            values.put(getString(in), getString(in));
+        }
+        return Collections.unmodifiableMap(values);
+    }
+
+    /**
+     * helper method to encode a string as its UTF-8 length followed by its
+     * bytes (-1 for null)
+     *
+     * @param out   the buffer to write to
+     * @param value the string, or null
+     */
+    private static void putString(ByteBuffer out, String value) {
+        if (value == null) {
+            out.putInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.putInt(bytes.length);
+        out.put(bytes);
+    }
+
+    /**
+     * helper method to decode a string written by putString()
+     *
+     * @param in the buffer positioned on the string
+     * @return the string, or null
+     * @throws BufferUnderflowException if the string is damaged (its length
+     *                                  is more than the bytes left)
+     */
+    private static String getString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        if (length > in.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
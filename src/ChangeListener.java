@@ -0,0 +1,60 @@
+
+// import Java packages
+import java.sql.SQLException;
+
+/**
+ * interface for components that keep in-memory data derived from the
+ * database (e.g. the project search index) and need to hear about writes
+ *
+ * listeners are registered with ChangeNotifier and called after each write
+ * has been committed
+ */
+public interface ChangeListener {
+
+    /**
+     * method called after a project has been added or its details changed
+     *
+     * @param pool          the connection pool for executing queries
+     * @param projectNumber the number of the project that changed
+     * @throws SQLException if a database access error occurs
+     */
+    void projectChanged(ConnectionPool pool, int projectNumber) throws SQLException;
+
+    /**
+     * method called after a project has been deleted
+     *
+     * @param projectNumber the number of the deleted project
+     */
+    void projectDeleted(int projectNumber);
+
+    /**
+     * method called after a project has been finalised (only its status and
+     * completion date changed)
+     *
+     * @param projectNumber the number of the finalised project
+     */
+    void projectFinalised(int projectNumber);
+
+    /**
+     * method called after a person (architect, contractor or customer) has
+     * been added, changed or deleted
+     *
+     * @param pool   the connection pool for executing queries
+     * @param column the Projects column that links to the person, e.g.
+     *               customer_id
+     * @param id     the ID of the person
+     * @throws SQLException if a database access error occurs
+     */
+    void personChanged(ConnectionPool pool, String column, String id) throws SQLException;
+
+    /**
+     * method called after a person linked to no remaining project has been
+     * deleted (nothing else in the database refers to them, so nothing needs
+     * to be read again)
+     *
+     * @param column the Projects column that linked to the person, e.g.
+     *               customer_id
+     * @param id     the ID of the deleted person
+     */
+    void personDeleted(String column, String id);
+}
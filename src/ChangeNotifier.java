@@ -0,0 +1,125 @@
+
+// import Java packages
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * class for passing notifications of database writes on to the registered
+ * ChangeListener objects
+ *
+ * notifications are sent after the write has been committed, so they are
+ * best-effort: a listener that fails (e.g. a pool timeout while the search
+ * index re-reads a project) is reported on standard error and the other
+ * listeners are still notified, but the write is never reported as failed
+ */
+public class ChangeNotifier {
+
+    /**
+     * listeners to notify (registered once at startup, read on every write)
+     */
+    private static final List<ChangeListener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * interface for one notification sent to a listener
+     */
+    private interface Notification {
+
+        /**
+         * method to send the notification
+         *
+         * @param listener the listener to notify
+         * @throws SQLException if the listener cannot read the change
+         */
+        void send(ChangeListener listener) throws SQLException;
+    }
+
+    /**
+     * method to register a listener for database writes
+     *
+     * @param listener the listener to add
+     */
+    public static void register(ChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * method to remove a registered listener
+     *
+     * @param listener the listener to remove
+     */
+    public static void unregister(ChangeListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * method to notify listeners that a project was added or changed
+     *
+     * @param pool          the connection pool for executing queries
+     * @param projectNumber the number of the project that changed
+     */
+    public static void projectChanged(ConnectionPool pool, int projectNumber) {
+        notifyListeners("Project Number " + projectNumber + " changed",
+                listener -> listener.projectChanged(pool, projectNumber));
+    }
+
+    /**
+     * method to notify listeners that a project was deleted
+     *
+     * @param projectNumber the number of the deleted project
+     */
+    public static void projectDeleted(int projectNumber) {
+        notifyListeners("Project Number " + projectNumber + " deleted",
+                listener -> listener.projectDeleted(projectNumber));
+    }
+
+    /**
+     * method to notify listeners that a project was finalised
+     *
+     * @param projectNumber the number of the finalised project
+     */
+    public static void projectFinalised(int projectNumber) {
+        notifyListeners("Project Number " + projectNumber + " finalised",
+                listener -> listener.projectFinalised(projectNumber));
+    }
+
+    /**
+     * method to notify listeners that a person was added, changed or deleted
+     *
+     * @param pool   the connection pool for executing queries
+     * @param column the Projects column that links to the person
+     * @param id     the ID of the person
+     */
+    public static void personChanged(ConnectionPool pool, String column, String id) {
+        notifyListeners(column + " " + id + " changed", listener -> listener.personChanged(pool, column, id));
+    }
+
+    /**
+     * method to notify listeners that a person linked to no remaining project
+     * was deleted
+     *
+     * @param column the Projects column that linked to the person
+     * @param id     the ID of the deleted person
+     */
+    public static void personDeleted(String column, String id) {
+        notifyListeners(column + " " + id + " deleted", listener -> listener.personDeleted(column, id));
+    }
+
+    /**
+     * helper method to send a notification to every listener, reporting (but
+     * not passing on) a listener's failure, as the write is already committed
+     *
+     * @param change       a description of the change, for the report
+     * @param notification the notification to send
+     */
+    private static void notifyListeners(String change, Notification notification) {
+        for (ChangeListener listener : listeners) {
+            try {
+                notification.send(listener);
+            } catch (SQLException | RuntimeException e) {
+                System.err.println(listener.getClass().getSimpleName() + " missed the change (" + change
+                        + "), so it may be out of date until the programme restarts: " + e.getMessage());
+            }
+        }
+    }
+}
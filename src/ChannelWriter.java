@@ -0,0 +1,266 @@
+
+// import Java packages
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * class for writing text and binary values to a file through a large reusable
+ * buffer and a FileChannel
+ *
+ * strings are encoded to UTF-8 directly into the buffer, so writing a value
+ * does not create intermediate byte arrays
+ */
+public class ChannelWriter implements AutoCloseable {
+
+    /**
+     * default buffer size in bytes
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 256 * 1024;
+
+    // file being written
+    private final FileChannel channel;
+
+    // buffer holding bytes not yet written to the channel
+    private final ByteBuffer buffer;
+
+    // number of bytes written so far (including bytes still buffered)
+    private long bytesWritten;
+
+    /**
+     * constructor to open (or replace) a file for writing
+     *
+     * @param file       the file to write
+     * @param bufferSize the size of the write buffer in bytes
+     * @throws IOException if the file cannot be opened
+     */
+    public ChannelWriter(Path file, int bufferSize) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        this.buffer = ByteBuffer.allocateDirect(bufferSize);
+    }
+
+    /**
+     * method to write a single byte
+     *
+     * @param value the byte to write
+     * @throws IOException if the file cannot be written
+     */
+    public void writeByte(int value) throws IOException {
+        ensureSpace(1);
+        buffer.put((byte) value);
+        bytesWritten++;
+    }
+
+    /**
+     * method to write a 32-bit integer (big-endian)
+     *
+     * @param value the integer to write
+     * @throws IOException if the file cannot be written
+     */
+    public void writeInt(int value) throws IOException {
+        ensureSpace(4);
+        buffer.putInt(value);
+        bytesWritten += 4;
+    }
+
+    /**
+     * method to write a 64-bit integer (big-endian)
+     *
+     * @param value the integer to write
+     * @throws IOException if the file cannot be written
+     */
+    public void writeLong(long value) throws IOException {
+        ensureSpace(8);
+        buffer.putLong(value);
+        bytesWritten += 8;
+    }
+
+    /**
+     * method to write a non-negative integer in as few bytes as possible
+     * (7 bits per byte, high bit set while more bytes follow)
+     *
+     * @param value the integer to write
+     * @throws IOException if the file cannot be written
+     */
+    public void writeVarInt(int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        writeByte(value);
+    }
+
+    /**
+     * method to write a signed integer in as few bytes as possible
+     * (zig-zag encoded so small negative numbers stay small)
+     *
+     * @param value the integer to write
+     * @throws IOException if the file cannot be written
+     */
+    public void writeVarLong(long value) throws IOException {
+        long zigZag = (value << 1) ^ (value >> 63);
+        while ((zigZag & ~0x7FL) != 0) {
+            writeByte((int) ((zigZag & 0x7F) | 0x80));
+            zigZag >>>= 7;
+        }
+        writeByte((int) zigZag);
+    }
+
+    /**
+     * method to write text encoded as UTF-8
+     *
+     * @param text the text to write
+     * @throws IOException if the file cannot be written
+     */
+    public void writeText(CharSequence text) throws IOException {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+
+            // ASCII characters take a single byte
+            if (c < 0x80) {
+                if (!buffer.hasRemaining()) {
+                    flushBuffer();
+                }
+                buffer.put((byte) c);
+                bytesWritten++;
+            } else if (Character.isHighSurrogate(c) && i + 1 < text.length()
+                    && Character.isLowSurrogate(text.charAt(i + 1))) {
+                // characters outside the basic plane take four bytes
+                writeCodePoint(Character.toCodePoint(c, text.charAt(++i)));
+            } else {
+                writeCodePoint(c);
+            }
+        }
+    }
+
+    /**
+     * method to write text as its UTF-8 byte length followed by the bytes
+     *
+     * @param text the text to write
+     * @throws IOException if the file cannot be written
+     */
+    public void writeLengthPrefixedText(String text) throws IOException {
+        writeVarInt(utf8Length(text));
+        writeText(text);
+    }
+
+    /**
+     * method to get the number of bytes written so far
+     *
+     * @return the number of bytes written
+     */
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * method to write any buffered bytes to the file
+     *
+     * @throws IOException if the file cannot be written
+     */
+    public void flush() throws IOException {
+        flushBuffer();
+    }
+
+    /**
+     * method to flush the buffer and close the file
+     *
+     * @throws IOException if the file cannot be written
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flushBuffer();
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * helper method to encode a single character outside the ASCII range
+     *
+     * @param codePoint the Unicode code point to write
+     * @throws IOException if the file cannot be written
+     */
+    private void writeCodePoint(int codePoint) throws IOException {
+        if (codePoint < 0x800) {
+            ensureSpace(2);
+            buffer.put((byte) (0xC0 | (codePoint >> 6)));
+            buffer.put((byte) (0x80 | (codePoint & 0x3F)));
+            bytesWritten += 2;
+        } else if (codePoint < 0x10000) {
+            // unpaired surrogates are replaced with '?' as in String.getBytes()
+            if (codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE) {
+                writeByte('?');
+                return;
+            }
+            ensureSpace(3);
+            buffer.put((byte) (0xE0 | (codePoint >> 12)));
+            buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+            buffer.put((byte) (0x80 | (codePoint & 0x3F)));
+            bytesWritten += 3;
+        } else {
+            ensureSpace(4);
+            buffer.put((byte) (0xF0 | (codePoint >> 18)));
+            buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+            buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+            buffer.put((byte) (0x80 | (codePoint & 0x3F)));
+            bytesWritten += 4;
+        }
+    }
+
+    /**
+     * helper method to count the UTF-8 bytes needed for some text
+     *
+     * @param text the text to measure
+     * @return the encoded length in bytes
+     */
+    static int utf8Length(String text) {
+        int length = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < text.length()
+                    && Character.isLowSurrogate(text.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                length++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * helper method to make room in the buffer
+     *
+     * @param bytes the number of bytes about to be written
+     * @throws IOException if the file cannot be written
+     */
+    private void ensureSpace(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            flushBuffer();
+        }
+    }
+
+    /**
+     * helper method to write the buffer contents to the channel
+     *
+     * @throws IOException if the file cannot be written
+     */
+    private void flushBuffer() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,330 @@
+
+// import Java packages
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * class for managing a bounded pool of connections to the PoisePMS database
+ *
+ * connections are opened lazily up to the maximum pool size and kept as
+ * PooledConnection.Entry objects, each with its own cache of prepared
+ * statements; every borrow hands one out in a new PooledConnection, so a
+ * stale handle cannot return a connection another borrower is using
+ *
+ * a connection that has dropped is discarded and replaced on the next borrow,
+ * so a single lost connection no longer ends the whole session
+ */
+public class ConnectionPool implements AutoCloseable {
+
+    /**
+     * number of seconds allowed for a connection validity check
+     */
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+
+    // database connection details
+    private final String url;
+    private final String username;
+    private final String password;
+
+    // maximum number of open connections and prepared statements per connection
+    private final int maxSize;
+    private final int statementCacheSize;
+
+    // maximum time to wait for a free connection (milliseconds)
+    private final long borrowTimeoutMillis;
+
+    // connections currently available for borrowing
+    private final ArrayBlockingQueue<PooledConnection.Entry> idleConnections;
+
+    // number of connections opened and not yet discarded
+    private final AtomicInteger openCount = new AtomicInteger();
+    // number of connections currently borrowed
+    private final AtomicInteger activeCount = new AtomicInteger();
+
+    // wait time metrics
+    private final AtomicLong borrowCount = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    // prepared statement cache metrics (shared by all pooled connections)
+    private final AtomicLong statementCacheHits = new AtomicLong();
+    private final AtomicLong statementCacheMisses = new AtomicLong();
+
+    // set once the pool has been closed
+    private volatile boolean closed;
+
+    /**
+     * constructor to create a connection pool
+     *
+     * @param url                 the JDBC url of the database
+     * @param username            the database username
+     * @param password            the database password
+     * @param maxSize             the maximum number of open connections
+     * @param statementCacheSize  the maximum number of prepared statements cached
+     *                            per connection
+     * @param borrowTimeoutMillis the maximum time to wait for a free connection
+     */
+    public ConnectionPool(String url, String username, String password, int maxSize, int statementCacheSize,
+            long borrowTimeoutMillis) {
+        // check that the pool can hold at least one connection
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Connection pool size must be at least 1.");
+        }
+
+        this.url = url;
+        this.username = username;
+        this.password = password;
+        this.maxSize = maxSize;
+        this.statementCacheSize = statementCacheSize;
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+        this.idleConnections = new ArrayBlockingQueue<>(maxSize);
+    }
+
+    /**
+     * method to borrow a connection from the pool
+     *
+     * an idle connection is reused if one is available, otherwise a new one is
+     * opened while the pool is below its maximum size, otherwise the caller waits
+     * for a connection to be released
+     *
+     * @return a pooled connection that must be closed to return it to the pool
+     * @throws SQLException if no connection could be obtained
+     */
+    public PooledConnection borrow() throws SQLException {
+        // check if pool is still open
+        if (closed) {
+            throw new SQLException("Connection pool has been closed.");
+        }
+
+        // record when the caller started waiting
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(borrowTimeoutMillis);
+        PooledConnection.Entry pooledConnection = null;
+
+        // repeat until a usable connection is found
+        while (pooledConnection == null) {
+            // reuse an idle connection if one is available
+            pooledConnection = idleConnections.poll();
+
+            // open a new connection if none are idle and the pool is not full
+            if (pooledConnection == null && reserveSlot()) {
+                try {
+                    pooledConnection = open();
+                } catch (SQLException e) {
+                    // give the reserved slot back
+                    openCount.decrementAndGet();
+                    throw e;
+                }
+            }
+
+            // otherwise wait for a connection to be released
+            if (pooledConnection == null) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    throw new SQLException("Timed out after " + borrowTimeoutMillis
+                            + " ms waiting for a database connection.");
+                }
+                try {
+                    pooledConnection = idleConnections.poll(remaining, TimeUnit.NANOSECONDS);
+                } catch (InterruptedException e) {
+                    // restore interrupt flag
+                    Thread.currentThread().interrupt();
+                    throw new SQLException("Interrupted while waiting for a database connection.", e);
+                }
+            }
+
+            // discard connections that have dropped and try again
+            if (pooledConnection != null && !isUsable(pooledConnection)) {
+                discard(pooledConnection);
+                pooledConnection = null;
+            }
+        }
+
+        // record wait time metrics
+        long waited = System.nanoTime() - start;
+        borrowCount.incrementAndGet();
+        totalWaitNanos.addAndGet(waited);
+        maxWaitNanos.accumulateAndGet(waited, Math::max);
+
+        // mark connection as active
+        activeCount.incrementAndGet();
+        return new PooledConnection(this, pooledConnection);
+    }
+
+    /**
+     * method to return a borrowed connection to the pool
+     * (called by PooledConnection.close())
+     *
+     * @param pooledConnection the connection being returned
+     * @param reusable         whether the connection can be handed out again
+     */
+    void release(PooledConnection.Entry pooledConnection, boolean reusable) {
+        // mark connection as no longer active
+        activeCount.decrementAndGet();
+
+        // close the connection instead of keeping it if it failed or the pool has
+        // shut down
+        if (!reusable || closed || !idleConnections.offer(pooledConnection)) {
+            discard(pooledConnection);
+        }
+    }
+
+    /**
+     * method to close a connection and free its slot in the pool
+     *
+     * @param pooledConnection the connection to discard
+     */
+    void discard(PooledConnection.Entry pooledConnection) {
+        openCount.decrementAndGet();
+        pooledConnection.closeQuietly();
+    }
+
+    /**
+     * method to record a prepared statement cache lookup
+     * (called by PooledConnection.prepare())
+     *
+     * @param hit whether the statement was found in the cache
+     */
+    void recordStatementLookup(boolean hit) {
+        if (hit) {
+            statementCacheHits.incrementAndGet();
+        } else {
+            statementCacheMisses.incrementAndGet();
+        }
+    }
+
+    /**
+     * helper method to reserve a slot for a new connection
+     *
+     * @return true if the pool was below its maximum size
+     */
+    private boolean reserveSlot() {
+        // loop until the count is updated or the pool is full
+        while (true) {
+            int current = openCount.get();
+            if (current >= maxSize) {
+                return false;
+            }
+            if (openCount.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * helper method to open a new database connection
+     *
+     * @return the new pool entry
+     * @throws SQLException if the connection could not be opened
+     */
+    private PooledConnection.Entry open() throws SQLException {
+        Connection connection = DriverManager.getConnection(url, username, password);
+        return new PooledConnection.Entry(connection, statementCacheSize);
+    }
+
+    /**
+     * helper method to check whether a connection can still be used
+     *
+     * @param pooledConnection the connection to check
+     * @return true if the connection is open and valid
+     */
+    private boolean isUsable(PooledConnection.Entry pooledConnection) {
+        try {
+            return pooledConnection.getConnection().isValid(VALIDATION_TIMEOUT_SECONDS);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    /**
+     * method to get the number of connections currently borrowed
+     *
+     * @return the number of active connections
+     */
+    public int getActiveCount() {
+        return activeCount.get();
+    }
+
+    /**
+     * method to get the number of connections waiting to be borrowed
+     *
+     * @return the number of idle connections
+     */
+    public int getIdleCount() {
+        return idleConnections.size();
+    }
+
+    /**
+     * method to get the maximum number of connections in the pool
+     *
+     * @return the maximum pool size
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * method to get the average time spent waiting for a connection
+     *
+     * @return the average wait time in milliseconds
+     */
+    public double getAverageWaitMillis() {
+        long count = borrowCount.get();
+        return count == 0 ? 0 : totalWaitNanos.get() / (count * 1_000_000.0);
+    }
+
+    /**
+     * method to get the longest time spent waiting for a connection
+     *
+     * @return the maximum wait time in milliseconds
+     */
+    public double getMaxWaitMillis() {
+        return maxWaitNanos.get() / 1_000_000.0;
+    }
+
+    /**
+     * method to get the share of prepared statement lookups served from cache
+     *
+     * @return the statement cache hit rate between 0 and 1
+     */
+    public double getStatementCacheHitRate() {
+        long hits = statementCacheHits.get();
+        long total = hits + statementCacheMisses.get();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    /**
+     * method to display the pool metrics
+     */
+    public void printMetrics() {
+        System.out.println("Connection Pool Metrics:");
+        System.out.println("Active Connections: " + getActiveCount());
+        System.out.println("Idle Connections: " + getIdleCount() + " (maximum pool size " + maxSize + ")");
+        System.out.println("Connections Borrowed: " + borrowCount.get());
+        System.out.printf("Average Wait: %.3f ms%n", getAverageWaitMillis());
+        System.out.printf("Maximum Wait: %.3f ms%n", getMaxWaitMillis());
+        System.out.printf("Statement Cache Hit Rate: %.1f%% (%d hits, %d misses)%n",
+                getStatementCacheHitRate() * 100, statementCacheHits.get(), statementCacheMisses.get());
+    }
+
+    /**
+     * method to close every idle connection and stop handing out new ones
+     *
+     * connections still borrowed are closed when they are released
+     */
+    @Override
+    public void close() {
+        closed = true;
+
+        // close all idle connections
+        PooledConnection.Entry pooledConnection;
+        while ((pooledConnection = idleConnections.poll()) != null) {
+            discard(pooledConnection);
+        }
+    }
+}
@@ -0,0 +1,354 @@
+
+// import Java packages
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * class for the dashboard displayed at startup and as a menu option: the
+ * project summary figures, the number of architects, contractors and
+ * customers, and the first projects, incomplete projects and overdue
+ * projects, in one view
+ *
+ * every query runs at once on its own thread (from a small pool no larger
+ * than the connection pool) and pooled connection, so the dashboard takes
+ * about as long as its slowest query rather than the sum of them all; each query is timed so the breakdown can be displayed
+ * under the dashboard
+ */
+public class Dashboard {
+
+    /**
+     * default number of projects listed in each section
+     */
+    public static final int DEFAULT_ROWS = 10;
+
+    /**
+     * number of queries the dashboard runs (summary, one count per person
+     * table, and three project lists)
+     */
+    private static final int QUERY_COUNT = 4 + PersonTable.values().length;
+
+    /**
+     * interface for a query run on its own thread
+     *
+     * @param <T> the type of the result
+     */
+    interface Query<T> {
+
+        /**
+         * method to run the query
+         *
+         * @return the result
+         * @throws SQLException if a database access error occurs
+         */
+        T run() throws SQLException;
+    }
+
+    /**
+     * class for the result of a query and the time it took
+     *
+     * @param <T> the type of the result
+     */
+    static final class Timed<T> {
+
+        // name of the query (for the timing breakdown)
+        final String name;
+
+        // result of the query
+        final T value;
+
+        // time taken in nanoseconds, including the wait for a connection
+        final long nanos;
+
+        /**
+         * constructor to keep a timed result
+         *
+         * @param name  the name of the query
+         * @param value the result
+         * @param nanos the time taken in nanoseconds
+         */
+        Timed(String name, T value, long nanos) {
+            this.name = name;
+            this.value = value;
+            this.nanos = nanos;
+        }
+    }
+
+    // date the overdue projects are overdue at
+    private final LocalDate today;
+
+    // sections of the dashboard
+    private final ProjectSummary.Summary summary;
+    private final long[] people;
+    private final List<Object[]> projects;
+    private final List<Object[]> incomplete;
+    private final List<Object[]> overdue;
+
+    // time of each query, and of the whole load
+    private final List<Timed<?>> timings;
+    private final long totalNanos;
+
+    /**
+     * constructor to keep the loaded sections
+     *
+     * @param today      the current date
+     * @param summary    the project summary figures
+     * @param people     the number of architects, contractors and customers
+     * @param projects   the first projects in project number order
+     * @param incomplete the incomplete projects due first
+     * @param overdue    the overdue projects due first
+     * @param timings    the time of each query
+     * @param totalNanos the time taken to load the whole dashboard
+     */
+    private Dashboard(LocalDate today, ProjectSummary.Summary summary, long[] people, List<Object[]> projects,
+            List<Object[]> incomplete, List<Object[]> overdue, List<Timed<?>> timings, long totalNanos) {
+        this.today = today;
+        this.summary = summary;
+        this.people = people;
+        this.projects = projects;
+        this.incomplete = incomplete;
+        this.overdue = overdue;
+        this.timings = timings;
+        this.totalNanos = totalNanos;
+    }
+
+    /**
+     * method to load the dashboard, running its queries at once
+     *
+     * @param pool  the connection pool for executing queries
+     * @param today the current date (projects due before it are overdue)
+     * @param rows  the number of projects listed in each section
+     * @return the dashboard
+     * @throws SQLException if a database access error occurs
+     */
+    public static Dashboard load(ConnectionPool pool, LocalDate today, int rows) throws SQLException {
+        String columns = String.join(", ", ProjectDetails.PROJECT_COLUMNS);
+        long start = System.nanoTime();
+        ExecutorService executor = newExecutor(Math.min(QUERY_COUNT, pool.getMaxSize()));
+        try {
+            // start every query before waiting for any
+            CompletableFuture<Timed<ProjectSummary.Summary>> summary = start(executor, "summary",
+                    () -> ProjectSummary.read(pool, today));
+            List<CompletableFuture<Timed<Long>>> counts = new ArrayList<>();
+            for (PersonTable personTable : PersonTable.values()) {
+                counts.add(start(executor, personTable.getTable().toLowerCase(),
+                        () -> count(pool, personTable)));
+            }
+            CompletableFuture<Timed<List<Object[]>>> projects = start(executor, "projects",
+                    () -> rows(pool, "SELECT " + columns + " FROM Projects ORDER BY project_number LIMIT ?",
+                            rows));
+            // both lists read the open projects in deadline order from
+            // idx_projects_open_due, stopping after the rows shown
+            CompletableFuture<Timed<List<Object[]>>> incomplete = start(executor, "incomplete",
+                    () -> rows(pool, "SELECT " + columns + " FROM Projects WHERE project_finalised = false "
+                            + "ORDER BY project_deadline LIMIT ?", rows));
+            CompletableFuture<Timed<List<Object[]>>> overdue = start(executor, "overdue",
+                    () -> rows(pool, "SELECT " + columns + " FROM Projects WHERE project_finalised = false "
+                            + "AND project_deadline < ? ORDER BY project_deadline LIMIT ?", today, rows));
+
+            // collect the results (in display order) and their times
+            List<Timed<?>> timings = new ArrayList<>();
+            Timed<ProjectSummary.Summary> summaryResult = await(summary);
+            timings.add(summaryResult);
+            long[] people = new long[counts.size()];
+            for (int i = 0; i < people.length; i++) {
+                Timed<Long> count = await(counts.get(i));
+                people[i] = count.value;
+                timings.add(count);
+            }
+            Timed<List<Object[]>> projectsResult = await(projects);
+            Timed<List<Object[]>> incompleteResult = await(incomplete);
+            Timed<List<Object[]>> overdueResult = await(overdue);
+            timings.add(projectsResult);
+            timings.add(incompleteResult);
+            timings.add(overdueResult);
+
+            return new Dashboard(today, summaryResult.value, people, projectsResult.value, incompleteResult.value,
+                    overdueResult.value, timings, System.nanoTime() - start);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * method to display the dashboard, followed by the time of each query
+     *
+     * @param format the format of the project lists
+     */
+    public void print(ResultRenderer.Format format) {
+        System.out.println("Dashboard for " + today + ":");
+        ProjectSummary.print(summary);
+        StringBuilder counts = new StringBuilder();
+        PersonTable[] personTables = PersonTable.values();
+        for (int i = 0; i < personTables.length; i++) {
+            counts.append(i > 0 ? ", " : "").append(personTables[i].getTable()).append(": ").append(people[i]);
+        }
+        System.out.println(counts);
+
+        // list the projects in each section
+        ResultRenderer renderer = ResultRenderer.toConsole(format, ProjectDetails.PROJECT_COLUMNS,
+                PoisePMS.PROJECT_LABELS);
+        try {
+            printSection(renderer, projects, "First Projects:", "No projects found.");
+            printSection(renderer, incomplete, "Incomplete Projects (earliest deadline first):",
+                    "No incomplete projects found.");
+            printSection(renderer, overdue, "Overdue Projects (earliest deadline first):",
+                    "No overdue projects found.");
+        } catch (IOException e) {
+            // only possible if standard output itself fails
+            throw new UncheckedIOException(e);
+        }
+
+        // show that the load took about as long as the slowest query
+        long slowest = 0;
+        long sum = 0;
+        for (Timed<?> timing : timings) {
+            slowest = Math.max(slowest, timing.nanos);
+            sum += timing.nanos;
+        }
+        System.out.printf("%nDashboard loaded in %.1f ms (slowest query %.1f ms, all queries %.1f ms together):%n",
+                totalNanos / 1e6, slowest / 1e6, sum / 1e6);
+        for (Timed<?> timing : timings) {
+            System.out.printf("  %-12s %8.1f ms%n", timing.name, timing.nanos / 1e6);
+        }
+    }
+
+    /**
+     * method to start a query on its own thread, timing it
+     *
+     * @param <T>      the type of the result
+     * @param executor the executor to run the query on
+     * @param name     the name of the query
+     * @param query    the query
+     * @return the future timed result
+     */
+    static <T> CompletableFuture<Timed<T>> start(ExecutorService executor, String name, Query<T> query) {
+        return CompletableFuture.supplyAsync(() -> {
+            long start = System.nanoTime();
+            try {
+                T value = query.run();
+                return new Timed<>(name, value, System.nanoTime() - start);
+            } catch (SQLException e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+    /**
+     * method to create a fixed pool of daemon threads for running queries at
+     * once (so an unfinished query never keeps the programme running)
+     *
+     * @param threads the number of threads
+     * @return the executor (shut down by the caller)
+     */
+    static ExecutorService newExecutor(int threads) {
+        return Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "dashboard-query");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * method to wait for a query started by start()
+     *
+     * @param <T>    the type of the result
+     * @param future the future timed result
+     * @return the timed result
+     * @throws SQLException if the query failed with a database access error
+     */
+    static <T> Timed<T> await(CompletableFuture<Timed<T>> future) throws SQLException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof SQLException) {
+                throw (SQLException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * helper method to display one list of projects
+     *
+     * @param renderer the renderer to display the rows with
+     * @param rows     the project rows
+     * @param title    the title of the list
+     * @param empty    the message displayed if the list is empty
+     * @throws IOException if the output cannot be written
+     */
+    private static void printSection(ResultRenderer renderer, List<Object[]> rows, String title, String empty)
+            throws IOException {
+        System.out.println();
+        if (rows.isEmpty()) {
+            System.out.println(empty);
+            return;
+        }
+        renderer.start(title);
+        for (Object[] row : rows) {
+            renderer.add(row);
+        }
+        renderer.endBlock();
+    }
+
+    /**
+     * helper method to count the people in a table
+     *
+     * @param pool        the connection pool for executing queries
+     * @param personTable the table of the people
+     * @return the number of people
+     * @throws SQLException if a database access error occurs
+     */
+    private static long count(ConnectionPool pool, PersonTable personTable) throws SQLException {
+        try (PooledConnection connection = pool.borrow();
+                ResultSet resultSet = connection.prepare("SELECT COUNT(*) FROM " + personTable.getTable())
+                        .executeQuery()) {
+            resultSet.next();
+            return resultSet.getLong(1);
+        }
+    }
+
+    /**
+     * helper method to read the rows of a project query
+     *
+     * @param pool       the connection pool for executing queries
+     * @param sql        the query (columns in display order)
+     * @param parameters the parameter values (dates or numbers)
+     * @return the rows
+     * @throws SQLException if a database access error occurs
+     */
+    private static List<Object[]> rows(ConnectionPool pool, String sql, Object... parameters) throws SQLException {
+        List<Object[]> rows = new ArrayList<>();
+        try (PooledConnection connection = pool.borrow()) {
+            PreparedStatement select = connection.prepare(sql);
+            for (int i = 0; i < parameters.length; i++) {
+                if (parameters[i] instanceof LocalDate) {
+                    select.setDate(i + 1, Date.valueOf((LocalDate) parameters[i]));
+                } else {
+                    select.setObject(i + 1, parameters[i]);
+                }
+            }
+            try (ResultSet resultSet = select.executeQuery()) {
+                int columnCount = resultSet.getMetaData().getColumnCount();
+                while (resultSet.next()) {
+                    Object[] row = new Object[columnCount];
+                    for (int i = 0; i < columnCount; i++) {
+                        row[i] = resultSet.getObject(i + 1);
+                    }
+                    rows.add(row);
+                }
+            }
+        }
+        return rows;
+    }
+}
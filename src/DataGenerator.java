@@ -0,0 +1,577 @@
+
+// import Java packages
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * class for loading synthetic projects and people into the database, so the
+ * programme and its benchmarks can be run at production scale
+ *
+ * the values of each row are worked out from the seed, the table and the row
+ * number alone, so the same seed always produces the same data however many
+ * threads load it and in whatever order their chunks finish; project numbers
+ * are set explicitly (following the highest existing number) for the same
+ * reason
+ *
+ * the data is shaped like real use rather than uniform noise:
+ * - deadlines cluster around the anchor date (usually today), with a long
+ * tail into the future and a smaller share already overdue
+ * - a share of the projects (30% by default) are finalised, mostly those with
+ * earlier deadlines, and are usually paid in full
+ * - fees follow a log-normal distribution (most projects are around R1
+ * million, a few are far larger)
+ * - with --share, people are reused across projects, busy people more often
+ * than others
+ *
+ * rows are written by several threads, each with its own pooled connection,
+ * using JDBC batches committed one chunk at a time
+ */
+public class DataGenerator {
+
+    /**
+     * default seed for the random values
+     */
+    public static final long DEFAULT_SEED = 42;
+
+    /**
+     * default number of rows written per batch (and committed per
+     * transaction)
+     */
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
+    /**
+     * default share of projects that are finalised
+     */
+    public static final double DEFAULT_FINALISED = 0.3;
+
+    /**
+     * default share of project links that reuse a person instead of adding a
+     * new one (architects, contractors and regular customers usually have
+     * several projects)
+     */
+    public static final double DEFAULT_SHARE = 0.5;
+
+    // SQL to insert a project with a given project number
+    private static final String INSERT_PROJECT = "INSERT INTO Projects (project_number, architect_id, contractor_id, customer_id, project_name, building_type, physical_address, erf_number, total_fee, amount_paid, project_deadline, project_finalised, completion_date) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    // random number streams, one per table, so adding a column to one table
+    // does not change the values generated for the others
+    private static final long PROJECT_STREAM = 1;
+    private static final long ARCHITECT_STREAM = 2;
+    private static final long CONTRACTOR_STREAM = 3;
+    private static final long CUSTOMER_STREAM = 4;
+
+    // building types and their relative frequency
+    private static final String[] BUILDING_TYPES = { "House", "Apartment", "Townhouse", "Office", "Warehouse",
+            "Retail", "School", "Clinic" };
+    private static final int[] BUILDING_WEIGHTS = { 40, 20, 12, 10, 6, 6, 3, 3 };
+
+    // values people's names and addresses are made from
+    private static final String[] FIRST_NAMES = { "Thabo", "Sipho", "Lerato", "Naledi", "Johan", "Pieter",
+            "Anele", "Zanele", "Michael", "Sarah", "David", "Emma", "Ayesha", "Rajesh", "Priya", "Mandla",
+            "Karabo", "Lindiwe", "Ruan", "Chloe", "James", "Nomsa", "Tshepo", "Fatima", "Liam", "Olivia",
+            "Kagiso", "Refilwe", "Willem", "Grace", "Themba", "Busisiwe" };
+    private static final String[] SURNAMES = { "Nkosi", "Dlamini", "Botha", "van der Merwe", "Naidoo", "Mokoena",
+            "Smith", "Pillay", "Khumalo", "Ndlovu", "Pretorius", "Jacobs", "Mahlangu", "Venter", "Govender",
+            "Molefe", "Coetzee", "Mthembu", "Williams", "Nel", "Zulu", "du Plessis", "Sithole", "Adams",
+            "Kruger", "Baloyi", "Fourie", "Maseko", "Brown", "Chetty", "Radebe", "Steyn" };
+    private static final String[] STREETS = { "Oak", "Jacaranda", "Protea", "Church", "Main", "Long", "Market",
+            "Beach", "Hill", "Station", "Park", "Mountain", "River", "Willow", "Acacia", "Kloof" };
+    private static final String[] STREET_TYPES = { "Street", "Road", "Avenue", "Lane", "Drive", "Crescent" };
+    private static final String[] CITIES = { "Johannesburg", "Cape Town", "Durban", "Pretoria",
+            "Port Elizabeth", "Bloemfontein", "East London", "Polokwane", "Nelspruit", "Kimberley" };
+    private static final String[] EMAIL_DOMAINS = { "gmail.com", "outlook.com", "yahoo.com", "mweb.co.za" };
+
+    /**
+     * interface for writing one generated row to an insert statement
+     */
+    interface RowWriter {
+
+        /**
+         * method to set the parameters of the insert statement for a row
+         *
+         * @param insert the insert statement
+         * @param row    the zero-based row number
+         * @param delta  the change to the summary figures made by the batch
+         *               (only projects add to it)
+         * @throws SQLException if a database access error occurs
+         */
+        void write(PreparedStatement insert, long row, ProjectSummary.Delta delta) throws SQLException;
+    }
+
+    // settings of this generator
+    private final long seed;
+    private final long projects;
+    private final long firstProjectNumber;
+    private final long people;
+    private final double finalised;
+    private final LocalDate anchor;
+
+    /**
+     * constructor to describe the data to generate
+     *
+     * @param seed               the seed for the random values
+     * @param projects           the number of projects
+     * @param firstProjectNumber the project number of the first project
+     * @param share              the share of project links that reuse a person
+     *                           (0 to 1)
+     * @param finalised          the share of projects that are finalised (0 to 1)
+     * @param anchor             the date deadlines are spread around
+     */
+    public DataGenerator(long seed, long projects, long firstProjectNumber, double share, double finalised,
+            LocalDate anchor) {
+        this.seed = seed;
+        this.projects = projects;
+        this.firstProjectNumber = firstProjectNumber;
+        this.people = Math.max(1, Math.round(projects * (1 - share)));
+        this.finalised = finalised;
+        this.anchor = anchor;
+    }
+
+    /**
+     * method to run the generator from the command line arguments
+     * e.g. generate 1000000 --seed 7 --threads 4
+     *
+     * @param pool the connection pool for executing queries
+     * @param args the command arguments: generate projects [--seed N]
+     *             [--threads N] [--batch N] [--share F] [--finalised F]
+     *             [--anchor yyyy-mm-dd]
+     * @throws SQLException if a database access error occurs
+     */
+    public static void run(ConnectionPool pool, String[] args) throws SQLException {
+        String usage = "Usage: PoisePMS generate <projects> [--seed N] [--threads N] [--batch N] [--share 0-1]"
+                + " [--finalised 0-1] [--anchor yyyy-mm-dd]";
+
+        // check that a number of projects was given
+        if (args.length < 2) {
+            System.out.println(usage);
+            return;
+        }
+
+        // get generator options
+        long projects = Long.parseLong(args[1]);
+        long seed = DEFAULT_SEED;
+        int threads = pool.getMaxSize();
+        int batchSize = DEFAULT_BATCH_SIZE;
+        double share = DEFAULT_SHARE;
+        double finalised = DEFAULT_FINALISED;
+        LocalDate anchor = LocalDate.now();
+        for (int i = 2; i < args.length; i++) {
+            if (args[i].equals("--seed") && i + 1 < args.length) {
+                seed = Long.parseLong(args[++i]);
+            } else if (args[i].equals("--threads") && i + 1 < args.length) {
+                threads = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--batch") && i + 1 < args.length) {
+                batchSize = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--share") && i + 1 < args.length) {
+                share = Double.parseDouble(args[++i]);
+            } else if (args[i].equals("--finalised") && i + 1 < args.length) {
+                finalised = Double.parseDouble(args[++i]);
+            } else if (args[i].equals("--anchor") && i + 1 < args.length) {
+                anchor = LocalDate.parse(args[++i]);
+            } else {
+                System.out.println(usage);
+                return;
+            }
+        }
+
+        // check the options are in range
+        if (projects < 1 || threads < 1 || batchSize < 1 || share < 0 || share >= 1 || finalised < 0
+                || finalised > 1) {
+            System.out.println(usage);
+            return;
+        }
+
+        // number the projects after those already in the database
+        DataGenerator generator = new DataGenerator(seed, projects, maxProjectNumber(pool) + 1, share, finalised,
+                anchor);
+
+        System.out.println("Generating " + projects + " projects and " + generator.people
+                + " people per role (seed " + seed + ", anchor date " + anchor + ", " + threads + " threads).");
+        long start = System.nanoTime();
+        generator.load(pool, threads, batchSize);
+        double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+        long rows = projects + 3 * generator.people;
+        System.out.println("Generation complete: " + rows + " rows in " + String.format("%.2f", seconds) + " s ("
+                + String.format("%.0f", seconds > 0 ? rows / seconds : 0) + " rows/s).");
+    }
+
+    /**
+     * method to write every generated row to the database
+     *
+     * the people are written before the projects, as the Projects table
+     * references the person tables
+     *
+     * @param pool      the connection pool for executing queries
+     * @param threads   the number of threads writing rows
+     * @param batchSize the number of rows written per batch and transaction
+     * @throws SQLException if a database access error occurs
+     */
+    public void load(ConnectionPool pool, int threads, int batchSize) throws SQLException {
+        loadTable(pool, "Architects", insertPerson(PersonTable.ARCHITECTS), people, threads, batchSize,
+                (insert, row, delta) -> writePerson(insert, PersonTable.ARCHITECTS, row));
+        loadTable(pool, "Contractors", insertPerson(PersonTable.CONTRACTORS), people, threads, batchSize,
+                (insert, row, delta) -> writePerson(insert, PersonTable.CONTRACTORS, row));
+        loadTable(pool, "Customers", insertPerson(PersonTable.CUSTOMERS), people, threads, batchSize,
+                (insert, row, delta) -> writePerson(insert, PersonTable.CUSTOMERS, row));
+        loadTable(pool, "Projects", INSERT_PROJECT, projects, threads, batchSize, this::writeProject);
+    }
+
+    /**
+     * helper method to write the rows of one table using several threads
+     *
+     * each thread repeatedly claims the next chunk of row numbers, adds the
+     * rows to a batch and commits it (with the change to the summary figures);
+     * the first error stops every thread and is thrown once they have finished
+     *
+     * @param pool      the connection pool for executing queries
+     * @param table     the table name (for progress messages)
+     * @param sql       the insert statement
+     * @param rows      the number of rows to write
+     * @param threads   the number of threads writing rows
+     * @param batchSize the number of rows written per batch and transaction
+     * @param writer    the writer that sets the values of each row
+     * @throws SQLException if a database access error occurs
+     */
+    private static void loadTable(ConnectionPool pool, String table, String sql, long rows, int threads,
+            int batchSize, RowWriter writer) throws SQLException {
+        // next row to claim, rows written so far and the first error
+        AtomicLong nextRow = new AtomicLong();
+        AtomicLong written = new AtomicLong();
+        AtomicReference<SQLException> failure = new AtomicReference<>();
+
+        // report progress roughly every tenth of the table
+        long reportEvery = Math.max(batchSize, rows / 10);
+        long start = System.nanoTime();
+
+        Runnable worker = () -> {
+            try (PooledConnection connection = pool.borrow()) {
+                // commit each chunk as its own transaction
+                Connection databaseConnection = connection.getConnection();
+                databaseConnection.setAutoCommit(false);
+                PreparedStatement insert = connection.prepare(sql);
+
+                long from;
+                while (failure.get() == null && (from = nextRow.getAndAdd(batchSize)) < rows) {
+                    long to = Math.min(from + batchSize, rows);
+                    ProjectSummary.Delta delta = new ProjectSummary.Delta();
+                    for (long row = from; row < to; row++) {
+                        writer.write(insert, row, delta);
+                        insert.addBatch();
+                    }
+                    insert.executeBatch();
+                    ProjectSummary.apply(connection, delta);
+                    databaseConnection.commit();
+
+                    // display progress when a reporting boundary is crossed
+                    long total = written.addAndGet(to - from);
+                    if (total / reportEvery != (total - (to - from)) / reportEvery) {
+                        printProgress(table, total, rows, start);
+                    }
+                }
+            } catch (SQLException e) {
+                failure.compareAndSet(null, e);
+            }
+        };
+
+        // start the threads and wait for them to finish
+        List<Thread> workers = new ArrayList<>(threads);
+        for (int i = 0; i < threads; i++) {
+            Thread thread = new Thread(worker, "generate-" + table + "-" + i);
+            workers.add(thread);
+            thread.start();
+        }
+        for (Thread thread : workers) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failure.compareAndSet(null, new SQLException("Interrupted while generating " + table + "."));
+            }
+        }
+
+        // report the first error (chunks committed before it are kept)
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+    }
+
+    /**
+     * helper method to set the values of a generated project
+     *
+     * @param insert the project insert statement
+     * @param row    the zero-based project row
+     * @param delta  the change to the summary figures made by the batch
+     * @throws SQLException if a database access error occurs
+     */
+    private void writeProject(PreparedStatement insert, long row, ProjectSummary.Delta delta) throws SQLException {
+        SplittableRandom random = random(PROJECT_STREAM, row);
+
+        // link the project to its people
+        long architect = person(random, row);
+        long contractor = person(random, row);
+        long customer = person(random, row);
+
+        // deadline: finalised projects mostly lie in the past, open projects
+        // mostly in the coming months with a long tail into the future
+        boolean isFinalised = random.nextDouble() < finalised;
+        int offset;
+        if (random.nextDouble() < (isFinalised ? 0.85 : 0.2)) {
+            offset = -(int) (Math.pow(random.nextDouble(), 2) * 730) - 1;
+        } else {
+            offset = (int) (Math.pow(random.nextDouble(), 3) * 1095);
+        }
+        LocalDate deadline = anchor.plusDays(offset);
+
+        // fee: log-normal around R1.2 million, kept within DECIMAL(12, 2)
+        double fee = Math.min(1_200_000 * Math.exp(0.8 * gaussian(random)), 9_999_999_999.99);
+        fee = Math.max(Math.round(fee * 100) / 100.0, 10_000);
+
+        // amount paid: finalised projects are usually paid in full
+        double paid;
+        if (isFinalised && random.nextDouble() < 0.9) {
+            paid = fee;
+        } else {
+            paid = Math.round(fee * random.nextDouble() * 100) / 100.0;
+        }
+
+        // completion date: around the deadline, and never after the anchor date
+        LocalDate completion = null;
+        if (isFinalised) {
+            completion = deadline.plusDays((long) (gaussian(random) * 20));
+            if (completion.isAfter(anchor)) {
+                completion = anchor;
+            }
+        }
+
+        // name the project from the building type and customer surname (as
+        // the programme names projects added without a name)
+        String buildingType = weighted(random, BUILDING_TYPES, BUILDING_WEIGHTS);
+        String surname = SURNAMES[random(CUSTOMER_STREAM, customer).nextInt(SURNAMES.length)];
+
+        insert.setLong(1, firstProjectNumber + row);
+        insert.setString(2, id(PersonTable.ARCHITECTS, architect));
+        insert.setString(3, id(PersonTable.CONTRACTORS, contractor));
+        insert.setString(4, id(PersonTable.CUSTOMERS, customer));
+        insert.setString(5, buildingType + " " + surname);
+        insert.setString(6, buildingType);
+        insert.setString(7, address(random));
+        insert.setString(8, Integer.toString(1 + random.nextInt(99_999)));
+        insert.setDouble(9, fee);
+        insert.setDouble(10, paid);
+        insert.setDate(11, Date.valueOf(deadline));
+        insert.setBoolean(12, isFinalised);
+        if (completion == null) {
+            insert.setNull(13, Types.DATE);
+        } else {
+            insert.setDate(13, Date.valueOf(completion));
+        }
+        delta.add(BigDecimal.valueOf(fee), BigDecimal.valueOf(paid), deadline, isFinalised);
+    }
+
+    /**
+     * helper method to set the values of a generated person
+     *
+     * the surname is drawn first, so writeProject can name a project after its
+     * customer without generating the whole row
+     *
+     * @param insert      the person insert statement
+     * @param personTable the table of the person
+     * @param row         the zero-based person row
+     * @throws SQLException if a database access error occurs
+     */
+    private void writePerson(PreparedStatement insert, PersonTable personTable, long row) throws SQLException {
+        SplittableRandom random = random(stream(personTable), row);
+        String surname = SURNAMES[random.nextInt(SURNAMES.length)];
+        String firstName = FIRST_NAMES[random.nextInt(FIRST_NAMES.length)];
+
+        // email from the name and row, so it is unique
+        String email = (firstName.charAt(0) + surname.replace(" ", "")).toLowerCase() + row + "@"
+                + EMAIL_DOMAINS[random.nextInt(EMAIL_DOMAINS.length)];
+        String tel = "0" + (100_000_000 + random.nextInt(900_000_000));
+
+        // set the values in the order of PersonTable.getColumns()
+        int index = 1;
+        insert.setString(index++, id(personTable, row));
+        if (personTable == PersonTable.CUSTOMERS) {
+            insert.setString(index++, firstName);
+            insert.setString(index++, surname);
+        } else {
+            insert.setString(index++, firstName + " " + surname);
+        }
+        insert.setString(index++, tel);
+        insert.setString(index++, email);
+        insert.setString(index, address(random));
+    }
+
+    /**
+     * helper method to choose the person linked to a project
+     *
+     * without sharing each project has its own person; otherwise people are
+     * chosen with a skew towards the first (busiest) people
+     *
+     * @param random the random values of the project
+     * @param row    the zero-based project row
+     * @return the zero-based person row
+     */
+    private long person(SplittableRandom random, long row) {
+        if (people == projects) {
+            return row;
+        }
+        return Math.min((long) (people * Math.pow(random.nextDouble(), 2)), people - 1);
+    }
+
+    /**
+     * helper method to create the random values for a row
+     *
+     * @param stream the table's random number stream
+     * @param row    the zero-based row
+     * @return a generator that depends only on the seed, stream and row
+     */
+    private SplittableRandom random(long stream, long row) {
+        return new SplittableRandom(mix(seed * 31 + stream) ^ mix(row));
+    }
+
+    /**
+     * helper method to generate the ID of a person
+     *
+     * IDs include the seed so data generated with different seeds does not
+     * collide, e.g. ARCH42-17
+     *
+     * @param personTable the table of the person
+     * @param row         the zero-based person row
+     * @return the person's ID
+     */
+    private String id(PersonTable personTable, long row) {
+        return personTable.getTable().substring(0, 4).toUpperCase() + seed + "-" + row;
+    }
+
+    /**
+     * helper method to get the random number stream of a person table
+     *
+     * @param personTable the table of the person
+     * @return the stream number
+     */
+    private static long stream(PersonTable personTable) {
+        switch (personTable) {
+            case ARCHITECTS:
+                return ARCHITECT_STREAM;
+            case CONTRACTORS:
+                return CONTRACTOR_STREAM;
+            default:
+                return CUSTOMER_STREAM;
+        }
+    }
+
+    /**
+     * helper method to build the insert statement for a person table
+     *
+     * @param personTable the table of the person
+     * @return the insert statement
+     */
+    private static String insertPerson(PersonTable personTable) {
+        String[] columns = personTable.getColumns();
+        return "INSERT INTO " + personTable.getTable() + " (" + String.join(", ", columns) + ") VALUES (?"
+                + ", ?".repeat(columns.length - 1) + ")";
+    }
+
+    /**
+     * helper method to generate a street address (at most 60 characters)
+     *
+     * @param random the random values of the row
+     * @return the address
+     */
+    private static String address(SplittableRandom random) {
+        return (1 + random.nextInt(999)) + " " + STREETS[random.nextInt(STREETS.length)] + " "
+                + STREET_TYPES[random.nextInt(STREET_TYPES.length)] + ", " + CITIES[random.nextInt(CITIES.length)]
+                + ", South Africa";
+    }
+
+    /**
+     * helper method to choose a value with weighted frequencies
+     *
+     * @param random  the random values of the row
+     * @param values  the values to choose from
+     * @param weights the relative frequency of each value
+     * @return the chosen value
+     */
+    private static String weighted(SplittableRandom random, String[] values, int[] weights) {
+        int total = 0;
+        for (int weight : weights) {
+            total += weight;
+        }
+        int pick = random.nextInt(total);
+        for (int i = 0; i < values.length; i++) {
+            pick -= weights[i];
+            if (pick < 0) {
+                return values[i];
+            }
+        }
+        return values[values.length - 1];
+    }
+
+    /**
+     * helper method to draw a normally distributed value (mean 0, standard
+     * deviation 1) using the Box-Muller transform
+     *
+     * @param random the random values of the row
+     * @return the value
+     */
+    private static double gaussian(SplittableRandom random) {
+        return Math.sqrt(-2 * Math.log(1 - random.nextDouble())) * Math.cos(2 * Math.PI * random.nextDouble());
+    }
+
+    /**
+     * helper method to scramble a number into a well-distributed seed
+     * (the SplitMix64 finaliser)
+     *
+     * @param value the number to scramble
+     * @return the scrambled number
+     */
+    private static long mix(long value) {
+        value = (value ^ (value >>> 30)) * 0xBF58476D1CE4E5B9L;
+        value = (value ^ (value >>> 27)) * 0x94D049BB133111EBL;
+        return value ^ (value >>> 31);
+    }
+
+    /**
+     * helper method to get the highest project number in the database
+     *
+     * @param pool the connection pool for executing queries
+     * @return the highest project number, or 0 if there are no projects
+     * @throws SQLException if a database access error occurs
+     */
+    private static long maxProjectNumber(ConnectionPool pool) throws SQLException {
+        try (PooledConnection connection = pool.borrow();
+                ResultSet resultSet = connection.prepare("SELECT COALESCE(MAX(project_number), 0) FROM Projects")
+                        .executeQuery()) {
+            resultSet.next();
+            return resultSet.getLong(1);
+        }
+    }
+
+    /**
+     * helper method to display the progress of a table
+     *
+     * @param table   the table name
+     * @param written the number of rows written so far
+     * @param rows    the number of rows to write
+     * @param start   the start time of the table (nanoseconds)
+     */
+    private static void printProgress(String table, long written, long rows, long start) {
+        double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+        System.out.println(table + ": " + written + " of " + rows + " rows ("
+                + String.format("%.0f", seconds > 0 ? written / seconds : 0) + " rows/s)");
+    }
+}
@@ -0,0 +1,164 @@
+
+// import Java packages
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * class for reloading the project search index and deadline tracker when the
+ * database has been written by someone else (another PoisePMS session, an
+ * import or the data generator), as only this programme's own writes are
+ * passed on to them as they happen
+ *
+ * at a fixed interval (60 seconds by default, or -Dpoisepms.refresh=<seconds>,
+ * 0 to turn it off) it reads a few figures that every write changes: the
+ * number of projects, the highest project number, and the sum of the row
+ * versions of Projects and each people table; if they differ from the
+ * figures read before the last load, both structures are reloaded on the
+ * background thread while searches keep using the old data
+ *
+ * the figures cannot tell this programme's writes from anyone else's, so the
+ * first check after the programme has written also reloads
+ */
+public class DataRefresher implements AutoCloseable {
+
+    /**
+     * default number of seconds between checks
+     */
+    public static final int DEFAULT_INTERVAL_SECONDS = 60;
+
+    /**
+     * SQL query to read the figures every write changes
+     */
+    private static final String SELECT_FIGURES = "SELECT (SELECT COUNT(*) FROM Projects), "
+            + "(SELECT MAX(project_number) FROM Projects), (SELECT SUM(version) FROM Projects), "
+            + "(SELECT COUNT(*) FROM Architects), (SELECT SUM(version) FROM Architects), "
+            + "(SELECT COUNT(*) FROM Contractors), (SELECT SUM(version) FROM Contractors), "
+            + "(SELECT COUNT(*) FROM Customers), (SELECT SUM(version) FROM Customers)";
+
+    // connection pool for executing queries
+    private final ConnectionPool pool;
+
+    // structures reloaded
+    private final ProjectSearchIndex searchIndex;
+    private final DeadlineTracker deadlineTracker;
+
+    // figures read before the structures were last loaded
+    private long[] loaded;
+
+    // thread running the checks (null until started)
+    private ScheduledExecutorService executor;
+
+    /**
+     * constructor to read the figures the first check compares against (call
+     * it before the structures are first loaded, so writes made while they
+     * load are caught)
+     *
+     * @param pool            the connection pool for executing queries
+     * @param searchIndex     the project search index
+     * @param deadlineTracker the deadline tracker
+     * @throws SQLException if a database access error occurs
+     */
+    public DataRefresher(ConnectionPool pool, ProjectSearchIndex searchIndex, DeadlineTracker deadlineTracker)
+            throws SQLException {
+        this.pool = pool;
+        this.searchIndex = searchIndex;
+        this.deadlineTracker = deadlineTracker;
+        this.loaded = figures(pool);
+    }
+
+    /**
+     * method to get the configured number of seconds between checks
+     *
+     * @return the interval in seconds (0 if checks are turned off)
+     */
+    public static int configuredInterval() {
+        String value = System.getProperty("poisepms.refresh");
+        if (value == null) {
+            return DEFAULT_INTERVAL_SECONDS;
+        }
+        int seconds = InputValidation.parseInteger(value);
+        return seconds >= 0 ? seconds : DEFAULT_INTERVAL_SECONDS;
+    }
+
+    /**
+     * method to start checking at the configured interval (does nothing if
+     * checks are turned off)
+     */
+    public void start() {
+        int seconds = configuredInterval();
+        if (seconds == 0) {
+            return;
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "data-refresher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::checkQuietly, seconds, seconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * method to reload the structures if the database has changed since they
+     * were last loaded
+     *
+     * @return true if they were reloaded
+     * @throws SQLException if a database access error occurs
+     */
+    public synchronized boolean check() throws SQLException {
+        long[] now = figures(pool);
+        if (Arrays.equals(now, loaded)) {
+            return false;
+        }
+
+        // writes made from here on are caught by the next check
+        searchIndex.build(pool);
+        deadlineTracker.load(pool);
+        loaded = now;
+        return true;
+    }
+
+    /**
+     * method to stop checking
+     */
+    @Override
+    public void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * helper method to run a scheduled check, reporting a failure on standard
+     * error rather than stopping the checks (the next check tries again)
+     */
+    private void checkQuietly() {
+        try {
+            check();
+        } catch (SQLException | RuntimeException e) {
+            System.err.println("Could not check for changes made by other sessions: " + e.getMessage());
+        }
+    }
+
+    /**
+     * helper method to read the figures every write changes
+     *
+     * @param pool the connection pool for executing queries
+     * @return the figures, in the order of SELECT_FIGURES
+     * @throws SQLException if a database access error occurs
+     */
+    private static long[] figures(ConnectionPool pool) throws SQLException {
+        try (PooledConnection connection = pool.borrow();
+                ResultSet resultSet = connection.prepare(SELECT_FIGURES).executeQuery()) {
+            resultSet.next();
+            long[] figures = new long[resultSet.getMetaData().getColumnCount()];
+            for (int i = 0; i < figures.length; i++) {
+                figures[i] = resultSet.getLong(i + 1);
+            }
+            return figures;
+        }
+    }
+}
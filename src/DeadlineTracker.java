@@ -0,0 +1,340 @@
+
+// import Java packages
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * class for tracking the deadlines of unfinalised projects in memory
+ *
+ * every unfinalised project is kept in a set ordered by deadline (then
+ * project number), so the projects overdue on a given day, or due within the
+ * next few days, are found by locating the boundary dates in O(log n) and
+ * reading the projects between them
+ *
+ * nothing stored depends on the current date: "overdue" is worked out from the
+ * date passed to each query, so the answers stay correct after midnight
+ * without reloading
+ *
+ * the tracker is loaded at startup and kept up to date as a ChangeListener
+ * (and reloaded by DataRefresher after writes made elsewhere); each change is
+ * read and applied under one lock, so a change read later is never
+ * overwritten by one read earlier, and projects changed while a reload reads
+ * every row are read again once it is swapped in
+ */
+public class DeadlineTracker implements ChangeListener {
+
+    /**
+     * number of rows read per round trip while loading
+     */
+    private static final int FETCH_SIZE = 1000;
+
+    // unfinalised projects as (deadline day << 32 | project number), so the set
+    // is ordered by deadline and then by project number
+    private final TreeSet<Long> byDeadline = new TreeSet<>();
+
+    // key of each tracked project, by project number
+    private final HashMap<Integer, Long> keys = new HashMap<>();
+
+    // held while a change is read and applied, so changes are applied in the
+    // order they were read (queries only take the tracker's own lock)
+    private final Object refreshLock = new Object();
+
+    // held for the whole of a load, so only one runs at a time
+    private final Object loadLock = new Object();
+
+    // projects changed while a load reads every row (null when not loading;
+    // guarded by refreshLock)
+    private Set<Integer> changedDuringLoad;
+
+    /**
+     * method to (re)load every unfinalised project from the database
+     *
+     * @param pool the connection pool for executing queries
+     * @return the number of unfinalised projects
+     * @throws SQLException if a database access error occurs
+     */
+    public int load(ConnectionPool pool) throws SQLException {
+        synchronized (loadLock) {
+            // note the projects changed from here on
+            synchronized (refreshLock) {
+                changedDuringLoad = new HashSet<>();
+            }
+            try {
+                // read the projects before taking the lock so queries are not
+                // held up
+                List<long[]> projects = new ArrayList<>();
+
+                // a dedicated statement is used (rather than the statement
+                // cache) because its cursor settings only apply to this full read
+                try (PooledConnection connection = pool.borrow();
+                        PreparedStatement select = connection.getConnection().prepareStatement(
+                                "SELECT project_number, project_deadline FROM Projects "
+                                        + "WHERE project_finalised = false",
+                                ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                    // read rows in fixed-size batches through a server-side cursor
+                    select.setFetchSize(FETCH_SIZE);
+
+                    try (ResultSet resultSet = select.executeQuery()) {
+                        while (resultSet.next()) {
+                            projects.add(new long[] { resultSet.getInt(1),
+                                    resultSet.getDate(2).toLocalDate().toEpochDay() });
+                        }
+                    }
+                }
+
+                synchronized (refreshLock) {
+                    // replace the tracked projects
+                    synchronized (this) {
+                        byDeadline.clear();
+                        keys.clear();
+                        for (long[] project : projects) {
+                            track((int) project[0], project[1]);
+                        }
+                    }
+
+                    // the rows read may be older than the changes made
+                    // meanwhile, so read those projects again
+                    for (int projectNumber : changedDuringLoad) {
+                        reread(pool, projectNumber);
+                    }
+                    return size();
+                }
+            } finally {
+                synchronized (refreshLock) {
+                    changedDuringLoad = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * method to get every unfinalised project
+     *
+     * @return the project numbers, earliest deadline first
+     */
+    public synchronized List<Integer> incomplete() {
+        return projectNumbers(byDeadline);
+    }
+
+    /**
+     * method to get the projects that are overdue on a given day (deadline
+     * before that day and not finalised)
+     *
+     * @param today the current date
+     * @return the project numbers, earliest deadline first
+     */
+    public synchronized List<Integer> overdue(LocalDate today) {
+        return projectNumbers(byDeadline.headSet(key(today.toEpochDay(), 0), false));
+    }
+
+    /**
+     * method to get the projects that are not overdue yet but will be within
+     * a number of days (deadline from today up to today + days - 1)
+     *
+     * @param today the current date
+     * @param days  the number of days to look ahead
+     * @return the project numbers, earliest deadline first
+     */
+    public synchronized List<Integer> dueWithin(LocalDate today, int days) {
+        long from = today.toEpochDay();
+        return projectNumbers(byDeadline.subSet(key(from, 0), true, key(from + Math.max(days, 0), 0), false));
+    }
+
+    /**
+     * method to get the number of unfinalised projects
+     *
+     * @return the number of tracked projects
+     */
+    public synchronized int size() {
+        return keys.size();
+    }
+
+    /**
+     * method to re-read a project's deadline and status after it has been
+     * added, changed or finalised
+     *
+     * @param pool          the connection pool for executing queries
+     * @param projectNumber the number of the project that changed
+     * @throws SQLException if a database access error occurs
+     */
+    @Override
+    public void projectChanged(ConnectionPool pool, int projectNumber) throws SQLException {
+        synchronized (refreshLock) {
+            noteChanged(projectNumber);
+            reread(pool, projectNumber);
+        }
+    }
+
+    /**
+     * helper method to read a project's deadline and status and track it
+     * accordingly (caller holds refreshLock)
+     *
+     * @param pool          the connection pool for executing queries
+     * @param projectNumber the number of the project
+     * @throws SQLException if a database access error occurs
+     */
+    private void reread(ConnectionPool pool, int projectNumber) throws SQLException {
+        // read the project's current deadline and status
+        Date deadline = null;
+        try (PooledConnection connection = pool.borrow()) {
+            PreparedStatement select = connection.prepare(
+                    "SELECT project_deadline FROM Projects WHERE project_number = ? AND project_finalised = false");
+            select.setInt(1, projectNumber);
+            try (ResultSet resultSet = select.executeQuery()) {
+                if (resultSet.next()) {
+                    deadline = resultSet.getDate(1);
+                }
+            }
+        }
+
+        // track unfinalised projects, drop finalised ones
+        synchronized (this) {
+            untrack(projectNumber);
+            if (deadline != null) {
+                track(projectNumber, deadline.toLocalDate().toEpochDay());
+            }
+        }
+    }
+
+    /**
+     * method to track a project from values already in memory (used by
+     * FileProjectStore, which holds the projects itself): an unfinalised
+     * project is tracked at its deadline, a finalised one is dropped
+     *
+     * @param projectNumber the project number
+     * @param deadline      the project's deadline
+     * @param finalised     true if the project is finalised
+     */
+    public synchronized void update(int projectNumber, LocalDate deadline, boolean finalised) {
+        untrack(projectNumber);
+        if (!finalised) {
+            track(projectNumber, deadline.toEpochDay());
+        }
+    }
+
+    /**
+     * method to stop tracking a deleted project
+     *
+     * @param projectNumber the number of the deleted project
+     */
+    @Override
+    public void projectDeleted(int projectNumber) {
+        synchronized (refreshLock) {
+            noteChanged(projectNumber);
+            synchronized (this) {
+                untrack(projectNumber);
+            }
+        }
+    }
+
+    /**
+     * method to stop tracking a finalised project
+     *
+     * @param projectNumber the number of the finalised project
+     */
+    @Override
+    public void projectFinalised(int projectNumber) {
+        synchronized (refreshLock) {
+            noteChanged(projectNumber);
+            synchronized (this) {
+                untrack(projectNumber);
+            }
+        }
+    }
+
+    /**
+     * method called after a person has changed (deadlines are not affected)
+     *
+     * @param pool   the connection pool for executing queries
+     * @param column the Projects column that links to the person
+     * @param id     the ID of the person
+     */
+    @Override
+    public void personChanged(ConnectionPool pool, String column, String id) {
+        // nothing tracked for people
+    }
+
+    /**
+     * method called after a person has been deleted (deadlines are not
+     * affected)
+     *
+     * @param column the Projects column that linked to the person
+     * @param id     the ID of the deleted person
+     */
+    @Override
+    public void personDeleted(String column, String id) {
+        // nothing tracked for people
+    }
+
+    /**
+     * helper method to note a project changed while a load is reading every
+     * row (caller holds refreshLock)
+     *
+     * @param projectNumber the number of the project that changed
+     */
+    private void noteChanged(int projectNumber) {
+        if (changedDuringLoad != null) {
+            changedDuringLoad.add(projectNumber);
+        }
+    }
+
+    /**
+     * helper method to start tracking a project (caller holds the lock)
+     *
+     * @param projectNumber the project number
+     * @param deadlineDay   the deadline as a day number (LocalDate.toEpochDay())
+     */
+    private void track(int projectNumber, long deadlineDay) {
+        long key = key(deadlineDay, projectNumber);
+        byDeadline.add(key);
+        keys.put(projectNumber, key);
+    }
+
+    /**
+     * helper method to stop tracking a project (caller holds the lock)
+     *
+     * @param projectNumber the project number
+     */
+    private void untrack(int projectNumber) {
+        Long key = keys.remove(projectNumber);
+        if (key != null) {
+            byDeadline.remove(key);
+        }
+    }
+
+    /**
+     * helper method to combine a deadline and project number into one sortable
+     * key
+     *
+     * @param deadlineDay   the deadline as a day number
+     * @param projectNumber the project number
+     * @return the key
+     */
+    private static long key(long deadlineDay, int projectNumber) {
+        return (deadlineDay << 32) | (projectNumber & 0xFFFFFFFFL);
+    }
+
+    /**
+     * helper method to extract the project numbers from a range of keys
+     *
+     * @param range the keys in deadline order
+     * @return the project numbers in the same order
+     */
+    private static List<Integer> projectNumbers(Collection<Long> range) {
+        List<Integer> projectNumbers = new ArrayList<>(range.size());
+        for (long key : range) {
+            projectNumbers.add((int) key);
+        }
+        return projectNumbers;
+    }
+}
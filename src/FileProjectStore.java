@@ -0,0 +1,1375 @@
+
+// import Java packages
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * class for keeping projects and people in an embedded, log-structured file,
+ * so the batch commands run without a MySQL server (chosen with
+ * -Dpoisepms.store=file, kept in -Dpoisepms.data, data by default)
+ *
+ * every write appends one frame to the log holding the new version of each
+ * row it changed (or a marker for each row it deleted), preceded by its
+ * length and a CRC32 checksum, and forces it to disk before returning; the
+ * current rows are held in memory, so reads never touch the file
+ *
+ * opening the store reads the log once from start to end and applies each
+ * frame in order (a write made while the store is open is applied the same
+ * way, from the bytes written); a frame left incomplete by a crash fails its
+ * checksum and is cut off, so every write is either wholly present or wholly
+ * absent
+ *
+ * rows written again and again leave their old versions in the log, so once
+ * it holds more than twice as many rows as are current it is compacted: the
+ * current rows are written to a new file, forced to disk and moved over the
+ * old log in one rename
+ *
+ * a lock file keeps other programmes out while the store is open; within the
+ * programme every operation holds the store's lock, and the search index and
+ * deadline tracker are the classes the menu uses, fed from memory
+ */
+public class FileProjectStore implements ProjectStore {
+
+    /**
+     * default directory holding the store
+     */
+    public static final String DEFAULT_DIRECTORY = "data";
+
+    /**
+     * name of the log file in the store's directory
+     */
+    private static final String LOG_FILE = "poisepms.log";
+
+    /**
+     * name of the file locked while the store is open
+     */
+    private static final String LOCK_FILE = "poisepms.lock";
+
+    /**
+     * size of the length and checksum written before each frame
+     */
+    private static final int FRAME_HEADER_SIZE = 8;
+
+    /**
+     * number of rows the log must hold before it is compacted (so small
+     * stores are not rewritten after every few writes)
+     */
+    private static final long COMPACT_MIN_ROWS = 10_000;
+
+    /**
+     * size at which compaction starts a new frame, in bytes
+     */
+    private static final int COMPACT_FRAME_SIZE = 1024 * 1024;
+
+    /**
+     * number of rows read per page when copying from the database
+     */
+    private static final int COPY_PAGE_SIZE = 1000;
+
+    // record types in a frame
+    private static final byte PROJECT = 1;
+    private static final byte PROJECT_DELETED = 2;
+    private static final byte PERSON = 3;
+    private static final byte PERSON_DELETED = 4;
+    private static final byte NEXT_PROJECT_NUMBER = 5;
+
+    // directory and files of the store
+    private final Path directory;
+    private final Path logFile;
+
+    // lock held on the lock file while the store is open
+    private final FileChannel lockChannel;
+    private final FileLock fileLock;
+
+    // log file (reopened after compaction)
+    private FileChannel log;
+
+    // length of the complete frames in the log, in bytes
+    private long logSize;
+
+    // number of rows (records) in the log
+    private long loggedRows;
+
+    // number of rows the log must reach before compaction is tried again
+    // after a failure
+    private long compactAfterRows;
+
+    // true to record writes in the change journal
+    private final boolean journaled;
+
+    // current projects by project number, and people by table and ID
+    private final TreeMap<Integer, Project> projects = new TreeMap<>();
+    private final Map<PersonTable, HashMap<String, Person>> people = new EnumMap<>(PersonTable.class);
+
+    // number the next project is given (numbers are never reused)
+    private int nextProjectNumber = 1;
+
+    // deadlines of unfinalised projects, and the search index (built when
+    // first needed)
+    private final DeadlineTracker deadlineTracker = new DeadlineTracker();
+    private ProjectSearchIndex searchIndex;
+
+    /**
+     * class for the current values of a person
+     */
+    private static final class Person {
+
+        // ID followed by the details, in the order of PersonTable.getColumns()
+        final String[] values;
+
+        // row version, incremented by every write
+        final int version;
+
+        // number of projects linking to the person
+        int projectCount;
+
+        /**
+         * constructor to hold a person's values
+         *
+         * @param values  the ID followed by the details
+         * @param version the row version
+         */
+        Person(String[] values, int version) {
+            this.values = values;
+            this.version = version;
+        }
+    }
+
+    /**
+     * constructor to open the store in a directory, reading its log
+     *
+     * @param directory the directory holding the store
+     * @param journaled true to record writes in the change journal
+     * @throws IOException  if the log cannot be read
+     * @throws SQLException if another programme has the store open
+     */
+    private FileProjectStore(Path directory, boolean journaled) throws IOException, SQLException {
+        this.directory = directory;
+        this.logFile = directory.resolve(LOG_FILE);
+        this.journaled = journaled;
+        for (PersonTable personTable : PersonTable.values()) {
+            people.put(personTable, new HashMap<>());
+        }
+
+        // keep other programmes out until the store is closed
+        lockChannel = FileChannel.open(directory.resolve(LOCK_FILE), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE);
+        FileLock lock;
+        try {
+            lock = lockChannel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            lock = null;
+        }
+        if (lock == null) {
+            lockChannel.close();
+            throw new SQLException("The store in " + directory + " is already open in another programme.");
+        }
+        fileLock = lock;
+
+        try {
+            // a compaction that did not finish left the old log in place
+            Files.deleteIfExists(compactFile());
+            log = FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            replay();
+        } catch (IOException | RuntimeException e) {
+            try {
+                close();
+            } catch (SQLException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * method to get the directory of the store chosen with
+     * -Dpoisepms.store=file (and -Dpoisepms.data)
+     *
+     * @return the directory, or null if the MySQL database is used
+     */
+    public static Path configuredDirectory() {
+        String store = System.getProperty("poisepms.store", "mysql");
+        if (!store.equalsIgnoreCase("file")) {
+            return null;
+        }
+        return Paths.get(System.getProperty("poisepms.data", DEFAULT_DIRECTORY));
+    }
+
+    /**
+     * method to open (or create) the store in a directory
+     *
+     * @param directory the directory holding the store
+     * @param journaled true to record writes in the change journal (false for
+     *                  a scratch store, e.g. the benchmark's)
+     * @return the open store
+     * @throws SQLException if the store cannot be opened or read
+     */
+    public static FileProjectStore open(Path directory, boolean journaled) throws SQLException {
+        try {
+            Files.createDirectories(directory);
+            return new FileProjectStore(directory, journaled);
+        } catch (IOException e) {
+            throw new SQLException("The store in " + directory + " cannot be opened: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * method to describe the store
+     *
+     * @return a short description
+     */
+    @Override
+    public String describe() {
+        return "file";
+    }
+
+    /**
+     * method to count the projects
+     *
+     * @return the number of projects
+     */
+    @Override
+    public synchronized int countProjects() {
+        return projects.size();
+    }
+
+    /**
+     * method to insert several projects in one frame
+     *
+     * @param newProjects the projects to insert (their project numbers are
+     *                    set, and their names if they have none)
+     * @throws SQLException if a project links to a person who does not exist
+     *                      or the log cannot be written (nothing is inserted)
+     */
+    @Override
+    public synchronized void insertProjects(List<Project> newProjects) throws SQLException {
+        Frame frame = new Frame();
+        List<Project> rows = new ArrayList<>(newProjects.size());
+        int projectNumber = nextProjectNumber;
+        for (Project project : newProjects) {
+            Project row = project.copy();
+            row.projectNumber = projectNumber++;
+            row.version = 0;
+            row.projectName = ProjectRepository.projectName(row.projectName, row.buildingType,
+                    customerSurname(row.customerID));
+            checkProject(row);
+            frame.project(row);
+            rows.add(row);
+        }
+        commit(frame);
+
+        // set the numbers and names once the projects are saved
+        for (int i = 0; i < rows.size(); i++) {
+            Project row = rows.get(i);
+            newProjects.get(i).projectNumber = row.projectNumber;
+            newProjects.get(i).projectName = row.projectName;
+            newProjects.get(i).version = row.version;
+            record("insert", "Projects", row.projectNumber, null, ChangeJournal.image(row));
+        }
+    }
+
+    /**
+     * method to read a project
+     *
+     * @param projectNumber the number of the project
+     * @return a copy of the project, or null if it does not exist
+     */
+    @Override
+    public synchronized Project findProject(int projectNumber) {
+        Project project = projects.get(projectNumber);
+        return project == null ? null : project.copy();
+    }
+
+    /**
+     * method to write the changes made to a project since it was read, if its
+     * version is unchanged
+     *
+     * @param current the project as it was read
+     * @param project the new values (its number and version are set from the
+     *                project written)
+     * @return the outcome of the update
+     * @throws SQLException if the project would link to a person who does not
+     *                      exist or the log cannot be written
+     */
+    @Override
+    public synchronized ProjectRepository.UpdateResult updateProject(Project current, Project project)
+            throws SQLException {
+        project.projectNumber = current.projectNumber;
+        project.version = current.version;
+        project.projectName = ProjectRepository.projectName(project.projectName, project.buildingType,
+                customerSurname(project.customerID));
+        if (Arrays.equals(ProjectRepository.projectValues(current), ProjectRepository.projectValues(project))) {
+            return ProjectRepository.UpdateResult.UNCHANGED;
+        }
+
+        // the project must still be the one read
+        Project latest = projects.get(current.projectNumber);
+        if (latest == null) {
+            return ProjectRepository.UpdateResult.NOT_FOUND;
+        }
+        if (latest.version != current.version) {
+            return ProjectRepository.UpdateResult.CONFLICT;
+        }
+        checkProject(project);
+
+        Project row = project.copy();
+        row.version = current.version + 1;
+        Frame frame = new Frame();
+        frame.project(row);
+        commit(frame);
+        project.version = row.version;
+        record("update", "Projects", row.projectNumber, ChangeJournal.image(latest), ChangeJournal.image(row));
+        return ProjectRepository.UpdateResult.UPDATED;
+    }
+
+    /**
+     * method to finalise several projects in one frame (projects finalised
+     * already keep their completion date)
+     *
+     * @param projectNumbers the numbers of the projects
+     * @param completionDate the date the projects were completed
+     * @return the number of projects finalised
+     * @throws SQLException if the log cannot be written (nothing is finalised)
+     */
+    @Override
+    public synchronized int finaliseProjects(int[] projectNumbers, LocalDate completionDate) throws SQLException {
+        Frame frame = new Frame();
+        List<Project> before = new ArrayList<>();
+        List<Project> after = new ArrayList<>();
+        Set<Integer> seen = new HashSet<>();
+        for (int projectNumber : projectNumbers) {
+            Project project = projects.get(projectNumber);
+            if (project == null || project.projectFinalised || !seen.add(projectNumber)) {
+                continue;
+            }
+            Project row = project.copy();
+            row.projectFinalised = true;
+            row.completionDate = completionDate;
+            row.version++;
+            frame.project(row);
+            before.add(project);
+            after.add(row);
+        }
+        if (after.isEmpty()) {
+            return 0;
+        }
+        commit(frame);
+
+        for (int i = 0; i < after.size(); i++) {
+            record("finalise", "Projects", after.get(i).projectNumber, ChangeJournal.image(before.get(i)),
+                    ChangeJournal.image(after.get(i)));
+        }
+        return after.size();
+    }
+
+    /**
+     * method to finalise every unfinalised project that is fully paid and past
+     * its deadline, in one frame
+     *
+     * the overdue projects are found through the deadline tracker, so only
+     * they are checked
+     *
+     * @param today          the current date
+     * @param completionDate the date the projects were completed
+     * @return the number of projects finalised
+     * @throws SQLException if the log cannot be written (nothing is finalised)
+     */
+    @Override
+    public synchronized int finaliseFullyPaidOverdue(LocalDate today, LocalDate completionDate)
+            throws SQLException {
+        List<Integer> matching = new ArrayList<>();
+        for (int projectNumber : deadlineTracker.overdue(today)) {
+            Project project = projects.get(projectNumber);
+            if (project.amountPaid >= project.totalFee) {
+                matching.add(projectNumber);
+            }
+        }
+        return finaliseProjects(matching.stream().mapToInt(Integer::intValue).toArray(), completionDate);
+    }
+
+    /**
+     * method to read the projects to delete and their linked people (see
+     * ProjectDeleter.plan)
+     *
+     * @param projectNumbers the numbers of the projects to delete
+     * @return the plan (numbers that do not exist are left out)
+     */
+    @Override
+    public synchronized ProjectDeleter.DeletePlan planDelete(int... projectNumbers) {
+        // people linked to the projects (keyed by table and ID), counting the
+        // projects linked to them that are not being deleted
+        Map<String, ProjectDeleter.LinkedPerson> linked = new LinkedHashMap<>();
+        List<Integer> found = new ArrayList<>(projectNumbers.length);
+        Set<Integer> seen = new HashSet<>();
+        PersonTable[] personTables = PersonTable.values();
+        for (int projectNumber : projectNumbers) {
+            Project project = projects.get(projectNumber);
+            if (project == null || !seen.add(projectNumber)) {
+                continue;
+            }
+            found.add(projectNumber);
+
+            String[] ids = linkedIDs(project);
+            for (int i = 0; i < personTables.length; i++) {
+                String key = personTables[i].name() + ":" + ids[i];
+                ProjectDeleter.LinkedPerson person = linked.get(key);
+                if (person == null) {
+                    person = new ProjectDeleter.LinkedPerson(personTables[i], ids[i]);
+                    Person current = people.get(personTables[i]).get(ids[i]);
+                    person.otherProjects = current == null ? 0 : current.projectCount;
+                    linked.put(key, person);
+                }
+                person.otherProjects--;
+            }
+        }
+
+        // people linked only to projects being deleted go with them
+        for (ProjectDeleter.LinkedPerson person : linked.values()) {
+            person.delete = person.otherProjects <= 0;
+        }
+        int[] numbers = found.stream().mapToInt(Integer::intValue).toArray();
+        return new ProjectDeleter.DeletePlan(numbers, new ArrayList<>(linked.values()));
+    }
+
+    /**
+     * method to delete the projects and chosen people of a plan in one frame
+     *
+     * @param plan the plan returned by planDelete()
+     * @return the number of projects deleted
+     * @throws SQLException if a person to delete has been linked to another
+     *                      project since the plan was made, or the log cannot
+     *                      be written (nothing is deleted)
+     */
+    @Override
+    public synchronized int delete(ProjectDeleter.DeletePlan plan) throws SQLException {
+        Frame frame = new Frame();
+        PersonTable[] personTables = PersonTable.values();
+
+        // delete the projects, counting the links removed from each person
+        List<Project> deletedProjects = new ArrayList<>();
+        Map<String, Integer> unlinked = new HashMap<>();
+        for (int projectNumber : plan.projectNumbers) {
+            Project project = projects.get(projectNumber);
+            if (project == null || deletedProjects.contains(project)) {
+                continue;
+            }
+            frame.projectDeleted(projectNumber);
+            deletedProjects.add(project);
+            String[] ids = linkedIDs(project);
+            for (int i = 0; i < personTables.length; i++) {
+                unlinked.merge(personTables[i].name() + ":" + ids[i], 1, Integer::sum);
+            }
+        }
+
+        // delete the people linked only to these projects (as the foreign
+        // keys would in the database, a person still linked elsewhere stops
+        // the delete)
+        List<ProjectDeleter.LinkedPerson> deletedPeople = new ArrayList<>();
+        List<Person> deletedValues = new ArrayList<>();
+        for (ProjectDeleter.LinkedPerson linked : plan.people) {
+            Person person = people.get(linked.personTable).get(linked.id);
+            if (!linked.delete || person == null) {
+                continue;
+            }
+            int remaining = person.projectCount - unlinked.getOrDefault(linked.personTable.name() + ":"
+                    + linked.id, 0);
+            if (remaining > 0) {
+                throw new SQLIntegrityConstraintViolationException("The " + linked.personTable.getRole()
+                        + " with ID " + linked.id + " is linked to another project, so cannot be deleted.");
+            }
+            frame.personDeleted(linked.personTable, linked.id);
+            deletedPeople.add(linked);
+            deletedValues.add(person);
+        }
+        if (frame.size() == 0) {
+            return 0;
+        }
+        commit(frame);
+
+        // record the deleted rows
+        for (Project project : deletedProjects) {
+            record("delete", "Projects", project.projectNumber, ChangeJournal.image(project), null);
+        }
+        for (int i = 0; i < deletedPeople.size(); i++) {
+            PersonTable personTable = deletedPeople.get(i).personTable;
+            record("delete", personTable.getTable(), deletedPeople.get(i).id,
+                    ChangeJournal.image(personTable, deletedValues.get(i).values), null);
+        }
+        return deletedProjects.size();
+    }
+
+    /**
+     * method to insert a new person
+     *
+     * @param personTable the table of the person
+     * @param values      the ID followed by the details, in the order of
+     *                    PersonTable.getColumns()
+     * @throws SQLException if the ID is empty or taken, or the log cannot be
+     *                      written
+     */
+    @Override
+    public synchronized void insertPerson(PersonTable personTable, String... values) throws SQLException {
+        String[] row = Arrays.copyOf(values, personTable.getColumns().length);
+        if (row[0] == null || row[0].isEmpty()) {
+            throw new SQLIntegrityConstraintViolationException(personTable.getIdColumn() + " cannot be empty.");
+        }
+        if (people.get(personTable).containsKey(row[0])) {
+            throw new SQLIntegrityConstraintViolationException("Duplicate entry '" + row[0] + "' for key '"
+                    + personTable.getIdColumn() + "'.");
+        }
+
+        Frame frame = new Frame();
+        frame.person(personTable, row, 0);
+        commit(frame);
+        record("insert", personTable.getTable(), row[0], null, ChangeJournal.image(personTable, row));
+    }
+
+    /**
+     * method to read a person
+     *
+     * @param personTable the table of the person
+     * @param id          the ID of the person
+     * @return the person's values by column, including the version column,
+     *         or null if they do not exist
+     */
+    @Override
+    public synchronized Map<String, Object> findPerson(PersonTable personTable, String id) {
+        Person person = people.get(personTable).get(id);
+        if (person == null) {
+            return null;
+        }
+        String[] columns = personTable.getColumns();
+        Map<String, Object> values = new LinkedHashMap<>();
+        for (int i = 0; i < columns.length; i++) {
+            values.put(columns[i], person.values[i]);
+        }
+        values.put(ProjectRepository.VERSION_COLUMN, person.version);
+        return values;
+    }
+
+    /**
+     * method to write the changes made to a person's details since they were
+     * read, if their version is unchanged
+     *
+     * @param personTable the table of the person
+     * @param current     the person's values by column as read, including
+     *                    the version column
+     * @param details     the new details, in the order of
+     *                    PersonTable.getColumns() after the ID
+     * @return the outcome of the update
+     * @throws SQLException if the log cannot be written
+     */
+    @Override
+    public synchronized ProjectRepository.UpdateResult updatePerson(PersonTable personTable,
+            Map<String, Object> current, String... details) throws SQLException {
+        String[] columns = personTable.getColumns();
+        String id = String.valueOf(current.get(columns[0]));
+        int version = ((Number) current.get(ProjectRepository.VERSION_COLUMN)).intValue();
+
+        // compare the new details with those read
+        String[] row = new String[columns.length];
+        row[0] = id;
+        boolean changed = false;
+        for (int i = 1; i < columns.length; i++) {
+            row[i] = details[i - 1];
+            changed |= !Objects.equals(Objects.toString(current.get(columns[i]), null), row[i]);
+        }
+        if (!changed) {
+            return ProjectRepository.UpdateResult.UNCHANGED;
+        }
+
+        // the person must still be the one read
+        Person latest = people.get(personTable).get(id);
+        if (latest == null) {
+            return ProjectRepository.UpdateResult.NOT_FOUND;
+        }
+        if (latest.version != version) {
+            return ProjectRepository.UpdateResult.CONFLICT;
+        }
+
+        Frame frame = new Frame();
+        frame.person(personTable, row, version + 1);
+        commit(frame);
+        record("update", personTable.getTable(), id, ChangeJournal.image(personTable, latest.values),
+                ChangeJournal.image(personTable, row));
+        return ProjectRepository.UpdateResult.UPDATED;
+    }
+
+    /**
+     * method to search the projects, building the search index from memory
+     * on first use
+     *
+     * @param query the search text
+     * @param limit the maximum number of results
+     * @return the matching project numbers, best match first
+     */
+    @Override
+    public synchronized List<Integer> search(String query, int limit) {
+        if (searchIndex == null) {
+            searchIndex = new ProjectSearchIndex();
+            for (Project project : projects.values()) {
+                index(project);
+            }
+        }
+        return searchIndex.search(query, limit);
+    }
+
+    /**
+     * method to get every unfinalised project
+     *
+     * @return the project numbers, earliest deadline first
+     */
+    @Override
+    public List<Integer> incomplete() {
+        return deadlineTracker.incomplete();
+    }
+
+    /**
+     * method to get the projects overdue on a given day
+     *
+     * @param today the current date
+     * @return the project numbers, earliest deadline first
+     */
+    @Override
+    public List<Integer> overdue(LocalDate today) {
+        return deadlineTracker.overdue(today);
+    }
+
+    /**
+     * method to get the projects not overdue yet that will be within a number
+     * of days
+     *
+     * @param today the current date
+     * @param days  the number of days to look ahead
+     * @return the project numbers, earliest deadline first
+     */
+    @Override
+    public List<Integer> dueWithin(LocalDate today, int days) {
+        return deadlineTracker.dueWithin(today, days);
+    }
+
+    /**
+     * method to copy every person and project from the database into the
+     * store, keeping their IDs and project numbers (e.g. to take a copy to a
+     * site without the server, or to benchmark both stores on the same data)
+     *
+     * @param pool the connection pool for executing queries
+     * @return the number of projects copied
+     * @throws SQLException if the store is not empty, or a database access
+     *                      error occurs
+     */
+    public synchronized int copyFrom(ConnectionPool pool) throws SQLException {
+        if (loggedRows > 0) {
+            throw new SQLException("The store in " + directory + " is not empty.");
+        }
+
+        // people first, as projects link to them (one frame per page)
+        for (PersonTable personTable : PersonTable.values()) {
+            String[] columns = personTable.getColumns();
+            String after = "";
+            List<Map<String, Object>> page;
+            do {
+                page = ProjectRepository.findPeopleAfter(pool, personTable, after, COPY_PAGE_SIZE);
+                Frame frame = new Frame();
+                for (Map<String, Object> values : page) {
+                    String[] row = new String[columns.length];
+                    for (int i = 0; i < columns.length; i++) {
+                        row[i] = Objects.toString(values.get(columns[i]), null);
+                    }
+                    frame.person(personTable, row, 0);
+                    after = row[0];
+                }
+                if (frame.size() > 0) {
+                    commit(frame);
+                }
+            } while (page.size() == COPY_PAGE_SIZE);
+        }
+
+        int after = 0;
+        List<Project> page;
+        do {
+            page = ProjectRepository.findProjectsAfter(pool, after, COPY_PAGE_SIZE);
+            Frame frame = new Frame();
+            for (Project project : page) {
+                frame.project(project);
+                after = project.projectNumber;
+            }
+            if (frame.size() > 0) {
+                commit(frame);
+            }
+        } while (page.size() == COPY_PAGE_SIZE);
+        return projects.size();
+    }
+
+    /**
+     * method to rewrite the log with only the current rows (done
+     * automatically once most of the log is old versions)
+     *
+     * the old log stays open and in use until the compacted one has been
+     * forced to disk and renamed over it, so a failure at any step leaves the
+     * store as it was (on systems that cannot rename over an open file, e.g.
+     * Windows, the log is never compacted)
+     *
+     * @throws SQLException if the compacted log cannot be written or renamed
+     *                      (the old log is kept)
+     */
+    public synchronized void compact() throws SQLException {
+        Path compacted = compactFile();
+        FileChannel out = null;
+        long size = 0;
+        long rows = 0;
+        try {
+            // write the current rows in frames of about COMPACT_FRAME_SIZE
+            out = FileChannel.open(compacted, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            Frame frame = new Frame();
+            frame.nextProjectNumber(nextProjectNumber);
+            // people first, as projects link to them
+            for (Map.Entry<PersonTable, HashMap<String, Person>> table : people.entrySet()) {
+                for (Person person : table.getValue().values()) {
+                    frame.person(table.getKey(), person.values, person.version);
+                    if (frame.size() >= COMPACT_FRAME_SIZE) {
+                        size = writeFrame(out, size, frame.payload());
+                        rows += frame.rows;
+                        frame = new Frame();
+                    }
+                }
+            }
+            for (Project project : projects.values()) {
+                frame.project(project);
+                if (frame.size() >= COMPACT_FRAME_SIZE) {
+                    size = writeFrame(out, size, frame.payload());
+                    rows += frame.rows;
+                    frame = new Frame();
+                }
+            }
+            size = writeFrame(out, size, frame.payload());
+            rows += frame.rows;
+            out.force(true);
+
+            // move the compacted log over the old one in one rename
+            Files.move(compacted, logFile, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // drop the compacted file and keep writing to the old log
+            try {
+                if (out != null) {
+                    out.close();
+                }
+                Files.deleteIfExists(compacted);
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw new SQLException("The log " + logFile + " could not be compacted: " + e.getMessage(), e);
+        }
+
+        // write to the compacted log from now on (the old one is already
+        // replaced, so failing to close it loses nothing)
+        FileChannel old = log;
+        log = out;
+        logSize = size;
+        loggedRows = rows;
+        compactAfterRows = 0;
+        try {
+            old.close();
+        } catch (IOException e) {
+            System.err.println("The old log " + logFile + " could not be closed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * method to close the log and release the store for other programmes
+     *
+     * @throws SQLException if the files cannot be closed
+     */
+    @Override
+    public synchronized void close() throws SQLException {
+        try {
+            try {
+                if (log != null) {
+                    log.close();
+                }
+            } finally {
+                if (fileLock != null && fileLock.isValid()) {
+                    fileLock.release();
+                }
+                lockChannel.close();
+            }
+        } catch (IOException e) {
+            throw new SQLException("The store in " + directory + " could not be closed: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * helper method to write a frame to the end of the log, force it to disk
+     * and apply it to the rows in memory
+     *
+     * once this returns the write is saved; compacting the log afterwards is
+     * separate, so its failure never fails the write
+     *
+     * @param frame the frame
+     * @throws SQLException if the frame could not be saved (the log and the
+     *                      rows in memory are left as they were), or
+     *                      ProjectRepository.CommitUnknownException if a
+     *                      partly written frame could not be cut off again
+     */
+    private void commit(Frame frame) throws SQLException {
+        ByteBuffer payload = frame.payload();
+        try {
+            writeFrame(log, logSize, payload.duplicate());
+            log.force(false);
+        } catch (IOException e) {
+            // cut off any part of the frame that was written, so the log still
+            // ends with the last complete write
+            try {
+                log.truncate(logSize);
+                log.force(false);
+            } catch (IOException truncateError) {
+                // the frame may be read back when the store is next opened
+                e.addSuppressed(truncateError);
+                throw new ProjectRepository.CommitUnknownException(new SQLException("The write to " + logFile
+                        + " failed and could not be cut off: " + e.getMessage(), e));
+            }
+            throw new SQLException("The write could not be saved to " + logFile + ": " + e.getMessage(), e);
+        }
+        logSize += FRAME_HEADER_SIZE + payload.remaining();
+
+        try {
+            apply(payload);
+        } catch (IOException e) {
+            // only possible if this class writes a record type it cannot read
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+        compactIfNeeded();
+    }
+
+    /**
+     * helper method to compact the log once it holds more than twice as many
+     * rows as are current
+     *
+     * a failed compaction is reported on standard error and tried again only
+     * once the log has doubled, as the write that triggered it is already
+     * saved in the old log, which stays in use
+     */
+    private void compactIfNeeded() {
+        long rows = projects.size() + 1;
+        for (HashMap<String, Person> table : people.values()) {
+            rows += table.size();
+        }
+        if (loggedRows > COMPACT_MIN_ROWS && loggedRows > 2 * rows && loggedRows >= compactAfterRows) {
+            try {
+                compact();
+            } catch (SQLException e) {
+                compactAfterRows = 2 * loggedRows;
+                System.err.println(e.getMessage() + " (the old log is still used).");
+            }
+        }
+    }
+
+    /**
+     * helper method to read the log from start to end, applying each frame
+     *
+     * a damaged frame at the end of the log (a write cut short by a crash) is
+     * cut off; a damaged frame with complete frames after it is reported, as
+     * cutting it off would lose those writes
+     *
+     * @throws IOException if the log cannot be read or is damaged
+     */
+    private void replay() throws IOException {
+        long size = log.size();
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException(logFile + " is too large to read (" + size + " bytes).");
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((int) size);
+        while (buffer.hasRemaining()) {
+            if (log.read(buffer, buffer.position()) < 0) {
+                break;
+            }
+        }
+        buffer.flip();
+
+        CRC32 checksum = new CRC32();
+        int end = 0;
+        while (buffer.remaining() >= FRAME_HEADER_SIZE) {
+            int length = buffer.getInt();
+            int expected = buffer.getInt();
+            boolean complete = length > 0 && length <= buffer.remaining();
+            if (complete) {
+                checksum.reset();
+                checksum.update(buffer.slice(buffer.position(), length));
+            }
+            if (!complete || (int) checksum.getValue() != expected) {
+                // only the last write can have been cut short: the frame must
+                // run to the end of the log, or be followed only by zeros
+                boolean last = length > buffer.remaining()
+                        || (complete && buffer.position() + length == buffer.limit());
+                if (!last && !isZero(buffer, end)) {
+                    throw new IOException(logFile + " is damaged at byte " + end + " (restore it from a backup).");
+                }
+                break;
+            }
+
+            apply(buffer.slice(buffer.position(), length));
+            buffer.position(buffer.position() + length);
+            end = buffer.position();
+        }
+        logSize = end;
+
+        // cut off a write left incomplete
+        if (end < size) {
+            log.truncate(end);
+            log.force(true);
+            System.err.println("Discarded an incomplete write of " + (size - end) + " bytes at the end of "
+                    + logFile + ".");
+        }
+    }
+
+    /**
+     * helper method to apply the records of a frame to the rows in memory
+     *
+     * @param frame the frame's records
+     * @throws IOException if a record has an unknown type
+     */
+    private void apply(ByteBuffer frame) throws IOException {
+        PersonTable[] personTables = PersonTable.values();
+        while (frame.hasRemaining()) {
+            byte type = frame.get();
+            switch (type) {
+                case PROJECT:
+                    putProject(readProject(frame));
+                    break;
+                case PROJECT_DELETED:
+                    removeProject(frame.getInt());
+                    break;
+                case PERSON: {
+                    PersonTable personTable = personTables[frame.get()];
+                    int version = frame.getInt();
+                    String[] values = new String[frame.getInt()];
+                    for (int i = 0; i < values.length; i++) {
+                        values[i] = getString(frame);
+                    }
+                    putPerson(personTable, new Person(values, version));
+                    break;
+                }
+                case PERSON_DELETED:
+                    people.get(personTables[frame.get()]).remove(getString(frame));
+                    break;
+                case NEXT_PROJECT_NUMBER:
+                    nextProjectNumber = Math.max(nextProjectNumber, frame.getInt());
+                    break;
+                default:
+                    throw new IOException("Unknown record type " + type + " in " + logFile + ".");
+            }
+            loggedRows++;
+        }
+    }
+
+    /**
+     * helper method to add or replace a project in memory
+     *
+     * @param project the project
+     */
+    private void putProject(Project project) {
+        Project old = projects.put(project.projectNumber, project);
+        if (old != null) {
+            link(old, -1);
+        }
+        link(project, 1);
+        nextProjectNumber = Math.max(nextProjectNumber, project.projectNumber + 1);
+
+        deadlineTracker.update(project.projectNumber, project.projectDeadline, project.projectFinalised);
+        if (searchIndex != null) {
+            index(project);
+        }
+    }
+
+    /**
+     * helper method to remove a project from memory (its number is not
+     * reused)
+     *
+     * @param projectNumber the project number
+     */
+    private void removeProject(int projectNumber) {
+        Project old = projects.remove(projectNumber);
+        if (old != null) {
+            link(old, -1);
+        }
+        deadlineTracker.projectDeleted(projectNumber);
+        if (searchIndex != null) {
+            searchIndex.projectDeleted(projectNumber);
+        }
+    }
+
+    /**
+     * helper method to add or replace a person in memory, re-indexing the
+     * projects linked to a person who changed
+     *
+     * @param personTable the table of the person
+     * @param person      the person
+     */
+    private void putPerson(PersonTable personTable, Person person) {
+        Person old = people.get(personTable).put(person.values[0], person);
+        if (old == null) {
+            return;
+        }
+        person.projectCount = old.projectCount;
+
+        if (searchIndex != null && person.projectCount > 0) {
+            int column = personTable.ordinal();
+            for (Project project : projects.values()) {
+                if (person.values[0].equals(linkedIDs(project)[column])) {
+                    index(project);
+                }
+            }
+        }
+    }
+
+    /**
+     * helper method to count a project's links to its people up or down
+     *
+     * @param project the project
+     * @param change  1 when the project is added, -1 when it is removed
+     */
+    private void link(Project project, int change) {
+        String[] ids = linkedIDs(project);
+        PersonTable[] personTables = PersonTable.values();
+        for (int i = 0; i < personTables.length; i++) {
+            Person person = people.get(personTables[i]).get(ids[i]);
+            if (person != null) {
+                person.projectCount += change;
+            }
+        }
+    }
+
+    /**
+     * helper method to add or replace a project in the search index with the
+     * names of its people
+     *
+     * @param project the project
+     */
+    private void index(Project project) {
+        // names are the detail columns after the ID (a customer has a first
+        // name and a surname)
+        Person customer = people.get(PersonTable.CUSTOMERS).get(project.customerID);
+        Person architect = people.get(PersonTable.ARCHITECTS).get(project.architectID);
+        Person contractor = people.get(PersonTable.CONTRACTORS).get(project.contractorID);
+        searchIndex.update(project, customer == null ? null : customer.values[1],
+                customer == null ? null : customer.values[2], architect == null ? null : architect.values[1],
+                contractor == null ? null : contractor.values[1]);
+    }
+
+    /**
+     * helper method to check a project before it is written, as the columns'
+     * constraints do in the database
+     *
+     * @param project the project
+     * @throws SQLIntegrityConstraintViolationException if the project has no
+     *                                                  deadline or links to a
+     *                                                  person who does not
+     *                                                  exist
+     */
+    private void checkProject(Project project) throws SQLIntegrityConstraintViolationException {
+        if (project.projectDeadline == null) {
+            throw new SQLIntegrityConstraintViolationException("project_deadline cannot be empty.");
+        }
+        String[] ids = linkedIDs(project);
+        PersonTable[] personTables = PersonTable.values();
+        for (int i = 0; i < personTables.length; i++) {
+            if (ids[i] == null || !people.get(personTables[i]).containsKey(ids[i])) {
+                throw new SQLIntegrityConstraintViolationException("No " + personTables[i].getRole()
+                        + " with ID " + ids[i] + " exists; add them before linking a project to them.");
+            }
+        }
+    }
+
+    /**
+     * helper method to get the surname of a customer
+     *
+     * @param customerID the customer ID
+     * @return the surname, or null if the customer does not exist
+     */
+    private String customerSurname(String customerID) {
+        Person customer = people.get(PersonTable.CUSTOMERS).get(customerID);
+        return customer == null ? null : customer.values[2];
+    }
+
+    /**
+     * helper method to record a write in the change journal, if the store is
+     * journaled
+     *
+     * @param operation the operation, e.g. update
+     * @param table     the table written
+     * @param key       the primary key of the row
+     * @param before    the values before the write (null for an insert)
+     * @param after     the values after the write (null for a delete)
+     */
+    private void record(String operation, String table, Object key, Map<String, String> before,
+            Map<String, String> after) {
+        if (journaled) {
+            ChangeJournal.record(operation, table, key, before, after);
+        }
+    }
+
+    /**
+     * helper method to get the file a compaction is written to
+     *
+     * @return the path of the compacted log
+     */
+    private Path compactFile() {
+        return directory.resolve(LOG_FILE + ".compact");
+    }
+
+    /**
+     * helper method to get the IDs of a project's people, in the order of
+     * PersonTable.values()
+     *
+     * @param project the project
+     * @return the architect, contractor and customer IDs
+     */
+    private static String[] linkedIDs(Project project) {
+        return new String[] { project.architectID, project.contractorID, project.customerID };
+    }
+
+    /**
+     * helper method to write a frame with its length and checksum
+     *
+     * @param channel  the file to write to
+     * @param position the position to write at
+     * @param payload  the frame's records
+     * @return the position after the frame
+     * @throws IOException if the file cannot be written
+     */
+    private static long writeFrame(FileChannel channel, long position, ByteBuffer payload) throws IOException {
+        CRC32 checksum = new CRC32();
+        checksum.update(payload.duplicate());
+        ByteBuffer header = ByteBuffer.allocate(FRAME_HEADER_SIZE);
+        header.putInt(payload.remaining()).putInt((int) checksum.getValue()).flip();
+
+        long end = position;
+        while (header.hasRemaining()) {
+            end += channel.write(header, end);
+        }
+        while (payload.hasRemaining()) {
+            end += channel.write(payload, end);
+        }
+        return end;
+    }
+
+    /**
+     * helper method to check if the rest of a buffer is zero bytes (space a
+     * crash left allocated but unwritten)
+     *
+     * @param buffer the buffer
+     * @param from   the position to check from
+     * @return true if every byte from the position is zero
+     */
+    private static boolean isZero(ByteBuffer buffer, int from) {
+        for (int i = from; i < buffer.limit(); i++) {
+            if (buffer.get(i) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * helper method to read a project record
+     *
+     * @param in the frame positioned after the record type
+     * @return the project
+     */
+    private static Project readProject(ByteBuffer in) {
+        Project project = new Project();
+        project.projectNumber = in.getInt();
+        project.version = in.getInt();
+        project.architectID = getString(in);
+        project.contractorID = getString(in);
+        project.customerID = getString(in);
+        project.projectName = getString(in);
+        project.buildingType = getString(in);
+        project.physicalAddress = getString(in);
+        project.erfNumber = getString(in);
+        project.totalFee = in.getDouble();
+        project.amountPaid = in.getDouble();
+        project.projectDeadline = LocalDate.ofEpochDay(in.getLong());
+        project.projectFinalised = in.get() == 1;
+        long completionDay = in.getLong();
+        project.completionDate = completionDay == Long.MIN_VALUE ? null : LocalDate.ofEpochDay(completionDay);
+        return project;
+    }
+
+    /**
+     * helper method to read a string (length-prefixed UTF-8, -1 for null)
+     *
+     * @param in the frame positioned on the string
+     * @return the string
+     */
+    private static String getString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        String value = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        return value;
+    }
+
+    /**
+     * class for the records of one write, encoded in the order they are
+     * applied
+     */
+    private static final class Frame {
+
+        // encoded records (grown as needed)
+        private ByteBuffer buffer = ByteBuffer.allocate(256);
+
+        // number of records
+        int rows;
+
+        /**
+         * method to add the current values of a project
+         *
+         * @param project the project
+         */
+        void project(Project project) {
+            ensure(1 + 4 + 4);
+            buffer.put(PROJECT).putInt(project.projectNumber).putInt(project.version);
+            putString(project.architectID);
+            putString(project.contractorID);
+            putString(project.customerID);
+            putString(project.projectName);
+            putString(project.buildingType);
+            putString(project.physicalAddress);
+            putString(project.erfNumber);
+            ensure(8 + 8 + 8 + 1 + 8);
+            buffer.putDouble(project.totalFee).putDouble(project.amountPaid)
+                    .putLong(project.projectDeadline.toEpochDay()).put((byte) (project.projectFinalised ? 1 : 0))
+                    .putLong(project.completionDate == null ? Long.MIN_VALUE : project.completionDate.toEpochDay());
+            rows++;
+        }
+
+        /**
+         * method to add the deletion of a project
+         *
+         * @param projectNumber the project number
+         */
+        void projectDeleted(int projectNumber) {
+            ensure(1 + 4);
+            buffer.put(PROJECT_DELETED).putInt(projectNumber);
+            rows++;
+        }
+
+        /**
+         * method to add the current values of a person
+         *
+         * @param personTable the table of the person
+         * @param values      the ID followed by the details
+         * @param version     the row version
+         */
+        void person(PersonTable personTable, String[] values, int version) {
+            ensure(1 + 1 + 4 + 4);
+            buffer.put(PERSON).put((byte) personTable.ordinal()).putInt(version).putInt(values.length);
+            for (String value : values) {
+                putString(value);
+            }
+            rows++;
+        }
+
+        /**
+         * method to add the deletion of a person
+         *
+         * @param personTable the table of the person
+         * @param id          the ID of the person
+         */
+        void personDeleted(PersonTable personTable, String id) {
+            ensure(1 + 1);
+            buffer.put(PERSON_DELETED).put((byte) personTable.ordinal());
+            putString(id);
+            rows++;
+        }
+
+        /**
+         * method to add the number the next project is given (kept by
+         * compaction, as the projects with higher numbers may be deleted)
+         *
+         * @param projectNumber the next project number
+         */
+        void nextProjectNumber(int projectNumber) {
+            ensure(1 + 4);
+            buffer.put(NEXT_PROJECT_NUMBER).putInt(projectNumber);
+            rows++;
+        }
+
+        /**
+         * method to get the size of the records so far
+         *
+         * @return the size in bytes
+         */
+        int size() {
+            return buffer.position();
+        }
+
+        /**
+         * method to get the encoded records
+         *
+         * @return a buffer positioned on the first record
+         */
+        ByteBuffer payload() {
+            return buffer.duplicate().flip();
+        }
+
+        /**
+         * helper method to add a string (length-prefixed UTF-8, -1 for null)
+         *
+         * @param value the string
+         */
+        private void putString(String value) {
+            if (value == null) {
+                ensure(4);
+                buffer.putInt(-1);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            ensure(4 + bytes.length);
+            buffer.putInt(bytes.length).put(bytes);
+        }
+
+        /**
+         * helper method to make room for more bytes, doubling the buffer
+         *
+         * @param bytes the number of bytes about to be added
+         */
+        private void ensure(int bytes) {
+            if (buffer.remaining() < bytes) {
+                ByteBuffer grown = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes));
+                buffer.flip();
+                grown.put(buffer);
+                buffer = grown;
+            }
+        }
+    }
+}
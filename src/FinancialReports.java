@@ -0,0 +1,567 @@
+
+// import Java packages
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * class for reporting fees, payments and outstanding balances, in total or
+ * grouped by building type, architect, contractor, customer or deadline month
+ *
+ * all amounts are exact: the database sums the DECIMAL(12, 2) columns itself
+ * and the results are read as BigDecimal, and the in-process aggregation adds
+ * whole cents in long values (spilling into BigDecimal should a sum ever
+ * overflow) rather than adding doubles
+ *
+ * by default the grouping is pushed down into a single GROUP BY query, so only
+ * one row per group leaves the database; the in-process aggregation instead
+ * streams the four columns it needs through server-side cursors on several
+ * connections at once, each thread scanning its own project number ranges into
+ * its own totals, which are merged at the end (memory grows with the number of
+ * groups, never with the number of projects)
+ *
+ * a project's outstanding balance is its total fee less the amount paid (0 if
+ * it is fully paid or overpaid); the balance still owed on finalised projects
+ * is also reported separately
+ *
+ * PoisePMS report grouping [--in-process] [--compare] runs the report from the
+ * command line (menu option 21 from the menu); --compare runs it both ways and
+ * checks the figures match, and people are listed largest outstanding balance
+ * first, DEFAULT_PERSON_LIMIT of them unless --limit is given
+ */
+public class FinancialReports {
+
+    /**
+     * ways of grouping projects in a report
+     */
+    public enum Grouping {
+        SUMMARY("summary", "'All projects'", 0),
+        BUILDING_TYPE("building-type", "building_type", 1),
+        ARCHITECT("architect", "architect_id", 2),
+        CONTRACTOR("contractor", "contractor_id", 3),
+        CUSTOMER("customer", "customer_id", 4),
+        MONTH("month", "DATE_FORMAT(project_deadline, '%Y-%m')", 5);
+
+        // name used on the command line, SQL expression of the group and the
+        // column of SCAN_PROJECTS that holds it
+        private final String name;
+        private final String expression;
+        private final int scanColumn;
+
+        /**
+         * constructor to describe a grouping
+         *
+         * @param name       the name used on the command line
+         * @param expression the SQL expression of the group
+         * @param scanColumn the column of SCAN_PROJECTS holding the group (0
+         *                   for none)
+         */
+        Grouping(String name, String expression, int scanColumn) {
+            this.name = name;
+            this.expression = expression;
+            this.scanColumn = scanColumn;
+        }
+
+        /**
+         * method to get the name used on the command line
+         *
+         * @return the name, e.g. building-type
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * method to check if groups are people (reported largest balance
+         * first) rather than categories (reported in name order)
+         *
+         * @return true for the architect, contractor and customer groupings
+         */
+        public boolean isPerson() {
+            return this == ARCHITECT || this == CONTRACTOR || this == CUSTOMER;
+        }
+
+        /**
+         * method to get a grouping from its name
+         *
+         * @param name the name, e.g. month
+         * @return the grouping, or null if there is none with that name
+         */
+        public static Grouping parse(String name) {
+            for (Grouping grouping : values()) {
+                if (grouping.name.equalsIgnoreCase(name)) {
+                    return grouping;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * column names of a report row
+     */
+    public static final String[] COLUMNS = { "group", "projects", "open_projects", "total_fee", "amount_paid",
+            "outstanding", "finalised_outstanding" };
+
+    /**
+     * column labels displayed above a report table
+     */
+    public static final String[] LABELS = { "Group", "Projects", "Open", "Total Fee", "Amount Paid", "Outstanding",
+            "Owed On Finalised" };
+
+    /**
+     * default number of groups reported when grouping by person
+     */
+    public static final int DEFAULT_PERSON_LIMIT = 50;
+
+    /**
+     * number of rows fetched per round trip by the in-process scan
+     */
+    private static final int FETCH_SIZE = 10_000;
+
+    /**
+     * number of project number ranges scanned per thread (more ranges than
+     * threads keeps every thread busy if some ranges are denser)
+     */
+    private static final int RANGES_PER_THREAD = 8;
+
+    // aggregate columns of the GROUP BY query (after the group)
+    private static final String AGGREGATES = "COUNT(*), SUM(project_finalised = false), SUM(total_fee), "
+            + "SUM(amount_paid), SUM(GREATEST(total_fee - amount_paid, 0)), "
+            + "SUM(CASE WHEN project_finalised THEN GREATEST(total_fee - amount_paid, 0) ELSE 0 END)";
+
+    // SQL query streaming the columns the in-process aggregation needs from a
+    // range of project numbers (read through the primary key)
+    private static final String SCAN_PROJECTS = "SELECT building_type, architect_id, contractor_id, customer_id, "
+            + "project_deadline, total_fee, amount_paid, project_finalised FROM Projects "
+            + "WHERE project_number BETWEEN ? AND ?";
+
+    /**
+     * class for the running totals of one group, in cents
+     */
+    private static final class Totals {
+
+        // indexes of the amounts
+        static final int FEE = 0;
+        static final int PAID = 1;
+        static final int OUTSTANDING = 2;
+        static final int FINALISED_OUTSTANDING = 3;
+
+        // number of projects and unfinalised projects
+        long projects;
+        long open;
+
+        // sums in cents, and any part moved out of them to avoid overflow
+        final long[] cents = new long[4];
+        final BigDecimal[] spilled = { BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.ZERO };
+
+        /**
+         * method to add one project
+         *
+         * @param feeCents  the total fee in cents
+         * @param paidCents the amount paid in cents
+         * @param finalised true if the project is finalised
+         */
+        void add(long feeCents, long paidCents, boolean finalised) {
+            long outstanding = Math.max(feeCents - paidCents, 0);
+            projects++;
+            open += finalised ? 0 : 1;
+            add(FEE, feeCents);
+            add(PAID, paidCents);
+            add(OUTSTANDING, outstanding);
+            add(FINALISED_OUTSTANDING, finalised ? outstanding : 0);
+        }
+
+        /**
+         * method to add the totals of another group (from another thread)
+         *
+         * @param other the other totals
+         */
+        void merge(Totals other) {
+            projects += other.projects;
+            open += other.open;
+            for (int i = 0; i < cents.length; i++) {
+                add(i, other.cents[i]);
+                spilled[i] = spilled[i].add(other.spilled[i]);
+            }
+        }
+
+        /**
+         * method to get a sum in rands
+         *
+         * @param index the amount, e.g. FEE
+         * @return the exact sum
+         */
+        BigDecimal amount(int index) {
+            return spilled[index].add(BigDecimal.valueOf(cents[index], 2));
+        }
+
+        /**
+         * helper method to add to a sum, moving it into the BigDecimal part
+         * first if the long would overflow
+         *
+         * @param index the amount, e.g. FEE
+         * @param value the cents to add
+         */
+        private void add(int index, long value) {
+            long sum = cents[index] + value;
+            if (((cents[index] ^ sum) & (value ^ sum)) < 0) {
+                spilled[index] = spilled[index].add(BigDecimal.valueOf(cents[index], 2));
+                sum = value;
+            }
+            cents[index] = sum;
+        }
+    }
+
+    /**
+     * method to run a report from the command line arguments
+     * e.g. report building-type --in-process --threads 4
+     *
+     * @param pool the connection pool for executing queries
+     * @param args the command arguments: report grouping [--limit N]
+     *             [--in-process] [--threads N] [--compare] [--format f]
+     * @throws Exception if the report fails
+     */
+    public static void run(ConnectionPool pool, String[] args) throws Exception {
+        // get report options
+        Grouping grouping = args.length > 1 ? Grouping.parse(args[1]) : null;
+        int limit = grouping != null && grouping.isPerson() ? DEFAULT_PERSON_LIMIT : Integer.MAX_VALUE;
+        int threads = pool.getMaxSize();
+        boolean inProcess = false;
+        boolean compare = false;
+        ResultRenderer.Format format = ResultRenderer.Format.configured();
+        boolean valid = grouping != null;
+        for (int i = 2; i < args.length && valid; i++) {
+            if (args[i].equals("--limit") && i + 1 < args.length) {
+                limit = InputValidation.parseInteger(args[++i]);
+                valid = limit > 0;
+            } else if (args[i].equals("--threads") && i + 1 < args.length) {
+                threads = InputValidation.parseInteger(args[++i]);
+                valid = threads > 0;
+            } else if (args[i].equals("--format") && i + 1 < args.length) {
+                format = ResultRenderer.Format.parse(args[++i]);
+                valid = format != null;
+            } else if (args[i].equals("--in-process")) {
+                inProcess = true;
+            } else if (args[i].equals("--compare")) {
+                compare = true;
+            } else {
+                valid = false;
+            }
+        }
+        if (!valid) {
+            List<String> names = new ArrayList<>();
+            for (Grouping value : Grouping.values()) {
+                names.add(value.getName());
+            }
+            System.out.println("Usage: PoisePMS report <" + String.join("|", names) + "> [--limit N] "
+                    + "[--in-process] [--threads N] [--compare] [--format table|tsv|json]");
+            return;
+        }
+
+        // run the report the chosen way (timings go to standard error so the
+        // report itself can be piped)
+        long start = System.nanoTime();
+        List<Object[]> rows = inProcess ? reportInProcess(pool, grouping, limit, threads)
+                : report(pool, grouping, limit);
+        System.err.printf("%s report: %d group(s) in %.0f ms (%s).%n", grouping.getName(), rows.size(),
+                (System.nanoTime() - start) / 1e6, inProcess ? "in-process, " + threads + " threads" : "GROUP BY");
+
+        // check the other way gives the same figures
+        if (compare) {
+            start = System.nanoTime();
+            List<Object[]> other = inProcess ? report(pool, grouping, limit)
+                    : reportInProcess(pool, grouping, limit, threads);
+            System.err.printf("%s report: %d group(s) in %.0f ms (%s); results %s.%n", grouping.getName(),
+                    other.size(), (System.nanoTime() - start) / 1e6,
+                    inProcess ? "GROUP BY" : "in-process, " + threads + " threads",
+                    sameRows(rows, other) ? "match" : "DIFFER");
+        }
+
+        print(rows, format, grouping.getName() + " report:");
+    }
+
+    /**
+     * method to run a report with the grouping done by the database
+     *
+     * @param pool     the connection pool for executing queries
+     * @param grouping how to group the projects
+     * @param limit    the maximum number of groups (largest outstanding
+     *                 balance first for people, otherwise in name order)
+     * @return the report rows (group, projects, open projects, total fee,
+     *         amount paid, outstanding, owed on finalised projects)
+     * @throws SQLException if a database access error occurs
+     */
+    public static List<Object[]> report(ConnectionPool pool, Grouping grouping, int limit) throws SQLException {
+        String sql = "SELECT " + grouping.expression + " AS report_group, " + AGGREGATES + " FROM Projects";
+        if (grouping != Grouping.SUMMARY) {
+            sql += " GROUP BY report_group ORDER BY "
+                    + (grouping.isPerson() ? "5 DESC, report_group" : "report_group") + " LIMIT ?";
+        }
+
+        List<Object[]> rows = new ArrayList<>();
+        try (PooledConnection connection = pool.borrow()) {
+            PreparedStatement select = connection.prepare(sql);
+            if (grouping != Grouping.SUMMARY) {
+                select.setInt(1, limit);
+            }
+            try (ResultSet resultSet = select.executeQuery()) {
+                while (resultSet.next()) {
+                    rows.add(new Object[] { resultSet.getString(1), resultSet.getLong(2), resultSet.getLong(3),
+                            amount(resultSet.getBigDecimal(4)), amount(resultSet.getBigDecimal(5)),
+                            amount(resultSet.getBigDecimal(6)), amount(resultSet.getBigDecimal(7)) });
+                }
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * method to run a report with the grouping done in this process by
+     * several threads streaming the projects in parallel
+     *
+     * @param pool     the connection pool for executing queries
+     * @param grouping how to group the projects
+     * @param limit    the maximum number of groups (largest outstanding
+     *                 balance first for people, otherwise in name order)
+     * @param threads  the number of threads (each uses its own connection, so
+     *                 at most the pool size)
+     * @return the report rows, as report() returns them
+     * @throws SQLException if a database access error occurs
+     */
+    public static List<Object[]> reportInProcess(ConnectionPool pool, Grouping grouping, int limit, int threads)
+            throws SQLException {
+        // split the project numbers into ranges for the threads to claim
+        long[] bounds = projectNumberBounds(pool);
+        int workerCount = Math.max(1, Math.min(threads, pool.getMaxSize()));
+        int rangeCount = workerCount * RANGES_PER_THREAD;
+        long rangeSize = Math.max(1, (bounds[1] - bounds[0] + rangeCount) / rangeCount);
+
+        // next range to claim, the totals of each thread and the first error
+        AtomicInteger nextRange = new AtomicInteger();
+        List<Map<String, Totals>> partials = new ArrayList<>();
+        AtomicReference<SQLException> failure = new AtomicReference<>();
+
+        List<Thread> workers = new ArrayList<>(workerCount);
+        for (int i = 0; i < workerCount; i++) {
+            Map<String, Totals> totals = new HashMap<>();
+            partials.add(totals);
+            Thread thread = new Thread(() -> {
+                // a dedicated statement is used (rather than the statement
+                // cache) because its cursor settings only apply to this scan
+                try (PooledConnection connection = pool.borrow();
+                        PreparedStatement select = connection.getConnection().prepareStatement(SCAN_PROJECTS,
+                                ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                    select.setFetchSize(FETCH_SIZE);
+
+                    int range;
+                    while (failure.get() == null && (range = nextRange.getAndIncrement()) < rangeCount) {
+                        long from = bounds[0] + range * rangeSize;
+                        if (from > bounds[1]) {
+                            break;
+                        }
+                        select.setLong(1, from);
+                        select.setLong(2, Math.min(from + rangeSize - 1, bounds[1]));
+                        scan(select, grouping, totals);
+                    }
+                } catch (SQLException e) {
+                    failure.compareAndSet(null, e);
+                }
+            }, "report-" + i);
+            workers.add(thread);
+            thread.start();
+        }
+
+        // wait for the threads to finish
+        for (Thread thread : workers) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failure.compareAndSet(null, new SQLException("Interrupted while running the report."));
+            }
+        }
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+
+        // merge the totals of each thread
+        Map<String, Totals> merged = new HashMap<>();
+        for (Map<String, Totals> partial : partials) {
+            for (Map.Entry<String, Totals> entry : partial.entrySet()) {
+                merged.computeIfAbsent(entry.getKey(), key -> new Totals()).merge(entry.getValue());
+            }
+        }
+        if (grouping == Grouping.SUMMARY && merged.isEmpty()) {
+            // the summary has one row even with no projects (as in SQL)
+            merged.put("All projects", new Totals());
+        }
+
+        // order and limit the groups as the GROUP BY query does
+        List<Map.Entry<String, Totals>> groups = new ArrayList<>(merged.entrySet());
+        Comparator<Map.Entry<String, Totals>> byName = Map.Entry.comparingByKey(String.CASE_INSENSITIVE_ORDER);
+        groups.sort(grouping.isPerson()
+                ? Comparator.<Map.Entry<String, Totals>, BigDecimal>comparing(
+                        entry -> entry.getValue().amount(Totals.OUTSTANDING)).reversed().thenComparing(byName)
+                : byName);
+
+        List<Object[]> rows = new ArrayList<>();
+        for (Map.Entry<String, Totals> group : groups.subList(0, Math.min(limit, groups.size()))) {
+            Totals totals = group.getValue();
+            rows.add(new Object[] { group.getKey(), totals.projects, totals.open, totals.amount(Totals.FEE),
+                    totals.amount(Totals.PAID), totals.amount(Totals.OUTSTANDING),
+                    totals.amount(Totals.FINALISED_OUTSTANDING) });
+        }
+        return rows;
+    }
+
+    /**
+     * method to display report rows
+     *
+     * @param rows   the report rows
+     * @param format the output format
+     * @param title  the title displayed above a table
+     * @throws java.io.IOException if the output cannot be written
+     */
+    public static void print(List<Object[]> rows, ResultRenderer.Format format, String title)
+            throws java.io.IOException {
+        ResultRenderer renderer = ResultRenderer.toConsole(format, COLUMNS, LABELS);
+        renderer.start(title);
+        for (Object[] row : rows) {
+            renderer.add(row);
+        }
+        renderer.endBlock();
+    }
+
+    /**
+     * helper method to add the projects of one range to a thread's totals
+     *
+     * @param select   the scan statement with the range set
+     * @param grouping how to group the projects
+     * @param totals   the thread's totals by group
+     * @throws SQLException if a database access error occurs
+     */
+    private static void scan(PreparedStatement select, Grouping grouping, Map<String, Totals> totals)
+            throws SQLException {
+        try (ResultSet resultSet = select.executeQuery()) {
+            while (resultSet.next()) {
+                String group;
+                if (grouping == Grouping.SUMMARY) {
+                    group = "All projects";
+                } else if (grouping == Grouping.MONTH) {
+                    // YYYY-MM-DD -> YYYY-MM
+                    group = resultSet.getString(grouping.scanColumn).substring(0, 7);
+                } else {
+                    group = resultSet.getString(grouping.scanColumn);
+                }
+
+                Totals groupTotals = totals.get(group);
+                if (groupTotals == null) {
+                    groupTotals = new Totals();
+                    totals.put(group, groupTotals);
+                }
+                groupTotals.add(parseCents(resultSet.getString(6)), parseCents(resultSet.getString(7)),
+                        resultSet.getBoolean(8));
+            }
+        }
+    }
+
+    /**
+     * helper method to read the lowest and highest project numbers
+     *
+     * @param pool the connection pool for executing queries
+     * @return the lowest and highest project numbers (1 and 0 if there are no
+     *         projects)
+     * @throws SQLException if a database access error occurs
+     */
+    private static long[] projectNumberBounds(ConnectionPool pool) throws SQLException {
+        try (PooledConnection connection = pool.borrow();
+                ResultSet resultSet = connection.prepare(
+                        "SELECT MIN(project_number), MAX(project_number) FROM Projects").executeQuery()) {
+            resultSet.next();
+            long min = resultSet.getLong(1);
+            return resultSet.wasNull() ? new long[] { 1, 0 } : new long[] { min, resultSet.getLong(2) };
+        }
+    }
+
+    /**
+     * helper method to convert a DECIMAL(12, 2) value read as text to whole
+     * cents without creating a BigDecimal
+     *
+     * @param text the value, e.g. 1250000.50 or -3.5
+     * @return the value in cents
+     * @throws SQLException if the text is not a decimal number
+     */
+    static long parseCents(String text) throws SQLException {
+        long cents = 0;
+        int decimals = -1;
+        boolean negative = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c >= '0' && c <= '9') {
+                // digits beyond the second decimal place can only be 0 for the
+                // column type, so they are ignored
+                if (decimals < 2) {
+                    cents = cents * 10 + (c - '0');
+                    decimals += decimals >= 0 ? 1 : 0;
+                }
+            } else if (c == '.' && decimals < 0) {
+                decimals = 0;
+            } else if (c == '-' && i == 0) {
+                negative = true;
+            } else {
+                throw new SQLException("Unexpected amount '" + text + "'.");
+            }
+        }
+
+        // scale to two decimal places
+        for (int i = Math.max(decimals, 0); i < 2; i++) {
+            cents *= 10;
+        }
+        return negative ? -cents : cents;
+    }
+
+    /**
+     * helper method to give a SUM that may be NULL (no rows) two decimal places
+     *
+     * @param value the sum read from the database
+     * @return the amount (0.00 if NULL)
+     */
+    private static BigDecimal amount(BigDecimal value) {
+        return value == null ? BigDecimal.valueOf(0, 2) : value.setScale(2);
+    }
+
+    /**
+     * helper method to check if two reports hold the same figures
+     *
+     * @param first  the first report's rows
+     * @param second the second report's rows
+     * @return true if every row and value is equal
+     */
+    private static boolean sameRows(List<Object[]> first, List<Object[]> second) {
+        if (first.size() != second.size()) {
+            return false;
+        }
+        for (int i = 0; i < first.size(); i++) {
+            for (int column = 0; column < COLUMNS.length; column++) {
+                Object a = first.get(i)[column];
+                Object b = second.get(i)[column];
+                boolean equal = a instanceof BigDecimal && b instanceof BigDecimal
+                        ? ((BigDecimal) a).compareTo((BigDecimal) b) == 0
+                        : String.valueOf(a).equals(String.valueOf(b));
+                if (!equal) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,69 @@
+
+// import Java packages
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Collections;
+
+/**
+ * class for building and binding fixed-size IN (...) lists
+ *
+ * the number of placeholders is rounded up to a power of two (at most
+ * MAX_SIZE), so a handful of cached statements serve every list length;
+ * unused placeholders are set to null, which matches nothing
+ */
+public final class InList {
+
+    /**
+     * maximum number of values bound in one IN (...) list
+     */
+    public static final int MAX_SIZE = 512;
+
+    /**
+     * private constructor (the class only has static methods)
+     */
+    private InList() {
+    }
+
+    /**
+     * method to get the number of placeholders for a number of values
+     *
+     * @param count the number of values (at most MAX_SIZE)
+     * @return the number of placeholders
+     */
+    public static int slots(int count) {
+        int slots = Integer.highestOneBit(Math.max(count, 1));
+        return slots < count ? slots << 1 : slots;
+    }
+
+    /**
+     * method to build a list of placeholders
+     *
+     * @param slots the number of placeholders
+     * @return the list, e.g. (?, ?, ?, ?)
+     */
+    public static String placeholders(int slots) {
+        return "(" + String.join(", ", Collections.nCopies(slots, "?")) + ")";
+    }
+
+    /**
+     * method to bind a chunk of project numbers to an IN (...) list
+     *
+     * @param statement      the statement holding the list
+     * @param firstIndex     the parameter index of the first placeholder
+     * @param projectNumbers the project numbers
+     * @param from           the first project number to bind (inclusive)
+     * @param to             the last project number to bind (exclusive)
+     * @param slots          the number of placeholders
+     * @throws SQLException if a database access error occurs
+     */
+    public static void bind(PreparedStatement statement, int firstIndex, int[] projectNumbers, int from, int to,
+            int slots) throws SQLException {
+        for (int i = from; i < to; i++) {
+            statement.setInt(firstIndex + i - from, projectNumbers[i]);
+        }
+        for (int i = to - from; i < slots; i++) {
+            statement.setNull(firstIndex + i, Types.INTEGER);
+        }
+    }
+}
@@ -1,22 +1,137 @@
 
 // import Java packages
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.time.LocalDate;
-import java.time.format.DateTimeParseException;
-import java.util.Scanner;
+import java.time.Month;
+import java.time.Year;
+import java.util.BitSet;
+import java.util.InputMismatchException;
+import java.util.NoSuchElementException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * class for validating various types of user inputs
+ *
+ * all input is read from one buffered reader on the standard input stream, so
+ * the menu and the prompts never read ahead of each other
+ *
+ * when the standard input stream is not a console (e.g. a script piped into
+ * the programme) input is non-interactive: prompts are not displayed, and the
+ * first invalid entry or an early end of input stops the run with the line
+ * number (re-prompting would read the next line of the script as the answer)
+ *
+ * numbers and dates are checked and converted by hand-written parsers that
+ * neither allocate nor throw, so validating a long script stays cheap
+ *
+ * the methods taking a current value (used when editing a record) display it
+ * in brackets after the prompt and return it if the entry is left empty
  */
 public class InputValidation {
 
     /**
-     * create new scanner object to use throughout the
-     * InputValidation class to read user input for validation
-     * 
-     * scanner initialised with the standard input stream to
-     * facilitate interaction with the user via the console
+     * maximum number of project numbers accepted in one list entry
      */
-    private static Scanner scanner = new Scanner(System.in);
+    private static final int MAX_PROJECT_NUMBERS = 1_000_000;
+
+    /**
+     * pattern for one entry of a project number list: a number or a range of
+     * numbers, e.g. 12 or 10-20 (compiled once)
+     */
+    private static final Pattern PROJECT_NUMBER_ENTRY = Pattern
+            .compile("\\s*(\\d{1,9})\\s*(?:-\\s*(\\d{1,9})\\s*)?");
+
+    /**
+     * pattern separating the entries of a project number list
+     */
+    private static final Pattern LIST_SEPARATOR = Pattern.compile(",");
+
+    /**
+     * largest number of decimal digits converted to a double exactly (all
+     * integers up to 2^53 are exact doubles)
+     */
+    private static final int MAX_EXACT_DIGITS = 15;
+
+    // exact powers of ten used by parseDecimal
+    private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15 };
+
+    /**
+     * create one buffered reader to use throughout the programme to read
+     * user input for validation
+     *
+     * reader initialised with the standard input stream to facilitate
+     * interaction with the user via the console or a piped script
+     */
+    private static final BufferedReader reader = new BufferedReader(new InputStreamReader(System.in));
+
+    // true if prompts are displayed and invalid entries are asked for again
+    private static boolean interactive = System.console() != null;
+
+    // number of lines read so far (for error messages)
+    private static long lineNumber;
+
+    /**
+     * method to check if input is read interactively
+     *
+     * @return true if prompts are displayed and invalid entries are asked for
+     *         again
+     */
+    public static boolean isInteractive() {
+        return interactive;
+    }
+
+    /**
+     * method to choose interactive or non-interactive input (by default input
+     * is interactive when the standard input stream is a console)
+     *
+     * @param isInteractive true to display prompts and ask again after invalid
+     *                      entries, false to stop at the first invalid entry
+     */
+    public static void setInteractive(boolean isInteractive) {
+        interactive = isInteractive;
+    }
+
+    /**
+     * method to read a line of input after displaying a prompt (prompts are
+     * only displayed in interactive mode)
+     *
+     * @param prompt the prompt message to display to the user
+     * @return the line as entered, or null at the end of input
+     */
+    public static String readLine(String prompt) {
+        // print out prompt
+        if (interactive) {
+            System.out.print(prompt);
+        }
+
+        try {
+            // read user input
+            String line = reader.readLine();
+            if (line != null) {
+                lineNumber++;
+            }
+            return line;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * method to read an entry that may be left empty
+     * e.g. project name (named automatically when empty)
+     *
+     * @param prompt the prompt message to display to the user
+     * @return the input as entered
+     */
+    public static String validateOptionalStringInput(String prompt) {
+        return nextLine(prompt);
+    }
 
     /**
      * method to validate string data entries
@@ -25,25 +140,19 @@ public class InputValidation {
      * @return the validated string input
      */
     public static String validateStringInput(String prompt) {
-        // declare input variable
-        String strInput;
-
         // repeat prompt if input is null
         do {
-            // print out prompt
-            System.out.print(prompt);
-            // use scanner to read user input
-            strInput = scanner.nextLine().trim();
+            // read user input and remove whitespace
+            String strInput = nextLine(prompt).trim();
 
-            // check if entry is null
-            if (strInput.isEmpty()) {
-                // notify user
-                System.out.println("Please provide an input entry.");
+            // return entry if it is not empty
+            if (!strInput.isEmpty()) {
+                return strInput;
             }
-        } while (strInput.isEmpty());
 
-        // return validated input
-        return strInput;
+            // notify user
+            reject("Please provide an input entry.");
+        } while (true);
     }
 
     /**
@@ -53,32 +162,19 @@ public class InputValidation {
      * @return the validated double input
      */
     public static double validateDoubleInput(String prompt) {
-        // declare variable
-        String input;
-        // initialise variable
-        double doubleInput = 0;
-
-        // repeat prompt until a valid number is entered (break encountered)
+        // repeat prompt until a valid number is entered
         do {
-            // print out prompt
-            System.out.print(prompt);
-            // read user input and remove whitespace
-            input = scanner.nextLine().trim();
-
-            // try-catch block
-            try {
-                // check if input can be cast to a double data type
-                doubleInput = Double.parseDouble(input);
-                // exit do-while loop if casting succeeds
-                break;
-            } catch (NumberFormatException e) {
-                // notify user
-                System.out.println("Invalid input! Please enter a valid number.");
+            // read user input and check it is a decimal number
+            double doubleInput = parseDecimal(nextLine(prompt).trim());
+
+            // return number if parsing succeeds
+            if (!Double.isNaN(doubleInput)) {
+                return doubleInput;
             }
-        } while (true);
 
-        // return validated input of a double data type
-        return doubleInput;
+            // notify user
+            reject("Invalid input! Please enter a valid number.");
+        } while (true);
     }
 
     /**
@@ -88,25 +184,43 @@ public class InputValidation {
      * @return the validated integer input
      */
     public static int validateIntegerInput(String prompt) {
-        // declare variable
-        String intInput;
-
         // repeat prompt until user inputs a positive integer
         do {
-            // print out prompt
-            System.out.print(prompt);
-            // read user input and remove whitespace
-            intInput = scanner.nextLine().trim();
+            // read user input and check it is a positive integer
+            int intInput = parseInteger(nextLine(prompt).trim());
+
+            // return number if parsing succeeds
+            if (intInput >= 0) {
+                return intInput;
+            }
+
+            // notify user about invalid input
+            reject("Invalid input! Please enter a valid integer.");
+        } while (true);
+    }
+
+    /**
+     * method to validate a list of project numbers
+     * e.g. 12, or 3, 7, 9, or 10-20 (entries can be combined)
+     *
+     * @param prompt the prompt message to display to the user
+     * @return the distinct project numbers in ascending order
+     */
+    public static int[] validateProjectNumbersInput(String prompt) {
+        // repeat prompt until a valid list is entered
+        do {
+            // read user input and parse the list
+            int[] projectNumbers = parseProjectNumbers(nextLine(prompt).trim());
 
-            // check if input matches the pattern for a positive integer
-            if (!intInput.matches("\\d+")) {
-                // notify user about invalid input
-                System.out.println("Invalid input! Please enter a valid integer.");
+            // return list if every entry is valid
+            if (projectNumbers != null) {
+                return projectNumbers;
             }
-        } while (!intInput.matches("\\d+"));
 
-        // return validated input
-        return Integer.parseInt(intInput);
+            // notify user about invalid input
+            reject("Invalid input! Please enter project numbers separated by commas and/or ranges"
+                    + " such as 10-20 (at most " + MAX_PROJECT_NUMBERS + " numbers).");
+        } while (true);
     }
 
     /**
@@ -117,25 +231,19 @@ public class InputValidation {
      * @return the validated string-integer input
      */
     public static String validateStringNumberInput(String prompt) {
-        // declare variable
-        String input;
-
         // repeat prompt until user inputs a positive integer
         do {
-            // print out prompt
-            System.out.print(prompt);
             // read user input and remove whitespace
-            input = scanner.nextLine().trim();
+            String input = nextLine(prompt).trim();
 
-            // check if input matches the pattern for a positive integer
-            if (!input.matches("\\d+")) {
-                // notify user about invalid input
-                System.out.println("Invalid input! Please enter a valid integer.");
+            // check if input contains only digits
+            if (isDigits(input)) {
+                return input;
             }
-        } while (!input.matches("\\d+"));
 
-        // return validated input
-        return input;
+            // notify user about invalid input
+            reject("Invalid input! Please enter a valid integer.");
+        } while (true);
     }
 
     /**
@@ -145,29 +253,19 @@ public class InputValidation {
      * @return the validated date input
      */
     public static LocalDate validateDateInput(String prompt) {
-        // initialise variable
-        LocalDate dateInput = null;
-
-        // repeat prompt until user inputs a string
+        // repeat prompt until user inputs a valid date
         do {
-            System.out.print(prompt);
-            // get user input
-            String input = scanner.nextLine().trim();
-
-            // try-catch block
-            try {
-                // check if input can be cast into a LocalDate object
-                dateInput = LocalDate.parse(input);
-                // exit loop if parsing successful
-                break;
-            } catch (DateTimeParseException e) {
-                // notify user about invalid input
-                System.out.println("Invalid input! Please enter a valid date in YYYY-MM-DD format.");
+            // read user input and check it is a date in YYYY-MM-DD format
+            LocalDate dateInput = parseIsoDate(nextLine(prompt).trim());
+
+            // return date if parsing succeeds
+            if (dateInput != null) {
+                return dateInput;
             }
-        } while (true);
 
-        // return validated input
-        return dateInput;
+            // notify user about invalid input
+            reject("Invalid input! Please enter a valid date in YYYY-MM-DD format.");
+        } while (true);
     }
 
     /**
@@ -177,33 +275,376 @@ public class InputValidation {
      * @return the validated boolean input
      */
     public static boolean validateBooleanInput(String prompt) {
-        // initialise variable
-        boolean booleanInput = false;
-
         // repeat prompt until user inputs a boolean
         do {
-            System.out.print(prompt);
-            // get user input and covert to lowercase for case-insensitivity
-            String input = scanner.nextLine().trim().toLowerCase();
+            // get user input (compared case-insensitively)
+            String input = nextLine(prompt).trim();
 
             // if user inputs true
-            if (input.equals("true") || input.equals("t")) {
-                booleanInput = true;
-                // exit loop
-                break;
-            }
-            // if user very well
-            else if (input.equals("false") || input.equals("f")) {
-                booleanInput = false;
-                // exit loop
-                break;
-            } else {
-                // notify user about invalid input
-                System.out.println("Invalid input! Please enter 'true' (or 't') or 'false' (or 'f').");
+            if (input.equalsIgnoreCase("true") || input.equalsIgnoreCase("t")) {
+                return true;
+            }
+            // if user inputs false
+            if (input.equalsIgnoreCase("false") || input.equalsIgnoreCase("f")) {
+                return false;
             }
+
+            // notify user about invalid input
+            reject("Invalid input! Please enter 'true' (or 't') or 'false' (or 'f').");
         } while (true);
+    }
+
+    /**
+     * method to validate string data entries, keeping the current value if
+     * the entry is left empty
+     *
+     * @param prompt  the prompt message to display to the user
+     * @param current the current value (null if there is none, in which case
+     *                an entry is required)
+     * @return the validated string input, or the current value
+     */
+    public static String validateStringInput(String prompt, String current) {
+        if (current == null) {
+            return validateStringInput(prompt);
+        }
+        String strInput = nextLine(withCurrent(prompt, current)).trim();
+        return strInput.isEmpty() ? current : strInput;
+    }
 
-        // return validated input
-        return booleanInput;
+    /**
+     * method to validate string-integer data entries, keeping the current
+     * value if the entry is left empty
+     *
+     * @param prompt  the prompt message to display to the user
+     * @param current the current value (null if there is none)
+     * @return the validated string-integer input, or the current value
+     */
+    public static String validateStringNumberInput(String prompt, String current) {
+        if (current == null) {
+            return validateStringNumberInput(prompt);
+        }
+        // repeat prompt until user inputs a positive integer or nothing
+        do {
+            String input = nextLine(withCurrent(prompt, current)).trim();
+            if (input.isEmpty()) {
+                return current;
+            }
+            if (isDigits(input)) {
+                return input;
+            }
+
+            // notify user about invalid input
+            reject("Invalid input! Please enter a valid integer.");
+        } while (true);
+    }
+
+    /**
+     * method to validate double data entries, keeping the current value if
+     * the entry is left empty
+     *
+     * @param prompt  the prompt message to display to the user
+     * @param current the current value (displayed to two decimal places)
+     * @return the validated double input, or the current value
+     */
+    public static double validateDoubleInput(String prompt, double current) {
+        String shown = BigDecimal.valueOf(current).setScale(2, RoundingMode.HALF_UP).toPlainString();
+        // repeat prompt until a valid number is entered or nothing
+        do {
+            String input = nextLine(withCurrent(prompt, shown)).trim();
+            if (input.isEmpty()) {
+                return current;
+            }
+            double doubleInput = parseDecimal(input);
+            if (!Double.isNaN(doubleInput)) {
+                return doubleInput;
+            }
+
+            // notify user
+            reject("Invalid input! Please enter a valid number.");
+        } while (true);
+    }
+
+    /**
+     * method to validate date data entries, keeping the current value if the
+     * entry is left empty
+     *
+     * @param prompt  the prompt message to display to the user
+     * @param current the current value (null if there is none, in which case
+     *                an entry is required)
+     * @return the validated date input, or the current value
+     */
+    public static LocalDate validateDateInput(String prompt, LocalDate current) {
+        if (current == null) {
+            return validateDateInput(prompt);
+        }
+        // repeat prompt until user inputs a valid date or nothing
+        do {
+            String input = nextLine(withCurrent(prompt, current)).trim();
+            if (input.isEmpty()) {
+                return current;
+            }
+            LocalDate dateInput = parseIsoDate(input);
+            if (dateInput != null) {
+                return dateInput;
+            }
+
+            // notify user about invalid input
+            reject("Invalid input! Please enter a valid date in YYYY-MM-DD format.");
+        } while (true);
+    }
+
+    /**
+     * method to validate boolean data entries, keeping the current value if
+     * the entry is left empty
+     *
+     * @param prompt  the prompt message to display to the user
+     * @param current the current value
+     * @return the validated boolean input, or the current value
+     */
+    public static boolean validateBooleanInput(String prompt, boolean current) {
+        // repeat prompt until user inputs a boolean or nothing
+        do {
+            String input = nextLine(withCurrent(prompt, current)).trim();
+            if (input.isEmpty()) {
+                return current;
+            }
+            if (input.equalsIgnoreCase("true") || input.equalsIgnoreCase("t")) {
+                return true;
+            }
+            if (input.equalsIgnoreCase("false") || input.equalsIgnoreCase("f")) {
+                return false;
+            }
+
+            // notify user about invalid input
+            reject("Invalid input! Please enter 'true' (or 't') or 'false' (or 'f').");
+        } while (true);
+    }
+
+    /**
+     * method to check that text is made up of digits only
+     *
+     * @param text the text to check
+     * @return true if the text is not empty and contains only 0-9
+     */
+    public static boolean isDigits(CharSequence text) {
+        int length = text.length();
+        if (length == 0) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * method to convert a positive integer without throwing
+     *
+     * @param text the digits to convert
+     * @return the integer, or -1 if the text is not made up of digits or is
+     *         larger than Integer.MAX_VALUE
+     */
+    public static int parseInteger(CharSequence text) {
+        int length = text.length();
+        if (length == 0) {
+            return -1;
+        }
+        long value = 0;
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+            if (value > Integer.MAX_VALUE) {
+                return -1;
+            }
+        }
+        return (int) value;
+    }
+
+    /**
+     * method to convert a decimal number without throwing
+     * e.g. 1582000.10, -5, .5 (exponents, NaN and infinity are not accepted)
+     *
+     * @param text the number to convert
+     * @return the number, or NaN if the text is not a decimal number
+     */
+    public static double parseDecimal(CharSequence text) {
+        int length = text.length();
+        int i = 0;
+
+        // optional sign
+        boolean negative = false;
+        if (length > 0 && (text.charAt(0) == '-' || text.charAt(0) == '+')) {
+            negative = text.charAt(0) == '-';
+            i = 1;
+        }
+
+        // digits, with at most one decimal point
+        long mantissa = 0;
+        int digits = 0;
+        int significantDigits = 0;
+        int fractionDigits = 0;
+        boolean point = false;
+        for (; i < length; i++) {
+            char c = text.charAt(i);
+            if (c == '.' && !point) {
+                point = true;
+                continue;
+            }
+            if (c < '0' || c > '9') {
+                return Double.NaN;
+            }
+            digits++;
+
+            // leading zeros do not count towards the significant digits
+            if (significantDigits > 0 || c != '0') {
+                significantDigits++;
+            }
+            if (significantDigits <= MAX_EXACT_DIGITS) {
+                mantissa = mantissa * 10 + (c - '0');
+                fractionDigits += point ? 1 : 0;
+            }
+        }
+
+        // check there was at least one digit
+        if (digits == 0) {
+            return Double.NaN;
+        }
+
+        // too many digits for the exact conversion (the format has been checked,
+        // so Double does not throw)
+        if (significantDigits > MAX_EXACT_DIGITS || fractionDigits > MAX_EXACT_DIGITS) {
+            return Double.parseDouble(text.toString());
+        }
+
+        // both parts are exact doubles, so one division rounds correctly
+        double value = mantissa / POWERS_OF_TEN[fractionDigits];
+        return negative ? -value : value;
+    }
+
+    /**
+     * method to convert a date in YYYY-MM-DD format without throwing
+     *
+     * @param text the date to convert
+     * @return the date, or null if the text is not a valid date
+     */
+    public static LocalDate parseIsoDate(CharSequence text) {
+        // check the layout: four digits, dash, two digits, dash, two digits
+        if (text.length() != 10 || text.charAt(4) != '-' || text.charAt(7) != '-') {
+            return null;
+        }
+        int year = digits(text, 0, 4);
+        int month = digits(text, 5, 7);
+        int day = digits(text, 8, 10);
+
+        // check the month and the day within the month
+        if (year < 0 || month < 1 || month > 12 || day < 1
+                || day > Month.of(month).length(Year.isLeap(year))) {
+            return null;
+        }
+        return LocalDate.of(year, month, day);
+    }
+
+    /**
+     * helper method to parse a list of project numbers and ranges
+     *
+     * @param input the list, e.g. 3, 7, 10-20
+     * @return the distinct project numbers in ascending order, or null if the
+     *         list is invalid
+     */
+    static int[] parseProjectNumbers(String input) {
+        // mark each number entered (keeps them distinct and sorted)
+        BitSet projectNumbers = new BitSet();
+        int count = 0;
+
+        for (String entry : LIST_SEPARATOR.split(input, -1)) {
+            // check the entry is a number or a range of numbers
+            Matcher matcher = PROJECT_NUMBER_ENTRY.matcher(entry);
+            if (!matcher.matches()) {
+                return null;
+            }
+            int start = parseInteger(matcher.group(1));
+            int end = matcher.group(2) == null ? start : parseInteger(matcher.group(2));
+
+            // check the range is in order and the list is not too long
+            count += end - start + 1;
+            if (end < start || count > MAX_PROJECT_NUMBERS) {
+                return null;
+            }
+            projectNumbers.set(start, end + 1);
+        }
+        return projectNumbers.stream().toArray();
+    }
+
+    /**
+     * helper method to read the next line of input for a prompt
+     *
+     * @param prompt the prompt message to display to the user
+     * @return the line as entered
+     * @throws NoSuchElementException if the input has ended
+     */
+    private static String nextLine(String prompt) {
+        String line = readLine(prompt);
+        if (line == null) {
+            throw new NoSuchElementException("Unexpected end of input after line " + lineNumber + ".");
+        }
+        return line;
+    }
+
+    /**
+     * helper method to add the current value to a prompt
+     * e.g. "Email: " becomes "Email [x@y.com]: "
+     *
+     * @param prompt  the prompt message
+     * @param current the current value
+     * @return the prompt showing the current value
+     */
+    private static String withCurrent(String prompt, Object current) {
+        String trimmed = prompt.stripTrailing();
+        if (trimmed.endsWith(":")) {
+            return trimmed.substring(0, trimmed.length() - 1) + " [" + current + "]: ";
+        }
+        return trimmed + " [" + current + "] ";
+    }
+
+    /**
+     * method to report an invalid entry
+     *
+     * in interactive mode the message is displayed so the user can be asked
+     * again; otherwise the run stops
+     *
+     * @param message the message to display
+     * @throws InputMismatchException if input is not interactive
+     */
+    public static void reject(String message) {
+        if (!interactive) {
+            throw new InputMismatchException("Line " + lineNumber + ": " + message);
+        }
+        System.out.println(message);
+    }
+
+    /**
+     * helper method to convert a fixed run of digits
+     *
+     * @param text the text holding the digits
+     * @param from the index of the first digit (inclusive)
+     * @param to   the index of the last digit (exclusive)
+     * @return the number, or -1 if a character is not a digit
+     */
+    private static int digits(CharSequence text, int from, int to) {
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
     }
-}
\ No newline at end of file
+}
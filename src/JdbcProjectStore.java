@@ -0,0 +1,294 @@
+
+// import Java packages
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * class for keeping projects and people in the MySQL database
+ *
+ * every operation goes through the same ProjectRepository and ProjectDeleter
+ * methods the menu uses; people are read through a PersonCache, and the
+ * search index and deadline tracker are built on first use, all kept up to
+ * date with writes as ChangeListener objects until the store is closed
+ */
+public class JdbcProjectStore implements ProjectStore {
+
+    // connection pool (owned by the caller)
+    private final ConnectionPool pool;
+
+    // person records read by updates (kept up to date with writes)
+    private final PersonCache personCache = new PersonCache(10_000, 5 * 60_000);
+
+    // search index and deadline tracker (built when first needed)
+    private ProjectSearchIndex searchIndex;
+    private DeadlineTracker deadlineTracker;
+
+    /**
+     * constructor to keep projects and people in the database of a pool
+     *
+     * @param pool the connection pool for executing queries
+     */
+    public JdbcProjectStore(ConnectionPool pool) {
+        this.pool = pool;
+        ChangeNotifier.register(personCache);
+    }
+
+    /**
+     * method to describe the store
+     *
+     * @return a short description
+     */
+    @Override
+    public String describe() {
+        return "mysql";
+    }
+
+    /**
+     * method to count the projects
+     *
+     * @return the number of projects
+     * @throws SQLException if a database access error occurs
+     */
+    @Override
+    public int countProjects() throws SQLException {
+        try (PooledConnection connection = pool.borrow()) {
+            PreparedStatement count = connection.prepare("SELECT COUNT(*) FROM Projects");
+            try (ResultSet resultSet = count.executeQuery()) {
+                resultSet.next();
+                return resultSet.getInt(1);
+            }
+        }
+    }
+
+    /**
+     * method to insert several projects in one transaction with a single
+     * batched statement
+     *
+     * @param projects the projects to insert
+     * @throws SQLException if a database access error occurs (nothing is
+     *                      inserted)
+     */
+    @Override
+    public void insertProjects(List<Project> projects) throws SQLException {
+        ProjectRepository.insertProjects(pool, projects);
+    }
+
+    /**
+     * method to read a project
+     *
+     * @param projectNumber the number of the project
+     * @return the project, or null if it does not exist
+     * @throws SQLException if a database access error occurs
+     */
+    @Override
+    public Project findProject(int projectNumber) throws SQLException {
+        return ProjectRepository.findProject(pool, projectNumber);
+    }
+
+    /**
+     * method to write the changed columns of a project if its version is
+     * unchanged
+     *
+     * @param current the project as it was read
+     * @param project the new values
+     * @return the outcome of the update
+     * @throws SQLException if a database access error occurs
+     */
+    @Override
+    public ProjectRepository.UpdateResult updateProject(Project current, Project project) throws SQLException {
+        return ProjectRepository.updateProject(pool, current, project);
+    }
+
+    /**
+     * method to finalise several projects in one transaction
+     *
+     * @param projectNumbers the numbers of the projects
+     * @param completionDate the date the projects were completed
+     * @return the number of projects finalised
+     * @throws SQLException if a database access error occurs
+     */
+    @Override
+    public int finaliseProjects(int[] projectNumbers, LocalDate completionDate) throws SQLException {
+        return ProjectRepository.finaliseProjects(pool, projectNumbers, completionDate);
+    }
+
+    /**
+     * method to finalise every fully paid project past its deadline in one
+     * transaction
+     *
+     * @param today          the current date
+     * @param completionDate the date the projects were completed
+     * @return the number of projects finalised
+     * @throws SQLException if a database access error occurs
+     */
+    @Override
+    public int finaliseFullyPaidOverdue(LocalDate today, LocalDate completionDate) throws SQLException {
+        return ProjectRepository.finaliseFullyPaidOverdue(pool, today, completionDate);
+    }
+
+    /**
+     * method to read the projects to delete and their linked people
+     *
+     * @param projectNumbers the numbers of the projects to delete
+     * @return the plan
+     * @throws SQLException if a database access error occurs
+     */
+    @Override
+    public ProjectDeleter.DeletePlan planDelete(int... projectNumbers) throws SQLException {
+        return ProjectDeleter.plan(pool, projectNumbers);
+    }
+
+    /**
+     * method to delete the projects and chosen people of a plan in one
+     * transaction
+     *
+     * @param plan the plan returned by planDelete()
+     * @return the number of projects deleted
+     * @throws SQLException if a database access error occurs
+     */
+    @Override
+    public int delete(ProjectDeleter.DeletePlan plan) throws SQLException {
+        return ProjectDeleter.delete(pool, plan);
+    }
+
+    /**
+     * method to insert a new person
+     *
+     * @param personTable the table of the person
+     * @param values      the ID followed by the details
+     * @throws SQLException if a database access error occurs
+     */
+    @Override
+    public void insertPerson(PersonTable personTable, String... values) throws SQLException {
+        ProjectRepository.insertPerson(pool, personTable, values);
+    }
+
+    /**
+     * method to read a person through the person cache
+     *
+     * @param personTable the table of the person
+     * @param id          the ID of the person
+     * @return the person's values by column, or null if they do not exist
+     * @throws SQLException if a database access error occurs
+     */
+    @Override
+    public Map<String, Object> findPerson(PersonTable personTable, String id) throws SQLException {
+        return personCache.get(pool, personTable, id);
+    }
+
+    /**
+     * method to write the changed details of a person if their version is
+     * unchanged
+     *
+     * @param personTable the table of the person
+     * @param current     the person's values by column as read
+     * @param details     the new details
+     * @return the outcome of the update
+     * @throws SQLException if a database access error occurs
+     */
+    @Override
+    public ProjectRepository.UpdateResult updatePerson(PersonTable personTable, Map<String, Object> current,
+            String... details) throws SQLException {
+        return ProjectRepository.updatePerson(pool, personTable, current, details);
+    }
+
+    /**
+     * method to search the projects through the search index
+     *
+     * @param query the search text
+     * @param limit the maximum number of results
+     * @return the matching project numbers, best match first
+     * @throws SQLException if a database access error occurs
+     */
+    @Override
+    public List<Integer> search(String query, int limit) throws SQLException {
+        return searchIndex().search(query, limit);
+    }
+
+    /**
+     * method to get every unfinalised project from the deadline tracker
+     *
+     * @return the project numbers, earliest deadline first
+     * @throws SQLException if a database access error occurs
+     */
+    @Override
+    public List<Integer> incomplete() throws SQLException {
+        return deadlineTracker().incomplete();
+    }
+
+    /**
+     * method to get the projects overdue on a given day from the deadline
+     * tracker
+     *
+     * @param today the current date
+     * @return the project numbers, earliest deadline first
+     * @throws SQLException if a database access error occurs
+     */
+    @Override
+    public List<Integer> overdue(LocalDate today) throws SQLException {
+        return deadlineTracker().overdue(today);
+    }
+
+    /**
+     * method to get the projects due within a number of days from the deadline
+     * tracker
+     *
+     * @param today the current date
+     * @param days  the number of days to look ahead
+     * @return the project numbers, earliest deadline first
+     * @throws SQLException if a database access error occurs
+     */
+    @Override
+    public List<Integer> dueWithin(LocalDate today, int days) throws SQLException {
+        return deadlineTracker().dueWithin(today, days);
+    }
+
+    /**
+     * method to stop keeping the cache, index and tracker up to date (the
+     * pool is left open)
+     */
+    @Override
+    public void close() {
+        ChangeNotifier.unregister(personCache);
+        if (searchIndex != null) {
+            ChangeNotifier.unregister(searchIndex);
+        }
+        if (deadlineTracker != null) {
+            ChangeNotifier.unregister(deadlineTracker);
+        }
+    }
+
+    /**
+     * helper method to get the search index, building it on first use
+     *
+     * @return the search index
+     * @throws SQLException if a database access error occurs
+     */
+    private ProjectSearchIndex searchIndex() throws SQLException {
+        if (searchIndex == null) {
+            searchIndex = new ProjectSearchIndex();
+            searchIndex.build(pool);
+            ChangeNotifier.register(searchIndex);
+        }
+        return searchIndex;
+    }
+
+    /**
+     * helper method to get the deadline tracker, loading it on first use
+     *
+     * @return the deadline tracker
+     * @throws SQLException if a database access error occurs
+     */
+    private DeadlineTracker deadlineTracker() throws SQLException {
+        if (deadlineTracker == null) {
+            deadlineTracker = new DeadlineTracker();
+            deadlineTracker.load(pool);
+            ChangeNotifier.register(deadlineTracker);
+        }
+        return deadlineTracker;
+    }
+}
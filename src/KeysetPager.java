@@ -0,0 +1,272 @@
+
+// import Java packages
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * class for paging through a table with keyset pagination
+ *
+ * instead of skipping rows with OFFSET (which makes every page read all the
+ * rows before it), each page continues from the sort value and unique key of
+ * the last row shown, e.g.
+ * WHERE project_deadline > ? OR (project_deadline = ? AND project_number > ?)
+ * so the cost of fetching a page does not grow with how deep the page is,
+ * provided the sort column and key are indexed
+ *
+ * the previous page is read the same way in reverse order from the first row
+ * shown
+ */
+public class KeysetPager {
+
+    /**
+     * default number of rows per page
+     */
+    public static final int DEFAULT_PAGE_SIZE = 20;
+
+    /**
+     * maximum number of rows per page that can be chosen while browsing
+     */
+    public static final int MAX_PAGE_SIZE = 1000;
+
+    // table to page through
+    private final String table;
+    // columns to select, in display order
+    private final String columns;
+    // unique key column (also the tie-breaker for the sort column)
+    private final String keyColumn;
+    // column to sort by (null to sort by the key column only)
+    private final String sortColumn;
+    // number of rows per page
+    private final int pageSize;
+
+    // sort value and key of the first and last rows on the current page
+    private Object firstSortValue;
+    private Object firstKey;
+    private Object lastSortValue;
+    private Object lastKey;
+
+    // whether there are rows before and after the current page
+    private boolean hasPrevious;
+    private boolean hasNext;
+
+    // names of the selected columns (filled in by the first query)
+    private String[] columnNames;
+
+    /**
+     * constructor to create a pager for a table
+     *
+     * @param table      the table to page through
+     * @param columns    the comma-separated columns to select, in display order
+     *                   (must include the key and sort columns)
+     * @param keyColumn  the unique key column
+     * @param sortColumn the column to sort by, or null to sort by the key column
+     * @param pageSize   the number of rows per page
+     */
+    public KeysetPager(String table, String columns, String keyColumn, String sortColumn, int pageSize) {
+        // check that a page holds at least one row
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("Page size must be at least 1.");
+        }
+
+        this.table = table;
+        this.columns = columns;
+        this.keyColumn = keyColumn;
+        this.sortColumn = sortColumn == null || sortColumn.equals(keyColumn) ? null : sortColumn;
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * method to fetch the first page
+     *
+     * @param pool the connection pool for executing queries
+     * @return the rows on the first page
+     * @throws SQLException if a database access error occurs
+     */
+    public List<Object[]> first(ConnectionPool pool) throws SQLException {
+        List<Object[]> rows = fetch(pool, null, null, true);
+        hasPrevious = false;
+        hasNext = rows.size() > pageSize;
+        return keepPage(rows, true);
+    }
+
+    /**
+     * method to fetch the page after the current one
+     *
+     * @param pool the connection pool for executing queries
+     * @return the rows on the next page
+     * @throws SQLException if a database access error occurs
+     */
+    public List<Object[]> next(ConnectionPool pool) throws SQLException {
+        List<Object[]> rows = fetch(pool, lastSortValue, lastKey, true);
+        hasPrevious = true;
+        hasNext = rows.size() > pageSize;
+        return keepPage(rows, true);
+    }
+
+    /**
+     * method to fetch the page before the current one
+     *
+     * @param pool the connection pool for executing queries
+     * @return the rows on the previous page
+     * @throws SQLException if a database access error occurs
+     */
+    public List<Object[]> previous(ConnectionPool pool) throws SQLException {
+        List<Object[]> rows = fetch(pool, firstSortValue, firstKey, false);
+        hasNext = true;
+        hasPrevious = rows.size() > pageSize;
+        return keepPage(rows, false);
+    }
+
+    /**
+     * method to check if there are rows before the current page
+     *
+     * @return true if a previous page exists
+     */
+    public boolean hasPrevious() {
+        return hasPrevious;
+    }
+
+    /**
+     * method to check if there are rows after the current page
+     *
+     * @return true if a next page exists
+     */
+    public boolean hasNext() {
+        return hasNext;
+    }
+
+    /**
+     * method to get the names of the selected columns
+     *
+     * @return the column names in display order (null before the first fetch)
+     */
+    public String[] getColumnNames() {
+        return columnNames;
+    }
+
+    /**
+     * helper method to query one page (plus one extra row to tell whether
+     * another page follows)
+     *
+     * @param pool      the connection pool for executing queries
+     * @param sortValue the sort value to continue from (null for the first page)
+     * @param key       the key to continue from (null for the first page)
+     * @param forward   true to read forwards, false to read backwards
+     * @return the rows in query order
+     * @throws SQLException if a database access error occurs
+     */
+    private List<Object[]> fetch(ConnectionPool pool, Object sortValue, Object key, boolean forward)
+            throws SQLException {
+        // build query for the direction of travel
+        String comparison = forward ? " > " : " < ";
+        String direction = forward ? " ASC" : " DESC";
+        StringBuilder sql = new StringBuilder("SELECT ").append(columns).append(" FROM ").append(table);
+
+        if (key != null) {
+            if (sortColumn == null) {
+                sql.append(" WHERE ").append(keyColumn).append(comparison).append('?');
+            } else {
+                sql.append(" WHERE ").append(sortColumn).append(comparison).append("? OR (").append(sortColumn)
+                        .append(" = ? AND ").append(keyColumn).append(comparison).append("?)");
+            }
+        }
+
+        sql.append(" ORDER BY ");
+        if (sortColumn != null) {
+            sql.append(sortColumn).append(direction).append(", ");
+        }
+        sql.append(keyColumn).append(direction).append(" LIMIT ?");
+
+        try (PooledConnection connection = pool.borrow()) {
+            PreparedStatement select = connection.prepare(sql.toString());
+
+            // set the position to continue from
+            int index = 1;
+            if (key != null) {
+                if (sortColumn != null) {
+                    select.setObject(index++, sortValue);
+                    select.setObject(index++, sortValue);
+                }
+                select.setObject(index++, key);
+            }
+            select.setInt(index, pageSize + 1);
+
+            try (ResultSet resultSet = select.executeQuery()) {
+                // read column names once
+                ResultSetMetaData metaData = resultSet.getMetaData();
+                int columnCount = metaData.getColumnCount();
+                if (columnNames == null) {
+                    columnNames = new String[columnCount];
+                    for (int i = 0; i < columnCount; i++) {
+                        columnNames[i] = metaData.getColumnLabel(i + 1);
+                    }
+                }
+
+                // copy rows (at most one page plus one)
+                List<Object[]> rows = new ArrayList<>(pageSize + 1);
+                while (resultSet.next()) {
+                    Object[] row = new Object[columnCount];
+                    for (int i = 0; i < columnCount; i++) {
+                        row[i] = resultSet.getObject(i + 1);
+                    }
+                    rows.add(row);
+                }
+                return rows;
+            }
+        }
+    }
+
+    /**
+     * helper method to trim the extra row, put the page in display order and
+     * remember its first and last positions
+     *
+     * @param rows    the rows in query order
+     * @param forward true if the rows were read forwards
+     * @return the rows on the page in display order
+     */
+    private List<Object[]> keepPage(List<Object[]> rows, boolean forward) {
+        // drop the row that was only read to check for another page
+        if (rows.size() > pageSize) {
+            rows.remove(rows.size() - 1);
+        }
+
+        // rows read backwards are shown in ascending order
+        if (!forward) {
+            Collections.reverse(rows);
+        }
+
+        // remember where the page starts and ends (an empty page keeps the old
+        // positions so the user can navigate back)
+        if (!rows.isEmpty()) {
+            int keyIndex = columnIndex(keyColumn);
+            int sortIndex = sortColumn == null ? keyIndex : columnIndex(sortColumn);
+            Object[] first = rows.get(0);
+            Object[] last = rows.get(rows.size() - 1);
+            firstKey = first[keyIndex];
+            firstSortValue = first[sortIndex];
+            lastKey = last[keyIndex];
+            lastSortValue = last[sortIndex];
+        }
+        return rows;
+    }
+
+    /**
+     * helper method to find the position of a column in the selected columns
+     *
+     * @param column the column name
+     * @return the zero-based column index
+     */
+    private int columnIndex(String column) {
+        for (int i = 0; i < columnNames.length; i++) {
+            if (columnNames[i].equalsIgnoreCase(column)) {
+                return i;
+            }
+        }
+        throw new IllegalStateException("Column " + column + " must be selected for paging.");
+    }
+}
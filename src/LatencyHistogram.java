@@ -0,0 +1,142 @@
+
+// import Java packages
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * class for recording latencies from many threads and reading percentiles
+ *
+ * values are counted in log-linear buckets (eight per power of two, so a
+ * percentile is reported to within 12.5% of the true value) held in an
+ * AtomicLongArray, so recording never blocks and memory use stays fixed
+ * however many values are recorded
+ */
+public class LatencyHistogram {
+
+    /**
+     * number of bits of each value kept below its leading bit
+     */
+    private static final int SUB_BUCKET_BITS = 3;
+
+    /**
+     * number of buckets per power of two
+     */
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * number of buckets needed for any positive long value
+     */
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    // number of values in each bucket
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    // number of values, their total and the largest value
+    private final LongAdder count = new LongAdder();
+    private final LongAdder total = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * method to record a value
+     *
+     * @param nanos the latency in nanoseconds (negative values count as 0)
+     */
+    public void record(long nanos) {
+        long value = Math.max(nanos, 0);
+        counts.incrementAndGet(bucket(value));
+        count.increment();
+        total.add(value);
+        max.accumulateAndGet(value, Math::max);
+    }
+
+    /**
+     * method to get the number of values recorded
+     *
+     * @return the number of values
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * method to get the mean of the values recorded
+     *
+     * @return the mean in nanoseconds (0 if nothing was recorded)
+     */
+    public double getMean() {
+        long values = count.sum();
+        return values == 0 ? 0 : (double) total.sum() / values;
+    }
+
+    /**
+     * method to get the largest value recorded
+     *
+     * @return the largest value in nanoseconds
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * method to get a percentile of the values recorded
+     *
+     * @param percent the percentile (0-100)
+     * @return the upper bound of the bucket holding the percentile, in
+     *         nanoseconds (never more than the largest value, 0 if nothing
+     *         was recorded)
+     */
+    public long getPercentile(double percent) {
+        // read the counts once (values recorded meanwhile may be missed)
+        long[] snapshot = new long[BUCKETS];
+        long values = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            values += snapshot[i];
+        }
+        if (values == 0) {
+            return 0;
+        }
+
+        // find the bucket holding the value at the percentile's rank
+        long rank = Math.max(1, (long) Math.ceil(percent / 100 * values));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(upperBound(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * helper method to get the bucket of a value
+     *
+     * @param value the value (not negative)
+     * @return the bucket index
+     */
+    private static int bucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        // the leading bit picks the power of two, the next bits the sub-bucket
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) - SUB_BUCKETS);
+    }
+
+    /**
+     * helper method to get the largest value counted in a bucket
+     *
+     * @param bucket the bucket index
+     * @return the largest value
+     */
+    private static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long next = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS + 1) << shift;
+        return next - 1;
+    }
+}
@@ -0,0 +1,373 @@
+
+// import Java packages
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * class for a bounded read-through cache of architect, contractor and
+ * customer records
+ *
+ * records are read from the database on a miss and kept in least recently
+ * used order; once the cache is full the least recently used record is
+ * evicted, and records older than the time to live (if set) are read again
+ *
+ * the cache is registered as a ChangeListener, so every add, update and
+ * delete of a person drops that person's record; the time to live covers
+ * changes made outside this programme (e.g. by the import command)
+ *
+ * IDs compare without case in the database, so they are cached and looked up
+ * without case as well (an ID read as "A1" and invalidated as "a1" is the same
+ * record)
+ */
+public class PersonCache implements ChangeListener {
+
+    // maximum number of cached records (across all tables)
+    private final int maxEntries;
+
+    // time to live of a cached record in nanoseconds (0 for no limit)
+    private final long ttlNanos;
+
+    // cached records by table and ID, in least recently used order
+    private final LinkedHashMap<String, Entry> entries;
+
+    // incremented on every invalidation, so a record read before an
+    // invalidation is not cached after it
+    private long generation;
+
+    // counters
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long expirations;
+    private long invalidations;
+
+    /**
+     * constructor to create a cache
+     *
+     * @param maxEntries the maximum number of cached records
+     * @param ttlMillis  the time to live of a record in milliseconds (0 for no
+     *                   limit)
+     */
+    public PersonCache(int maxEntries, long ttlMillis) {
+        // check that the cache can hold at least one record
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("Cache size must be at least 1.");
+        }
+
+        this.maxEntries = maxEntries;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        // access-ordered map that evicts the least recently used record
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() > PersonCache.this.maxEntries) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * method to get a person record, reading it from the database on a miss
+     *
+     * @param pool        the connection pool for executing queries
+     * @param personTable the table of the person
+     * @param id          the ID of the person
+     * @return the record's values by column name, or null if there is no such
+     *         person
+     * @throws SQLException if a database access error occurs
+     */
+    public Map<String, Object> get(ConnectionPool pool, PersonTable personTable, String id) throws SQLException {
+        // IDs compare without case in the database, so take whichever record matched
+        Map<String, Map<String, Object>> found = getAll(pool, personTable, Collections.singletonList(id));
+        return found.isEmpty() ? null : found.values().iterator().next();
+    }
+
+    /**
+     * method to get several person records from one table, reading all misses
+     * with a single IN (...) query
+     *
+     * @param pool        the connection pool for executing queries
+     * @param personTable the table of the people
+     * @param ids         the IDs of the people (nulls are ignored)
+     * @return the records found, by ID (looked up without case)
+     * @throws SQLException if a database access error occurs
+     */
+    public Map<String, Map<String, Object>> getAll(ConnectionPool pool, PersonTable personTable,
+            Collection<String> ids) throws SQLException {
+        Map<String, Map<String, Object>> found = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        Set<String> missing = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+        long startGeneration;
+
+        // serve what is cached
+        synchronized (this) {
+            long now = System.nanoTime();
+            for (String id : ids) {
+                if (id == null || found.containsKey(id) || missing.contains(id)) {
+                    continue;
+                }
+
+                String key = key(personTable, id);
+                Entry entry = entries.get(key);
+                if (entry != null && ttlNanos > 0 && now - entry.loadedAt > ttlNanos) {
+                    // drop records older than the time to live
+                    entries.remove(key);
+                    expirations++;
+                    entry = null;
+                }
+
+                if (entry != null) {
+                    hits++;
+                    found.put(id, entry.values);
+                } else {
+                    misses++;
+                    missing.add(id);
+                }
+            }
+            startGeneration = generation;
+        }
+
+        // read the misses from the database
+        if (!missing.isEmpty()) {
+            List<Map<String, Object>> loaded = load(pool, personTable, missing);
+
+            synchronized (this) {
+                // only cache the records if nothing was invalidated meanwhile
+                boolean current = generation == startGeneration;
+                long now = System.nanoTime();
+                for (Map<String, Object> values : loaded) {
+                    String id = String.valueOf(values.get(personTable.getIdColumn()));
+                    found.put(id, values);
+                    if (current) {
+                        entries.put(key(personTable, id), new Entry(values, now));
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * method to drop a person's record from the cache
+     *
+     * @param personTable the table of the person
+     * @param id          the ID of the person
+     */
+    public synchronized void invalidate(PersonTable personTable, String id) {
+        generation++;
+        invalidations++;
+        entries.remove(key(personTable, id));
+    }
+
+    /**
+     * method to drop every cached record
+     */
+    public synchronized void clear() {
+        generation++;
+        invalidations++;
+        entries.clear();
+    }
+
+    /**
+     * method to get the number of lookups served from the cache
+     *
+     * @return the number of hits
+     */
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    /**
+     * method to get the number of lookups read from the database
+     *
+     * @return the number of misses (including expired records)
+     */
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    /**
+     * method to get the number of records evicted to stay within the size limit
+     *
+     * @return the number of evictions
+     */
+    public synchronized long getEvictionCount() {
+        return evictions;
+    }
+
+    /**
+     * method to display the cache metrics
+     */
+    public synchronized void printMetrics() {
+        long lookups = hits + misses;
+        System.out.println("Person Cache Metrics:");
+        System.out.println("Cached Records: " + entries.size() + " (maximum " + maxEntries + ")");
+        System.out.printf("Hit Rate: %.1f%% (%d hits, %d misses)%n", lookups == 0 ? 0 : hits * 100.0 / lookups,
+                hits, misses);
+        System.out.println("Evictions: " + evictions);
+        System.out.println("Expirations: " + expirations);
+        System.out.println("Invalidations: " + invalidations);
+    }
+
+    /**
+     * method called after a project has been added or changed (people records
+     * are not affected)
+     *
+     * @param pool          the connection pool for executing queries
+     * @param projectNumber the number of the project that changed
+     */
+    @Override
+    public void projectChanged(ConnectionPool pool, int projectNumber) {
+        // nothing cached for projects
+    }
+
+    /**
+     * method called after a project has been deleted (its people are reported
+     * separately through personChanged)
+     *
+     * @param projectNumber the number of the deleted project
+     */
+    @Override
+    public void projectDeleted(int projectNumber) {
+        // nothing cached for projects
+    }
+
+    /**
+     * method called after a project has been finalised (people are not
+     * affected)
+     *
+     * @param projectNumber the number of the finalised project
+     */
+    @Override
+    public void projectFinalised(int projectNumber) {
+        // nothing cached for projects
+    }
+
+    /**
+     * method to drop a person's record after it has been added, changed or
+     * deleted
+     *
+     * @param pool   the connection pool for executing queries
+     * @param column the Projects column that links to the person
+     * @param id     the ID of the person
+     */
+    @Override
+    public void personChanged(ConnectionPool pool, String column, String id) {
+        PersonTable personTable = PersonTable.fromIdColumn(column);
+        if (personTable != null) {
+            invalidate(personTable, id);
+        }
+    }
+
+    /**
+     * method to drop a deleted person from the cache
+     *
+     * @param column the Projects column that linked to the person
+     * @param id     the ID of the deleted person
+     */
+    @Override
+    public void personDeleted(String column, String id) {
+        personChanged(null, column, id);
+    }
+
+    /**
+     * helper method to read person records with IN (...) queries of at most
+     * InList.MAX_SIZE IDs each
+     *
+     * @param pool        the connection pool for executing queries
+     * @param personTable the table of the people
+     * @param ids         the IDs to read
+     * @return the records found
+     * @throws SQLException if a database access error occurs
+     */
+    private static List<Map<String, Object>> load(ConnectionPool pool, PersonTable personTable, Set<String> ids)
+            throws SQLException {
+        List<String> idList = new ArrayList<>(ids);
+        List<Map<String, Object>> records = new ArrayList<>(ids.size());
+        try (PooledConnection connection = pool.borrow()) {
+            for (int from = 0; from < idList.size(); from += InList.MAX_SIZE) {
+                int to = Math.min(from + InList.MAX_SIZE, idList.size());
+
+                // round the number of placeholders up to a power of two so a
+                // handful of cached statements serve every chunk size (unused
+                // ones are set to null, which matches nothing)
+                int slots = InList.slots(to - from);
+                PreparedStatement select = connection.prepare("SELECT * FROM " + personTable.getTable()
+                        + " WHERE " + personTable.getIdColumn() + " IN " + InList.placeholders(slots));
+                int index = 1;
+                for (String id : idList.subList(from, to)) {
+                    select.setString(index++, id);
+                }
+                while (index <= slots) {
+                    select.setNull(index++, Types.VARCHAR);
+                }
+
+                try (ResultSet resultSet = select.executeQuery()) {
+                    // read column names once per chunk
+                    ResultSetMetaData metaData = resultSet.getMetaData();
+                    int columnCount = metaData.getColumnCount();
+
+                    // copy each record into a read-only map
+                    while (resultSet.next()) {
+                        Map<String, Object> values = new LinkedHashMap<>();
+                        for (int i = 1; i <= columnCount; i++) {
+                            values.put(metaData.getColumnLabel(i), resultSet.getObject(i));
+                        }
+                        records.add(Collections.unmodifiableMap(values));
+                    }
+                }
+            }
+        }
+        return records;
+    }
+
+    /**
+     * helper method to build the cache key of a record
+     *
+     * @param personTable the table of the person
+     * @param id          the ID of the person
+     * @return the cache key
+     */
+    private static String key(PersonTable personTable, String id) {
+        return personTable.ordinal() + ":" + id.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * class for a cached record and the time it was read
+     */
+    private static final class Entry {
+
+        // record values by column name
+        final Map<String, Object> values;
+
+        // time the record was read (System.nanoTime())
+        final long loadedAt;
+
+        /**
+         * constructor to create a cache entry
+         *
+         * @param values   the record values
+         * @param loadedAt the time the record was read
+         */
+        Entry(Map<String, Object> values, long loadedAt) {
+            this.values = values;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
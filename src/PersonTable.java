@@ -0,0 +1,83 @@
+
+/**
+ * enum for the tables holding the people linked to projects
+ *
+ * each table has an ID column (also the column linking it from Projects)
+ * followed by the person's details in display order
+ */
+public enum PersonTable {
+    ARCHITECTS("Architects", "architect_id", "architect_name", "architect_tel", "architect_email",
+            "architect_address"),
+    CONTRACTORS("Contractors", "contractor_id", "contractor_name", "contractor_tel", "contractor_email",
+            "contractor_address"),
+    CUSTOMERS("Customers", "customer_id", "customer_fname", "customer_surname", "customer_tel", "customer_email",
+            "customer_address");
+
+    // table name
+    private final String table;
+
+    // ID column followed by the detail columns
+    private final String[] columns;
+
+    /**
+     * constructor to describe a person table
+     *
+     * @param table   the table name
+     * @param columns the ID column followed by the detail columns
+     */
+    PersonTable(String table, String... columns) {
+        this.table = table;
+        this.columns = columns;
+    }
+
+    /**
+     * method to get the table name
+     *
+     * @return the table name
+     */
+    public String getTable() {
+        return table;
+    }
+
+    /**
+     * method to get the ID column
+     *
+     * @return the ID column name
+     */
+    public String getIdColumn() {
+        return columns[0];
+    }
+
+    /**
+     * method to get the role of the people in the table
+     *
+     * @return the role, e.g. architect
+     */
+    public String getRole() {
+        return columns[0].substring(0, columns[0].length() - "_id".length());
+    }
+
+    /**
+     * method to get the columns of the table
+     *
+     * @return the ID column followed by the detail columns (a copy)
+     */
+    public String[] getColumns() {
+        return columns.clone();
+    }
+
+    /**
+     * method to find the table with a given ID column
+     *
+     * @param idColumn the ID column, e.g. customer_id
+     * @return the matching table, or null if there is none
+     */
+    public static PersonTable fromIdColumn(String idColumn) {
+        for (PersonTable personTable : values()) {
+            if (personTable.getIdColumn().equals(idColumn)) {
+                return personTable;
+            }
+        }
+        return null;
+    }
+}
@@ -1,14 +1,17 @@
 
 // import Java packages
-import java.sql.Connection;
-import java.sql.Date;
-import java.sql.DriverManager;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
 import java.time.LocalDate;
-import java.util.InputMismatchException;
-import java.util.Scanner;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
 
 /*
  * refer to the 'potential-improvements.txt' file in the 'docs' directory
@@ -25,142 +28,310 @@ import java.util.Scanner;
  */
 public class PoisePMS {
 
+    /**
+     * JDBC url of the PoisePMS database, localhost unless -Dpoisepms.url is set
+     * (batched statements are rewritten into multi-row inserts by the driver and
+     * statements with a fetch size read their results through a server-side
+     * cursor)
+     */
+    private static final String DATABASE_URL = System.getProperty("poisepms.url",
+            "jdbc:mysql://localhost:3306/PoisePMS?useSSL=false&rewriteBatchedStatements=true&useCursorFetch=true");
+
+    /**
+     * MySQL Server username, from -Dpoisepms.user or the POISEPMS_USER
+     * environment variable (there is no default)
+     */
+    private static final String DATABASE_USERNAME = setting("poisepms.user", "POISEPMS_USER");
+
+    /**
+     * MySQL Server password, from -Dpoisepms.password or the
+     * POISEPMS_PASSWORD environment variable (which keeps it out of the
+     * process list; there is no default)
+     */
+    private static final String DATABASE_PASSWORD = setting("poisepms.password", "POISEPMS_PASSWORD");
+
+    /**
+     * maximum number of open database connections (enough for the dashboard
+     * queries, the search index build and the deadline tracker load to run
+     * at once at startup)
+     */
+    private static final int POOL_SIZE = 10;
+
+    /**
+     * maximum number of prepared statements cached per connection
+     */
+    private static final int STATEMENT_CACHE_SIZE = 64;
+
+    /**
+     * maximum time to wait for a free database connection (milliseconds)
+     */
+    private static final long POOL_TIMEOUT_MILLIS = 10_000;
+
+    /**
+     * maximum number of architect, contractor and customer records cached
+     */
+    private static final int PERSON_CACHE_SIZE = 10_000;
+
+    /**
+     * time a cached person record is trusted before it is read again
+     * (milliseconds, catches changes made outside this programme)
+     */
+    private static final long PERSON_CACHE_TTL_MILLIS = 5 * 60_000;
+
+    /**
+     * number of projects read per query when displaying a list of projects
+     */
+    private static final int PROJECT_BATCH_SIZE = 50;
+
+    /**
+     * number of recorded changes displayed when viewing the change history
+     */
+    private static final int CHANGE_HISTORY_LIMIT = 50;
+
+    /**
+     * number of rows displayed per page when viewing a table
+     */
+    private static int pageSize = KeysetPager.DEFAULT_PAGE_SIZE;
+
+    /**
+     * format used to display lists of records (table by default, or set at
+     * startup with -Dpoisepms.format=tsv or json)
+     */
+    private static ResultRenderer.Format outputFormat = ResultRenderer.Format.configured();
+
+    /**
+     * column labels displayed above a table of projects
+     */
+    static final String[] PROJECT_LABELS = { "Project Number", "Project Name", "Building Type",
+            "Physical Address", "ERF Number", "Total Fee", "Amount Paid", "Deadline", "Finalised",
+            "Completion Date", "Architect ID", "Contractor ID", "Customer ID" };
+
+    /**
+     * in-memory index used to search projects (built at startup)
+     */
+    private static final ProjectSearchIndex searchIndex = new ProjectSearchIndex();
+
+    /**
+     * read-through cache of architect, contractor and customer records
+     */
+    private static final PersonCache personCache = new PersonCache(PERSON_CACHE_SIZE, PERSON_CACHE_TTL_MILLIS);
+
+    /**
+     * deadline-ordered index of unfinalised projects (loaded at startup)
+     */
+    private static final DeadlineTracker deadlineTracker = new DeadlineTracker();
+
     /**
      * main method to run the Poised Project Management System
      * connect to the PoisePMS database
+     * run the command given on the command line, or otherwise
      * present a menu to the user
      * execute actions based on the user's input
      * 
-     * @param args command-line arguments (not used)
+     * @param args command-line arguments (optional command, e.g. import
+     *             projects.csv)
      * @throws Exception if an error occurs during database connection or SQL
      *                   operations
      */
     public static void main(String[] args) throws Exception {
-        // try-catch block for error handling
-        try {
-            // connect to PoisePMS database via jdbc:mysql: channel on localhost
-            Connection connection = DriverManager.getConnection(
-                    // database url
-                    "jdbc:mysql://localhost:3306/PoisePMS?useSSL=false",
-                    // username
-                    "otheruser",
-                    // password
-                    "swordfish");
+        // set if a command fails or piped input stops part way through a task
+        boolean failed = false;
+
+        // run against the embedded file store instead if it was chosen (no
+        // database server is needed)
+        Path storeDirectory = FileProjectStore.configuredDirectory();
+        if (storeDirectory != null) {
+            if (!runOffline(storeDirectory, args)) {
+                System.exit(1);
+            }
+            return;
+        }
+
+        // the credentials must be given (only the history command, which reads
+        // the change journal, runs without them)
+        if ((DATABASE_USERNAME == null || DATABASE_PASSWORD == null)
+                && !(args.length > 0 && args[0].equals("history"))) {
+            System.out.println("Give the MySQL Server username and password with -Dpoisepms.user=<username> and "
+                    + "-Dpoisepms.password=<password> (or the POISEPMS_USER and POISEPMS_PASSWORD environment "
+                    + "variables), or run the batch commands without the database with -Dpoisepms.store=file.");
+            System.exit(1);
+        }
+
+        // create a pool of connections to the PoisePMS database via jdbc:mysql:
+        // channel on localhost (connections are opened when first needed)
+        try (ConnectionPool pool = new ConnectionPool(DATABASE_URL, DATABASE_USERNAME, DATABASE_PASSWORD,
+                POOL_SIZE, STATEMENT_CACHE_SIZE, POOL_TIMEOUT_MILLIS)) {
+            // bring the schema up to date first (the migrate command does this
+            // itself, so it can time the queries before and after, and the
+            // history command only reads the change journal)
+            boolean command = args.length > 0;
+            if (!command || !(args[0].equals("migrate") || args[0].equals("history"))) {
+                SchemaMigrations.migrate(pool);
+            }
+
+            // record the writes made from here on in the change journal
+            Path journalDirectory = ChangeJournal.configuredDirectory();
+            if (journalDirectory != null && (!command || !args[0].equals("history"))) {
+                ChangeJournal.open(journalDirectory, ChangeJournal.DEFAULT_SEGMENT_SIZE);
+            }
 
-            // create a direct line to the database for running queries
-            Statement statement = connection.createStatement();
+            // run a non-interactive command instead of the menu if one was given
+            if (args.length > 0) {
+                failed = !runCommand(pool, args);
+                return;
+            }
+
+            // fill the summary tables if they were added to an existing database
+            // (before the dashboard reads them)
+            if (ProjectSummary.initialise(pool)) {
+                System.out.println("Project summary tables filled from the existing projects.");
+            }
+
+            // build the project search index and load the deadlines of
+            // unfinalised projects on their own threads, showing the dashboard
+            // (not shown for piped input) while they load
+            DataRefresher refresher = new DataRefresher(pool, searchIndex, deadlineTracker);
+            Dashboard.Timed<Integer> indexed;
+            Dashboard.Timed<Integer> tracked;
+            ExecutorService executor = Dashboard.newExecutor(2);
+            try {
+                CompletableFuture<Dashboard.Timed<Integer>> index = Dashboard.start(executor, "index",
+                        () -> searchIndex.build(pool));
+                CompletableFuture<Dashboard.Timed<Integer>> tracker = Dashboard.start(executor, "tracker",
+                        () -> deadlineTracker.load(pool));
+                if (InputValidation.isInteractive()) {
+                    Dashboard.load(pool, LocalDate.now(), Dashboard.DEFAULT_ROWS).print(outputFormat);
+                    System.out.println();
+                }
+                indexed = Dashboard.await(index);
+                tracked = Dashboard.await(tracker);
+            } finally {
+                executor.shutdown();
+            }
 
-            // create scanner
-            Scanner scanner = new Scanner(System.in);
+            // keep the index and tracker up to date with changes
+            ChangeNotifier.register(searchIndex);
+            ChangeNotifier.register(deadlineTracker);
+            // drop cached people when they are written
+            ChangeNotifier.register(personCache);
+            // reload the index and tracker after writes made by other sessions
+            refresher.start();
+            System.out.printf("Deadline tracker loaded %d unfinalised projects in %d ms.%n", tracked.value,
+                    tracked.nanos / 1_000_000);
+            System.out.printf("Search index built for %d projects in %d ms.%n", indexed.value,
+                    indexed.nanos / 1_000_000);
 
             // declare and initialise option variable
             int option = 0;
 
             // repeat prompt until valid input entered and after selected task is performed
             do {
-                // present the user with the menu options
-                System.out.println("\nPoised Project Management System Menu:");
-                // options to view tables
-                System.out.println("1. View All Projects");
-                System.out.println("2. View All Customers");
-                System.out.println("3. View All Architects");
-                System.out.println("4. View All Contractors");
-                System.out.println();
-                // option to change status of project completion
-                System.out.println("5. Finalise Project");
-                // options to find specific projects according to criteria
-                System.out.println("6. Find Incomplete Projects");
-                System.out.println("7. Find Overdue Projects");
-                System.out.println("8. Search Projects");
-                System.out.println();
-                // options to update data in tables
-                System.out.println("9. Update Project Details");
-                System.out.println("10. Update Customer Details");
-                System.out.println("11. Update Architect Details");
-                System.out.println("12. Update Contractor Details");
-                System.out.println();
-                // options to add new records to tables
-                System.out.println("13. Add New Project");
-                System.out.println("14. Add New Customer");
-                System.out.println("15. Add New Architect");
-                System.out.println("16. Add New Contractor");
-                System.out.println();
-                // option to delete a project and its associations from the database
-                System.out.println("17. Delete Project");
-                // option to exit programme
-                System.out.println("18. Exit Programme");
-                System.out.println();
-                // prompt user to enter their selected option
-                System.out.print("Enter your option: ");
+                // present the user with the menu options (not repeated for piped input)
+                if (InputValidation.isInteractive()) {
+                    printMenu();
+                }
+
+                // get user option input (the end of piped input exits the programme)
+                String line = InputValidation.readLine("Enter your option: ");
+                if (line == null) {
+                    break;
+                }
+                // a non-integer input is -1 (an invalid option)
+                option = InputValidation.parseInteger(line.trim());
 
                 // try-catch block
                 try {
-                    // get user option input
-                    option = scanner.nextInt();
-                    // consume newline
-                    scanner.nextLine();
-
                     // call method to perform selected option action
                     switch (option) {
                         // call methods to view tables
                         case 1:
-                            viewAllProjects(statement);
+                            viewAllProjects(pool);
                             break;
                         case 2:
-                            viewAllCustomers(statement);
+                            viewAllCustomers(pool);
                             break;
                         case 3:
-                            viewAllArchitects(statement);
+                            viewAllArchitects(pool);
                             break;
                         case 4:
-                            viewAllContractors(statement);
+                            viewAllContractors(pool);
                             break;
 
                         // call methods to search for and track project progress
                         case 5:
-                            finaliseProject(statement);
+                            finaliseProject(pool);
                             break;
                         case 6:
-                            findIncompleteProjects(statement);
+                            findIncompleteProjects(pool);
                             break;
                         case 7:
-                            findOverdueProjects(statement);
+                            findOverdueProjects(pool);
                             break;
                         case 8:
-                            searchProjects(statement);
+                            searchProjects(pool);
                             break;
 
                         // call methods to update records in the database
                         case 9:
-                            updateProject(statement, scanner);
+                            updateProject(pool);
                             break;
                         case 10:
-                            updateCustomer(statement);
+                            updateCustomer(pool);
                             break;
                         case 11:
-                            updateArchitect(statement);
+                            updateArchitect(pool);
                             break;
                         case 12:
-                            updateContractor(statement);
+                            updateContractor(pool);
                             break;
 
                         // call methods to add new records to the database
                         case 13:
-                            addNewProject(statement, scanner);
+                            addNewProject(pool);
                             break;
                         case 14:
-                            addNewCustomer(statement);
+                            addNewCustomer(pool);
                             break;
                         case 15:
-                            addNewArchitect(statement);
+                            addNewArchitect(pool);
                             break;
                         case 16:
-                            addNewContractor(statement);
+                            addNewContractor(pool);
                             break;
 
                         // call method to delete records from the database
                         case 17:
-                            deleteProject(statement);
+                            deleteProject(pool);
+                            break;
+
+                        // call method to view projects with their architect, contractor and customer
+                        case 19:
+                            viewProjectDetails(pool);
+                            break;
+                        case 20:
+                            findProjectsDueSoon(pool);
+                            break;
+                        // call method to report fees and outstanding balances
+                        case 21:
+                            viewFinancialReport(pool);
+                            break;
+                        // call method to display the maintained project summary
+                        case 22:
+                            viewProjectSummary(pool);
+                            break;
+                        // call method to view the recorded changes
+                        case 23:
+                            viewChangeHistory();
+                            break;
+                        // call method to display the dashboard
+                        case 24:
+                            viewDashboard(pool);
+                            break;
+                        // display connection pool and cache metrics
+                        case 25:
+                            pool.printMetrics();
+                            System.out.println();
+                            personCache.printMetrics();
                             break;
                         // option to exit programme
                         case 18:
@@ -169,39 +340,218 @@ public class PoisePMS {
                             break;
                         // invalid entry
                         default:
-                            // ask user to retry
-                            System.out.println("Invalid option selected! Please choose an option from 1-18.");
+                            // ask user to retry (piped input stops here)
+                            InputValidation.reject(option < 0
+                                    ? "Invalid input! Please choose an integer option from 1-25."
+                                    : "Invalid option selected! Please choose an option from 1-25.");
                     }
                 }
-                // if a non-integer data type input is entered
-                catch (InputMismatchException e) {
-                    // clear scanner's buffer
-                    scanner.nextLine();
-                    // repeat do-while prompt
-                    System.out.println("Invalid input! Please choose an integer option from 1-18.");
+                // if piped input has an invalid entry or ends part way through a task
+                catch (NoSuchElementException e) {
+                    // stop rather than read the rest of the script out of step
+                    System.out.println(e.getMessage());
+                    failed = true;
+                    break;
+                }
+                // if a database error occurs (the session continues with a fresh connection)
+                catch (SQLException e) {
+                    // print error details
+                    e.printStackTrace();
                 }
             } while (option != 18);
+            refresher.close();
+        } finally {
+            // report a failed command or script to the calling shell (once the
+            // pool is closed)
+            if (failed) {
+                System.exit(1);
+            }
+        }
+    }
+
+    /**
+     * helper method to display the menu options
+     */
+    private static void printMenu() {
+        // present the user with the menu options
+        System.out.println("\nPoised Project Management System Menu:");
+        // options to view tables
+        System.out.println("1. View All Projects");
+        System.out.println("2. View All Customers");
+        System.out.println("3. View All Architects");
+        System.out.println("4. View All Contractors");
+        System.out.println();
+        // option to change status of project completion
+        System.out.println("5. Finalise Project");
+        // options to find specific projects according to criteria
+        System.out.println("6. Find Incomplete Projects");
+        System.out.println("7. Find Overdue Projects");
+        System.out.println("8. Search Projects");
+        System.out.println();
+        // options to update data in tables
+        System.out.println("9. Update Project Details");
+        System.out.println("10. Update Customer Details");
+        System.out.println("11. Update Architect Details");
+        System.out.println("12. Update Contractor Details");
+        System.out.println();
+        // options to add new records to tables
+        System.out.println("13. Add New Project");
+        System.out.println("14. Add New Customer");
+        System.out.println("15. Add New Architect");
+        System.out.println("16. Add New Contractor");
+        System.out.println();
+        // option to delete a project and its associations from the database
+        System.out.println("17. Delete Project");
+        // option to view projects together with their people
+        System.out.println("19. View Project Details");
+        // option to find projects that will soon be overdue
+        System.out.println("20. Find Projects Due Soon");
+        // option to report fees and outstanding balances
+        System.out.println("21. View Financial Report");
+        // option to view project counts and outstanding totals
+        System.out.println("22. View Project Summary");
+        // option to view who changed projects and people, and what they changed
+        System.out.println("23. View Change History");
+        // option to view the summary, people counts and project lists at once
+        System.out.println("24. View Dashboard");
+        // option to display connection pool and cache usage
+        System.out.println("25. View Connection Pool and Cache Metrics");
+        System.out.println();
+        // option to exit programme
+        System.out.println("18. Exit Programme");
+        System.out.println();
+    }
+
+    /**
+     * method to run a non-interactive command given on the command line
+     *
+     * @param pool the connection pool for executing queries
+     * @param args the command name followed by its arguments
+     * @return false if a batch command failed or the command is unknown
+     * @throws Exception if an error occurs while running the command
+     */
+    private static boolean runCommand(ConnectionPool pool, String[] args) throws Exception {
+        // call method for the selected command
+        switch (args[0]) {
+            // import projects and people from a CSV or JSON-lines file
+            case "import":
+                ProjectImporter.run(pool, args);
+                break;
+            // stream tables to CSV, JSON-lines or binary files
+            case "export":
+                TableExporter.run(pool, args);
+                break;
+            // load synthetic projects and people at a chosen scale
+            case "generate":
+                DataGenerator.run(pool, args);
+                break;
+            // time the main data paths against the current database
+            case "benchmark":
+                PoisePMSBenchmark.run(pool, args);
+                break;
+            // serve the operations as a JSON API over HTTP until stopped
+            case "serve":
+                ApiServer.run(pool, args);
+                break;
+            // run a file of commands, printing one JSON result per command
+            case "run":
+                try (JdbcProjectStore store = new JdbcProjectStore(pool)) {
+                    return BatchRunner.run(store, args);
+                }
+            // report fees and outstanding balances by group
+            case "report":
+                FinancialReports.run(pool, args);
+                break;
+            // show, verify or rebuild the maintained project summary
+            case "summary":
+                return ProjectSummary.run(pool, args);
+            // apply schema migrations, show their status or compare query plans
+            case "migrate":
+                return SchemaMigrations.run(pool, args);
+            // list or replay the recorded changes to projects and people
+            case "history":
+                ChangeJournal.run(args);
+                break;
+            default:
+                // run a single batch command, e.g. finalise 3,7
+                if (BatchRunner.isCommand(args[0])) {
+                    try (JdbcProjectStore store = new JdbcProjectStore(pool)) {
+                        return BatchRunner.runOnce(store, args);
+                    }
+                }
+                // unknown command
+                System.out.println("Unknown command '" + args[0]
+                        + "'. Available commands: import, export, generate, benchmark, history, migrate, report, run, serve, summary");
+                return false;
+        }
+        return true;
+    }
 
-            // close connections
-            statement.close();
-            connection.close();
-            // close scanner
-            scanner.close();
+    /**
+     * helper method to read a setting from a system property, or otherwise
+     * from an environment variable
+     *
+     * @param property the system property, e.g. poisepms.user
+     * @param variable the environment variable, e.g. POISEPMS_USER
+     * @return the value, or null if neither is set
+     */
+    private static String setting(String property, String variable) {
+        String value = System.getProperty(property);
+        return value != null ? value : System.getenv(variable);
+    }
 
-        } catch (SQLException e) {
-            // print error details
-            e.printStackTrace();
+    /**
+     * method to run a command against the embedded file store
+     * (-Dpoisepms.store=file); the menu and the commands that read the
+     * database directly need the MySQL server
+     *
+     * @param directory the directory holding the store
+     * @param args      the command name followed by its arguments
+     * @return false if the command failed or is not available offline
+     * @throws Exception if an error occurs while running the command
+     */
+    private static boolean runOffline(Path directory, String[] args) throws Exception {
+        String command = args.length > 0 ? args[0] : "";
+        if (!command.equals("run") && !command.equals("benchmark") && !command.equals("history")
+                && !BatchRunner.isCommand(command)) {
+            System.out.println("The file store (-Dpoisepms.store=file) supports the run, benchmark and history "
+                    + "commands and the single batch commands; the menu and other commands need the MySQL database.");
+            return false;
+        }
+        if (command.equals("history")) {
+            ChangeJournal.run(args);
+            return true;
+        }
+
+        // record the writes in the change journal, as against the database
+        Path journalDirectory = ChangeJournal.configuredDirectory();
+        if (journalDirectory != null) {
+            ChangeJournal.open(journalDirectory, ChangeJournal.DEFAULT_SEGMENT_SIZE);
+        }
+
+        long start = System.nanoTime();
+        try (FileProjectStore store = FileProjectStore.open(directory, true)) {
+            System.err.printf("File store in %s opened with %d projects in %d ms.%n", directory,
+                    store.countProjects(), (System.nanoTime() - start) / 1_000_000);
+            switch (command) {
+                case "run":
+                    return BatchRunner.run(store, args);
+                case "benchmark":
+                    PoisePMSBenchmark.runStore(store, args);
+                    return true;
+                default:
+                    return BatchRunner.runOnce(store, args);
+            }
         }
     }
 
     /**
      * method to add a new project to the database
      *
-     * @param statement the SQL statement for executing queries
-     * @param scanner   the Scanner object for user input
+     * @param pool the connection pool for executing queries
      * @throws SQLException if a database access error occurs
      */
-    private static void addNewProject(Statement statement, Scanner scanner) throws SQLException {
+    private static void addNewProject(ConnectionPool pool) throws SQLException {
         // prompt user to input project details
         System.out.println("Enter details for the new project:");
 
@@ -214,11 +564,22 @@ public class PoisePMS {
         // get customer ID
         String customerID = InputValidation.validateStringInput("Customer ID: ");
 
+        // check the people exist (the project references them, so they must
+        // be added first)
+        String[] ids = { architectID, contractorID, customerID };
+        PersonTable[] personTables = { PersonTable.ARCHITECTS, PersonTable.CONTRACTORS, PersonTable.CUSTOMERS };
+        for (int i = 0; i < ids.length; i++) {
+            if (personCache.get(pool, personTables[i], ids[i]) == null) {
+                String role = personTables[i].getRole();
+                System.out.println("No " + role + " with ID " + ids[i] + " found. Please add the " + role
+                        + " first.");
+                return;
+            }
+        }
+
         // get project name (can be null - building type + customer name)
         // String projectName = InputValidation.validateStringInput("Project Name: ");
-        System.out.print("Project Name: ");
-        // get user input
-        String projectName = scanner.nextLine();
+        String projectName = InputValidation.validateOptionalStringInput("Project Name: ");
 
         // get building type
         String buildingType = InputValidation.validateStringInput("Building Type: ");
@@ -241,281 +602,249 @@ public class PoisePMS {
         // get project finalised status
         boolean projectFinalised = InputValidation.validateBooleanInput("Project Finalised (true/false): ");
 
-        // declare variables - completion date can be null if project is not finalised
+        // declare variable - completion date can be null if project is not finalised
         LocalDate completionDate = null;
-        String completionDateSQL = "";
-        String completionDateValue = "";
 
         // check if project is finalised (completion date is not null)
         if (projectFinalised) {
             // get completion date
             completionDate = InputValidation.validateDateInput("Completion Date (YYYY-MM-DD): ");
-            // include the completion_date SQL column in the INSERT statement
-            completionDateSQL = ", completion_date";
-            // include the completion date as a VALUE to be inserted
-            completionDateValue = ", '" + completionDate + "'";
         }
 
-        // insert project record into Projects table by executing SQL query
-        statement.executeUpdate(
-                "INSERT INTO Projects (architect_id, contractor_id, customer_id, project_name, building_type, physical_address, erf_number, total_fee, amount_paid, project_deadline, project_finalised"
-                        + completionDateSQL + ") VALUES ('" +
-                        architectID + "', '" + contractorID + "', '" + customerID + "', '" + projectName + "', '"
-                        + buildingType + "', '" + physicalAddress + "', '" + erfNumber + "', " + totalFee + ", "
-                        + amountPaid + ", '"
-                        + projectDeadline + "', " + projectFinalised + completionDateValue + ")");
+        // collect project details
+        Project project = new Project();
+        project.architectID = architectID;
+        project.contractorID = contractorID;
+        project.customerID = customerID;
+        project.projectName = projectName;
+        project.buildingType = buildingType;
+        project.physicalAddress = physicalAddress;
+        project.erfNumber = erfNumber;
+        project.totalFee = totalFee;
+        project.amountPaid = amountPaid;
+        project.projectDeadline = projectDeadline;
+        project.projectFinalised = projectFinalised;
+        project.completionDate = completionDate;
+
+        // insert project record into Projects table
+        int projectNumber = ProjectRepository.insertProject(pool, project);
 
         // notify user of successful entry
-        System.out.println("New project successfully added!");
+        System.out.println("New project " + projectNumber + " (" + project.projectName + ") successfully added!");
     }
 
     /**
      * method to update an existing project in the database
      *
-     * @param statement the SQL statement for executing queries
-     * @param scanner   the Scanner object for user input
+     * @param pool the connection pool for executing queries
      * @throws SQLException if a database access error occurs
      */
-    private static void updateProject(Statement statement, Scanner scanner) throws SQLException {
+    private static void updateProject(ConnectionPool pool) throws SQLException {
         // prompt user to enter number of the project they wish to update
         int projectNumber = InputValidation
                 .validateIntegerInput("Enter project number of the project record you wish to update: ");
 
-        // SQL query to select record(s) with project number matched
-        try (ResultSet resultSet = statement
-                .executeQuery("SELECT * FROM Projects WHERE project_number = " + projectNumber)) {
-            // check if project number is found (if there is a next row in the result set)
-            if (resultSet.next()) {
-                // prompt user to enter updated project details
-                System.out.println("Update details for project record " + projectNumber + ": ");
-
-                // get updated architect ID
-                String architectID = InputValidation.validateStringInput("Architect ID: ");
-
-                // get updated contractor ID
-                String contractorID = InputValidation.validateStringInput("Contractor ID: ");
-
-                // get updated customer ID
-                String customerID = InputValidation.validateStringInput("Customer ID: ");
-
-                // get updated project name (can be null - building type + customer name)
-                // String projectName = InputValidation.validateStringInput("Project Name: ");
-                System.out.print("Project Name: ");
-                // get user input
-                String projectName = scanner.nextLine();
-
-                // get updated building type
-                String buildingType = InputValidation.validateStringInput("Building Type: ");
-
-                // get updated physical address
-                String physicalAddress = InputValidation.validateStringInput("Physical Address: ");
-
-                // get updated ERF number
-                String erfNumber = InputValidation.validateStringNumberInput("ERF Number: ");
-
-                // get updated total fee
-                double totalFee = InputValidation.validateDoubleInput("Total Fee: ");
-
-                // get updated amount paid
-                double amountPaid = InputValidation.validateDoubleInput("Amount Paid: ");
-
-                // get updated project deadline
-                LocalDate projectDeadline = InputValidation.validateDateInput("Project Deadline (YYYY-MM-DD): ");
-
-                // get updated project finalised status
-                boolean projectFinalised = InputValidation.validateBooleanInput("Project Finalised (true/false): ");
-
-                // declare variables
-                LocalDate completionDate;
-                String completionDateSQL = "";
-
-                // check if project is finalised (true)
-                if (projectFinalised) {
-                    // get updated completion date
-                    completionDate = InputValidation.validateDateInput("Completion Date (YYYY-MM-DD): ");
-                    // add completion date to the SQL query
-                    completionDateSQL = ", completion_date = '" + completionDate + "'";
-                } else {
-                    // if project is not finalised
-                    completionDate = null;
-                    // set completion date to null in the SQL query
-                    completionDateSQL = ", completion_date = NULL";
-                }
+        // read the project (its current values are shown in brackets and kept
+        // if an entry is left empty, and only the values changed are written)
+        Project current = ProjectRepository.findProject(pool, projectNumber);
 
-                // execute the SQL update statement to update the record
-                statement.executeUpdate("UPDATE Projects SET " +
-                        "architect_id = '" + architectID + "', " +
-                        "contractor_id = '" + contractorID + "', " +
-                        "customer_id = '" + customerID + "', " +
-                        "project_name = '" + projectName + "', " +
-                        "building_type = '" + buildingType + "', " +
-                        "physical_address = '" + physicalAddress + "', " +
-                        "erf_number = '" + erfNumber + "', " +
-                        "total_fee = " + totalFee + ", " +
-                        "amount_paid = " + amountPaid + ", " +
-                        "project_deadline = '" + projectDeadline + "', " +
-                        "project_finalised = " + projectFinalised +
-                        completionDateSQL +
-                        " WHERE project_number = " + projectNumber);
-
-                // notify user of successful update
-                System.out.println("Project record is successfully updated!");
-            } else {
-                // notify user if project number is not found
-                System.out.println("Project record not found.");
-            }
-        }
-    }
+        // check if project number is found
+        if (current != null) {
+            // prompt user to enter updated project details
+            System.out.println("Update details for project record " + projectNumber
+                    + " (press Enter to keep a value): ");
+            Project project = current.copy();
 
-    /**
-     * method to delete a project from the database
-     *
-     * @param statement the SQL statement for executing queries
-     * @throws SQLException if a database access error occurs
-     */
-    private static void deleteProject(Statement statement) throws SQLException {
-        // prompt user to enter number of the project they wish to delete
-        int projectNumber = InputValidation
-                .validateIntegerInput("Enter project number of the project record you wish to delete: ");
+            // get updated architect ID
+            project.architectID = InputValidation.validateStringInput("Architect ID: ", current.architectID);
 
-        // SQL query to find record with project number of record user wishes to delete
-        try (ResultSet projectResult = statement
-                .executeQuery("SELECT * FROM Projects WHERE project_number = " + projectNumber)) {
-            // check if the project exists
-            if (projectResult.next()) {
-                // get the related IDs
-                String architectID = projectResult.getString("architect_id");
-                String contractorID = projectResult.getString("contractor_id");
-                String customerID = projectResult.getString("customer_id");
-
-                // check how many projects each ID is associated with
-                int architectCount = getCount(statement, "Projects", "architect_id", architectID);
-                int contractorCount = getCount(statement, "Projects", "contractor_id", contractorID);
-                int customerCount = getCount(statement, "Projects", "customer_id", customerID);
-
-                /*
-                 * execute delete queries to remove associated data from the child tables
-                 * before removing the record from the parent table (Projects table)
-                 */
-
-                // check if architect is linked to multiple projects
-                if (architectCount > 1) {
-                    // ask user if they still wish to delete record
-                    boolean deleteArchitect = InputValidation.validateBooleanInput(
-                            "The architect is associated with multiple projects. Do you also wish to delete the architect? (true/false): ");
-
-                    // if user still wishes to delete record from table
-                    if (deleteArchitect) {
-                        // SQL query to delete architect record
-                        statement.executeUpdate("DELETE FROM Architects WHERE architect_id = '" + architectID + "'");
-                        // notify user of successful deletion
-                        System.out.println("Architect with ID " + architectID + " successfully deleted!");
-                    }
-                } else {
-                    // delete architect if not associated with any other project
-                    statement.executeUpdate("DELETE FROM Architects WHERE architect_id = '" + architectID + "'");
-                    // notify user of successful deletion
-                    System.out.println("Architect with ID " + architectID + " successfully deleted!");
-                }
+            // get updated contractor ID
+            project.contractorID = InputValidation.validateStringInput("Contractor ID: ", current.contractorID);
 
-                // check if contractor is linked to multiple projects
-                if (contractorCount > 1) {
-                    // ask user if they still wish to delete record
-                    boolean deleteContractor = InputValidation.validateBooleanInput(
-                            "The contractor is associated with multiple projects. Do you also wish to delete the contractor? (true/false): ");
-
-                    // if user still wishes to delete record from table
-                    if (deleteContractor) {
-                        // SQL query to delete contractor record
-                        statement.executeUpdate("DELETE FROM Contractors WHERE contractor_id = '" + contractorID + "'");
-                        // notify user of successful deletion
-                        System.out.println("Contractor with ID " + contractorID + " successfully deleted!");
-                    }
-                } else {
-                    // delete contractor if not associated with any other project
-                    statement.executeUpdate("DELETE FROM Contractors WHERE contractor_id = '" + contractorID + "'");
-                    // notify user of successful deletion
-                    System.out.println("Contractor with ID " + contractorID + " successfully deleted!");
-                }
+            // get updated customer ID
+            project.customerID = InputValidation.validateStringInput("Customer ID: ", current.customerID);
 
-                // check if customer is linked to multiple projects
-                if (customerCount > 1) {
-                    // ask user if they still wish to delete record
-                    boolean deleteCustomer = InputValidation.validateBooleanInput(
-                            "The customer is associated with multiple projects. Do you also wish to delete the customer? (true/false): ");
-
-                    // if user still wishes to delete record from table
-                    if (deleteCustomer) {
-                        // SQL query to delete customer record
-                        statement.executeUpdate("DELETE FROM Customers WHERE customer_id = '" + customerID + "'");
-                        // notify user of successful deletion
-                        System.out.println("Customer with ID " + customerID + " successfully deleted!");
-                    }
-                } else {
-                    // delete customer if not associated with any other project
-                    statement.executeUpdate("DELETE FROM Customers WHERE customer_id = '" + customerID + "'");
-                    // notify user of successful deletion
-                    System.out.println("Customer with ID " + customerID + " successfully deleted!");
-                }
+            // get updated project name (an unnamed project stays optional - it is
+            // named from the building type and customer surname)
+            project.projectName = current.projectName == null || current.projectName.isBlank()
+                    ? InputValidation.validateOptionalStringInput("Project Name: ")
+                    : InputValidation.validateStringInput("Project Name: ", current.projectName);
+
+            // get updated building type
+            project.buildingType = InputValidation.validateStringInput("Building Type: ", current.buildingType);
+
+            // get updated physical address
+            project.physicalAddress = InputValidation.validateStringInput("Physical Address: ",
+                    current.physicalAddress);
+
+            // get updated ERF number
+            project.erfNumber = InputValidation.validateStringNumberInput("ERF Number: ", current.erfNumber);
 
-                // delete project from Projects table
-                statement.executeUpdate("DELETE FROM Projects WHERE project_number = " + projectNumber);
-                // notify user of successful deletion
-                System.out.println("Project Number " + projectNumber + " successfully deleted!");
+            // get updated total fee
+            project.totalFee = InputValidation.validateDoubleInput("Total Fee: ", current.totalFee);
 
+            // get updated amount paid
+            project.amountPaid = InputValidation.validateDoubleInput("Amount Paid: ", current.amountPaid);
+
+            // get updated project deadline
+            project.projectDeadline = InputValidation.validateDateInput("Project Deadline (YYYY-MM-DD): ",
+                    current.projectDeadline);
+
+            // get updated project finalised status
+            project.projectFinalised = InputValidation.validateBooleanInput("Project Finalised (true/false): ",
+                    current.projectFinalised);
+
+            // check if project is finalised (true)
+            if (project.projectFinalised) {
+                // get updated completion date
+                project.completionDate = InputValidation.validateDateInput("Completion Date (YYYY-MM-DD): ",
+                        current.completionDate);
             } else {
-                // notify user if project does not exist
-                System.out.println("Project Number " + projectNumber + " not found.");
+                // if project is not finalised, completion date is set to null
+                project.completionDate = null;
             }
+
+            // write the changed columns (if any); if someone else changed the
+            // project meanwhile, show what both changed and ask how to merge
+            String record = "Project record " + projectNumber;
+            ProjectRepository.UpdateResult outcome = ProjectRepository.updateProject(pool, current, project);
+            while (outcome == ProjectRepository.UpdateResult.CONFLICT) {
+                Project latest = ProjectRepository.findProject(pool, projectNumber);
+                if (latest == null) {
+                    outcome = ProjectRepository.UpdateResult.NOT_FOUND;
+                    break;
+                }
+                Boolean keepMine = resolveConflict(record, ProjectRepository.conflicts(current, project, latest));
+                if (keepMine == null) {
+                    return;
+                }
+                project = ProjectRepository.rebase(current, project, latest, keepMine);
+                current = latest;
+                outcome = ProjectRepository.updateProject(pool, current, project);
+            }
+
+            // notify user of the outcome
+            printUpdateResult(outcome, record);
+        } else {
+            // notify user if project number is not found
+            System.out.println("Project record not found.");
         }
     }
 
     /**
-     * helper method to count the number of projects associated with a specific ID
+     * method to delete one or more projects from the database, together with
+     * the people linked only to them
      *
-     * @param statement the SQL statement for executing queries
-     * @param table     the name of the table to query
-     * @param column    the name of the column to check for the specific ID
-     * @param id        the ID to count the associated projects for
-     * @return the number of associated projects
+     * @param pool the connection pool for executing queries
      * @throws SQLException if a database access error occurs
      */
-    private static int getCount(Statement statement, String table, String column, String id)
-            throws SQLException {
-        // SQL query to count number of projects associated with a specific ID
-        try (ResultSet resultSet = statement
-                .executeQuery("SELECT COUNT(*) FROM " + table + " WHERE " + column + " = '" + id + "'")) {
-            // loop through query results
-            if (resultSet.next()) {
-                // return count of projects associated with the specific ID
-                return resultSet.getInt(1);
+    private static void deleteProject(ConnectionPool pool) throws SQLException {
+        // prompt user to enter the numbers of the projects they wish to delete
+        int[] projectNumbers = InputValidation.validateProjectNumbersInput(
+                "Enter project number(s) of the project record(s) you wish to delete (e.g. 12 or 3, 7, 10-20): ");
+
+        // find the projects and how many other projects their people are linked to
+        ProjectDeleter.DeletePlan plan = ProjectDeleter.plan(pool, projectNumbers);
+
+        // check if the projects exist
+        if (plan.projectNumbers.length == 0) {
+            // notify user if no project exists
+            System.out.println("No matching projects found.");
+            return;
+        }
+        if (plan.projectNumbers.length < projectNumbers.length) {
+            System.out.println((projectNumbers.length - plan.projectNumbers.length)
+                    + " of the project numbers entered were not found.");
+        }
+
+        // people linked to other projects are kept, as those projects still
+        // reference them
+        List<ProjectDeleter.LinkedPerson> sharedPeople = plan.getSharedPeople();
+        if (plan.projectNumbers.length == 1) {
+            for (ProjectDeleter.LinkedPerson person : sharedPeople) {
+                String role = person.personTable.getRole();
+                System.out.println("The " + role + " is associated with other projects, so will be kept.");
+            }
+        } else if (!sharedPeople.isEmpty()) {
+            System.out.println(sharedPeople.size() + " of the linked people are also associated with other "
+                    + "projects, so will be kept.");
+        }
+
+        // delete the projects and the people linked only to them in one
+        // transaction
+        int deleted = ProjectDeleter.delete(pool, plan);
+
+        // notify user of successful deletions
+        if (plan.projectNumbers.length == 1) {
+            for (ProjectDeleter.LinkedPerson person : plan.people) {
+                if (person.delete) {
+                    String role = person.personTable.getRole();
+                    System.out.println(Character.toUpperCase(role.charAt(0)) + role.substring(1) + " with ID "
+                            + person.id + " successfully deleted!");
+                }
+            }
+            System.out.println("Project Number " + plan.projectNumbers[0] + " successfully deleted!");
+        } else {
+            int deletedPeople = 0;
+            for (ProjectDeleter.LinkedPerson person : plan.people) {
+                deletedPeople += person.delete ? 1 : 0;
             }
-            // return that no projects associated with the specific ID found
-            return 0;
+            System.out.println(deleted + " projects and " + deletedPeople + " people successfully deleted!");
         }
     }
 
     /**
-     * method to "finalise" a project in the database
+     * method to "finalise" one or more projects in the database
+     * chosen by project number (a list or range) or as every fully paid
+     * project that is past its deadline
      *
-     * @param statement the SQL statement for executing queries
+     * @param pool the connection pool for executing queries
      * @throws SQLException if a database access error occurs
      */
-    private static void finaliseProject(Statement statement) throws SQLException {
-        // prompt user to enter number of the project they wish to finalise
-        int projectNumber = InputValidation
-                .validateIntegerInput("Enter project number of the project you wish to finalise: ");
+    private static void finaliseProject(ConnectionPool pool) throws SQLException {
+        // ask user how to choose the projects to finalise
+        int choice;
+        do {
+            choice = InputValidation.validateIntegerInput("Finalise (1) projects by number or (2) every fully "
+                    + "paid project past its deadline? Enter 1 or 2: ");
+        } while (choice != 1 && choice != 2);
+
+        // finalise every fully paid project past its deadline
+        if (choice == 2) {
+            LocalDate today = LocalDate.now();
+            int matching = ProjectRepository.countFullyPaidOverdue(pool, today);
+            if (matching == 0) {
+                System.out.println("No fully paid projects are past their deadline.");
+                return;
+            }
+
+            // confirm before changing many projects at once
+            if (!InputValidation.validateBooleanInput(matching + " fully paid projects are past their deadline."
+                    + " Do you wish to finalise them all? (true/false): ")) {
+                return;
+            }
+            LocalDate completionDate = InputValidation.validateDateInput("Enter completion date (YYYY-MM-DD): ");
+            int finalised = ProjectRepository.finaliseFullyPaidOverdue(pool, today, completionDate);
+            System.out.println(finalised + " projects successfully finalised!");
+            return;
+        }
+
+        // prompt user to enter the numbers of the projects they wish to finalise
+        int[] projectNumbers = InputValidation.validateProjectNumbersInput(
+                "Enter project number(s) of the project(s) you wish to finalise (e.g. 12 or 3, 7, 10-20): ");
+
+        // finalise a single project
+        if (projectNumbers.length == 1) {
+            int projectNumber = projectNumbers[0];
 
-        try (ResultSet projectResult = statement
-                .executeQuery("SELECT * FROM Projects WHERE project_number = " + projectNumber)) {
             // check if the project exists
-            if (projectResult.next()) {
+            if (ProjectRepository.projectExists(pool, projectNumber)) {
                 // prompt user for completion date
-                LocalDate completionDate = InputValidation.validateDateInput("Enter completion date (YYYY-MM-DD): ");
+                LocalDate completionDate = InputValidation
+                        .validateDateInput("Enter completion date (YYYY-MM-DD): ");
 
                 // update project record to mark it as finalised and set completion date
-                statement.executeUpdate("UPDATE Projects SET project_finalised = true, completion_date = '"
-                        + completionDate + "' WHERE project_number = " + projectNumber);
+                ProjectRepository.finaliseProject(pool, projectNumber, completionDate);
 
                 // notify user of successful project finalisation
                 System.out.println("Project Number " + projectNumber + " successfully finalised!");
@@ -523,201 +852,264 @@ public class PoisePMS {
                 // notify user if project does not exist
                 System.out.println("Project Number " + projectNumber + " not found.");
             }
+            return;
         }
+
+        // finalise several projects in one transaction
+        LocalDate completionDate = InputValidation.validateDateInput("Enter completion date (YYYY-MM-DD): ");
+        int finalised = ProjectRepository.finaliseProjects(pool, projectNumbers, completionDate);
+        System.out.println(finalised + " of " + projectNumbers.length + " projects successfully finalised!"
+                + (finalised < projectNumbers.length ? " (the rest were not found or already finalised)" : ""));
     }
 
     /**
      * method to find the incomplete projects in the database
+     * (listed by deadline from the deadline tracker)
      *
-     * @param statement the SQL statement for executing queries
+     * @param pool the connection pool for executing queries
      * @throws SQLException if a database access error occurs
      */
-    private static void findIncompleteProjects(Statement statement) throws SQLException {
-        // SQL query to retrieve all incomplete projects
-        try (ResultSet incompleteProjects = statement
-                .executeQuery("SELECT * FROM Projects WHERE project_finalised = false")) {
-
-            // check if incomplete project(s) found
-            if (incompleteProjects.next()) {
-                // display header for results
-                System.out.println("Incomplete Projects:");
-                System.out.println(
-                        "Project Number\t\tProject Name\t\tBuilding Type\t\tPhysical Address\t\tERF Number\t\tTotal Fee\t\tAmount Paid\t\tDeadline\t\tFinalised\t\tCompletion Date\t\tArchitect ID\t\tContractor ID\t\tCustomer ID");
-                System.out.println(
-                        "---------------------------------------------------------------------------------------------------------------------------------------------------------------------------------------------------------");
-
-                // loop through the results and display each project's details
-                do {
-                    // extract data from current record
-                    int projectNumber = incompleteProjects.getInt("project_number");
-                    String projectName = incompleteProjects.getString("project_name");
-                    String buildingType = incompleteProjects.getString("building_type");
-                    String physicalAddress = incompleteProjects.getString("physical_address");
-                    int erfNumber = incompleteProjects.getInt("erf_number");
-                    double totalFee = incompleteProjects.getDouble("total_fee");
-                    double amountPaid = incompleteProjects.getDouble("amount_paid");
-                    Date projectDeadline = incompleteProjects.getDate("project_deadline");
-                    boolean projectFinalised = incompleteProjects.getBoolean("project_finalised");
-                    Date completionDate = incompleteProjects.getDate("completion_date");
-                    String architectID = incompleteProjects.getString("architect_id");
-                    String contractorID = incompleteProjects.getString("contractor_id");
-                    String customerID = incompleteProjects.getString("customer_id");
-
-                    // print project details
-                    System.out.println(projectNumber + "\t\t" +
-                            projectName + "\t\t" +
-                            buildingType + "\t\t" +
-                            physicalAddress + "\t\t" +
-                            erfNumber + "\t\t" +
-                            totalFee + "\t\t" +
-                            amountPaid + "\t\t" +
-                            projectDeadline + "\t\t" +
-                            projectFinalised + "\t\t" +
-                            completionDate + "\t\t" +
-                            architectID + "\t\t" +
-                            contractorID + "\t\t" +
-                            customerID);
-                } while (incompleteProjects.next());
-            } else {
-                // notify user if no incomplete projects found
-                System.out.println("No incomplete projects found.");
-            }
+    private static void findIncompleteProjects(ConnectionPool pool) throws SQLException {
+        // get all unfinalised projects, earliest deadline first
+        List<Integer> incompleteProjects = deadlineTracker.incomplete();
+
+        // check if incomplete project(s) found
+        if (!incompleteProjects.isEmpty()) {
+            // display the projects
+            printProjects(pool, incompleteProjects, "Incomplete Projects:");
+        } else {
+            // notify user if no incomplete projects found
+            System.out.println("No incomplete projects found.");
         }
     }
 
     /**
      * method to find the overdue projects in the database
+     * (listed by deadline from the deadline tracker)
      *
-     * @param statement the SQL statement for executing queries
+     * @param pool the connection pool for executing queries
      * @throws SQLException if a database access error occurs
      */
-    private static void findOverdueProjects(Statement statement) throws SQLException {
-        // get the current date
-        LocalDate currentDate = LocalDate.now();
-
-        // SQL query to retrieve all overdue projects
-        try (ResultSet overdueProjects = statement
-                .executeQuery("SELECT * FROM Projects WHERE project_finalised = false AND project_deadline < '"
-                        + currentDate + "'")) {
-
-            // check if overdue project(s) found
-            if (overdueProjects.next()) {
-                // display header for results
-                System.out.println("Overdue Projects:");
-                System.out.println(
-                        "Project Number\t\tProject Name\t\tBuilding Type\t\tPhysical Address\t\tERF Number\t\tTotal Fee\t\tAmount Paid\t\tDeadline\t\tFinalised\t\tCompletion Date\t\tArchitect ID\t\tContractor ID\t\tCustomer ID");
-                System.out.println(
-                        "---------------------------------------------------------------------------------------------------------------------------------------------------------------------------------------------------------");
-
-                // loop through the results and display each project's details
-                do {
-                    // extract data from current record
-                    int projectNumber = overdueProjects.getInt("project_number");
-                    String projectName = overdueProjects.getString("project_name");
-                    String buildingType = overdueProjects.getString("building_type");
-                    String physicalAddress = overdueProjects.getString("physical_address");
-                    int erfNumber = overdueProjects.getInt("erf_number");
-                    double totalFee = overdueProjects.getDouble("total_fee");
-                    double amountPaid = overdueProjects.getDouble("amount_paid");
-                    Date projectDeadline = overdueProjects.getDate("project_deadline");
-                    boolean projectFinalised = overdueProjects.getBoolean("project_finalised");
-                    Date completionDate = overdueProjects.getDate("completion_date");
-                    String architectID = overdueProjects.getString("architect_id");
-                    String contractorID = overdueProjects.getString("contractor_id");
-                    String customerID = overdueProjects.getString("customer_id");
-
-                    // print project details
-                    System.out.println(projectNumber + "\t\t" +
-                            projectName + "\t\t" +
-                            buildingType + "\t\t" +
-                            physicalAddress + "\t\t" +
-                            erfNumber + "\t\t" +
-                            totalFee + "\t\t" +
-                            amountPaid + "\t\t" +
-                            projectDeadline + "\t\t" +
-                            projectFinalised + "\t\t" +
-                            completionDate + "\t\t" +
-                            architectID + "\t\t" +
-                            contractorID + "\t\t" +
-                            customerID);
-                } while (overdueProjects.next());
-            } else {
-                // notify user if no overdue projects found
-                System.out.println("No overdue projects found.");
-            }
+    private static void findOverdueProjects(ConnectionPool pool) throws SQLException {
+        // get the unfinalised projects with a deadline before the current date
+        List<Integer> overdueProjects = deadlineTracker.overdue(LocalDate.now());
+
+        // check if overdue project(s) found
+        if (!overdueProjects.isEmpty()) {
+            // display the projects
+            printProjects(pool, overdueProjects, "Overdue Projects:");
+        } else {
+            // notify user if no overdue projects found
+            System.out.println("No overdue projects found.");
+        }
+    }
+
+    /**
+     * method to find the projects that will become overdue within a number of
+     * days unless they are finalised
+     *
+     * @param pool the connection pool for executing queries
+     * @throws SQLException if a database access error occurs
+     */
+    private static void findProjectsDueSoon(ConnectionPool pool) throws SQLException {
+        // prompt user for the number of days to look ahead
+        int days = 0;
+        while (days < 1) {
+            days = InputValidation.validateIntegerInput("Enter the number of days to look ahead: ");
+        }
+
+        // get the unfinalised projects with a deadline in the coming days
+        List<Integer> dueProjects = deadlineTracker.dueWithin(LocalDate.now(), days);
+
+        // check if project(s) due found
+        if (!dueProjects.isEmpty()) {
+            // display the projects
+            printProjects(pool, dueProjects, "Projects Becoming Overdue Within " + days + " Day(s):");
+        } else {
+            // notify user if no projects are due
+            System.out.println("No projects become overdue within " + days + " day(s).");
+        }
+    }
+
+    /**
+     * method to display the fees, payments and outstanding balances of all
+     * projects, in total or grouped by building type, person or deadline month
+     *
+     * the grouping is done by the database, so only one row per group is read
+     *
+     * @param pool the connection pool for executing queries
+     * @throws SQLException if an SQL exception occurs
+     */
+    private static void viewFinancialReport(ConnectionPool pool) throws SQLException {
+        // prompt user for the grouping
+        FinancialReports.Grouping[] groupings = FinancialReports.Grouping.values();
+        int choice = 0;
+        while (choice < 1 || choice > groupings.length) {
+            choice = InputValidation.validateIntegerInput("Report by (1) summary, (2) building type, (3) architect, "
+                    + "(4) contractor, (5) customer or (6) deadline month: ");
+        }
+        FinancialReports.Grouping grouping = groupings[choice - 1];
+
+        // people are listed largest outstanding balance first, up to a limit
+        int limit = grouping.isPerson() ? FinancialReports.DEFAULT_PERSON_LIMIT : Integer.MAX_VALUE;
+        String title = grouping.isPerson()
+                ? "Financial Report by " + grouping.getName() + " (top " + limit + " by outstanding balance):"
+                : grouping == FinancialReports.Grouping.SUMMARY ? "Financial Summary:"
+                        : "Financial Report by " + grouping.getName() + ":";
+
+        try {
+            FinancialReports.print(FinancialReports.report(pool, grouping, limit), outputFormat, title);
+        } catch (IOException e) {
+            // only possible if standard output itself fails
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * method to display the number of incomplete, overdue and finalised
+     * projects and the outstanding totals
+     *
+     * the figures are read from the summary tables kept up to date by every
+     * project write, so no projects are scanned
+     *
+     * @param pool the connection pool for executing queries
+     * @throws SQLException if an SQL exception occurs
+     */
+    private static void viewProjectSummary(ConnectionPool pool) throws SQLException {
+        ProjectSummary.print(ProjectSummary.read(pool, LocalDate.now()));
+    }
+
+    /**
+     * method to display the dashboard: the project summary, the number of
+     * people, and the first, incomplete and overdue projects
+     *
+     * the queries run at once on pooled connections, so the dashboard takes
+     * about as long as the slowest of them
+     *
+     * @param pool the connection pool for executing queries
+     * @throws SQLException if an SQL exception occurs
+     */
+    private static void viewDashboard(ConnectionPool pool) throws SQLException {
+        Dashboard.load(pool, LocalDate.now(), Dashboard.DEFAULT_ROWS).print(outputFormat);
+    }
+
+    /**
+     * method to display the recorded changes to a project, a person (and the
+     * projects linked to them), or the latest changes to everything
+     *
+     * the changes are read from the change journal, not the database
+     */
+    private static void viewChangeHistory() {
+        Path directory = ChangeJournal.configuredDirectory();
+        if (directory == null) {
+            System.out.println("The change journal is turned off (-Dpoisepms.journal=off).");
+            return;
+        }
+
+        // prompt user for the project or person (blank for every change)
+        String search = InputValidation.validateOptionalStringInput(
+                "Enter a project number or person ID (leave blank for the latest changes): ").trim();
+        Integer projectNumber = null;
+        String personID = null;
+        if (!search.isEmpty() && search.chars().allMatch(Character::isDigit)) {
+            projectNumber = Integer.parseInt(search);
+        } else if (!search.isEmpty()) {
+            personID = search;
+        }
+
+        // display the latest changes (newest last)
+        try {
+            ChangeJournal.print(directory, projectNumber, personID, Long.MIN_VALUE, Long.MAX_VALUE,
+                    CHANGE_HISTORY_LIMIT, outputFormat);
+        } catch (IOException e) {
+            System.out.println("The change journal could not be read: " + e.getMessage());
         }
     }
 
     /**
      * method to search for projects in the database
-     * based on project number or name
+     * by project number, name, building type, address, ERF number or the
+     * names of the linked people
+     *
+     * matching project numbers are found in the search index (best match
+     * first) and only those rows are read from the database
      *
-     * @param statement the SQL statement object for executing queries
+     * @param pool the connection pool for executing queries
      * @throws SQLException if an SQL exception occurs
      */
-    private static void searchProjects(Statement statement) throws SQLException {
-        // prompt the user to enter the project number or name
-        String searchTerm = InputValidation.validateStringInput("Enter the project number or name to search for: ");
-
-        // SQL query to search for the project by project number or name
-        try (ResultSet resultSet = statement.executeQuery(
-                "SELECT * FROM Projects WHERE project_number = '" + searchTerm + "' OR project_name LIKE '%"
-                        + searchTerm + "%'")) {
-            // check if project name or number found
-            if (resultSet.next()) {
-                // display header for search results
-                System.out.println("Search results for '" + searchTerm + "': ");
-                System.out.println(
-                        "Project Number\t\tProject Name\t\tBuilding Type\t\tPhysical Address\t\tERF Number\t\tTotal Fee\t\tAmount Paid\t\tDeadline\t\tFinalised\t\tCompletion Date\t\tArchitect ID\t\tContractor ID\t\tCustomer ID");
-                System.out.println(
-                        "---------------------------------------------------------------------------------------------------------------------------------------------------------------------------------------------------------");
-
-                // loop through the results and display each project's details
-                do {
-                    // extract data from current record
-                    int projectNumber = resultSet.getInt("project_number");
-                    String projectName = resultSet.getString("project_name");
-                    String buildingType = resultSet.getString("building_type");
-                    String physicalAddress = resultSet.getString("physical_address");
-                    int erfNumber = resultSet.getInt("erf_number");
-                    double totalFee = resultSet.getDouble("total_fee");
-                    double amountPaid = resultSet.getDouble("amount_paid");
-                    Date projectDeadline = resultSet.getDate("project_deadline");
-                    boolean projectFinalised = resultSet.getBoolean("project_finalised");
-                    Date completionDate = resultSet.getDate("completion_date");
-                    String architectID = resultSet.getString("architect_id");
-                    String contractorID = resultSet.getString("contractor_id");
-                    String customerID = resultSet.getString("customer_id");
-
-                    // print project details
-                    System.out.println(projectNumber + "\t\t" +
-                            projectName + "\t\t" +
-                            buildingType + "\t\t" +
-                            physicalAddress + "\t\t" +
-                            erfNumber + "\t\t" +
-                            totalFee + "\t\t" +
-                            amountPaid + "\t\t" +
-                            projectDeadline + "\t\t" +
-                            projectFinalised + "\t\t" +
-                            completionDate + "\t\t" +
-                            architectID + "\t\t" +
-                            contractorID + "\t\t" +
-                            customerID);
-                } while (resultSet.next());
-            } else {
-                // notify user if no projects found matching the search term
-                System.out.println("No projects found matching the search term '" + searchTerm + "'.");
+    private static void searchProjects(ConnectionPool pool) throws SQLException {
+        // prompt the user to enter the search words
+        String searchTerm = InputValidation.validateStringInput(
+                "Enter the project number, name, building type, address, ERF number or person name to search for: ");
+
+        // find the best matching project numbers in the search index
+        List<Integer> matches = searchIndex.search(searchTerm, ProjectSearchIndex.DEFAULT_RESULT_LIMIT);
+
+        // check if project(s) found
+        if (!matches.isEmpty()) {
+            // display the projects in ranked order
+            printProjects(pool, matches, "Search results for '" + searchTerm + "': ");
+        } else {
+            // notify user if no projects found matching the search term
+            System.out.println("No projects found matching the search term '" + searchTerm + "'.");
+        }
+    }
+
+    /**
+     * helper method to display a list of projects in the given order
+     *
+     * rows are read by project number in fixed-size batches (unused
+     * placeholders are set to 0, which no project number uses), so a single
+     * cached statement serves every list and no query scans the table; each
+     * batch is written as one block by the renderer
+     *
+     * @param pool           the connection pool for executing queries
+     * @param projectNumbers the numbers of the projects to display
+     * @param title          the title displayed above the projects
+     * @throws SQLException if an SQL exception occurs
+     */
+    static void printProjects(ConnectionPool pool, List<Integer> projectNumbers, String title)
+            throws SQLException {
+        ResultRenderer renderer = ResultRenderer.toConsole(outputFormat, ProjectDetails.PROJECT_COLUMNS,
+                PROJECT_LABELS);
+        renderer.start(title);
+
+        // SQL query to read a batch of projects in the order given (columns in
+        // display order, so the renderer can read them by index)
+        String placeholders = InList.placeholders(PROJECT_BATCH_SIZE);
+        try (PooledConnection connection = pool.borrow()) {
+            PreparedStatement select = connection.prepare("SELECT "
+                    + String.join(", ", ProjectDetails.PROJECT_COLUMNS) + " FROM Projects WHERE project_number IN "
+                    + placeholders + " ORDER BY FIELD(project_number, " + placeholders.substring(1));
+
+            // read and display the projects one batch at a time
+            for (int from = 0; from < projectNumbers.size(); from += PROJECT_BATCH_SIZE) {
+                for (int i = 0; i < PROJECT_BATCH_SIZE; i++) {
+                    int projectNumber = from + i < projectNumbers.size() ? projectNumbers.get(from + i) : 0;
+                    select.setInt(i + 1, projectNumber);
+                    select.setInt(PROJECT_BATCH_SIZE + i + 1, projectNumber);
+                }
+
+                try (ResultSet resultSet = select.executeQuery()) {
+                    while (resultSet.next()) {
+                        renderer.add(resultSet);
+                    }
+                }
+                renderer.endBlock();
             }
+        } catch (IOException e) {
+            // only possible if standard output itself fails
+            throw new UncheckedIOException(e);
         }
     }
 
     /**
      * method to add a new customer to the database
      *
-     * @param statement the SQL statement object for executing queries
+     * @param pool the connection pool for executing queries
      * @throws SQLException if an SQL exception occurs
      */
-    private static void addNewCustomer(Statement statement) throws SQLException {
+    private static void addNewCustomer(ConnectionPool pool) throws SQLException {
         // prompt user to input customer details
         System.out.println("Enter details for the new customer:");
 
@@ -740,10 +1132,7 @@ public class PoisePMS {
         String address = InputValidation.validateStringInput("Address: ");
 
         // insert customer record into Customers table
-        statement.executeUpdate(
-                "INSERT INTO Customers (customer_id, customer_fname, customer_surname, customer_tel, customer_email, customer_address) VALUES ('"
-                        + customerID + "','" + fname + "', '" + surname + "', '" + tel + "', '" + email + "', '"
-                        + address + "')");
+        ProjectRepository.insertPerson(pool, PersonTable.CUSTOMERS, customerID, fname, surname, tel, email, address);
 
         // notify user of successful entry
         System.out.println("New customer record " + customerID + " successfully added!");
@@ -752,10 +1141,10 @@ public class PoisePMS {
     /**
      * method to add a new architect to the database
      *
-     * @param statement the SQL statement object for executing queries
+     * @param pool the connection pool for executing queries
      * @throws SQLException if an SQL exception occurs
      */
-    private static void addNewArchitect(Statement statement) throws SQLException {
+    private static void addNewArchitect(ConnectionPool pool) throws SQLException {
         // prompt user to input architect details
         System.out.println("Enter details for the new architect:");
 
@@ -775,9 +1164,7 @@ public class PoisePMS {
         String address = InputValidation.validateStringInput("Address: ");
 
         // insert architect record into Architects table
-        statement.executeUpdate(
-                "INSERT INTO Architects (architect_id, architect_name, architect_tel, architect_email, architect_address) VALUES ('"
-                        + architectID + "','" + name + "', '" + tel + "', '" + email + "', '" + address + "')");
+        ProjectRepository.insertPerson(pool, PersonTable.ARCHITECTS, architectID, name, tel, email, address);
 
         // notify user of successful entry
         System.out.println("New architect record successfully added!");
@@ -786,10 +1173,10 @@ public class PoisePMS {
     /**
      * method to add a new contractor to the database
      *
-     * @param statement the SQL statement object for executing queries
+     * @param pool the connection pool for executing queries
      * @throws SQLException if an SQL exception occurs
      */
-    private static void addNewContractor(Statement statement) throws SQLException {
+    private static void addNewContractor(ConnectionPool pool) throws SQLException {
         // prompt user to input contractor details
         System.out.println("Enter details for the new contractor:");
 
@@ -809,9 +1196,7 @@ public class PoisePMS {
         String address = InputValidation.validateStringInput("Address: ");
 
         // insert contractor record into Contractors table
-        statement.executeUpdate(
-                "INSERT INTO Contractors (contractor_id, contractor_name, contractor_tel, contractor_email, contractor_address) VALUES ('"
-                        + contractorID + "', '" + name + "', '" + tel + "', '" + email + "', '" + address + "')");
+        ProjectRepository.insertPerson(pool, PersonTable.CONTRACTORS, contractorID, name, tel, email, address);
 
         // notify user of successful entry
         System.out.println("New contractor record successfully added!");
@@ -820,311 +1205,481 @@ public class PoisePMS {
     /**
      * method to update customer details in the database
      *
-     * @param statement the SQL statement object for executing queries
+     * @param pool the connection pool for executing queries
      * @throws SQLException if an SQL exception occurs
      */
-    private static void updateCustomer(Statement statement) throws SQLException {
+    private static void updateCustomer(ConnectionPool pool) throws SQLException {
         // prompt user to enter ID of the customer they wish to update
         String id = InputValidation.validateStringInput("Enter ID of the customer to update: ");
 
-        // SQL query to select record(s) with customer ID matched
-        try (ResultSet resultSet = statement.executeQuery("SELECT * FROM Customers WHERE customer_id = '" + id + "'")) {
-            // check if customer ID found (if there is a next row in the result set)
-            if (resultSet.next()) {
-                // prompt user to enter updated customer details
-                System.out.println("Update details for customer record " + id + ": ");
+        // read the customer (from the cache if recently used); their current
+        // details are shown in brackets and kept if an entry is left empty
+        Map<String, Object> current = personCache.get(pool, PersonTable.CUSTOMERS, id);
 
-                // get updated customer first name
-                String fname = InputValidation.validateStringInput("First Name: ");
+        // check if customer ID found
+        if (current != null) {
+            // prompt user to enter updated customer details
+            System.out.println("Update details for customer record " + id + " (press Enter to keep a value): ");
 
-                // get updated customer surname
-                String surname = InputValidation.validateStringInput("Surname: ");
+            // get updated customer first name
+            String fname = InputValidation.validateStringInput("First Name: ", (String) current.get("customer_fname"));
 
-                // get updated customer telephone number
-                String tel = InputValidation.validateStringNumberInput("Telephone Number: ");
+            // get updated customer surname
+            String surname = InputValidation.validateStringInput("Surname: ", (String) current.get("customer_surname"));
 
-                // get updated customer email
-                String email = InputValidation.validateStringInput("Email: ");
+            // get updated customer telephone number
+            String tel = InputValidation.validateStringNumberInput("Telephone Number: ",
+                    (String) current.get("customer_tel"));
 
-                // get updated customer address
-                String address = InputValidation.validateStringInput("Address: ");
+            // get updated customer email
+            String email = InputValidation.validateStringInput("Email: ", (String) current.get("customer_email"));
 
-                // SQL query to update record
-                statement.executeUpdate("UPDATE Customers SET " +
-                        "customer_fname = '" + fname + "', " +
-                        "customer_surname = '" + surname + "', " +
-                        "customer_tel = '" + tel + "', " +
-                        "customer_email = '" + email + "', " +
-                        "customer_address = '" + address + "' " +
-                        "WHERE customer_id = '" + id + "'");
+            // get updated customer address
+            String address = InputValidation.validateStringInput("Address: ", (String) current.get("customer_address"));
 
-                // notify user of successful update
-                System.out.println("Customer record " + id + " successfully updated!");
-            } else {
-                // notify user if customer ID not found
-                System.out.println("Customer record not found.");
-            }
+            // write the changed columns (if any), merging them with any change
+            // made meanwhile, and notify user of the outcome
+            savePerson(pool, PersonTable.CUSTOMERS, current, new String[] { fname, surname, tel, email, address },
+                    "Customer record " + id);
+        } else {
+            // notify user if customer ID not found
+            System.out.println("Customer record not found.");
         }
     }
 
     /**
      * method to update architect details in the database
      *
-     * @param statement the SQL statement object for executing queries
+     * @param pool the connection pool for executing queries
      * @throws SQLException if an SQL exception occurs
      */
-    private static void updateArchitect(Statement statement) throws SQLException {
+    private static void updateArchitect(ConnectionPool pool) throws SQLException {
         // prompt user to enter ID of the architect they wish to update
         String id = InputValidation.validateStringInput("Enter ID of the architect to update: ");
 
-        // SQL query to select record(s) with architect ID matched
-        try (ResultSet resultSet = statement
-                .executeQuery("SELECT * FROM Architects WHERE architect_id = '" + id + "'")) {
-            // check if architect ID found (if there is a next row in the result set)
-            if (resultSet.next()) {
-                // prompt user to enter updated architect details
-                System.out.println("Update details for architect record " + id + ": ");
+        // read the architect (from the cache if recently used); their current
+        // details are shown in brackets and kept if an entry is left empty
+        Map<String, Object> current = personCache.get(pool, PersonTable.ARCHITECTS, id);
 
-                // get updated architect name
-                String name = InputValidation.validateStringInput("Name: ");
+        // check if architect ID found
+        if (current != null) {
+            // prompt user to enter updated architect details
+            System.out.println("Update details for architect record " + id + " (press Enter to keep a value): ");
 
-                // get updated architect telephone number
-                String tel = InputValidation.validateStringNumberInput("Telephone Number: ");
+            // get updated architect name
+            String name = InputValidation.validateStringInput("Name: ", (String) current.get("architect_name"));
 
-                // get updated architect email
-                String email = InputValidation.validateStringInput("Email: ");
+            // get updated architect telephone number
+            String tel = InputValidation.validateStringNumberInput("Telephone Number: ",
+                    (String) current.get("architect_tel"));
 
-                // get updated architect address
-                String address = InputValidation.validateStringInput("Address: ");
+            // get updated architect email
+            String email = InputValidation.validateStringInput("Email: ", (String) current.get("architect_email"));
 
-                // SQL query to update record
-                statement.executeUpdate("UPDATE Architects SET " +
-                        "architect_name = '" + name + "', " +
-                        "architect_tel = '" + tel + "', " +
-                        "architect_email = '" + email + "', " +
-                        "architect_address = '" + address + "' " +
-                        "WHERE architect_id = '" + id + "'");
+            // get updated architect address
+            String address = InputValidation.validateStringInput("Address: ",
+                    (String) current.get("architect_address"));
 
-                // notify user of successful update
-                System.out.println("Architect record " + id + " successfully updated!");
-            } else {
-                // notify user if architect ID not found
-                System.out.println("Architect record not found.");
-            }
+            // write the changed columns (if any), merging them with any change
+            // made meanwhile, and notify user of the outcome
+            savePerson(pool, PersonTable.ARCHITECTS, current, new String[] { name, tel, email, address },
+                    "Architect record " + id);
+        } else {
+            // notify user if architect ID not found
+            System.out.println("Architect record not found.");
         }
     }
 
     /**
      * method to update contractor details in the database
      *
-     * @param statement the SQL statement object for executing queries
+     * @param pool the connection pool for executing queries
      * @throws SQLException if an SQL exception occurs
      */
-    private static void updateContractor(Statement statement) throws SQLException {
+    private static void updateContractor(ConnectionPool pool) throws SQLException {
         // prompt user to enter ID of the contractor they wish to update
         String id = InputValidation.validateStringInput("Enter ID of the contractor to update: ");
 
-        // SQL query to select record(s) with contractor ID matched
-        try (ResultSet resultSet = statement
-                .executeQuery("SELECT * FROM Contractors WHERE contractor_id = '" + id + "'")) {
-            // check if contractor ID found (if there is a next row in the result set)
-            if (resultSet.next()) {
-                // prompt user to enter updated contractor details
-                System.out.println("Update details for contractor record " + id + ": ");
+        // read the contractor (from the cache if recently used); their current
+        // details are shown in brackets and kept if an entry is left empty
+        Map<String, Object> current = personCache.get(pool, PersonTable.CONTRACTORS, id);
 
-                // get updated contractor name
-                String name = InputValidation.validateStringInput("Name: ");
+        // check if contractor ID found
+        if (current != null) {
+            // prompt user to enter updated contractor details
+            System.out.println("Update details for contractor record " + id + " (press Enter to keep a value): ");
 
-                // get updated contractor telephone number
-                String tel = InputValidation.validateStringNumberInput("Telephone Number: ");
+            // get updated contractor name
+            String name = InputValidation.validateStringInput("Name: ", (String) current.get("contractor_name"));
 
-                // get updated contractor email
-                String email = InputValidation.validateStringInput("Email: ");
+            // get updated contractor telephone number
+            String tel = InputValidation.validateStringNumberInput("Telephone Number: ",
+                    (String) current.get("contractor_tel"));
 
-                // get updated contractor address
-                String address = InputValidation.validateStringInput("Address: ");
+            // get updated contractor email
+            String email = InputValidation.validateStringInput("Email: ", (String) current.get("contractor_email"));
 
-                // SQL query to update record
-                statement.executeUpdate("UPDATE Contractors SET " +
-                        "contractor_name = '" + name + "', " +
-                        "contractor_tel = '" + tel + "', " +
-                        "contractor_email = '" + email + "', " +
-                        "contractor_address = '" + address + "' " +
-                        "WHERE contractor_id = '" + id + "'");
+            // get updated contractor address
+            String address = InputValidation.validateStringInput("Address: ",
+                    (String) current.get("contractor_address"));
 
-                // notify user of successful update
-                System.out.println("Contractor record " + id + " successfully updated!");
-            } else {
-                // notify user if contractor ID not found
-                System.out.println("Contractor record not found.");
+            // write the changed columns (if any), merging them with any change
+            // made meanwhile, and notify user of the outcome
+            savePerson(pool, PersonTable.CONTRACTORS, current, new String[] { name, tel, email, address },
+                    "Contractor record " + id);
+        } else {
+            // notify user if contractor ID not found
+            System.out.println("Contractor record not found.");
+        }
+    }
+
+    /**
+     * helper method to write the changed details of a person, asking the user
+     * how to merge them if someone else changed the person meanwhile, and
+     * report the outcome
+     *
+     * @param pool        the connection pool for executing queries
+     * @param personTable the table of the person
+     * @param current     the person's values by column when the edit began
+     * @param details     the edited details, in the order of
+     *                    PersonTable.getColumns() after the ID
+     * @param record      the record updated, e.g. Customer record CUST001
+     * @throws SQLException if a database access error occurs
+     */
+    private static void savePerson(ConnectionPool pool, PersonTable personTable, Map<String, Object> current,
+            String[] details, String record) throws SQLException {
+        String id = String.valueOf(current.get(personTable.getIdColumn()));
+        ProjectRepository.UpdateResult outcome = ProjectRepository.updatePerson(pool, personTable, current, details);
+        while (outcome == ProjectRepository.UpdateResult.CONFLICT) {
+            // the conflict dropped the person from the cache, so this reads them again
+            Map<String, Object> latest = personCache.get(pool, personTable, id);
+            if (latest == null) {
+                outcome = ProjectRepository.UpdateResult.NOT_FOUND;
+                break;
+            }
+            Boolean keepMine = resolveConflict(record,
+                    ProjectRepository.conflicts(personTable, current, details, latest));
+            if (keepMine == null) {
+                return;
+            }
+            details = ProjectRepository.rebase(personTable, current, details, latest, keepMine);
+            current = latest;
+            outcome = ProjectRepository.updatePerson(pool, personTable, current, details);
+        }
+        printUpdateResult(outcome, record);
+    }
+
+    /**
+     * helper method to ask the user how to save an edit that someone else's
+     * change got in before
+     *
+     * the fields only one of them changed are merged; if both changed a field
+     * the user chooses whose value to keep (or to discard the edit); a piped
+     * script cannot answer, so there the edit is merged only if no field
+     * conflicts
+     *
+     * @param record    the record being edited, e.g. Project record 3
+     * @param conflicts the fields both changed, as { column, your value,
+     *                  their value }
+     * @return true to keep your values, false to keep theirs, or null to
+     *         discard the edit
+     */
+    private static Boolean resolveConflict(String record, List<Object[]> conflicts) {
+        System.out.println(record + " was changed by someone else while you were editing it.");
+        if (conflicts.isEmpty()) {
+            System.out.println("None of the fields you changed were changed by them, so your changes are saved "
+                    + "on top of theirs.");
+            return true;
+        }
+
+        // show the fields both changed
+        System.out.println("You both changed:");
+        for (Object[] conflict : conflicts) {
+            System.out.println("  " + conflict[0] + ": yours '" + conflict[1] + "', theirs '" + conflict[2] + "'");
+        }
+        if (!InputValidation.isInteractive()) {
+            System.out.println("Your changes to " + record + " were not saved.");
+            return null;
+        }
+
+        // ask whose values to keep (the fields only one of you changed are kept either way)
+        do {
+            String choice = InputValidation.validateStringInput("Keep (y)our values, (t)heir values, or (d)iscard "
+                    + "your changes? Enter y, t or d: ").toLowerCase();
+            switch (choice) {
+                case "y":
+                    return true;
+                case "t":
+                    return false;
+                case "d":
+                    System.out.println("Your changes to " + record + " were discarded.");
+                    return null;
+                default:
+                    System.out.println("Invalid input! Please enter y, t or d.");
             }
+        } while (true);
+    }
+
+    /**
+     * helper method to tell the user the outcome of an update
+     *
+     * @param outcome the outcome
+     * @param record  the record updated, e.g. Customer record CUST001
+     */
+    private static void printUpdateResult(ProjectRepository.UpdateResult outcome, String record) {
+        switch (outcome) {
+            case UPDATED:
+                System.out.println(record + " successfully updated!");
+                break;
+            case UNCHANGED:
+                System.out.println("No changes made to " + record + ".");
+                break;
+            case CONFLICT:
+                System.out.println(record + " was changed by someone else while you were editing it, so your "
+                        + "changes were not saved. Please try again.");
+                break;
+            default:
+                System.out.println(record + " no longer exists.");
+                break;
         }
     }
 
     /**
      * method to retrieve and display all projects from the database
+     * one page at a time, in project number, deadline or fee order
      *
-     * @param statement the SQL statement object for executing queries
+     * @param pool the connection pool for executing queries
      * @throws SQLException if an SQL exception occurs
      */
-    private static void viewAllProjects(Statement statement) throws SQLException {
-        // SQL query to retrieve all records from the Projects table
-        try (ResultSet resultSet = statement.executeQuery("SELECT * FROM Projects")) {
-            // check if there are records to display
-            if (resultSet.next()) {
-                // display header for results
-                System.out.println("All Projects:");
-                System.out.println(
-                        "Project Number\t\tProject Name\t\tBuilding Type\t\tPhysical Address\t\tERF Number\t\tTotal Fee\t\tAmount Paid\t\tDeadline\t\tFinalised\t\tCompletion Date\t\tArchitect ID\t\tContractor ID\t\tCustomer ID");
-                System.out.println(
-                        "---------------------------------------------------------------------------------------------------------------------------------------------------------------------------------------------------------");
-
-                // loop through the results and display each project's details
-                do {
-                    // extract data from current record
-                    int projectNumber = resultSet.getInt("project_number");
-                    String projectName = resultSet.getString("project_name");
-                    String buildingType = resultSet.getString("building_type");
-                    String physicalAddress = resultSet.getString("physical_address");
-                    int erfNumber = resultSet.getInt("erf_number");
-                    double totalFee = resultSet.getDouble("total_fee");
-                    double amountPaid = resultSet.getDouble("amount_paid");
-                    Date projectDeadline = resultSet.getDate("project_deadline");
-                    boolean projectFinalised = resultSet.getBoolean("project_finalised");
-                    Date completionDate = resultSet.getDate("completion_date");
-                    String architectID = resultSet.getString("architect_id");
-                    String contractorID = resultSet.getString("contractor_id");
-                    String customerID = resultSet.getString("customer_id");
-
-                    // print project details
-                    System.out.println(projectNumber + "\t\t" +
-                            projectName + "\t\t" +
-                            buildingType + "\t\t" +
-                            physicalAddress + "\t\t" +
-                            erfNumber + "\t\t" +
-                            totalFee + "\t\t" +
-                            amountPaid + "\t\t" +
-                            projectDeadline + "\t\t" +
-                            projectFinalised + "\t\t" +
-                            completionDate + "\t\t" +
-                            architectID + "\t\t" +
-                            contractorID + "\t\t" +
-                            customerID);
-                } while (resultSet.next());
-            } else {
-                // notify user if no records found
-                System.out.println("No projects found.");
-            }
+    private static void viewAllProjects(ConnectionPool pool) throws SQLException {
+        // declare and initialise sort column (project number order by default)
+        String sortColumn = "project_number";
+
+        // repeat until user stops browsing (loop again when sort order changes)
+        while (sortColumn != null) {
+            // page through projects with the chosen sort order
+            KeysetPager pager = new KeysetPager("Projects",
+                    "project_number, project_name, building_type, physical_address, erf_number, total_fee, amount_paid, project_deadline, project_finalised, completion_date, architect_id, contractor_id, customer_id",
+                    "project_number", sortColumn, pageSize);
+            sortColumn = browsePages(pool, pager, "All Projects:", PROJECT_LABELS, "No projects found.", true);
         }
     }
 
     /**
      * method to retrieve and display all customers from the database
+     * one page at a time
      *
-     * @param statement the SQL statement object for executing queries
+     * @param pool the connection pool for executing queries
      * @throws SQLException if an SQL exception occurs
      */
-    private static void viewAllCustomers(Statement statement) throws SQLException {
-        // SQL query to retrieve all records from the Customers table
-        try (ResultSet resultSet = statement.executeQuery("SELECT * FROM Customers")) {
-            // check if there are records to display
-            if (resultSet.next()) {
-                // display header for results
-                System.out.println("All Customers:");
-                System.out.println("Customer ID\t\tFirst Name\tSurname\t\tTelephone Number\t\tEmail\t\tAddress");
-                System.out.println(
-                        "--------------------------------------------------------------------------------------------------------------------------------");
-
-                // loop through the results and display each customer's details
-                do {
-                    // extract data from current record
-                    String customerID = resultSet.getString("customer_id");
-                    String fname = resultSet.getString("customer_fname");
-                    String surname = resultSet.getString("customer_surname");
-                    String tel = resultSet.getString("customer_tel");
-                    String email = resultSet.getString("customer_email");
-                    String address = resultSet.getString("customer_address");
-
-                    // print customer details
-                    System.out.println(customerID + "\t\t" + fname + "\t\t" + surname + "\t\t" + tel + "\t\t" + email
-                            + "\t\t" + address);
-                } while (resultSet.next());
-            } else {
-                // notify user if no records found
-                System.out.println("No customers found.");
-            }
-        }
+    private static void viewAllCustomers(ConnectionPool pool) throws SQLException {
+        // page through customers in customer ID order
+        KeysetPager pager = new KeysetPager("Customers",
+                "customer_id, customer_fname, customer_surname, customer_tel, customer_email, customer_address",
+                "customer_id", null, pageSize);
+        browsePages(pool, pager, "All Customers:",
+                new String[] { "Customer ID", "First Name", "Surname", "Telephone Number", "Email", "Address" },
+                "No customers found.", false);
     }
 
     /**
      * method to retrieve and display all architects from the database
+     * one page at a time
+     *
+     * @param pool the connection pool for executing queries
+     * @throws SQLException if an SQL exception occurs
+     */
+    private static void viewAllArchitects(ConnectionPool pool) throws SQLException {
+        // page through architects in architect ID order
+        KeysetPager pager = new KeysetPager("Architects",
+                "architect_id, architect_name, architect_tel, architect_email, architect_address",
+                "architect_id", null, pageSize);
+        browsePages(pool, pager, "All Architects:",
+                new String[] { "Architect ID", "Name", "Telephone Number", "Email", "Address" },
+                "No architects found.", false);
+    }
+
+    /**
+     * method to retrieve and display all contractors from the database
+     * one page at a time
+     *
+     * @param pool the connection pool for executing queries
+     * @throws SQLException if an SQL exception occurs
+     */
+    private static void viewAllContractors(ConnectionPool pool) throws SQLException {
+        // page through contractors in contractor ID order
+        KeysetPager pager = new KeysetPager("Contractors",
+                "contractor_id, contractor_name, contractor_tel, contractor_email, contractor_address",
+                "contractor_id", null, pageSize);
+        browsePages(pool, pager, "All Contractors:",
+                new String[] { "Contractor ID", "Name", "Telephone Number", "Email", "Address" },
+                "No contractors found.", false);
+    }
+
+    /**
+     * method to display projects together with their architect, contractor and
+     * customer, either a single project or all projects one page at a time
      *
-     * @param statement the SQL statement object for executing queries
+     * @param pool the connection pool for executing queries
      * @throws SQLException if an SQL exception occurs
      */
-    private static void viewAllArchitects(Statement statement) throws SQLException {
-        // SQL query to retrieve all records from the Architects table
-        try (ResultSet resultSet = statement.executeQuery("SELECT * FROM Architects")) {
-            // check if there are records to display
-            if (resultSet.next()) {
-                // display header for results
-                System.out.println("All Architects:");
-                System.out.println("Architect ID\t\tName\t\tTelephone Number\t\tEmail\t\tAddress");
-                System.out.println(
-                        "--------------------------------------------------------------------------------------------------------------------------------");
-
-                // loop through the results and display each architect's details
-                do {
-                    // extract data from current record
-                    String architectID = resultSet.getString("architect_id");
-                    String name = resultSet.getString("architect_name");
-                    String tel = resultSet.getString("architect_tel");
-                    String email = resultSet.getString("architect_email");
-                    String address = resultSet.getString("architect_address");
-
-                    // print architect details
-                    System.out.println(architectID + "\t\t" + name + "\t\t" + tel + "\t\t" + email + "\t\t" + address);
-                } while (resultSet.next());
+    private static void viewProjectDetails(ConnectionPool pool) throws SQLException {
+        // prompt user to enter number of the project to view
+        int projectNumber = InputValidation
+                .validateIntegerInput("Enter project number to view (or 0 to view all projects): ");
+
+        // display a single project read with one joined query
+        if (projectNumber != 0) {
+            ProjectDetails details = ProjectDetails.load(pool, projectNumber);
+            if (details != null) {
+                details.print();
             } else {
-                // notify user if no records found
-                System.out.println("No architects found.");
+                // notify user if project does not exist
+                System.out.println("Project Number " + projectNumber + " not found.");
             }
+            return;
         }
+
+        // page through all projects, reading the people of each page in one
+        // batched query per person table
+        KeysetPager pager = new KeysetPager("Projects", String.join(", ", ProjectDetails.PROJECT_COLUMNS),
+                "project_number", null, pageSize);
+        browsePages(pool, pager, "No projects found.", false, rows -> {
+            System.out.println("Project Details:");
+            for (ProjectDetails details : ProjectDetails.loadPage(pool, personCache, pager.getColumnNames(), rows)) {
+                details.print();
+                System.out.println();
+            }
+        });
     }
 
     /**
-     * method to retrieve and display all contractors from the database
+     * helper method to display pages of records and let the user move
+     * between them
+     *
+     * @param pool      the connection pool for executing queries
+     * @param pager     the pager for the table being browsed
+     * @param title     the title displayed above each page
+     * @param labels    the column labels displayed above a table
+     * @param emptyText the message displayed if there are no records
+     * @param canSort   whether the user may choose a different sort order
+     * @return the newly chosen sort column, or null when the user has finished
+     * @throws SQLException if an SQL exception occurs
+     */
+    private static String browsePages(ConnectionPool pool, KeysetPager pager, String title, String[] labels,
+            String emptyText, boolean canSort) throws SQLException {
+        // display each page in the current output format
+        return browsePages(pool, pager, emptyText, canSort, rows -> {
+            ResultRenderer renderer = ResultRenderer.toConsole(outputFormat, pager.getColumnNames(), labels);
+            renderer.start(title);
+            for (Object[] row : rows) {
+                renderer.add(row);
+            }
+            renderer.endBlock();
+        });
+    }
+
+    /**
+     * helper method to display pages of records with a custom layout and let
+     * the user move between them
      *
-     * @param statement the SQL statement object for executing queries
+     * @param pool      the connection pool for executing queries
+     * @param pager     the pager for the table being browsed
+     * @param emptyText the message displayed if there are no records
+     * @param canSort   whether the user may choose a different sort order
+     * @param renderer  the renderer that displays a page (with its title)
+     * @return the newly chosen sort column, or null when the user has finished
      * @throws SQLException if an SQL exception occurs
      */
-    private static void viewAllContractors(Statement statement) throws SQLException {
-        // SQL query to retrieve all records from the Contractors table
-        try (ResultSet resultSet = statement.executeQuery("SELECT * FROM Contractors")) {
-            // check if there are records to display
-            if (resultSet.next()) {
-                // display header for results
-                System.out.println("All Contractors:");
-                System.out.println("Contractor ID\t\tName\t\tTelephone Number\t\tEmail\t\tAddress");
-                System.out.println(
-                        "--------------------------------------------------------------------------------------------------------------------------------");
-
-                // loop through the results and display each contractor's details
-                do {
-                    // extract data from current record
-                    String contractorID = resultSet.getString("contractor_id");
-                    String name = resultSet.getString("contractor_name");
-                    String tel = resultSet.getString("contractor_tel");
-                    String email = resultSet.getString("contractor_email");
-                    String address = resultSet.getString("contractor_address");
-
-                    // print contractor details
-                    System.out.println(contractorID + "\t\t" + name + "\t\t" + tel + "\t\t" + email + "\t\t" + address);
-                } while (resultSet.next());
+    private static String browsePages(ConnectionPool pool, KeysetPager pager, String emptyText, boolean canSort,
+            PageRenderer renderer) throws SQLException {
+        // get first page
+        List<Object[]> rows = pager.first(pool);
+
+        // check if there are records to display
+        if (rows.isEmpty()) {
+            // notify user if no records found
+            System.out.println(emptyText);
+            return null;
+        }
+
+        // repeat until the user quits
+        while (true) {
+            // display each record's details
+            try {
+                renderer.render(rows);
+            } catch (IOException e) {
+                // only possible if standard output itself fails
+                throw new UncheckedIOException(e);
+            }
+
+            // build navigation prompt from the available actions
+            StringBuilder prompt = new StringBuilder("\nEnter ");
+            if (pager.hasNext()) {
+                prompt.append("n (next page), ");
+            }
+            if (pager.hasPrevious()) {
+                prompt.append("p (previous page), ");
+            }
+            if (canSort) {
+                prompt.append("s (sort order), ");
+            }
+            prompt.append("z (page size), f (format) or q (quit): ");
+
+            // get navigation choice
+            String choice = InputValidation.validateStringInput(prompt.toString()).toLowerCase();
+
+            // move to the chosen page
+            if (choice.equals("n") && pager.hasNext()) {
+                rows = pager.next(pool);
+            } else if (choice.equals("p") && pager.hasPrevious()) {
+                rows = pager.previous(pool);
+            } else if (choice.equals("s") && canSort) {
+                // ask for new sort order (browsing restarts from the first page)
+                int sortOption = 0;
+                while (sortOption < 1 || sortOption > 3) {
+                    sortOption = InputValidation
+                            .validateIntegerInput("Sort by 1 (project number), 2 (deadline) or 3 (total fee): ");
+                }
+                return sortOption == 1 ? "project_number" : sortOption == 2 ? "project_deadline" : "total_fee";
+            } else if (choice.equals("z")) {
+                // ask for new page size (applies from the next view)
+                int newPageSize = 0;
+                while (newPageSize < 1 || newPageSize > KeysetPager.MAX_PAGE_SIZE) {
+                    newPageSize = InputValidation
+                            .validateIntegerInput("Rows per page (1-" + KeysetPager.MAX_PAGE_SIZE + "): ");
+                }
+                pageSize = newPageSize;
+                System.out.println("Page size set to " + pageSize + " rows.");
+            } else if (choice.equals("f")) {
+                // ask for new output format (applies to every list from now on)
+                ResultRenderer.Format format = null;
+                while (format == null) {
+                    format = ResultRenderer.Format.parse(
+                            InputValidation.validateStringInput("Format (table, tsv or json): ").trim());
+                }
+                outputFormat = format;
+            } else if (choice.equals("q")) {
+                return null;
             } else {
-                // notify user if no records found
-                System.out.println("No contractors found.");
+                // notify user of invalid choice
+                System.out.println("Invalid choice! Please try again.");
             }
         }
     }
+
+    /**
+     * interface for displaying the records of one page
+     */
+    private interface PageRenderer {
+
+        /**
+         * method to display the records of a page
+         *
+         * @param rows the records in display order
+         * @throws SQLException if an SQL exception occurs
+         * @throws IOException  if the output cannot be written
+         */
+        void render(List<Object[]> rows) throws SQLException, IOException;
+    }
 }
@@ -4,164 +4,136 @@ CREATE database IF NOT EXISTS PoisePMS;
 -- use "PoisePMS" as the default database
 USE PoisePMS;
 
--- create the Projects table
-CREATE TABLE IF NOT EXISTS Projects (
-    project_number INT PRIMARY KEY AUTO_INCREMENT NOT NULL,
-    -- foreign keys
-    architect_id VARCHAR(50) UNIQUE NOT NULL,
-    contractor_id VARCHAR(50) UNIQUE NOT NULL,
-    customer_id VARCHAR(50) UNIQUE NOT NULL,
-    -- can be null - building type + customer name
-    project_name VARCHAR(50),
-    building_type VARCHAR(50) NOT NULL,
-    physical_address VARCHAR(60) NOT NULL,
-    erf_number VARCHAR(20) NOT NULL,
-    total_fee DECIMAL(12, 2) NOT NULL,
-    amount_paid DECIMAL(12, 2) NOT NULL,
-    project_deadline DATE NOT NULL,
-    project_finalised BOOLEAN NOT NULL,
-    -- can be null until project is finalised
-    completion_date DATE
-);
-
--- completion date can be null if project is not yet finalised
-ALTER TABLE Projects
-MODIFY completion_date DATE NULL;
-
 -- create the Architects table
 CREATE TABLE IF NOT EXISTS Architects (
-    architect_id VARCHAR(50) UNIQUE NOT NULL,
+    architect_id VARCHAR(50) PRIMARY KEY NOT NULL,
     architect_name VARCHAR(50) NOT NULL,
     architect_email VARCHAR(50) NOT NULL,
     architect_address VARCHAR(60) NOT NULL,
     architect_tel VARCHAR(10) NOT NULL,
-    FOREIGN KEY (architect_id) REFERENCES Projects(architect_id)
+    -- incremented by every write (updates check it is unchanged)
+    version INT NOT NULL DEFAULT 0
 );
 
 -- create the Contractors table
 CREATE TABLE IF NOT EXISTS Contractors (
-    contractor_id VARCHAR(50) UNIQUE NOT NULL,
+    contractor_id VARCHAR(50) PRIMARY KEY NOT NULL,
     contractor_name VARCHAR(50) NOT NULL,
     contractor_email VARCHAR(50) NOT NULL,
     contractor_address VARCHAR(60) NOT NULL,
     contractor_tel VARCHAR(10) NOT NULL,
-    FOREIGN KEY (contractor_id) REFERENCES Projects(contractor_id)
+    -- incremented by every write (updates check it is unchanged)
+    version INT NOT NULL DEFAULT 0
 );
 
 -- create the Customers table
 CREATE TABLE IF NOT EXISTS Customers (
-    customer_id VARCHAR(50) UNIQUE NOT NULL,
+    customer_id VARCHAR(50) PRIMARY KEY NOT NULL,
     customer_fname VARCHAR(50) NOT NULL,
     customer_surname VARCHAR(50) NOT NULL,
     customer_email VARCHAR(50) NOT NULL,
     customer_address VARCHAR(60) NOT NULL,
     customer_tel VARCHAR(10) NOT NULL,
-    FOREIGN KEY (customer_id) REFERENCES Projects(customer_id)
+    -- incremented by every write (updates check it is unchanged)
+    version INT NOT NULL DEFAULT 0
 );
 
--- create trigger to name project if project_name not provided
-DELIMITER $$
-CREATE TRIGGER AutoNameProject
-AFTER INSERT ON Customers FOR EACH ROW 
-BEGIN
-    DECLARE created_project_name VARCHAR(50);
-    -- check if project_name is NULL or empty
-    IF (
-        SELECT project_name
-        FROM Projects
-        WHERE customer_id = NEW.customer_id
-    ) IS NULL
-    OR (
-        SELECT project_name
-        FROM Projects
-        WHERE customer_id = NEW.customer_id
-    ) = '' THEN
-        -- generate project_name using building type and customer surname
-        SET created_project_name = CONCAT(
-            (
-                SELECT Projects.building_type
-                FROM Projects
-                WHERE Projects.customer_id = NEW.customer_id
-            ),
-            ' ',
-            NEW.customer_surname
-        );
-        -- update the inserted row with the generated project name
-        UPDATE Projects
-        SET Projects.project_name = created_project_name
-        WHERE Projects.customer_id = NEW.customer_id;
-    END IF;
-END$$
-DELIMITER ;
+-- create the Projects table
+-- (each project links to one architect, contractor and customer, and each
+-- person can be linked to any number of projects)
+CREATE TABLE IF NOT EXISTS Projects (
+    project_number INT PRIMARY KEY AUTO_INCREMENT NOT NULL,
+    -- foreign keys
+    architect_id VARCHAR(50) NOT NULL,
+    contractor_id VARCHAR(50) NOT NULL,
+    customer_id VARCHAR(50) NOT NULL,
+    -- can be null - building type + customer name
+    project_name VARCHAR(50),
+    building_type VARCHAR(50) NOT NULL,
+    physical_address VARCHAR(60) NOT NULL,
+    erf_number VARCHAR(20) NOT NULL,
+    total_fee DECIMAL(12, 2) NOT NULL,
+    amount_paid DECIMAL(12, 2) NOT NULL,
+    project_deadline DATE NOT NULL,
+    project_finalised BOOLEAN NOT NULL,
+    -- can be null until project is finalised
+    completion_date DATE,
+    -- incremented by every write, so an update can write only the columns
+    -- that changed and check the row was not changed after it was read
+    version INT NOT NULL DEFAULT 0,
+    -- the project details view, the search index and the person lookups join
+    -- Projects to the people tables on these columns; each is an index lookup
+    -- (on the people tables' primary keys one way and these indexes the other)
+    INDEX idx_projects_architect (architect_id),
+    INDEX idx_projects_contractor (contractor_id),
+    INDEX idx_projects_customer (customer_id),
+    CONSTRAINT fk_projects_architect FOREIGN KEY (architect_id) REFERENCES Architects (architect_id),
+    CONSTRAINT fk_projects_contractor FOREIGN KEY (contractor_id) REFERENCES Contractors (contractor_id),
+    CONSTRAINT fk_projects_customer FOREIGN KEY (customer_id) REFERENCES Customers (customer_id)
+);
 
-/* 
-A trigger needs to be created to name project if
-project_name not provided after project details update
-Limitation in MySQL :
-It doesn't allow for the update of the same table
-that is being triggered by the trigger itself
-*/
+-- indexes for paging through projects in deadline or fee order
+-- (project_number breaks ties so each page can continue from the last row shown)
+CREATE INDEX idx_projects_deadline ON Projects (project_deadline, project_number);
+CREATE INDEX idx_projects_fee ON Projects (total_fee, project_number);
 
--- insert values into the Projects table
-INSERT INTO Projects (
-        architect_id,
-        contractor_id,
-        customer_id,
-        project_name,
-        building_type,
-        physical_address,
-        erf_number,
-        total_fee,
-        amount_paid,
-        project_deadline,
-        project_finalised,
-        completion_date
-    )
--- project number is automatically incremented
-VALUES (
-        'ARCH001',
-        'CONT001',
-        'CUST001',
-        'LakeHouse Garrick',
-        'House',
-        '14 Garrick Avenue, Cape Town, South Africa',
-        '912',
-        1582000.10,
-        1000000.90,
-        '2024-11-18',
-        false,
-        null
-    ),
-    -- Mike Tyson's House
-    (
-        'ARCH002',
-        'CONT002',
-        'CUST002',
-        '',
-        'House',
-        '14 Royage Lane, Johannesburg, South Africa',
-        '712',
-        913000.22,
-        900000.88,
-        '2023-01-23',
-        true,
-        '2022-12-30'
-    ),
-    -- Jared Goldman's Apartment
-    (
-        'ARCH003',
-        'CONT003',
-        'CUST003',
-        '',
-        'Apartment',
-        '14 Pink Heights, Durban, South Africa',
-        '524',
-        795000.18,
-        723000.52,
-        '2023-06-20',
-        true,
-        '2023-03-11'
-    );
+-- index for the incomplete and overdue lists and for loading the deadlines of
+-- unfinalised projects at startup: it holds every column those queries filter
+-- on or read (InnoDB secondary indexes also hold project_number), so they scan
+-- only the unfinalised part of the index
+CREATE INDEX idx_projects_open_due ON Projects (project_finalised, project_deadline, amount_paid, total_fee);
+
+-- index for the financial report by building type: it holds every column the
+-- GROUP BY query reads, so the report scans the (narrower) index in group
+-- order rather than the table and needs no temporary table
+CREATE INDEX idx_projects_type_fees ON Projects (building_type, total_fee, amount_paid, project_finalised);
+
+-- summary of every project, kept up to date by the programme in the same
+-- transaction as each project write, so dashboards read a handful of rows
+-- rather than scanning Projects; the totals are spread over 16 slot rows (each
+-- transaction adds to one at random) so concurrent writers rarely wait for
+-- each other, and are read by adding the slots together
+CREATE TABLE IF NOT EXISTS ProjectSummary (
+    slot TINYINT UNSIGNED PRIMARY KEY NOT NULL,
+    projects BIGINT NOT NULL DEFAULT 0,
+    -- unfinalised projects
+    open_projects BIGINT NOT NULL DEFAULT 0,
+    total_fee DECIMAL(20, 2) NOT NULL DEFAULT 0,
+    amount_paid DECIMAL(20, 2) NOT NULL DEFAULT 0,
+    -- total fee less amount paid of each project (0 if fully paid)
+    outstanding DECIMAL(20, 2) NOT NULL DEFAULT 0,
+    -- outstanding balance of finalised projects
+    finalised_outstanding DECIMAL(20, 2) NOT NULL DEFAULT 0
+);
+
+-- number and outstanding balance of unfinalised projects per deadline date,
+-- so overdue figures for any date are a primary key range sum
+CREATE TABLE IF NOT EXISTS ProjectDeadlineSummary (
+    project_deadline DATE PRIMARY KEY NOT NULL,
+    open_projects BIGINT NOT NULL DEFAULT 0,
+    open_outstanding DECIMAL(20, 2) NOT NULL DEFAULT 0
+);
+
+-- projects added without a name are named by the programme as it writes them,
+-- from the building type and customer surname (e.g. 'House Tyson'), in the
+-- same transaction as the insert or update
+
+-- record the schema version, so the programme's migrations (which bring older
+-- databases up to this schema at startup) know there is nothing to apply
+CREATE TABLE IF NOT EXISTS SchemaVersion (
+    version INT PRIMARY KEY NOT NULL,
+    description VARCHAR(100) NOT NULL,
+    applied_on TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    duration_ms BIGINT NOT NULL DEFAULT 0
+);
+
+INSERT INTO SchemaVersion (version, description)
+VALUES (1, 'baseline schema'),
+    (2, 'paging, deadline and report indexes and summary tables'),
+    (3, 'people tables as parents of Projects'),
+    (4, 'covering index for the incomplete and overdue queries'),
+    (5, 'project naming moved from the AutoNameProject trigger to the programme'),
+    (6, 'row versions for updates that check the row is unchanged');
 
 -- insert values into Architects table
 INSERT INTO Architects (
@@ -255,4 +227,92 @@ VALUES (
         'goldman@gmail.com',
         '98 Super Street, Pretoria, South Africa',
         '0283902931'
-    );
\ No newline at end of file
+    );
+
+-- insert values into the Projects table
+INSERT INTO Projects (
+        architect_id,
+        contractor_id,
+        customer_id,
+        project_name,
+        building_type,
+        physical_address,
+        erf_number,
+        total_fee,
+        amount_paid,
+        project_deadline,
+        project_finalised,
+        completion_date
+    )
+-- project number is automatically incremented
+VALUES (
+        'ARCH001',
+        'CONT001',
+        'CUST001',
+        'LakeHouse Garrick',
+        'House',
+        '14 Garrick Avenue, Cape Town, South Africa',
+        '912',
+        1582000.10,
+        1000000.90,
+        '2024-11-18',
+        false,
+        null
+    ),
+    -- Mike Tyson's House
+    (
+        'ARCH002',
+        'CONT002',
+        'CUST002',
+        'House Tyson',
+        'House',
+        '14 Royage Lane, Johannesburg, South Africa',
+        '712',
+        913000.22,
+        900000.88,
+        '2023-01-23',
+        true,
+        '2022-12-30'
+    ),
+    -- Jared Goldman's Apartment
+    (
+        'ARCH003',
+        'CONT003',
+        'CUST003',
+        'Apartment Goldman',
+        'Apartment',
+        '14 Pink Heights, Durban, South Africa',
+        '524',
+        795000.18,
+        723000.52,
+        '2023-06-20',
+        true,
+        '2023-03-11'
+    );
+
+-- fill the summary tables from the projects inserted above
+INSERT INTO ProjectSummary (
+        slot,
+        projects,
+        open_projects,
+        total_fee,
+        amount_paid,
+        outstanding,
+        finalised_outstanding
+    )
+SELECT 0,
+    COUNT(*),
+    COALESCE(SUM(project_finalised = false), 0),
+    COALESCE(SUM(total_fee), 0),
+    COALESCE(SUM(amount_paid), 0),
+    COALESCE(SUM(GREATEST(total_fee - amount_paid, 0)), 0),
+    COALESCE(SUM(CASE WHEN project_finalised THEN GREATEST(total_fee - amount_paid, 0) ELSE 0 END), 0)
+FROM Projects;
+
+INSERT INTO ProjectDeadlineSummary (project_deadline, open_projects, open_outstanding)
+SELECT project_deadline,
+    COUNT(*),
+    SUM(GREATEST(total_fee - amount_paid, 0))
+FROM Projects
+WHERE project_finalised = false
+GROUP BY project_deadline;
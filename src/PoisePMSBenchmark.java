@@ -0,0 +1,1107 @@
+
+// import Java packages
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * class for timing the main PoisePMS data paths against the configured
+ * database
+ *
+ * each benchmark runs a number of warm-up operations (so the JIT compiler and
+ * the statement caches settle) followed by measured operations, and reports
+ * throughput and latency percentiles; writes go through ProjectRepository and
+ * reads through the same index, tracker and pager classes the menu uses, so
+ * the numbers reflect what a user sees
+ *
+ * benchmark projects and people are created with IDs starting "bench-" and
+ * removed again before the run ends, so the existing data is left as it was;
+ * run it after loading 1k, 100k or 1M projects (see DataGenerator) to compare
+ * scales
+ *
+ * the store benchmark runs the same operations through each ProjectStore: the
+ * MySQL database, then an embedded FileProjectStore copied from it into a
+ * temporary directory (deleted afterwards); with -Dpoisepms.store=file only
+ * the file store is measured (see runStore)
+ */
+public class PoisePMSBenchmark {
+
+    /**
+     * names of the available benchmarks, in the order they run
+     */
+    private static final String[] BENCHMARKS = { "insert", "update", "contention", "lost-updates", "search",
+            "overdue", "view-all", "render", "summary", "delete-cascade", "delete-bulk", "store" };
+
+    /**
+     * default number of measured operations per benchmark
+     */
+    private static final int DEFAULT_OPS = 500;
+
+    /**
+     * default number of warm-up operations per benchmark
+     */
+    private static final int DEFAULT_WARMUP = 100;
+
+    /**
+     * seed for the random values (fixed so runs can be compared)
+     */
+    static final long SEED = 42;
+
+    /**
+     * number of project rows rendered per operation by the render benchmark
+     */
+    private static final int RENDER_ROWS = 1000;
+
+    /**
+     * number of projects every thread of the contention benchmark updates
+     * (few, so the threads keep updating the same rows)
+     */
+    private static final int CONTENTION_PROJECTS = 4;
+
+    /**
+     * ways the contention benchmark writes: read then write without a check
+     * (last writer wins), lock the row while reading it, and write only if
+     * the row's version is unchanged (retrying if not)
+     */
+    private static final String[] CONTENTION_MODES = { "blind", "locked", "versioned" };
+
+    /**
+     * share of the lost-updates benchmark's operations that finalise the
+     * project (one in this many) rather than edit it
+     */
+    private static final int FINALISE_EVERY = 5;
+
+    /**
+     * maximum number of projects whose names are used for search queries
+     */
+    private static final int QUERY_SOURCE_PROJECTS = 200;
+
+    // output stream that discards everything (for timing rendering without a
+    // terminal)
+    private static final PrintStream NULL_OUT = new PrintStream(OutputStream.nullOutputStream());
+
+    /**
+     * interface for a single timed operation
+     */
+    interface Operation {
+
+        /**
+         * method to run the operation once
+         *
+         * @param i the zero-based operation number
+         * @throws Exception if the operation fails
+         */
+        void run(int i) throws Exception;
+    }
+
+    /**
+     * method to run the benchmarks given on the command line
+     *
+     * @param pool the connection pool for executing queries
+     * @param args the arguments: benchmark [--ops N] [--warmup N]
+     *             [--only name,name]
+     * @throws Exception if a benchmark fails
+     */
+    public static void run(ConnectionPool pool, String[] args) throws Exception {
+        // get benchmark options
+        int ops = DEFAULT_OPS;
+        int warmup = DEFAULT_WARMUP;
+        List<String> selected = new ArrayList<>(Arrays.asList(BENCHMARKS));
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("--ops") && i + 1 < args.length) {
+                ops = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--warmup") && i + 1 < args.length) {
+                warmup = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--only") && i + 1 < args.length) {
+                selected = Arrays.asList(args[++i].split(","));
+            } else {
+                System.out.println("Usage: PoisePMS benchmark [--ops N] [--warmup N] [--only "
+                        + String.join(",", BENCHMARKS) + "]");
+                return;
+            }
+        }
+
+        // display the scale being measured
+        System.out.println("Benchmarking against " + countProjects(pool) + " projects (" + ops + " operations, "
+                + warmup + " warm-up per benchmark).");
+
+        // build the in-memory structures the menu uses, timing each once
+        ProjectSearchIndex searchIndex = new ProjectSearchIndex();
+        DeadlineTracker deadlineTracker = new DeadlineTracker();
+        PersonCache personCache = new PersonCache(10_000, 0);
+        long start = System.nanoTime();
+        searchIndex.build(pool);
+        printSingle("search index build", System.nanoTime() - start);
+        start = System.nanoTime();
+        deadlineTracker.load(pool);
+        printSingle("deadline tracker load", System.nanoTime() - start);
+
+        // keep them up to date during the write benchmarks, as the menu does
+        ChangeNotifier.register(searchIndex);
+        ChangeNotifier.register(deadlineTracker);
+        ChangeNotifier.register(personCache);
+
+        // benchmark projects created so far (removed at the end)
+        String runID = "bench-" + Long.toString(System.currentTimeMillis(), 36);
+        List<Project> created = new ArrayList<>();
+        Random random = new Random(SEED);
+
+        System.out.printf("%n%-16s %8s %12s %10s %10s %10s %10s%n", "Benchmark", "Ops", "Ops/s", "Avg ms",
+                "p50 ms", "p99 ms", "Max ms");
+        try {
+            for (String name : selected) {
+                switch (name) {
+                    // add a project with three new people
+                    case "insert":
+                        measure(name, warmup, ops, i -> created.add(insertBenchProject(pool, runID,
+                                created.size(), random)));
+                        break;
+
+                    // change the fee and deadline of a benchmark project (only
+                    // those columns are written)
+                    case "update":
+                        ensureProjects(pool, runID, created, warmup + ops, random);
+                        measure(name, warmup, ops, i -> {
+                            Project current = created.get(i % created.size());
+                            Project project = current.copy();
+                            project.totalFee = 10_000 + random.nextInt(990_000);
+                            project.projectDeadline = LocalDate.now().plusDays(random.nextInt(730) - 365);
+                            BatchRunner.checkUpdate(ProjectRepository.updateProject(pool, current, project),
+                                    "Project Number " + current.projectNumber);
+                            created.set(i % created.size(), project);
+                        });
+                        break;
+
+                    // add one to a counter on a few projects from every pooled
+                    // connection at once, in each way of writing, and count
+                    // the increments lost
+                    case "contention":
+                        ensureProjects(pool, runID, created, CONTENTION_PROJECTS, random);
+                        List<Project> hot = created.subList(0, CONTENTION_PROJECTS);
+                        for (String mode : CONTENTION_MODES) {
+                            contend(pool, name + "-" + mode, hot, warmup, ops, mode);
+                        }
+                        // read the projects again, as their versions have moved on
+                        for (int i = 0; i < hot.size(); i++) {
+                            hot.set(i, ProjectRepository.findProject(pool, hot.get(i).projectNumber));
+                        }
+                        break;
+
+                    // edit and finalise one project from every pooled
+                    // connection at once, and check every write is in the
+                    // row afterwards (fails the run if not)
+                    case "lost-updates":
+                        ensureProjects(pool, runID, created, 1, random);
+                        checkLostUpdates(pool, created.get(0).projectNumber, warmup + ops);
+                        created.set(0, ProjectRepository.findProject(pool, created.get(0).projectNumber));
+                        break;
+
+                    // search the index with words taken from existing projects
+                    case "search":
+                        List<String> queries = sampleQueries(projectTexts(pool), random);
+                        measure(name, warmup, ops, i -> searchIndex.search(queries.get(i % queries.size()),
+                                ProjectSearchIndex.DEFAULT_RESULT_LIMIT));
+                        break;
+
+                    // find and display the first page of overdue projects
+                    case "overdue":
+                        measure(name, warmup, ops, i -> {
+                            List<Integer> overdue = deadlineTracker.overdue(LocalDate.now());
+                            silently(j -> PoisePMS.printProjects(pool,
+                                    overdue.subList(0, Math.min(overdue.size(), KeysetPager.DEFAULT_PAGE_SIZE)),
+                                    "Overdue Projects:"));
+                        });
+                        break;
+
+                    // read and render successive pages of all projects
+                    case "view-all":
+                        KeysetPager pager = new KeysetPager("Projects",
+                                String.join(", ", ProjectDetails.PROJECT_COLUMNS), "project_number", null,
+                                KeysetPager.DEFAULT_PAGE_SIZE);
+                        pager.first(pool);
+                        measure(name, warmup, ops, i -> {
+                            List<Object[]> rows = pager.hasNext() ? pager.next(pool) : pager.first(pool);
+                            render(rows, ResultRenderer.Format.TABLE);
+                        });
+                        break;
+
+                    // render the same rows in each output format, and with the
+                    // old one-println-per-row concatenation for comparison
+                    case "render":
+                        List<Object[]> renderRows = new KeysetPager("Projects",
+                                String.join(", ", ProjectDetails.PROJECT_COLUMNS), "project_number", null,
+                                RENDER_ROWS).first(pool);
+                        System.out.println("(render: " + renderRows.size() + " rows per operation)");
+                        for (ResultRenderer.Format format : ResultRenderer.Format.values()) {
+                            measure("render-" + format.name().toLowerCase(), warmup, ops,
+                                    i -> render(renderRows, format));
+                        }
+                        measure("render-println", warmup, ops, i -> {
+                            for (Object[] row : renderRows) {
+                                NULL_OUT.println(row[0] + "\t\t" + row[1] + "\t\t" + row[2] + "\t\t" + row[3]
+                                        + "\t\t" + row[4] + "\t\t" + row[5] + "\t\t" + row[6] + "\t\t" + row[7]
+                                        + "\t\t" + row[8] + "\t\t" + row[9] + "\t\t" + row[10] + "\t\t"
+                                        + row[11] + "\t\t" + row[12]);
+                            }
+                        });
+                        break;
+
+                    // read the dashboard figures from the summary tables, and
+                    // compute them by scanning Projects for comparison (fewer
+                    // operations, as each scan reads every project)
+                    case "summary":
+                        measure("summary-read", warmup, ops, i -> ProjectSummary.read(pool, LocalDate.now()));
+                        measure("summary-scan", Math.min(warmup, 2), Math.min(ops, 10), i -> scanSummary(pool));
+                        break;
+
+                    // delete a project and people linked only to it
+                    case "delete-cascade":
+                        ensureProjects(pool, runID, created, warmup + ops, random);
+                        measure(name, warmup, ops, i -> deleteBenchProject(pool, created.remove(created.size() - 1)));
+                        break;
+
+                    // delete every benchmark project (ops of them) in one transaction
+                    case "delete-bulk":
+                        ensureProjects(pool, runID, created, ops, random);
+                        long bulkStart = System.nanoTime();
+                        deleteBenchProjects(pool, created);
+                        long bulkNanos = System.nanoTime() - bulkStart;
+                        System.out.printf("%-16s %8d %12.0f %10.3f%n", name, created.size(),
+                                created.size() / (bulkNanos / 1e9), bulkNanos / 1e6 / created.size());
+                        created.clear();
+                        break;
+
+                    // run the operations through the MySQL store, then through a
+                    // file store copied from the database
+                    case "store":
+                        compareStores(pool, runID + "-s", warmup, ops, random);
+                        break;
+
+                    // unknown benchmark
+                    default:
+                        System.out.println("Unknown benchmark '" + name + "'. Available benchmarks: "
+                                + String.join(", ", BENCHMARKS));
+                }
+            }
+        } finally {
+            // remove any benchmark projects still left
+            deleteBenchProjects(pool, created);
+
+            ChangeNotifier.unregister(searchIndex);
+            ChangeNotifier.unregister(deadlineTracker);
+            ChangeNotifier.unregister(personCache);
+        }
+
+        // display pool usage during the run
+        System.out.println();
+        pool.printMetrics();
+    }
+
+    /**
+     * method to run the store benchmark against a store opened without the
+     * database (-Dpoisepms.store=file)
+     *
+     * @param store the store to measure
+     * @param args  the arguments: benchmark [--ops N] [--warmup N]
+     * @throws Exception if a benchmark fails
+     */
+    public static void runStore(ProjectStore store, String[] args) throws Exception {
+        // get benchmark options
+        int ops = DEFAULT_OPS;
+        int warmup = DEFAULT_WARMUP;
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("--ops") && i + 1 < args.length) {
+                ops = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--warmup") && i + 1 < args.length) {
+                warmup = Integer.parseInt(args[++i]);
+            } else {
+                System.out.println("Usage: PoisePMS benchmark [--ops N] [--warmup N] (the database benchmarks "
+                        + "need -Dpoisepms.store=mysql)");
+                return;
+            }
+        }
+
+        System.out.println("Benchmarking the " + store.describe() + " store with " + store.countProjects()
+                + " projects (" + ops + " operations, " + warmup + " warm-up per benchmark).");
+        System.out.printf("%n%-16s %8s %12s %10s %10s %10s %10s%n", "Benchmark", "Ops", "Ops/s", "Avg ms",
+                "p50 ms", "p99 ms", "Max ms");
+        measureStore(store, "bench-" + Long.toString(System.currentTimeMillis(), 36), warmup, ops,
+                new Random(SEED));
+    }
+
+    /**
+     * helper method to run the store operations against the MySQL store and
+     * against a file store copied from the database, timing the copy and the
+     * reopening of the file store
+     *
+     * @param pool   the connection pool for executing queries
+     * @param runID  the prefix of this run's IDs
+     * @param warmup the number of untimed warm-up operations
+     * @param ops    the number of timed operations
+     * @param random the source of random values
+     * @throws Exception if an operation fails
+     */
+    private static void compareStores(ConnectionPool pool, String runID, int warmup, int ops, Random random)
+            throws Exception {
+        try (JdbcProjectStore store = new JdbcProjectStore(pool)) {
+            measureStore(store, runID + "m", warmup, ops, random);
+        }
+
+        // copy the database into a scratch file store (not journaled, as its
+        // writes are thrown away)
+        Path directory = Files.createTempDirectory("poisepms-bench");
+        try {
+            long start = System.nanoTime();
+            try (FileProjectStore store = FileProjectStore.open(directory, false)) {
+                store.copyFrom(pool);
+            }
+            printSingle("file store copy", System.nanoTime() - start);
+
+            // time opening it again (reading the log back into memory)
+            start = System.nanoTime();
+            try (FileProjectStore store = FileProjectStore.open(directory, false)) {
+                printSingle("file store open", System.nanoTime() - start);
+                measureStore(store, runID + "f", warmup, ops, random);
+            }
+        } finally {
+            deleteDirectory(directory);
+        }
+    }
+
+    /**
+     * helper method to time the operations of the batch commands through a
+     * store: insert a project with three new people, read, update, search,
+     * list overdue projects, finalise and delete, each named after the store
+     * (e.g. file-update)
+     *
+     * @param store  the store to measure
+     * @param runID  the prefix of this run's IDs
+     * @param warmup the number of untimed warm-up operations
+     * @param ops    the number of timed operations
+     * @param random the source of random values
+     * @throws Exception if an operation fails
+     */
+    private static void measureStore(ProjectStore store, String runID, int warmup, int ops, Random random)
+            throws Exception {
+        String prefix = store.describe() + "-";
+        List<Project> created = new ArrayList<>();
+        try {
+            measure(prefix + "insert", warmup, ops, i -> created.add(insertBenchProject(store, runID,
+                    created.size(), random)));
+
+            measure(prefix + "get", warmup, ops, i -> store.findProject(created.get(i % created.size())
+                    .projectNumber));
+
+            measure(prefix + "update", warmup, ops, i -> {
+                Project current = created.get(i % created.size());
+                Project project = current.copy();
+                project.totalFee = 10_000 + random.nextInt(990_000);
+                project.projectDeadline = LocalDate.now().plusDays(random.nextInt(730) - 365);
+                BatchRunner.checkUpdate(store.updateProject(current, project),
+                        "Project Number " + current.projectNumber);
+                created.set(i % created.size(), project);
+            });
+
+            // search with words taken from the unfinalised projects
+            List<String> texts = new ArrayList<>();
+            List<Integer> incomplete = store.incomplete();
+            for (int projectNumber : incomplete.subList(0, Math.min(incomplete.size(), QUERY_SOURCE_PROJECTS))) {
+                Project project = store.findProject(projectNumber);
+                if (project != null) {
+                    texts.add(project.projectName + " " + project.buildingType);
+                }
+            }
+            List<String> queries = sampleQueries(texts, random);
+            measure(prefix + "search", warmup, ops, i -> store.search(queries.get(i % queries.size()),
+                    ProjectSearchIndex.DEFAULT_RESULT_LIMIT));
+
+            // find the overdue projects and read the first page of them
+            measure(prefix + "overdue", warmup, ops, i -> {
+                List<Integer> overdue = store.overdue(LocalDate.now());
+                for (int projectNumber : overdue.subList(0, Math.min(overdue.size(),
+                        KeysetPager.DEFAULT_PAGE_SIZE))) {
+                    store.findProject(projectNumber);
+                }
+            });
+
+            // finalise a different project each time
+            ensureProjects(store, runID, created, warmup + ops, random);
+            measure(prefix + "finalise", warmup, ops, i -> store.finaliseProjects(
+                    new int[] { created.get(i).projectNumber }, LocalDate.now()));
+
+            // delete a project and people linked only to it
+            measure(prefix + "delete", warmup, ops, i -> {
+                Project project = created.remove(created.size() - 1);
+                store.delete(store.planDelete(project.projectNumber));
+            });
+        } finally {
+            // remove any benchmark projects still left
+            if (!created.isEmpty()) {
+                store.delete(store.planDelete(created.stream().mapToInt(project -> project.projectNumber)
+                        .toArray()));
+            }
+        }
+    }
+
+    /**
+     * helper method to time a benchmark and display its results
+     *
+     * @param name      the benchmark name
+     * @param warmup    the number of untimed warm-up operations
+     * @param ops       the number of timed operations
+     * @param operation the operation to time
+     * @throws Exception if an operation fails
+     */
+    static void measure(String name, int warmup, int ops, Operation operation) throws Exception {
+        // run untimed operations first
+        for (int i = 0; i < warmup; i++) {
+            operation.run(i);
+        }
+
+        // time each operation
+        long[] nanos = new long[ops];
+        long start = System.nanoTime();
+        for (int i = 0; i < ops; i++) {
+            long opStart = System.nanoTime();
+            operation.run(warmup + i);
+            nanos[i] = System.nanoTime() - opStart;
+        }
+        long total = System.nanoTime() - start;
+
+        printResult(name, nanos, total);
+    }
+
+    /**
+     * helper method to time read-modify-write updates of a few projects from
+     * as many threads as the pool has connections, and display how many of
+     * the updates were lost
+     *
+     * each update adds one to the project's ERF number (a column no summary
+     * figure depends on, so even the blind writes leave the summary tables
+     * right); blind and locked writes record and report the change as
+     * updateProject does, so only the way the row is protected differs
+     *
+     * @param pool   the connection pool for executing queries
+     * @param name   the benchmark name
+     * @param hot    the projects to update
+     * @param warmup the number of untimed warm-up updates
+     * @param ops    the number of timed updates
+     * @param mode   blind, locked or versioned (see CONTENTION_MODES)
+     * @throws Exception if an update fails, or a locked or versioned update
+     *                   was lost
+     */
+    private static void contend(ConnectionPool pool, String name, List<Project> hot, int warmup, int ops,
+            String mode) throws Exception {
+        int threads = pool.getMaxSize();
+        AtomicInteger next = new AtomicInteger();
+        LongAdder retries = new LongAdder();
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        long[] nanos = new long[ops];
+
+        // the warm-up updates are counted as well, as they change the counters
+        long before = sumCounters(pool, hot);
+        Runnable worker = () -> {
+            try {
+                int i;
+                while (failure.get() == null && (i = next.getAndIncrement()) < warmup + ops) {
+                    int projectNumber = hot.get(i % hot.size()).projectNumber;
+                    long opStart = System.nanoTime();
+                    retries.add(increment(pool, projectNumber, mode));
+                    if (i >= warmup) {
+                        nanos[i - warmup] = System.nanoTime() - opStart;
+                    }
+                }
+            } catch (Exception e) {
+                failure.compareAndSet(null, e);
+            }
+        };
+
+        // start the threads and wait for them to finish
+        long start = System.nanoTime();
+        List<Thread> workers = new ArrayList<>(threads);
+        for (int i = 0; i < threads; i++) {
+            Thread thread = new Thread(worker, name + "-" + i);
+            workers.add(thread);
+            thread.start();
+        }
+        for (Thread thread : workers) {
+            thread.join();
+        }
+        long total = System.nanoTime() - start;
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+
+        // every update should have added one
+        long lost = warmup + ops - (sumCounters(pool, hot) - before);
+        printResult(name, nanos, total);
+        System.out.println("(" + name + ": " + threads + " threads on " + hot.size() + " projects, " + lost
+                + " of " + (warmup + ops) + " updates lost, " + retries.sum() + " retries)");
+
+        // only blind writes may lose updates
+        if (lost != 0 && !mode.equals("blind")) {
+            throw new IllegalStateException(name + " lost " + lost + " of " + (warmup + ops) + " updates.");
+        }
+    }
+
+    /**
+     * helper method to edit and finalise one project from every pooled
+     * connection at once, and check that the row accounts for every write
+     * that reported success
+     *
+     * most operations add one to the ERF number and the amount paid through
+     * updateProject (reading the project again and retrying on a conflict);
+     * every FINALISE_EVERY-th finalises it through finaliseProject with a
+     * completion date no other operation uses, so each one is a write; a
+     * finalise that gives up after repeated conflicts writes nothing and is
+     * only counted
+     *
+     * afterwards the version must have gone up once per successful write, the
+     * ERF number and amount paid once per successful edit, and the completion
+     * date must be one of those written
+     *
+     * @param pool          the connection pool for executing queries
+     * @param projectNumber the number of the project to write
+     * @param ops           the number of operations
+     * @throws Exception if a write fails, or the row does not account for
+     *                   every successful write
+     */
+    private static void checkLostUpdates(ConnectionPool pool, int projectNumber, int ops) throws Exception {
+        int threads = pool.getMaxSize();
+        AtomicInteger next = new AtomicInteger();
+        LongAdder edits = new LongAdder();
+        LongAdder finalises = new LongAdder();
+        LongAdder abandoned = new LongAdder();
+        LongAdder retries = new LongAdder();
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        long[] nanos = new long[ops];
+
+        Project initial = ProjectRepository.findProject(pool, projectNumber);
+        LocalDate firstDate = LocalDate.now();
+        Runnable worker = () -> {
+            try {
+                int i;
+                while (failure.get() == null && (i = next.getAndIncrement()) < ops) {
+                    long opStart = System.nanoTime();
+                    if (i % FINALISE_EVERY == 0) {
+                        try {
+                            if (!ProjectRepository.finaliseProject(pool, projectNumber, firstDate.plusDays(i))) {
+                                throw new IllegalStateException("Project Number " + projectNumber
+                                        + " disappeared during the check.");
+                            }
+                            finalises.increment();
+                        } catch (ProjectRepository.CommitUnknownException e) {
+                            // whether it was written cannot be told, so the row
+                            // cannot be checked
+                            throw e;
+                        } catch (SQLException e) {
+                            // gave up after repeated conflicts (nothing written)
+                            abandoned.increment();
+                        }
+                    } else {
+                        retries.add(edit(pool, projectNumber));
+                        edits.increment();
+                    }
+                    nanos[i] = System.nanoTime() - opStart;
+                }
+            } catch (Exception e) {
+                failure.compareAndSet(null, e);
+            }
+        };
+
+        // start the threads and wait for them to finish
+        long start = System.nanoTime();
+        List<Thread> workers = new ArrayList<>(threads);
+        for (int i = 0; i < threads; i++) {
+            Thread thread = new Thread(worker, "lost-updates-" + i);
+            workers.add(thread);
+            thread.start();
+        }
+        for (Thread thread : workers) {
+            thread.join();
+        }
+        long total = System.nanoTime() - start;
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+        printResult("lost-updates", nanos, total);
+        System.out.println("(lost-updates: " + threads + " threads on one project, " + edits.sum() + " edits, "
+                + finalises.sum() + " finalises, " + abandoned.sum() + " finalises given up, " + retries.sum()
+                + " retries)");
+
+        // compare the row with the writes that reported success
+        Project latest = ProjectRepository.findProject(pool, projectNumber);
+        List<String> mismatches = new ArrayList<>();
+        long expectedVersion = initial.version + edits.sum() + finalises.sum();
+        if (latest.version != expectedVersion) {
+            mismatches.add("version is " + latest.version + ", expected " + expectedVersion);
+        }
+        long expectedErf = Long.parseLong(initial.erfNumber) + edits.sum();
+        if (Long.parseLong(latest.erfNumber) != expectedErf) {
+            mismatches.add("ERF number is " + latest.erfNumber + ", expected " + expectedErf);
+        }
+        double expectedPaid = initial.amountPaid + edits.sum();
+        if (latest.amountPaid != expectedPaid) {
+            mismatches.add("amount paid is " + latest.amountPaid + ", expected " + expectedPaid);
+        }
+        if (finalises.sum() > 0 && !(latest.projectFinalised && latest.completionDate != null
+                && !latest.completionDate.isBefore(firstDate)
+                && !latest.completionDate.isAfter(firstDate.plusDays(ops)))) {
+            mismatches.add("finalised is " + latest.projectFinalised + " with completion date "
+                    + latest.completionDate + ", expected one of the dates written");
+        }
+        if (!mismatches.isEmpty()) {
+            throw new IllegalStateException("lost-updates: Project Number " + projectNumber + " lost writes: "
+                    + String.join("; ", mismatches) + ".");
+        }
+    }
+
+    /**
+     * helper method to add one to a project's ERF number and amount paid,
+     * reading it again and retrying if someone else changed it first
+     *
+     * @param pool          the connection pool for executing queries
+     * @param projectNumber the number of the project
+     * @return the number of times the edit was retried
+     * @throws SQLException if a database access error occurs
+     */
+    private static int edit(ConnectionPool pool, int projectNumber) throws SQLException {
+        for (int retries = 0;; retries++) {
+            Project current = ProjectRepository.findProject(pool, projectNumber);
+            Project project = current.copy();
+            project.erfNumber = Long.toString(Long.parseLong(current.erfNumber) + 1);
+            project.amountPaid = current.amountPaid + 1;
+            ProjectRepository.UpdateResult outcome = ProjectRepository.updateProject(pool, current, project);
+            if (outcome == ProjectRepository.UpdateResult.UPDATED) {
+                return retries;
+            }
+            if (outcome != ProjectRepository.UpdateResult.CONFLICT) {
+                throw new IllegalStateException("Project Number " + projectNumber + " was not updated ("
+                        + outcome + ").");
+            }
+        }
+    }
+
+    /**
+     * helper method to add one to a project's ERF number by reading the
+     * project and writing the new value
+     *
+     * @param pool          the connection pool for executing queries
+     * @param projectNumber the number of the project
+     * @param mode          blind, locked or versioned (see CONTENTION_MODES)
+     * @return the number of times the update was retried
+     * @throws SQLException if a database access error occurs
+     */
+    private static int increment(ConnectionPool pool, int projectNumber, String mode) throws SQLException {
+        // write only if the project is unchanged since it was read, reading it
+        // again and retrying if not
+        if (mode.equals("versioned")) {
+            for (int retries = 0;; retries++) {
+                Project current = ProjectRepository.findProject(pool, projectNumber);
+                Project project = current.copy();
+                project.erfNumber = Long.toString(Long.parseLong(current.erfNumber) + 1);
+                if (ProjectRepository.updateProject(pool, current, project)
+                        != ProjectRepository.UpdateResult.CONFLICT) {
+                    return retries;
+                }
+            }
+        }
+
+        // read (locking the row until the commit if locked) and write the new
+        // value whatever happened in between
+        Project current;
+        Project project;
+        boolean locked = mode.equals("locked");
+        try (PooledConnection connection = pool.borrow()) {
+            if (locked) {
+                connection.getConnection().setAutoCommit(false);
+            }
+            PreparedStatement select = connection.prepare(ProjectRepository.SELECT_PROJECT
+                    + "WHERE project_number = ?" + (locked ? " FOR UPDATE" : ""));
+            select.setInt(1, projectNumber);
+            try (ResultSet resultSet = select.executeQuery()) {
+                resultSet.next();
+                current = ProjectRepository.readProject(resultSet);
+            }
+            project = current.copy();
+            project.erfNumber = Long.toString(Long.parseLong(current.erfNumber) + 1);
+
+            PreparedStatement update = connection.prepare("UPDATE Projects SET erf_number = ?, "
+                    + "version = version + 1 WHERE project_number = ?");
+            update.setString(1, project.erfNumber);
+            update.setInt(2, projectNumber);
+            update.executeUpdate();
+            if (locked) {
+                connection.getConnection().commit();
+            }
+        }
+        ChangeJournal.record("update", "Projects", projectNumber, ChangeJournal.image(current),
+                ChangeJournal.image(project));
+        ChangeNotifier.projectChanged(pool, projectNumber);
+        return 0;
+    }
+
+    /**
+     * helper method to add up the ERF numbers of projects
+     *
+     * @param pool     the connection pool for executing queries
+     * @param projects the projects
+     * @return the sum of their ERF numbers as stored
+     * @throws SQLException if a database access error occurs
+     */
+    private static long sumCounters(ConnectionPool pool, List<Project> projects) throws SQLException {
+        List<Integer> projectNumbers = new ArrayList<>();
+        for (Project project : projects) {
+            projectNumbers.add(project.projectNumber);
+        }
+        long sum = 0;
+        for (Project project : ProjectRepository.findProjects(pool, projectNumbers)) {
+            sum += Long.parseLong(project.erfNumber);
+        }
+        return sum;
+    }
+
+    /**
+     * helper method to display the throughput and latency of a benchmark
+     *
+     * @param name  the benchmark name
+     * @param nanos the time of each operation in nanoseconds
+     * @param total the total time in nanoseconds
+     */
+    static void printResult(String name, long[] nanos, long total) {
+        if (nanos.length == 0) {
+            System.out.printf("%-16s %8d%n", name, 0);
+            return;
+        }
+
+        // sort to read the percentiles
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        long sum = 0;
+        for (long value : sorted) {
+            sum += value;
+        }
+
+        System.out.printf("%-16s %8d %12.1f %10.3f %10.3f %10.3f %10.3f%n", name, sorted.length,
+                sorted.length / (total / 1e9), sum / (sorted.length * 1e6), percentile(sorted, 50) / 1e6,
+                percentile(sorted, 99) / 1e6, sorted[sorted.length - 1] / 1e6);
+    }
+
+    /**
+     * helper method to read a percentile from sorted values
+     *
+     * @param sorted  the values in ascending order
+     * @param percent the percentile (0-100)
+     * @return the value at the percentile
+     */
+    static long percentile(long[] sorted, double percent) {
+        int index = (int) Math.ceil(percent / 100 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+    /**
+     * helper method to display the time of a one-off step
+     *
+     * @param name  the step name
+     * @param nanos the time taken in nanoseconds
+     */
+    private static void printSingle(String name, long nanos) {
+        System.out.printf("%-24s %10.1f ms%n", name, nanos / 1e6);
+    }
+
+    /**
+     * helper method to render project rows with output discarded
+     *
+     * @param rows   the project rows
+     * @param format the output format
+     * @throws Exception if the rows cannot be rendered
+     */
+    static void render(List<Object[]> rows, ResultRenderer.Format format) throws Exception {
+        ResultRenderer renderer = new ResultRenderer(Writer.nullWriter(), format, ProjectDetails.PROJECT_COLUMNS,
+                PoisePMS.PROJECT_LABELS);
+        renderer.start("All Projects:");
+        for (Object[] row : rows) {
+            renderer.add(row);
+        }
+        renderer.endBlock();
+    }
+
+    /**
+     * helper method to run an operation with console output discarded
+     *
+     * @param operation the operation to run
+     * @throws Exception if the operation fails
+     */
+    static void silently(Operation operation) throws Exception {
+        PrintStream out = System.out;
+        System.setOut(NULL_OUT);
+        try {
+            operation.run(0);
+        } finally {
+            System.setOut(out);
+        }
+    }
+
+    /**
+     * helper method to make sure enough benchmark projects exist
+     *
+     * @param pool    the connection pool for executing queries
+     * @param runID   the prefix of this run's IDs
+     * @param created the benchmark projects created so far
+     * @param needed  the number of projects needed
+     * @param random  the source of random values
+     * @throws SQLException if a database access error occurs
+     */
+    static void ensureProjects(ConnectionPool pool, String runID, List<Project> created, int needed,
+            Random random) throws SQLException {
+        while (created.size() < needed) {
+            created.add(insertBenchProject(pool, runID, created.size(), random));
+        }
+    }
+
+    /**
+     * helper method to make sure enough benchmark projects exist in a store
+     *
+     * @param store   the store to add them to
+     * @param runID   the prefix of this run's IDs
+     * @param created the benchmark projects created so far
+     * @param needed  the number of projects needed
+     * @param random  the source of random values
+     * @throws SQLException if the store cannot be written
+     */
+    private static void ensureProjects(ProjectStore store, String runID, List<Project> created, int needed,
+            Random random) throws SQLException {
+        while (created.size() < needed) {
+            created.add(insertBenchProject(store, runID, created.size(), random));
+        }
+    }
+
+    /**
+     * helper method to add a benchmark project and its three people
+     *
+     * the people are inserted first as the project references them
+     *
+     * @param pool   the connection pool for executing queries
+     * @param runID  the prefix of this run's IDs
+     * @param number the benchmark project number within the run
+     * @param random the source of random values
+     * @return the inserted project
+     * @throws SQLException if a database access error occurs
+     */
+    static Project insertBenchProject(ConnectionPool pool, String runID, int number, Random random)
+            throws SQLException {
+        Project project = benchProject(runID, number, random);
+        String[][] people = benchPeople(project);
+        for (int i = 0; i < people.length; i++) {
+            ProjectRepository.insertPerson(pool, PersonTable.values()[i], people[i]);
+        }
+        ProjectRepository.insertProject(pool, project);
+        return project;
+    }
+
+    /**
+     * helper method to add a benchmark project and its three people to a
+     * store
+     *
+     * @param store  the store to add them to
+     * @param runID  the prefix of this run's IDs
+     * @param number the benchmark project number within the run
+     * @param random the source of random values
+     * @return the inserted project
+     * @throws SQLException if the store cannot be written
+     */
+    private static Project insertBenchProject(ProjectStore store, String runID, int number, Random random)
+            throws SQLException {
+        Project project = benchProject(runID, number, random);
+        String[][] people = benchPeople(project);
+        for (int i = 0; i < people.length; i++) {
+            store.insertPerson(PersonTable.values()[i], people[i]);
+        }
+        store.insertProjects(List.of(project));
+        return project;
+    }
+
+    /**
+     * helper method to create (but not insert) a benchmark project
+     *
+     * @param runID  the prefix of this run's IDs
+     * @param number the benchmark project number within the run
+     * @param random the source of random values
+     * @return the project
+     */
+    private static Project benchProject(String runID, int number, Random random) {
+        String id = runID + "-" + number;
+
+        Project project = new Project();
+        project.architectID = id + "-a";
+        project.contractorID = id + "-c";
+        project.customerID = id + "-u";
+        project.projectName = "Bench Project " + number;
+        project.buildingType = random.nextBoolean() ? "House" : "Office";
+        project.physicalAddress = (1 + random.nextInt(999)) + " Bench Road";
+        project.erfNumber = Integer.toString(1 + random.nextInt(99_999));
+        project.totalFee = 10_000 + random.nextInt(990_000);
+        project.amountPaid = random.nextInt(10_000);
+        project.projectDeadline = LocalDate.now().plusDays(random.nextInt(730) - 365);
+        return project;
+    }
+
+    /**
+     * helper method to get the values of a benchmark project's people
+     *
+     * @param project the benchmark project
+     * @return the architect, contractor and customer values, in the order of
+     *         PersonTable.values()
+     */
+    private static String[][] benchPeople(Project project) {
+        return new String[][] {
+                { project.architectID, "Bench Architect", "0000000000", "architect@bench.test", "1 Bench Road" },
+                { project.contractorID, "Bench Contractor", "0000000000", "contractor@bench.test", "2 Bench Road" },
+                { project.customerID, "Bench", "Customer", "0000000000", "customer@bench.test", "3 Bench Road" } };
+    }
+
+    /**
+     * helper method to delete a benchmark project the way the menu does
+     * (people linked to no other project are deleted with it)
+     *
+     * @param pool    the connection pool for executing queries
+     * @param project the project to delete
+     * @throws SQLException if a database access error occurs
+     */
+    static void deleteBenchProject(ConnectionPool pool, Project project) throws SQLException {
+        ProjectDeleter.delete(pool, ProjectDeleter.plan(pool, project.projectNumber));
+    }
+
+    /**
+     * helper method to delete several benchmark projects in one transaction
+     *
+     * @param pool     the connection pool for executing queries
+     * @param projects the projects to delete
+     * @throws SQLException if a database access error occurs
+     */
+    static void deleteBenchProjects(ConnectionPool pool, List<Project> projects) throws SQLException {
+        if (!projects.isEmpty()) {
+            ProjectDeleter.delete(pool, ProjectDeleter.plan(pool,
+                    projects.stream().mapToInt(project -> project.projectNumber).toArray()));
+        }
+    }
+
+    /**
+     * helper method to read the names and building types of existing
+     * projects, for building search queries
+     *
+     * @param pool the connection pool for executing queries
+     * @return the name and building type of each project read
+     * @throws SQLException if a database access error occurs
+     */
+    static List<String> projectTexts(ConnectionPool pool) throws SQLException {
+        List<String> texts = new ArrayList<>();
+        try (PooledConnection connection = pool.borrow();
+                ResultSet resultSet = connection.prepare("SELECT project_name, building_type FROM Projects LIMIT "
+                        + QUERY_SOURCE_PROJECTS).executeQuery()) {
+            while (resultSet.next()) {
+                texts.add(resultSet.getString(1) + " " + resultSet.getString(2));
+            }
+        }
+        return texts;
+    }
+
+    /**
+     * helper method to build search queries from the words of project names
+     *
+     * @param texts  the names and building types of existing projects
+     * @param random the source of random values
+     * @return the queries (at least one)
+     */
+    static List<String> sampleQueries(List<String> texts, Random random) {
+        // collect the distinct words
+        Set<String> distinct = new LinkedHashSet<>();
+        for (String text : texts) {
+            distinct.addAll(ProjectSearchIndex.tokenize(text));
+        }
+
+        // fall back to a common word if the table is empty
+        List<String> words = new ArrayList<>(distinct);
+        if (words.isEmpty()) {
+            words.add("house");
+        }
+
+        // combine one or two words per query, some as prefixes
+        List<String> queries = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            String query = words.get(random.nextInt(words.size()));
+            if (random.nextBoolean()) {
+                query += " " + words.get(random.nextInt(words.size()));
+            }
+            if (random.nextInt(4) == 0 && query.length() > 3) {
+                query = query.substring(0, query.length() - 1);
+            }
+            queries.add(query);
+        }
+        return queries;
+    }
+
+    /**
+     * helper method to delete a directory and everything in it
+     *
+     * @param directory the directory
+     * @throws IOException if a file cannot be deleted
+     */
+    private static void deleteDirectory(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    /**
+     * helper method to compute the dashboard figures by scanning the Projects
+     * table (what ProjectSummary.read() avoids)
+     *
+     * @param pool the connection pool for executing queries
+     * @throws SQLException if a database access error occurs
+     */
+    private static void scanSummary(ConnectionPool pool) throws SQLException {
+        try (PooledConnection connection = pool.borrow();
+                ResultSet resultSet = connection.prepare("SELECT COUNT(*), SUM(project_finalised = false), "
+                        + "SUM(project_finalised = false AND project_deadline < CURDATE()), SUM(total_fee), "
+                        + "SUM(amount_paid), SUM(GREATEST(total_fee - amount_paid, 0)) FROM Projects")
+                        .executeQuery()) {
+            resultSet.next();
+        }
+    }
+
+    /**
+     * helper method to count the projects in the database
+     *
+     * @param pool the connection pool for executing queries
+     * @return the number of projects
+     * @throws SQLException if a database access error occurs
+     */
+    static long countProjects(ConnectionPool pool) throws SQLException {
+        try (PooledConnection connection = pool.borrow();
+                ResultSet resultSet = connection.prepare("SELECT COUNT(*) FROM Projects").executeQuery()) {
+            resultSet.next();
+            return resultSet.getLong(1);
+        }
+    }
+}
@@ -0,0 +1,193 @@
+
+// import Java packages
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * class for a database connection borrowed from a ConnectionPool
+ *
+ * each borrow gets its own PooledConnection (a lease on one of the pool's
+ * entries), so closing it a second time, or using it after it was closed,
+ * never touches the connection once it has been lent to someone else
+ *
+ * each pool entry caches its prepared statements keyed by SQL text, so a
+ * query of the same shape is only parsed by the server once per connection
+ *
+ * closing a pooled connection returns it to the pool rather than closing the
+ * underlying database connection
+ */
+public class PooledConnection implements AutoCloseable {
+
+    // pool that owns this connection
+    private final ConnectionPool pool;
+
+    // pool entry lent to this borrower
+    private final Entry entry;
+
+    // set by the first close(), which returns the entry to the pool
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    /**
+     * class for a database connection kept by the pool between borrows, with
+     * its cache of prepared statements
+     */
+    static final class Entry {
+
+        // underlying database connection
+        private final Connection connection;
+
+        // maximum number of cached prepared statements
+        private final int statementCacheSize;
+
+        // prepared statements keyed by SQL text, least recently used first
+        private final LinkedHashMap<String, PreparedStatement> statementCache;
+
+        /**
+         * constructor to wrap a database connection for use in a pool
+         *
+         * @param connection         the underlying database connection
+         * @param statementCacheSize the maximum number of cached prepared
+         *                           statements
+         */
+        Entry(Connection connection, int statementCacheSize) {
+            this.connection = connection;
+            this.statementCacheSize = statementCacheSize;
+            // access order keeps the least recently used statement at the head
+            this.statementCache = new LinkedHashMap<>(16, 0.75f, true);
+        }
+
+        /**
+         * method to get the underlying database connection
+         *
+         * @return the database connection
+         */
+        Connection getConnection() {
+            return connection;
+        }
+
+        /**
+         * helper method to close the cached statements and the database
+         * connection without reporting errors (used when the pool discards a
+         * connection)
+         */
+        void closeQuietly() {
+            // close cached statements
+            for (PreparedStatement preparedStatement : statementCache.values()) {
+                try {
+                    preparedStatement.close();
+                } catch (SQLException e) {
+                    // ignore - the connection is being closed anyway
+                }
+            }
+            statementCache.clear();
+
+            // close connection
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                // ignore - nothing more can be done with a failed connection
+            }
+        }
+    }
+
+    /**
+     * constructor to lend a pool entry to one borrower
+     * (called by ConnectionPool.borrow())
+     *
+     * @param pool  the pool that owns the entry
+     * @param entry the entry lent
+     */
+    PooledConnection(ConnectionPool pool, Entry entry) {
+        this.pool = pool;
+        this.entry = entry;
+    }
+
+    /**
+     * method to get a prepared statement for the given SQL
+     *
+     * the statement is taken from the cache if it has been prepared on this
+     * connection before; parameters from a previous use are cleared
+     *
+     * @param sql the SQL with '?' placeholders for parameters
+     * @return the prepared statement (must not be closed by the caller)
+     * @throws SQLException if the statement could not be prepared, or the
+     *                      connection has been returned to the pool
+     */
+    public PreparedStatement prepare(String sql) throws SQLException {
+        if (released.get()) {
+            throw new SQLException("The connection has already been returned to the pool.");
+        }
+
+        // look up statement in the cache
+        PreparedStatement preparedStatement = entry.statementCache.get(sql);
+        pool.recordStatementLookup(preparedStatement != null);
+
+        if (preparedStatement != null) {
+            // clear parameters left over from the last use
+            preparedStatement.clearParameters();
+            return preparedStatement;
+        }
+
+        // prepare and cache a new statement
+        preparedStatement = entry.connection.prepareStatement(sql);
+        entry.statementCache.put(sql, preparedStatement);
+
+        // evict the least recently used statement if the cache is full
+        if (entry.statementCache.size() > entry.statementCacheSize) {
+            Iterator<Map.Entry<String, PreparedStatement>> iterator = entry.statementCache.entrySet().iterator();
+            PreparedStatement eldest = iterator.next().getValue();
+            iterator.remove();
+            eldest.close();
+        }
+
+        return preparedStatement;
+    }
+
+    /**
+     * method to get the underlying database connection
+     * e.g. for transaction control
+     *
+     * @return the database connection (must not be closed by the caller)
+     * @throws IllegalStateException if the connection has been returned to
+     *                               the pool
+     */
+    public Connection getConnection() {
+        if (released.get()) {
+            throw new IllegalStateException("The connection has already been returned to the pool.");
+        }
+        return entry.connection;
+    }
+
+    /**
+     * method to return the connection to the pool
+     *
+     * an unfinished transaction is rolled back and auto-commit is restored so
+     * the next borrower starts from a clean state; closing it again does
+     * nothing, even after the pool has lent the connection to someone else
+     */
+    @Override
+    public void close() {
+        // only the first close returns the connection
+        if (!released.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            // reset transaction state left by the borrower
+            if (!entry.connection.getAutoCommit()) {
+                entry.connection.rollback();
+                entry.connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            // connection is unusable, so drop it instead of returning it
+            pool.release(entry, false);
+            return;
+        }
+        pool.release(entry, true);
+    }
+}
@@ -0,0 +1,61 @@
+
+// import Java packages
+import java.time.LocalDate;
+
+/**
+ * class for the values of a row in the Projects table
+ *
+ * used to pass a project between the menu, the ProjectRepository write paths
+ * and the benchmark
+ */
+public class Project {
+
+    // project number (0 until the project has been inserted)
+    int projectNumber;
+
+    // linked people
+    String architectID;
+    String contractorID;
+    String customerID;
+
+    // project details
+    String projectName;
+    String buildingType;
+    String physicalAddress;
+    String erfNumber;
+    double totalFee;
+    double amountPaid;
+    LocalDate projectDeadline;
+    boolean projectFinalised;
+
+    // null until the project is finalised
+    LocalDate completionDate;
+
+    // row version, incremented by every write (0 until the project is read)
+    int version;
+
+    /**
+     * method to copy the project, so new values can be set on the copy and
+     * compared with the original
+     *
+     * @return a copy of the project
+     */
+    Project copy() {
+        Project project = new Project();
+        project.projectNumber = projectNumber;
+        project.architectID = architectID;
+        project.contractorID = contractorID;
+        project.customerID = customerID;
+        project.projectName = projectName;
+        project.buildingType = buildingType;
+        project.physicalAddress = physicalAddress;
+        project.erfNumber = erfNumber;
+        project.totalFee = totalFee;
+        project.amountPaid = amountPaid;
+        project.projectDeadline = projectDeadline;
+        project.projectFinalised = projectFinalised;
+        project.completionDate = completionDate;
+        project.version = version;
+        return project;
+    }
+}
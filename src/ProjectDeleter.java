@@ -0,0 +1,305 @@
+
+// import Java packages
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * class for deleting projects, together with the people linked only to them,
+ * in a single transaction
+ *
+ * a delete is done in two steps: plan() reads the projects and how many
+ * projects each of their people is linked to (one query per 512 projects,
+ * whatever the number of people), so the caller can report the people shared
+ * with other projects (who are kept, as those projects still reference them);
+ * delete() then removes the projects and the people linked only to them with
+ * IN (...) statements and commits them together, so a failure part way leaves
+ * nothing half-deleted
+ */
+public class ProjectDeleter {
+
+    /**
+     * class for a person linked to projects being deleted
+     */
+    public static final class LinkedPerson {
+
+        // table and ID of the person
+        final PersonTable personTable;
+        final String id;
+
+        // number of projects linked to the person that are not being deleted
+        int otherProjects;
+
+        // true if the person is deleted with the projects (only people linked
+        // to no other project are)
+        boolean delete;
+
+        /**
+         * constructor to describe a linked person
+         *
+         * @param personTable the table of the person
+         * @param id          the ID of the person
+         */
+        LinkedPerson(PersonTable personTable, String id) {
+            this.personTable = personTable;
+            this.id = id;
+        }
+    }
+
+    /**
+     * class for the projects and people a delete will remove
+     */
+    public static final class DeletePlan {
+
+        // numbers of the projects found
+        final int[] projectNumbers;
+
+        // distinct people linked to the projects
+        final List<LinkedPerson> people;
+
+        /**
+         * constructor to describe a planned delete
+         *
+         * @param projectNumbers the numbers of the projects found
+         * @param people         the distinct people linked to the projects
+         */
+        DeletePlan(int[] projectNumbers, List<LinkedPerson> people) {
+            this.projectNumbers = projectNumbers;
+            this.people = people;
+        }
+
+        /**
+         * method to get the people also linked to projects that are not being
+         * deleted
+         *
+         * @return the shared people
+         */
+        public List<LinkedPerson> getSharedPeople() {
+            List<LinkedPerson> shared = new ArrayList<>();
+            for (LinkedPerson person : people) {
+                if (person.otherProjects > 0) {
+                    shared.add(person);
+                }
+            }
+            return shared;
+        }
+    }
+
+    // SQL to read projects with the number of projects linked to each of their
+    // people (the IN (...) list is appended)
+    private static final String SELECT_USAGE = "SELECT p.project_number, p.architect_id, p.contractor_id, "
+            + "p.customer_id, "
+            + "(SELECT COUNT(*) FROM Projects o WHERE o.architect_id = p.architect_id), "
+            + "(SELECT COUNT(*) FROM Projects o WHERE o.contractor_id = p.contractor_id), "
+            + "(SELECT COUNT(*) FROM Projects o WHERE o.customer_id = p.customer_id) "
+            + "FROM Projects p WHERE p.project_number IN ";
+
+    /**
+     * method to read the projects to delete and their linked people
+     *
+     * @param pool           the connection pool for executing queries
+     * @param projectNumbers the numbers of the projects to delete
+     * @return the plan (numbers that do not exist are left out)
+     * @throws SQLException if a database access error occurs
+     */
+    public static DeletePlan plan(ConnectionPool pool, int... projectNumbers) throws SQLException {
+        // total number of projects linked to each person, and how many of them
+        // are being deleted (keyed by table and ID)
+        Map<String, LinkedPerson> people = new LinkedHashMap<>();
+        Map<String, Integer> linkedHere = new LinkedHashMap<>();
+        List<Integer> found = new ArrayList<>(projectNumbers.length);
+
+        PersonTable[] personTables = PersonTable.values();
+        try (PooledConnection connection = pool.borrow()) {
+            for (int from = 0; from < projectNumbers.length; from += InList.MAX_SIZE) {
+                int to = Math.min(from + InList.MAX_SIZE, projectNumbers.length);
+                int slots = InList.slots(to - from);
+
+                // bind this chunk's project numbers (unused slots match nothing)
+                PreparedStatement select = connection.prepare(SELECT_USAGE + InList.placeholders(slots));
+                InList.bind(select, 1, projectNumbers, from, to, slots);
+
+                try (ResultSet resultSet = select.executeQuery()) {
+                    while (resultSet.next()) {
+                        found.add(resultSet.getInt(1));
+
+                        // record each linked person once, with their total count
+                        for (int column = 0; column < personTables.length; column++) {
+                            String id = resultSet.getString(2 + column);
+                            String key = personTables[column].name() + ":" + id;
+                            if (!people.containsKey(key)) {
+                                LinkedPerson person = new LinkedPerson(personTables[column], id);
+                                person.otherProjects = resultSet.getInt(5 + column);
+                                people.put(key, person);
+                            }
+                            linkedHere.merge(key, 1, Integer::sum);
+                        }
+                    }
+                }
+            }
+        }
+
+        // people linked only to projects being deleted go with them
+        for (Map.Entry<String, LinkedPerson> entry : people.entrySet()) {
+            LinkedPerson person = entry.getValue();
+            person.otherProjects -= linkedHere.get(entry.getKey());
+            person.delete = person.otherProjects <= 0;
+        }
+
+        int[] numbers = found.stream().mapToInt(Integer::intValue).toArray();
+        return new DeletePlan(numbers, new ArrayList<>(people.values()));
+    }
+
+    /**
+     * method to delete the projects and chosen people of a plan in one
+     * transaction
+     *
+     * the projects are deleted before the people (the Projects table
+     * references the person tables)
+     *
+     * @param pool the connection pool for executing queries
+     * @param plan the plan returned by plan()
+     * @return the number of projects deleted
+     * @throws SQLException if a database access error occurs (nothing is
+     *                      deleted)
+     */
+    public static int delete(ConnectionPool pool, DeletePlan plan) throws SQLException {
+        int deleted = 0;
+        List<Project> deletedProjects;
+        Map<PersonTable, List<Map<String, String>>> deletedPeople = new EnumMap<>(PersonTable.class);
+        try (PooledConnection connection = pool.borrow()) {
+            // a connection returned mid-transaction is rolled back by the pool
+            connection.getConnection().setAutoCommit(false);
+
+            // lock the projects and remove them from the summary figures
+            ProjectSummary.Delta delta = new ProjectSummary.Delta();
+            deletedProjects = ProjectSummary.removeProjects(connection, delta, plan.projectNumbers, false);
+
+            // delete the projects
+            List<Object> numbers = new ArrayList<>(plan.projectNumbers.length);
+            for (int projectNumber : plan.projectNumbers) {
+                numbers.add(projectNumber);
+            }
+            deleted = deleteIn(connection, "DELETE FROM Projects WHERE project_number IN ", numbers,
+                    Types.INTEGER);
+            ProjectSummary.apply(connection, delta);
+
+            // delete the people linked only to these projects
+            for (PersonTable personTable : PersonTable.values()) {
+                List<Object> ids = new ArrayList<>();
+                for (LinkedPerson person : plan.people) {
+                    if (person.delete && person.personTable == personTable) {
+                        ids.add(person.id);
+                    }
+                }
+                // read the people first when changes are journaled
+                if (ChangeJournal.isEnabled()) {
+                    deletedPeople.put(personTable, selectIn(connection, personTable, ids));
+                }
+                deleteIn(connection, "DELETE FROM " + personTable.getTable() + " WHERE "
+                        + personTable.getIdColumn() + " IN ", ids, Types.VARCHAR);
+            }
+
+            ProjectRepository.commit(connection);
+        }
+
+        // record the deleted rows once the delete is committed
+        for (Project project : deletedProjects) {
+            ChangeJournal.record("delete", "Projects", project.projectNumber, ChangeJournal.image(project), null);
+        }
+        for (Map.Entry<PersonTable, List<Map<String, String>>> people : deletedPeople.entrySet()) {
+            PersonTable personTable = people.getKey();
+            for (Map<String, String> person : people.getValue()) {
+                ChangeJournal.record("delete", personTable.getTable(), person.get(personTable.getIdColumn()),
+                        person, null);
+            }
+        }
+
+        // notify listeners once the delete is committed
+        for (int projectNumber : plan.projectNumbers) {
+            ChangeNotifier.projectDeleted(projectNumber);
+        }
+        for (LinkedPerson person : plan.people) {
+            if (person.delete) {
+                ChangeNotifier.personDeleted(person.personTable.getIdColumn(), person.id);
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * helper method to delete rows matching a list of values, at most
+     * InList.MAX_SIZE values per statement
+     *
+     * @param connection the pooled connection (in a transaction)
+     * @param sql        the DELETE statement up to IN
+     * @param values     the values to match
+     * @param sqlType    the SQL type of the values (for the unused slots)
+     * @return the number of rows deleted
+     * @throws SQLException if a database access error occurs
+     */
+    private static int deleteIn(PooledConnection connection, String sql, List<Object> values, int sqlType)
+            throws SQLException {
+        int deleted = 0;
+        for (int from = 0; from < values.size(); from += InList.MAX_SIZE) {
+            int to = Math.min(from + InList.MAX_SIZE, values.size());
+            int slots = InList.slots(to - from);
+
+            PreparedStatement delete = connection.prepare(sql + InList.placeholders(slots));
+            for (int i = from; i < to; i++) {
+                delete.setObject(i - from + 1, values.get(i));
+            }
+            for (int i = to - from + 1; i <= slots; i++) {
+                delete.setNull(i, sqlType);
+            }
+            deleted += delete.executeUpdate();
+        }
+        return deleted;
+    }
+
+    /**
+     * helper method to lock and read people by ID, at most InList.MAX_SIZE
+     * per query
+     *
+     * @param connection  the pooled connection (in a transaction)
+     * @param personTable the table of the people
+     * @param ids         the IDs of the people
+     * @return each person's values by column
+     * @throws SQLException if a database access error occurs
+     */
+    private static List<Map<String, String>> selectIn(PooledConnection connection, PersonTable personTable,
+            List<Object> ids) throws SQLException {
+        String[] columns = personTable.getColumns();
+        List<Map<String, String>> people = new ArrayList<>();
+        for (int from = 0; from < ids.size(); from += InList.MAX_SIZE) {
+            int to = Math.min(from + InList.MAX_SIZE, ids.size());
+            int slots = InList.slots(to - from);
+
+            PreparedStatement select = connection.prepare("SELECT " + String.join(", ", columns) + " FROM "
+                    + personTable.getTable() + " WHERE " + columns[0] + " IN " + InList.placeholders(slots)
+                    + " FOR UPDATE");
+            for (int i = from; i < to; i++) {
+                select.setObject(i - from + 1, ids.get(i));
+            }
+            for (int i = to - from + 1; i <= slots; i++) {
+                select.setNull(i, Types.VARCHAR);
+            }
+            try (ResultSet resultSet = select.executeQuery()) {
+                while (resultSet.next()) {
+                    Map<String, String> values = new LinkedHashMap<>();
+                    for (int i = 0; i < columns.length; i++) {
+                        values.put(columns[i], resultSet.getString(i + 1));
+                    }
+                    people.add(values);
+                }
+            }
+        }
+        return people;
+    }
+}
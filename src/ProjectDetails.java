@@ -0,0 +1,266 @@
+
+// import Java packages
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * class for a project together with its architect, contractor and customer
+ *
+ * a single project is read with one joined query, and a page of projects has
+ * its people read through the person cache with at most one batched IN (...)
+ * query per person table, so the number of queries does not grow with the
+ * number of projects shown
+ */
+public class ProjectDetails {
+
+    /**
+     * project columns in display order
+     */
+    static final String[] PROJECT_COLUMNS = { "project_number", "project_name", "building_type",
+            "physical_address", "erf_number", "total_fee", "amount_paid", "project_deadline", "project_finalised",
+            "completion_date", "architect_id", "contractor_id", "customer_id" };
+
+    // person columns in display order (the ID column first)
+    private static final String[] ARCHITECT_COLUMNS = PersonTable.ARCHITECTS.getColumns();
+    private static final String[] CONTRACTOR_COLUMNS = PersonTable.CONTRACTORS.getColumns();
+    private static final String[] CUSTOMER_COLUMNS = PersonTable.CUSTOMERS.getColumns();
+
+    /**
+     * SQL query to read one project joined with its people (person IDs come
+     * from the Projects table so they are shown even if the person is missing)
+     */
+    private static final String SELECT_DETAILS = "SELECT " + columnList("p", PROJECT_COLUMNS) + ", "
+            + columnList("a", ARCHITECT_COLUMNS, 1) + ", " + columnList("t", CONTRACTOR_COLUMNS, 1) + ", "
+            + columnList("c", CUSTOMER_COLUMNS, 1) + " FROM Projects p "
+            + "LEFT JOIN Architects a ON a.architect_id = p.architect_id "
+            + "LEFT JOIN Contractors t ON t.contractor_id = p.contractor_id "
+            + "LEFT JOIN Customers c ON c.customer_id = p.customer_id "
+            + "WHERE p.project_number = ?";
+
+    // values of the project and its people by column name (a person is null if
+    // there is no record for their ID)
+    private final Map<String, Object> project;
+    private final Map<String, Object> architect;
+    private final Map<String, Object> contractor;
+    private final Map<String, Object> customer;
+
+    /**
+     * constructor to create project details
+     *
+     * @param project    the project values
+     * @param architect  the architect values (or null)
+     * @param contractor the contractor values (or null)
+     * @param customer   the customer values (or null)
+     */
+    private ProjectDetails(Map<String, Object> project, Map<String, Object> architect,
+            Map<String, Object> contractor, Map<String, Object> customer) {
+        this.project = project;
+        this.architect = architect;
+        this.contractor = contractor;
+        this.customer = customer;
+    }
+
+    /**
+     * method to read a project and its people with a single joined query
+     *
+     * @param pool          the connection pool for executing queries
+     * @param projectNumber the number of the project
+     * @return the project details, or null if the project does not exist
+     * @throws SQLException if a database access error occurs
+     */
+    public static ProjectDetails load(ConnectionPool pool, int projectNumber) throws SQLException {
+        try (PooledConnection connection = pool.borrow()) {
+            PreparedStatement select = connection.prepare(SELECT_DETAILS);
+            select.setInt(1, projectNumber);
+
+            try (ResultSet resultSet = select.executeQuery()) {
+                // check if project found
+                if (!resultSet.next()) {
+                    return null;
+                }
+
+                // split the joined row into the project and its people
+                Map<String, Object> project = readColumns(resultSet, PROJECT_COLUMNS, 0);
+                return new ProjectDetails(project,
+                        readPerson(resultSet, ARCHITECT_COLUMNS, project.get("architect_id")),
+                        readPerson(resultSet, CONTRACTOR_COLUMNS, project.get("contractor_id")),
+                        readPerson(resultSet, CUSTOMER_COLUMNS, project.get("customer_id")));
+            }
+        }
+    }
+
+    /**
+     * method to read the people of a page of projects with one batched query
+     * per person table
+     *
+     * @param pool        the connection pool for executing queries
+     * @param cache       the cache of person records
+     * @param columnNames the names of the columns in each project row
+     * @param rows        the project rows (must include the three person IDs)
+     * @return the details of each project, in the order of the rows
+     * @throws SQLException if a database access error occurs
+     */
+    public static List<ProjectDetails> loadPage(ConnectionPool pool, PersonCache cache, String[] columnNames,
+            List<Object[]> rows) throws SQLException {
+        // convert the rows to column maps
+        List<Map<String, Object>> projects = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            Map<String, Object> project = new LinkedHashMap<>();
+            for (int i = 0; i < columnNames.length; i++) {
+                project.put(columnNames[i], row[i]);
+            }
+            projects.add(project);
+        }
+
+        // read each person table once for the whole page (people already in the
+        // cache are not read again)
+        Map<String, Map<String, Object>> architects = cache.getAll(pool, PersonTable.ARCHITECTS,
+                ids(projects, "architect_id"));
+        Map<String, Map<String, Object>> contractors = cache.getAll(pool, PersonTable.CONTRACTORS,
+                ids(projects, "contractor_id"));
+        Map<String, Map<String, Object>> customers = cache.getAll(pool, PersonTable.CUSTOMERS,
+                ids(projects, "customer_id"));
+
+        // match each project with its people
+        List<ProjectDetails> details = new ArrayList<>(projects.size());
+        for (Map<String, Object> project : projects) {
+            details.add(new ProjectDetails(project, architects.get(project.get("architect_id")),
+                    contractors.get(project.get("contractor_id")), customers.get(project.get("customer_id"))));
+        }
+        return details;
+    }
+
+    /**
+     * method to display the project and its people
+     */
+    public void print() {
+        System.out.println("Project Number: " + project.get("project_number") + " - " + project.get("project_name"));
+        System.out.println("  Building Type: " + project.get("building_type"));
+        System.out.println("  Physical Address: " + project.get("physical_address") + " (ERF "
+                + project.get("erf_number") + ")");
+        System.out.println("  Total Fee: " + project.get("total_fee") + "\tAmount Paid: "
+                + project.get("amount_paid"));
+        System.out.println("  Deadline: " + project.get("project_deadline") + "\tFinalised: "
+                + project.get("project_finalised") + "\tCompletion Date: " + project.get("completion_date"));
+        printPerson("Architect", project.get("architect_id"), architect, ARCHITECT_COLUMNS);
+        printPerson("Contractor", project.get("contractor_id"), contractor, CONTRACTOR_COLUMNS);
+        printPerson("Customer", project.get("customer_id"), customer, CUSTOMER_COLUMNS);
+    }
+
+    /**
+     * helper method to display one of the project's people
+     *
+     * @param role    the person's role on the project
+     * @param id      the person's ID from the project
+     * @param person  the person's values (or null)
+     * @param columns the person's columns (the ID column first)
+     */
+    private static void printPerson(String role, Object id, Map<String, Object> person, String[] columns) {
+        // notify user if the project refers to a missing record
+        if (person == null) {
+            System.out.println("  " + role + ": " + id + " (no " + role.toLowerCase() + " record found)");
+            return;
+        }
+
+        // join the person's details
+        StringBuilder line = new StringBuilder("  ").append(role).append(": ").append(id).append(" -");
+        for (int i = 1; i < columns.length; i++) {
+            line.append(i == 1 ? " " : ", ").append(person.get(columns[i]));
+        }
+        System.out.println(line);
+    }
+
+    /**
+     * helper method to collect the distinct person IDs of a page of projects
+     *
+     * @param projects the projects of the page
+     * @param column   the person ID column
+     * @return the distinct IDs (several projects may share a person)
+     */
+    private static Set<String> ids(List<Map<String, Object>> projects, String column) {
+        Set<String> ids = new LinkedHashSet<>();
+        for (Map<String, Object> project : projects) {
+            Object id = project.get(column);
+            if (id != null) {
+                ids.add(id.toString());
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * helper method to read a joined person, or null if the join found no
+     * record
+     *
+     * @param resultSet the result set positioned on the joined row
+     * @param columns   the person columns (the ID column first, not selected)
+     * @param id        the person's ID from the project
+     * @return the person's values, or null
+     * @throws SQLException if a database access error occurs
+     */
+    private static Map<String, Object> readPerson(ResultSet resultSet, String[] columns, Object id)
+            throws SQLException {
+        // the name column is NOT NULL, so null means no record was joined
+        if (resultSet.getObject(columns[1]) == null) {
+            return null;
+        }
+        Map<String, Object> person = readColumns(resultSet, columns, 1);
+        person.put(columns[0], id);
+        return person;
+    }
+
+    /**
+     * helper method to read columns of the current row by name
+     *
+     * @param resultSet the result set positioned on a row
+     * @param columns   the column names
+     * @param from      the index of the first column to read
+     * @return the values by column name
+     * @throws SQLException if a database access error occurs
+     */
+    private static Map<String, Object> readColumns(ResultSet resultSet, String[] columns, int from)
+            throws SQLException {
+        Map<String, Object> values = new LinkedHashMap<>();
+        for (int i = from; i < columns.length; i++) {
+            values.put(columns[i], resultSet.getObject(columns[i]));
+        }
+        return values;
+    }
+
+    /**
+     * helper method to build a select list of table-qualified columns
+     *
+     * @param alias   the table alias
+     * @param columns the column names
+     * @return the comma-separated column list
+     */
+    private static String columnList(String alias, String[] columns) {
+        return columnList(alias, columns, 0);
+    }
+
+    /**
+     * helper method to build a select list of table-qualified columns
+     *
+     * @param alias   the table alias
+     * @param columns the column names
+     * @param from    the index of the first column to include
+     * @return the comma-separated column list
+     */
+    private static String columnList(String alias, String[] columns, int from) {
+        StringBuilder list = new StringBuilder();
+        for (int i = from; i < columns.length; i++) {
+            if (i > from) {
+                list.append(", ");
+            }
+            list.append(alias).append('.').append(columns[i]);
+        }
+        return list.toString();
+    }
+}
@@ -0,0 +1,903 @@
+
+// import Java packages
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * class for importing projects and their linked people from a CSV or
+ * JSON-lines file without going through the interactive menu
+ *
+ * the file is streamed one record at a time, rows are written with JDBC
+ * batches and committed in chunks, and rows that fail validation or cannot be
+ * inserted are written to a side file (the input file name with a '.rejected'
+ * suffix) instead of aborting the whole load
+ *
+ * records use the database column names as field names, e.g.
+ * project_name, building_type, physical_address, erf_number, total_fee,
+ * amount_paid, project_deadline, project_finalised, completion_date,
+ * architect_id, architect_name, architect_tel, architect_email,
+ * architect_address, contractor_id, contractor_name, ..., customer_id,
+ * customer_fname, customer_surname, customer_tel, customer_email and
+ * customer_address
+ *
+ * the person detail fields are optional - if a person's name is left out, the
+ * project is linked to the ID only
+ */
+public class ProjectImporter {
+
+    /**
+     * default number of rows committed per transaction
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 1000;
+
+    /**
+     * name of the extra field that records why a row was rejected
+     */
+    private static final String REJECT_REASON = "reject_reason";
+
+    /**
+     * name of the internal field that marks a record the reader could not parse
+     */
+    private static final String PARSE_ERROR = "#parse_error";
+
+    // SQL to insert a project
+    private static final String INSERT_PROJECT = "INSERT INTO Projects (architect_id, contractor_id, customer_id, project_name, building_type, physical_address, erf_number, total_fee, amount_paid, project_deadline, project_finalised, completion_date) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    // SQL to insert a person, updating the details (and version) of a person
+    // that already exists
+    private static final String UPSERT_ARCHITECT = "INSERT INTO Architects (architect_id, architect_name, architect_tel, architect_email, architect_address) VALUES (?, ?, ?, ?, ?)"
+            + " ON DUPLICATE KEY UPDATE architect_name = VALUES(architect_name), architect_tel = VALUES(architect_tel), architect_email = VALUES(architect_email), architect_address = VALUES(architect_address), version = version + 1";
+    private static final String UPSERT_CONTRACTOR = "INSERT INTO Contractors (contractor_id, contractor_name, contractor_tel, contractor_email, contractor_address) VALUES (?, ?, ?, ?, ?)"
+            + " ON DUPLICATE KEY UPDATE contractor_name = VALUES(contractor_name), contractor_tel = VALUES(contractor_tel), contractor_email = VALUES(contractor_email), contractor_address = VALUES(contractor_address), version = version + 1";
+    private static final String UPSERT_CUSTOMER = "INSERT INTO Customers (customer_id, customer_fname, customer_surname, customer_tel, customer_email, customer_address) VALUES (?, ?, ?, ?, ?, ?)"
+            + " ON DUPLICATE KEY UPDATE customer_fname = VALUES(customer_fname), customer_surname = VALUES(customer_surname), customer_tel = VALUES(customer_tel), customer_email = VALUES(customer_email), customer_address = VALUES(customer_address), version = version + 1";
+
+    /**
+     * method to run the import from the command line arguments
+     * e.g. import projects.csv 5000
+     *
+     * @param pool the connection pool for executing queries
+     * @param args the command arguments (file name and optional chunk size)
+     * @throws IOException  if the input or rejected file cannot be read or written
+     * @throws SQLException if a database access error occurs
+     */
+    public static void run(ConnectionPool pool, String[] args) throws IOException, SQLException {
+        // check that a file was given
+        if (args.length < 2) {
+            System.out.println("Usage: PoisePMS import <file.csv|file.jsonl> [chunk size]");
+            return;
+        }
+
+        // get chunk size (if provided)
+        int chunkSize = DEFAULT_CHUNK_SIZE;
+        if (args.length > 2) {
+            chunkSize = InputValidation.parseInteger(args[2]);
+            if (chunkSize < 1) {
+                System.out.println("Chunk size must be a whole number of at least 1.");
+                System.out.println("Usage: PoisePMS import <file.csv|file.jsonl> [chunk size]");
+                return;
+            }
+        }
+
+        importFile(pool, Paths.get(args[1]), chunkSize);
+    }
+
+    /**
+     * method to import every record in a CSV or JSON-lines file
+     *
+     * @param pool      the connection pool for executing queries
+     * @param file      the file to import ('.csv' for CSV, anything else is read
+     *                  as JSON lines)
+     * @param chunkSize the number of rows to commit per transaction
+     * @throws IOException  if the input or rejected file cannot be read or written
+     * @throws SQLException if a database access error occurs
+     */
+    public static void importFile(ConnectionPool pool, Path file, int chunkSize) throws IOException, SQLException {
+        // check that chunks hold at least one row
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Chunk size must be at least 1.");
+        }
+
+        // choose record format from the file extension
+        boolean csv = file.getFileName().toString().toLowerCase().endsWith(".csv");
+        Path rejectedFile = Paths.get(file.toString() + ".rejected");
+
+        // record start time for throughput reporting
+        long start = System.nanoTime();
+
+        // declare counters
+        long imported = 0;
+        long rejected = 0;
+
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+                RejectWriter rejectWriter = new RejectWriter(rejectedFile, csv);
+                PooledConnection connection = pool.borrow()) {
+            // create record reader for the file format
+            RecordReader records = csv ? new CsvRecordReader(reader) : new JsonLinesRecordReader(reader);
+            if (csv) {
+                rejectWriter.setCsvHeader(((CsvRecordReader) records).getHeaderLine());
+            }
+
+            // write each chunk in its own transaction
+            Connection databaseConnection = connection.getConnection();
+            databaseConnection.setAutoCommit(false);
+
+            // rows waiting to be written in the current chunk
+            List<ImportRow> chunk = new ArrayList<>(chunkSize);
+            Record record;
+
+            // stream records from the file
+            while ((record = records.next()) != null) {
+                // parse and validate the record
+                ImportRow row;
+                try {
+                    row = ImportRow.parse(record.fields);
+                } catch (IllegalArgumentException e) {
+                    // keep invalid rows out of the database
+                    rejectWriter.write(record, "line " + record.lineNumber + ": " + e.getMessage());
+                    rejected++;
+                    continue;
+                }
+                row.record = record;
+                chunk.add(row);
+
+                // write chunk once it is full
+                if (chunk.size() == chunkSize) {
+                    int written = writeChunk(connection, chunk, rejectWriter);
+                    imported += written;
+                    rejected += chunk.size() - written;
+                    chunk.clear();
+                    printProgress(imported, rejected, start);
+                }
+            }
+
+            // write remaining rows
+            if (!chunk.isEmpty()) {
+                int written = writeChunk(connection, chunk, rejectWriter);
+                imported += written;
+                rejected += chunk.size() - written;
+            }
+        }
+
+        // display summary
+        double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+        System.out.println("Import complete: " + imported + " rows imported, " + rejected + " rows rejected in "
+                + String.format("%.2f", seconds) + " s (" + String.format("%.0f", rate(imported, seconds))
+                + " rows/s).");
+        if (rejected > 0) {
+            System.out.println("Rejected rows were written to " + rejectedFile);
+        }
+    }
+
+    /**
+     * helper method to write a chunk of rows in a single transaction
+     *
+     * if the batch fails, the chunk is rolled back and replayed one row at a
+     * time so that only the rows that caused the failure are rejected
+     *
+     * @param connection   the pooled connection (auto-commit disabled)
+     * @param chunk        the rows to write
+     * @param rejectWriter the writer for rejected rows
+     * @return the number of rows written
+     * @throws IOException  if the rejected file cannot be written
+     * @throws SQLException if a database access error occurs
+     */
+    private static int writeChunk(PooledConnection connection, List<ImportRow> chunk, RejectWriter rejectWriter)
+            throws IOException, SQLException {
+        Connection databaseConnection = connection.getConnection();
+        nameRows(connection, chunk);
+
+        try {
+            // add every row to the batches
+            ProjectSummary.Delta delta = new ProjectSummary.Delta();
+            for (ImportRow row : chunk) {
+                addToBatches(connection, row, delta);
+            }
+            executeBatches(connection);
+            ProjectSummary.apply(connection, delta);
+            databaseConnection.commit();
+            return chunk.size();
+        } catch (BatchUpdateException e) {
+            // undo the partially written chunk
+            databaseConnection.rollback();
+            clearBatches(connection);
+        }
+
+        // replay the chunk row by row to isolate the failing rows
+        int written = 0;
+        for (ImportRow row : chunk) {
+            try {
+                ProjectSummary.Delta delta = new ProjectSummary.Delta();
+                addToBatches(connection, row, delta);
+                executeBatches(connection);
+                ProjectSummary.apply(connection, delta);
+                databaseConnection.commit();
+                written++;
+            } catch (BatchUpdateException e) {
+                databaseConnection.rollback();
+                clearBatches(connection);
+                rejectWriter.write(row.record, "line " + row.record.lineNumber + ": " + e.getMessage());
+            }
+        }
+        return written;
+    }
+
+    /**
+     * helper method to name the rows of a chunk that were given no project
+     * name, from the building type and customer surname
+     *
+     * surnames come from the chunk itself where a row gives the customer's
+     * details (the last row wins, as with the upserts), and the rest are read
+     * with one query per chunk
+     *
+     * @param connection the pooled connection
+     * @param chunk      the rows to name
+     * @throws SQLException if a database access error occurs
+     */
+    private static void nameRows(PooledConnection connection, List<ImportRow> chunk) throws SQLException {
+        // collect the surnames given in the chunk
+        Map<String, String> surnames = new HashMap<>();
+        for (ImportRow row : chunk) {
+            if (row.customer != null) {
+                surnames.put(row.customerID, row.customer[1]);
+            }
+        }
+
+        // read the surnames of the other customers of unnamed rows
+        List<String> missing = new ArrayList<>();
+        for (ImportRow row : chunk) {
+            if (row.projectName.isEmpty() && !surnames.containsKey(row.customerID)) {
+                missing.add(row.customerID);
+            }
+        }
+        if (!missing.isEmpty()) {
+            surnames.putAll(ProjectRepository.findCustomerSurnames(connection, missing));
+        }
+
+        for (ImportRow row : chunk) {
+            row.projectName = ProjectRepository.projectName(row.projectName, row.buildingType,
+                    surnames.get(row.customerID));
+        }
+    }
+
+    /**
+     * helper method to add a row's project and people to the insert batches
+     * (and its values to the change to the summary figures)
+     *
+     * @param connection the pooled connection
+     * @param row        the row to add
+     * @param delta      the change to the summary figures
+     * @throws SQLException if a database access error occurs
+     */
+    private static void addToBatches(PooledConnection connection, ImportRow row, ProjectSummary.Delta delta)
+            throws SQLException {
+        // add project insert
+        PreparedStatement insertProject = connection.prepare(INSERT_PROJECT);
+        insertProject.setString(1, row.architectID);
+        insertProject.setString(2, row.contractorID);
+        insertProject.setString(3, row.customerID);
+        insertProject.setString(4, row.projectName);
+        insertProject.setString(5, row.buildingType);
+        insertProject.setString(6, row.physicalAddress);
+        insertProject.setString(7, row.erfNumber);
+        insertProject.setBigDecimal(8, row.totalFee);
+        insertProject.setBigDecimal(9, row.amountPaid);
+        insertProject.setDate(10, Date.valueOf(row.projectDeadline));
+        insertProject.setBoolean(11, row.projectFinalised);
+        if (row.completionDate == null) {
+            insertProject.setNull(12, Types.DATE);
+        } else {
+            insertProject.setDate(12, Date.valueOf(row.completionDate));
+        }
+        insertProject.addBatch();
+        delta.add(row.totalFee, row.amountPaid, row.projectDeadline, row.projectFinalised);
+
+        // add person upserts (only when the person's details were provided)
+        if (row.architect != null) {
+            addPersonToBatch(connection.prepare(UPSERT_ARCHITECT), row.architectID, row.architect);
+        }
+        if (row.contractor != null) {
+            addPersonToBatch(connection.prepare(UPSERT_CONTRACTOR), row.contractorID, row.contractor);
+        }
+        if (row.customer != null) {
+            addPersonToBatch(connection.prepare(UPSERT_CUSTOMER), row.customerID, row.customer);
+        }
+    }
+
+    /**
+     * helper method to add a person to an upsert batch
+     *
+     * @param upsert  the person upsert statement
+     * @param id      the person's ID
+     * @param details the person's detail columns in statement order
+     * @throws SQLException if a database access error occurs
+     */
+    private static void addPersonToBatch(PreparedStatement upsert, String id, String[] details) throws SQLException {
+        upsert.setString(1, id);
+        for (int i = 0; i < details.length; i++) {
+            upsert.setString(i + 2, details[i]);
+        }
+        upsert.addBatch();
+    }
+
+    /**
+     * helper method to execute the insert batches
+     *
+     * people are written first because the Projects table references them
+     *
+     * @param connection the pooled connection
+     * @throws SQLException if a database access error occurs
+     */
+    private static void executeBatches(PooledConnection connection) throws SQLException {
+        connection.prepare(UPSERT_ARCHITECT).executeBatch();
+        connection.prepare(UPSERT_CONTRACTOR).executeBatch();
+        connection.prepare(UPSERT_CUSTOMER).executeBatch();
+        connection.prepare(INSERT_PROJECT).executeBatch();
+    }
+
+    /**
+     * helper method to discard rows left in the insert batches after a failure
+     *
+     * @param connection the pooled connection
+     * @throws SQLException if a database access error occurs
+     */
+    private static void clearBatches(PooledConnection connection) throws SQLException {
+        connection.prepare(INSERT_PROJECT).clearBatch();
+        connection.prepare(UPSERT_ARCHITECT).clearBatch();
+        connection.prepare(UPSERT_CONTRACTOR).clearBatch();
+        connection.prepare(UPSERT_CUSTOMER).clearBatch();
+    }
+
+    /**
+     * helper method to display the progress of the import
+     *
+     * @param imported the number of rows imported so far
+     * @param rejected the number of rows rejected so far
+     * @param start    the start time of the import (nanoseconds)
+     */
+    private static void printProgress(long imported, long rejected, long start) {
+        double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+        System.out.println(imported + " rows imported, " + rejected + " rejected ("
+                + String.format("%.0f", rate(imported, seconds)) + " rows/s)");
+    }
+
+    /**
+     * helper method to calculate a rate per second
+     *
+     * @param count   the number of items processed
+     * @param seconds the elapsed time in seconds
+     * @return the number of items per second
+     */
+    private static double rate(long count, double seconds) {
+        return seconds > 0 ? count / seconds : 0;
+    }
+
+    /**
+     * class for a record read from the import file
+     */
+    static class Record {
+        // field values keyed by field name
+        final Map<String, String> fields;
+        // record exactly as it appeared in the file
+        final String raw;
+        // line number where the record starts
+        final long lineNumber;
+
+        Record(Map<String, String> fields, String raw, long lineNumber) {
+            this.fields = fields;
+            this.raw = raw;
+            this.lineNumber = lineNumber;
+        }
+    }
+
+    /**
+     * interface for reading records one at a time from an import file
+     */
+    interface RecordReader {
+        /**
+         * method to read the next record
+         *
+         * @return the next record, or null at the end of the file
+         * @throws IOException if the file cannot be read
+         */
+        Record next() throws IOException;
+    }
+
+    /**
+     * class for reading records from a CSV file with a header row
+     *
+     * fields may be enclosed in double quotes, in which case they can contain
+     * commas, line breaks and doubled quotes ("")
+     */
+    static class CsvRecordReader implements RecordReader {
+
+        // source of lines
+        private final BufferedReader reader;
+        // field names from the header row
+        private final List<String> header;
+        // header row as it appeared in the file
+        private final String headerLine;
+        // number of lines read so far
+        private long lineNumber;
+
+        CsvRecordReader(BufferedReader reader) throws IOException {
+            this.reader = reader;
+            this.headerLine = reader.readLine();
+            this.lineNumber = 1;
+
+            // check that the file has a header row
+            if (headerLine == null) {
+                throw new IOException("CSV file is empty - a header row is required.");
+            }
+            this.header = new ArrayList<>();
+            for (String name : parseLine(headerLine)) {
+                header.add(name.trim().toLowerCase());
+            }
+        }
+
+        String getHeaderLine() {
+            return headerLine;
+        }
+
+        @Override
+        public Record next() throws IOException {
+            // skip blank lines
+            String line;
+            do {
+                line = reader.readLine();
+                lineNumber++;
+                if (line == null) {
+                    return null;
+                }
+            } while (line.isBlank());
+
+            long startLine = lineNumber;
+            StringBuilder raw = new StringBuilder(line);
+
+            // keep reading while a quoted field is still open
+            while (hasOpenQuote(raw)) {
+                String nextLine = reader.readLine();
+                if (nextLine == null) {
+                    break;
+                }
+                lineNumber++;
+                raw.append('\n').append(nextLine);
+            }
+
+            // match values to header names
+            List<String> values = parseLine(raw);
+            Map<String, String> fields = new LinkedHashMap<>();
+            for (int i = 0; i < header.size() && i < values.size(); i++) {
+                fields.put(header.get(i), values.get(i));
+            }
+            return new Record(fields, raw.toString(), startLine);
+        }
+
+        /**
+         * helper method to check whether a record ends inside a quoted field
+         *
+         * @param text the record text read so far
+         * @return true if a quoted field has not been closed
+         */
+        private static boolean hasOpenQuote(CharSequence text) {
+            boolean open = false;
+            for (int i = 0; i < text.length(); i++) {
+                if (text.charAt(i) == '"') {
+                    open = !open;
+                }
+            }
+            return open;
+        }
+
+        /**
+         * helper method to split a CSV record into its field values
+         *
+         * @param text the record text
+         * @return the field values
+         */
+        static List<String> parseLine(CharSequence text) {
+            List<String> values = new ArrayList<>();
+            StringBuilder value = new StringBuilder();
+            boolean quoted = false;
+
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (quoted) {
+                    if (c == '"') {
+                        // doubled quote inside a quoted field is a literal quote
+                        if (i + 1 < text.length() && text.charAt(i + 1) == '"') {
+                            value.append('"');
+                            i++;
+                        } else {
+                            quoted = false;
+                        }
+                    } else {
+                        value.append(c);
+                    }
+                } else if (c == '"') {
+                    quoted = true;
+                } else if (c == ',') {
+                    values.add(value.toString());
+                    value.setLength(0);
+                } else if (c != '\r') {
+                    value.append(c);
+                }
+            }
+            values.add(value.toString());
+            return values;
+        }
+    }
+
+    /**
+     * class for reading records from a JSON-lines file
+     * (one flat JSON object per line)
+     */
+    static class JsonLinesRecordReader implements RecordReader {
+
+        // source of lines
+        private final BufferedReader reader;
+        // number of lines read so far
+        private long lineNumber;
+
+        JsonLinesRecordReader(BufferedReader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public Record next() throws IOException {
+            // skip blank lines
+            String line;
+            do {
+                line = reader.readLine();
+                lineNumber++;
+                if (line == null) {
+                    return null;
+                }
+            } while (line.isBlank());
+
+            // parse object (a malformed line becomes a record with no fields,
+            // which is then rejected by validation)
+            Map<String, String> fields;
+            try {
+                fields = parseObject(line);
+            } catch (IllegalArgumentException e) {
+                fields = new LinkedHashMap<>();
+                fields.put(PARSE_ERROR, e.getMessage());
+            }
+            return new Record(fields, line, lineNumber);
+        }
+
+        /**
+         * helper method to parse a flat JSON object into field values
+         * (numbers and booleans are kept as text, null becomes an empty value)
+         *
+         * @param line the JSON text
+         * @return the field values keyed by name
+         */
+        static Map<String, String> parseObject(String line) {
+            Map<String, String> fields = new LinkedHashMap<>();
+            int[] position = { skipWhitespace(line, 0) };
+
+            expect(line, position, '{');
+            if (peek(line, position) == '}') {
+                return fields;
+            }
+
+            // read name/value pairs
+            while (true) {
+                String name = readString(line, position);
+                expect(line, position, ':');
+                String value;
+                if (peek(line, position) == '"') {
+                    value = readString(line, position);
+                } else {
+                    value = readLiteral(line, position);
+                }
+                fields.put(name.toLowerCase(), value);
+
+                char next = peek(line, position);
+                position[0]++;
+                if (next == '}') {
+                    return fields;
+                }
+                if (next != ',') {
+                    throw new IllegalArgumentException("malformed JSON object");
+                }
+            }
+        }
+
+        private static int skipWhitespace(String text, int index) {
+            while (index < text.length() && Character.isWhitespace(text.charAt(index))) {
+                index++;
+            }
+            return index;
+        }
+
+        private static char peek(String text, int[] position) {
+            position[0] = skipWhitespace(text, position[0]);
+            if (position[0] >= text.length()) {
+                throw new IllegalArgumentException("unexpected end of JSON object");
+            }
+            return text.charAt(position[0]);
+        }
+
+        private static void expect(String text, int[] position, char expected) {
+            if (peek(text, position) != expected) {
+                throw new IllegalArgumentException("expected '" + expected + "' in JSON object");
+            }
+            position[0]++;
+        }
+
+        private static String readString(String text, int[] position) {
+            expect(text, position, '"');
+            StringBuilder value = new StringBuilder();
+            int i = position[0];
+            while (i < text.length()) {
+                char c = text.charAt(i++);
+                if (c == '"') {
+                    position[0] = i;
+                    return value.toString();
+                }
+                if (c == '\\' && i < text.length()) {
+                    char escaped = text.charAt(i++);
+                    switch (escaped) {
+                        case 'n':
+                            value.append('\n');
+                            break;
+                        case 't':
+                            value.append('\t');
+                            break;
+                        case 'r':
+                            value.append('\r');
+                            break;
+                        case 'b':
+                            value.append('\b');
+                            break;
+                        case 'f':
+                            value.append('\f');
+                            break;
+                        case 'u':
+                            if (i + 4 > text.length()) {
+                                throw new IllegalArgumentException("invalid \\u escape in JSON object");
+                            }
+                            value.append((char) Integer.parseInt(text.substring(i, i + 4), 16));
+                            i += 4;
+                            break;
+                        default:
+                            value.append(escaped);
+                    }
+                } else {
+                    value.append(c);
+                }
+            }
+            throw new IllegalArgumentException("unterminated string in JSON object");
+        }
+
+        private static String readLiteral(String text, int[] position) {
+            int start = skipWhitespace(text, position[0]);
+            int end = start;
+            while (end < text.length() && text.charAt(end) != ',' && text.charAt(end) != '}') {
+                end++;
+            }
+            position[0] = end;
+            String literal = text.substring(start, end).trim();
+            return literal.equals("null") ? "" : literal;
+        }
+    }
+
+    /**
+     * class for a validated row ready to be written to the database
+     */
+    static class ImportRow {
+        String architectID;
+        String contractorID;
+        String customerID;
+        String projectName;
+        String buildingType;
+        String physicalAddress;
+        String erfNumber;
+        BigDecimal totalFee;
+        BigDecimal amountPaid;
+        LocalDate projectDeadline;
+        boolean projectFinalised;
+        LocalDate completionDate;
+
+        // person detail columns (null if only the ID was given)
+        String[] architect;
+        String[] contractor;
+        String[] customer;
+
+        // record the row was read from
+        Record record;
+
+        /**
+         * method to validate a record and convert it into an import row
+         *
+         * @param fields the record's field values
+         * @return the validated row
+         * @throws IllegalArgumentException if a field is missing or invalid
+         */
+        static ImportRow parse(Map<String, String> fields) {
+            // reject records the reader could not parse
+            if (fields.containsKey(PARSE_ERROR)) {
+                throw new IllegalArgumentException(fields.get(PARSE_ERROR));
+            }
+
+            ImportRow row = new ImportRow();
+            row.architectID = required(fields, "architect_id");
+            row.contractorID = required(fields, "contractor_id");
+            row.customerID = required(fields, "customer_id");
+            // project name can be empty (named from the building type and
+            // customer surname when the row is written)
+            row.projectName = fields.getOrDefault("project_name", "").trim();
+            row.buildingType = required(fields, "building_type");
+            row.physicalAddress = required(fields, "physical_address");
+            row.erfNumber = required(fields, "erf_number");
+            if (!row.erfNumber.chars().allMatch(Character::isDigit)) {
+                throw new IllegalArgumentException("erf_number must be a whole number");
+            }
+            row.totalFee = decimal(fields, "total_fee");
+            row.amountPaid = decimal(fields, "amount_paid");
+            row.projectDeadline = date(fields, "project_deadline");
+            row.projectFinalised = bool(fields, "project_finalised");
+
+            // completion date is required once a project is finalised
+            if (row.projectFinalised) {
+                row.completionDate = date(fields, "completion_date");
+            }
+
+            row.architect = person(fields, "architect", "architect_name");
+            row.contractor = person(fields, "contractor", "contractor_name");
+            row.customer = person(fields, "customer", "customer_fname", "customer_surname");
+            return row;
+        }
+
+        private static String required(Map<String, String> fields, String name) {
+            String value = fields.getOrDefault(name, "").trim();
+            if (value.isEmpty()) {
+                throw new IllegalArgumentException(name + " is required");
+            }
+            return value;
+        }
+
+        private static BigDecimal decimal(Map<String, String> fields, String name) {
+            try {
+                return new BigDecimal(required(fields, name));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException(name + " must be a number");
+            }
+        }
+
+        private static LocalDate date(Map<String, String> fields, String name) {
+            try {
+                return LocalDate.parse(required(fields, name));
+            } catch (DateTimeParseException e) {
+                throw new IllegalArgumentException(name + " must be a date in YYYY-MM-DD format");
+            }
+        }
+
+        private static boolean bool(Map<String, String> fields, String name) {
+            String value = required(fields, name).toLowerCase();
+            if (value.equals("true") || value.equals("t") || value.equals("1")) {
+                return true;
+            }
+            if (value.equals("false") || value.equals("f") || value.equals("0")) {
+                return false;
+            }
+            throw new IllegalArgumentException(name + " must be true or false");
+        }
+
+        /**
+         * helper method to read a person's detail columns
+         *
+         * @param fields     the record's field values
+         * @param prefix     the column prefix of the person's table
+         * @param nameFields the name column(s) of the person's table
+         * @return the detail columns in upsert order, or null if no name was given
+         */
+        private static String[] person(Map<String, String> fields, String prefix, String... nameFields) {
+            // only the ID is linked if the person's name is not provided
+            if (fields.getOrDefault(nameFields[0], "").isBlank()) {
+                return null;
+            }
+
+            String[] details = new String[nameFields.length + 3];
+            for (int i = 0; i < nameFields.length; i++) {
+                details[i] = required(fields, nameFields[i]);
+            }
+            details[nameFields.length] = required(fields, prefix + "_tel");
+            details[nameFields.length + 1] = required(fields, prefix + "_email");
+            details[nameFields.length + 2] = required(fields, prefix + "_address");
+            return details;
+        }
+    }
+
+    /**
+     * class for writing rejected rows to the side file in the input format,
+     * with the reason in an extra 'reject_reason' field so the file can be
+     * corrected and imported again
+     *
+     * the file is only created once the first row is rejected
+     */
+    static class RejectWriter implements AutoCloseable {
+
+        // location of the side file
+        private final Path file;
+        // whether rows are written as CSV (otherwise JSON lines)
+        private final boolean csv;
+        // header row of the CSV input
+        private String csvHeader;
+        // writer (opened when the first row is rejected)
+        private BufferedWriter writer;
+
+        RejectWriter(Path file, boolean csv) throws IOException {
+            this.file = file;
+            this.csv = csv;
+            // remove rejects left over from an earlier run
+            Files.deleteIfExists(file);
+        }
+
+        void setCsvHeader(String csvHeader) {
+            this.csvHeader = csvHeader;
+        }
+
+        void write(Record record, String reason) throws IOException {
+            // keep each rejected row on one line
+            reason = reason.replace('\n', ' ').replace('\r', ' ');
+
+            // open file on first use
+            if (writer == null) {
+                writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+                if (csv) {
+                    writer.write(csvHeader + "," + REJECT_REASON);
+                    writer.newLine();
+                }
+            }
+
+            if (csv) {
+                writer.write(record.raw + ",\"" + reason.replace("\"", "\"\"") + "\"");
+            } else {
+                // add reason as the last field of the JSON object
+                String raw = record.raw.trim();
+                int end = raw.lastIndexOf('}');
+                String escapedReason = "\"" + REJECT_REASON + "\": \""
+                        + reason.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+                if (end < 0 || !raw.startsWith("{")) {
+                    // line was not an object at all, so keep it as a string
+                    writer.write("{" + escapedReason + ", \"raw\": \""
+                            + raw.replace("\\", "\\\\").replace("\"", "\\\"") + "\"}");
+                } else {
+                    String body = raw.substring(0, end).trim();
+                    writer.write(body + (body.equals("{") ? "" : ", ") + escapedReason + "}");
+                }
+            }
+            writer.newLine();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (writer != null) {
+                writer.close();
+            }
+        }
+    }
+}
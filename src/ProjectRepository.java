@@ -0,0 +1,1095 @@
+
+// import Java packages
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * class for the statements that write projects and people to the database
+ * (and read projects back by number)
+ *
+ * the menu and the benchmark both write through these methods, so a benchmark
+ * measures the same statements a user runs; updates write only the columns
+ * that changed, and only if the row's version is still the one read (so an
+ * edit never overwrites a change made after the row was read); projects
+ * written without a name
+ * are named from their building type and customer surname (e.g. "House
+ * Tyson"), each project write also updates the ProjectSummary tables in its
+ * transaction, and once it is complete records the rows before and after it
+ * in the ChangeJournal and notifies the registered ChangeListener objects
+ */
+public class ProjectRepository {
+
+    /**
+     * maximum length of a project name (the width of the project_name column)
+     */
+    static final int PROJECT_NAME_LENGTH = 50;
+
+    /**
+     * column holding a row's version in Projects and the people tables,
+     * incremented by every write
+     */
+    static final String VERSION_COLUMN = "version";
+
+    /**
+     * SQL statement to insert a project
+     */
+    static final String INSERT_PROJECT = "INSERT INTO Projects (architect_id, contractor_id, customer_id, project_name, building_type, physical_address, erf_number, total_fee, amount_paid, project_deadline, project_finalised, completion_date) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    /**
+     * SQL query to read projects up to the WHERE clause (columns in the order
+     * readProject expects)
+     */
+    static final String SELECT_PROJECT = "SELECT project_number, architect_id, contractor_id, "
+            + "customer_id, project_name, building_type, physical_address, erf_number, total_fee, amount_paid, "
+            + "project_deadline, project_finalised, completion_date, version FROM Projects ";
+
+    /**
+     * columns an update can change, in the order of projectValues
+     */
+    private static final String[] PROJECT_COLUMNS = { "architect_id", "contractor_id", "customer_id",
+            "project_name", "building_type", "physical_address", "erf_number", "total_fee", "amount_paid",
+            "project_deadline", "project_finalised", "completion_date" };
+
+    /**
+     * SQL types of PROJECT_COLUMNS (used to set null values)
+     */
+    private static final int[] PROJECT_COLUMN_TYPES = { Types.VARCHAR, Types.VARCHAR, Types.VARCHAR,
+            Types.VARCHAR, Types.VARCHAR, Types.VARCHAR, Types.VARCHAR, Types.DECIMAL, Types.DECIMAL, Types.DATE,
+            Types.BOOLEAN, Types.DATE };
+
+    /**
+     * number of times finaliseProject reads and writes a project that others
+     * keep changing before giving up
+     */
+    private static final int MAX_FINALISE_ATTEMPTS = 10;
+
+    /**
+     * enum for the outcome of an update
+     */
+    public enum UpdateResult {
+        // the changed columns were written
+        UPDATED,
+        // the new values equal the current ones, so nothing was written
+        UNCHANGED,
+        // the row was changed by someone else after it was read, so nothing
+        // was written
+        CONFLICT,
+        // the row no longer exists
+        NOT_FOUND
+    }
+
+    /**
+     * class for a commit that failed without saying whether the transaction
+     * was saved (e.g. the connection dropped while the server committed), so
+     * the write must be checked before it is retried
+     */
+    static final class CommitUnknownException extends SQLException {
+
+        // serialisation version
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * constructor to wrap the error the commit reported
+         *
+         * @param cause the error
+         */
+        CommitUnknownException(SQLException cause) {
+            super("The write may or may not have been saved (check before retrying): " + cause.getMessage(),
+                    cause.getSQLState(), cause.getErrorCode(), cause);
+        }
+    }
+
+    /**
+     * condition matching unfinalised projects that are fully paid and past
+     * their deadline (the parameter is the current date)
+     */
+    static final String FULLY_PAID_OVERDUE = "project_finalised = false AND project_deadline < ? "
+            + "AND amount_paid >= total_fee";
+
+    /**
+     * method to commit a connection's transaction, reporting a failure of
+     * the commit itself as CommitUnknownException (a failure before it means
+     * the transaction was rolled back)
+     *
+     * @param connection the connection holding the transaction
+     * @throws SQLException if the commit fails
+     */
+    static void commit(PooledConnection connection) throws SQLException {
+        try {
+            connection.getConnection().commit();
+        } catch (SQLException e) {
+            throw new CommitUnknownException(e);
+        }
+    }
+
+    /**
+     * method to insert a new project
+     *
+     * @param pool    the connection pool for executing queries
+     * @param project the project to insert (its project number is set from the
+     *                generated key, and its name if it has none)
+     * @return the generated project number
+     * @throws SQLException if a database access error occurs
+     */
+    public static int insertProject(ConnectionPool pool, Project project) throws SQLException {
+        try (PooledConnection connection = pool.borrow()) {
+            // a connection returned mid-transaction is rolled back by the pool
+            connection.getConnection().setAutoCommit(false);
+            nameProjects(connection, Collections.singletonList(project));
+            PreparedStatement insert = connection.prepare(INSERT_PROJECT);
+            setProjectColumns(insert, project);
+            insert.executeUpdate();
+
+            // get the project number generated for the new project
+            try (ResultSet resultSet = connection.prepare("SELECT LAST_INSERT_ID()").executeQuery()) {
+                resultSet.next();
+                project.projectNumber = resultSet.getInt(1);
+            }
+
+            // add the project to the summary figures
+            ProjectSummary.Delta delta = new ProjectSummary.Delta();
+            delta.add(project);
+            ProjectSummary.apply(connection, delta);
+            commit(connection);
+        }
+
+        // record the new project and notify listeners (e.g. the search index)
+        ChangeJournal.record("insert", "Projects", project.projectNumber, null, ChangeJournal.image(project));
+        ChangeNotifier.projectChanged(pool, project.projectNumber);
+        return project.projectNumber;
+    }
+
+    /**
+     * method to insert several projects in one transaction with a single
+     * batched statement
+     *
+     * @param pool     the connection pool for executing queries
+     * @param projects the projects to insert (their project numbers are set
+     *                 from the generated keys, and their names if they have
+     *                 none)
+     * @throws SQLException if a database access error occurs (nothing is
+     *                      inserted)
+     */
+    public static void insertProjects(ConnectionPool pool, List<Project> projects) throws SQLException {
+        // a dedicated statement is used (rather than the statement cache) as it
+        // must return the generated keys
+        try (PooledConnection connection = pool.borrow();
+                PreparedStatement insert = connection.getConnection().prepareStatement(INSERT_PROJECT,
+                        Statement.RETURN_GENERATED_KEYS)) {
+            connection.getConnection().setAutoCommit(false);
+            nameProjects(connection, projects);
+            ProjectSummary.Delta delta = new ProjectSummary.Delta();
+            for (Project project : projects) {
+                setProjectColumns(insert, project);
+                insert.addBatch();
+                delta.add(project);
+            }
+            insert.executeBatch();
+
+            // get the project numbers generated for the new projects (in order)
+            try (ResultSet keys = insert.getGeneratedKeys()) {
+                for (Project project : projects) {
+                    keys.next();
+                    project.projectNumber = keys.getInt(1);
+                }
+            }
+            ProjectSummary.apply(connection, delta);
+            commit(connection);
+        }
+
+        // record the new projects and notify listeners
+        for (Project project : projects) {
+            ChangeJournal.record("insert", "Projects", project.projectNumber, null, ChangeJournal.image(project));
+            ChangeNotifier.projectChanged(pool, project.projectNumber);
+        }
+    }
+
+    /**
+     * method to write the changes made to a project since it was read
+     *
+     * only the columns whose values differ are written, with one statement
+     * that also checks the row's version, so nothing is overwritten if the
+     * project was changed after it was read; an edit that changes nothing
+     * writes nothing, and the summary tables are only written (in the same
+     * transaction) if the fees, deadline or finalised status changed
+     *
+     * @param pool    the connection pool for executing queries
+     * @param current the project as it was read (e.g. by findProject)
+     * @param project the new values (its name is set if it has none, and its
+     *                number and version are set from the row written)
+     * @return the outcome of the update
+     * @throws SQLException if a database access error occurs
+     */
+    public static UpdateResult updateProject(ConnectionPool pool, Project current, Project project)
+            throws SQLException {
+        return writeChanges(pool, current, project, "update");
+    }
+
+    /**
+     * method to find the columns that an edit and a change made by someone
+     * else since the edit began both changed, to different values
+     *
+     * @param current the project as it was when the edit began
+     * @param project the edited values
+     * @param latest  the project as it is now
+     * @return each conflicting column as { column, edited value, value now }
+     */
+    public static List<Object[]> conflicts(Project current, Project project, Project latest) {
+        return conflicts(PROJECT_COLUMNS, projectValues(current), projectValues(project), projectValues(latest));
+    }
+
+    /**
+     * method to apply an edit to the latest values of a project, for saving
+     * an edit that conflicted with a change made by someone else
+     *
+     * @param current  the project as it was when the edit began
+     * @param project  the edited values
+     * @param latest   the project as it is now
+     * @param keepMine true to keep the edited value of a column both changed,
+     *                 false to keep the value it has now
+     * @return the latest project with the edited columns applied
+     */
+    public static Project rebase(Project current, Project project, Project latest, boolean keepMine) {
+        Object[] values = rebase(projectValues(current), projectValues(project), projectValues(latest), keepMine);
+        Project merged = latest.copy();
+        merged.architectID = (String) values[0];
+        merged.contractorID = (String) values[1];
+        merged.customerID = (String) values[2];
+        merged.projectName = (String) values[3];
+        merged.buildingType = (String) values[4];
+        merged.physicalAddress = (String) values[5];
+        merged.erfNumber = (String) values[6];
+        merged.totalFee = (Double) values[7];
+        merged.amountPaid = (Double) values[8];
+        merged.projectDeadline = (LocalDate) values[9];
+        merged.projectFinalised = (Boolean) values[10];
+        // an open project has no completion date, whichever side set it
+        merged.completionDate = merged.projectFinalised ? (LocalDate) values[11] : null;
+        return merged;
+    }
+
+    /**
+     * helper method to write the changes made to a project since it was read,
+     * if its version is unchanged (see updateProject)
+     *
+     * @param pool      the connection pool for executing queries
+     * @param current   the project as it was read
+     * @param project   the new values
+     * @param operation the operation recorded in the change journal (update
+     *                  or finalise)
+     * @return the outcome of the update
+     * @throws SQLException if a database access error occurs
+     */
+    private static UpdateResult writeChanges(ConnectionPool pool, Project current, Project project,
+            String operation) throws SQLException {
+        project.projectNumber = current.projectNumber;
+        project.version = current.version;
+        try (PooledConnection connection = pool.borrow()) {
+            nameProjects(connection, Collections.singletonList(project));
+
+            // find the columns that changed
+            Object[] before = projectValues(current);
+            Object[] after = projectValues(project);
+            List<Integer> changed = new ArrayList<>();
+            for (int i = 0; i < PROJECT_COLUMNS.length; i++) {
+                if (!Objects.equals(before[i], after[i])) {
+                    changed.add(i);
+                }
+            }
+            if (changed.isEmpty()) {
+                return UpdateResult.UNCHANGED;
+            }
+
+            // replace the old values in the summary (the update only succeeds
+            // if the row is still the one read, so they need not be locked and
+            // read again)
+            ProjectSummary.Delta delta = new ProjectSummary.Delta();
+            delta.remove(current);
+            delta.add(project);
+            boolean summarised = !delta.isEmpty();
+            if (summarised) {
+                // a connection returned mid-transaction is rolled back by the pool
+                connection.getConnection().setAutoCommit(false);
+            }
+
+            // build the update from the changed columns (the statement for each
+            // set of columns is cached)
+            StringBuilder sql = new StringBuilder("UPDATE Projects SET ");
+            for (int i : changed) {
+                sql.append(PROJECT_COLUMNS[i]).append(" = ?, ");
+            }
+            sql.append("version = version + 1 WHERE project_number = ? AND version = ?");
+
+            PreparedStatement update = connection.prepare(sql.toString());
+            int index = 1;
+            for (int i : changed) {
+                setValue(update, index++, after[i], PROJECT_COLUMN_TYPES[i]);
+            }
+            update.setInt(index++, current.projectNumber);
+            update.setInt(index, current.version);
+            if (update.executeUpdate() == 0) {
+                // the project was changed or deleted after it was read
+                return exists(connection, "SELECT project_number FROM Projects WHERE project_number = ?",
+                        current.projectNumber) ? UpdateResult.CONFLICT : UpdateResult.NOT_FOUND;
+            }
+
+            if (summarised) {
+                ProjectSummary.apply(connection, delta);
+                commit(connection);
+            }
+        }
+        project.version = current.version + 1;
+
+        // record the change and notify listeners of the changed project
+        ChangeJournal.record(operation, "Projects", project.projectNumber, ChangeJournal.image(current),
+                ChangeJournal.image(project));
+        if (operation.equals("finalise")) {
+            ChangeNotifier.projectFinalised(project.projectNumber);
+        } else {
+            ChangeNotifier.projectChanged(pool, project.projectNumber);
+        }
+        return UpdateResult.UPDATED;
+    }
+
+    /**
+     * method to mark a project as finalised
+     *
+     * the project is read and only its finalised status and completion date
+     * are written, if its version is unchanged since; if someone else changed
+     * it in between it is read and written again (finalising sets the same
+     * two columns whatever the others hold), so no lock is held while it is
+     * read
+     *
+     * @param pool           the connection pool for executing queries
+     * @param projectNumber  the number of the project
+     * @param completionDate the date the project was completed (replacing the
+     *                       date of a project finalised already)
+     * @return true if the project exists
+     * @throws SQLException if a database access error occurs, or the project
+     *                      kept being changed by others
+     */
+    public static boolean finaliseProject(ConnectionPool pool, int projectNumber, LocalDate completionDate)
+            throws SQLException {
+        for (int attempt = 0; attempt < MAX_FINALISE_ATTEMPTS; attempt++) {
+            Project current = findProject(pool, projectNumber);
+            if (current == null) {
+                return false;
+            }
+            Project project = current.copy();
+            project.projectFinalised = true;
+            project.completionDate = completionDate;
+
+            UpdateResult outcome = writeChanges(pool, current, project, "finalise");
+            if (outcome != UpdateResult.CONFLICT) {
+                return outcome != UpdateResult.NOT_FOUND;
+            }
+        }
+        throw new SQLException("Project Number " + projectNumber + " was changed by someone else "
+                + MAX_FINALISE_ATTEMPTS + " times while it was being finalised.");
+    }
+
+    /**
+     * method to finalise several projects in one transaction
+     *
+     * projects that are already finalised keep their completion date
+     *
+     * @param pool           the connection pool for executing queries
+     * @param projectNumbers the numbers of the projects
+     * @param completionDate the date the projects were completed
+     * @return the number of projects finalised
+     * @throws SQLException if a database access error occurs (nothing is
+     *                      finalised)
+     */
+    public static int finaliseProjects(ConnectionPool pool, int[] projectNumbers, LocalDate completionDate)
+            throws SQLException {
+        int updated;
+        List<Project> finalised = new ArrayList<>();
+        try (PooledConnection connection = pool.borrow()) {
+            // a connection returned mid-transaction is rolled back by the pool
+            connection.getConnection().setAutoCommit(false);
+            updated = finaliseIn(connection, projectNumbers, completionDate, finalised);
+            commit(connection);
+        }
+
+        // record the changes and notify listeners of the finalised projects
+        recordFinalised(finalised, completionDate);
+        for (int projectNumber : projectNumbers) {
+            ChangeNotifier.projectFinalised(projectNumber);
+        }
+        return updated;
+    }
+
+    /**
+     * method to count the unfinalised projects that are fully paid and past
+     * their deadline
+     *
+     * @param pool  the connection pool for executing queries
+     * @param today the current date
+     * @return the number of matching projects
+     * @throws SQLException if a database access error occurs
+     */
+    public static int countFullyPaidOverdue(ConnectionPool pool, LocalDate today) throws SQLException {
+        try (PooledConnection connection = pool.borrow()) {
+            PreparedStatement count = connection.prepare("SELECT COUNT(*) FROM Projects WHERE "
+                    + FULLY_PAID_OVERDUE);
+            count.setDate(1, Date.valueOf(today));
+            try (ResultSet resultSet = count.executeQuery()) {
+                return resultSet.next() ? resultSet.getInt(1) : 0;
+            }
+        }
+    }
+
+    /**
+     * method to finalise every unfinalised project that is fully paid and past
+     * its deadline, in one transaction
+     *
+     * the matching rows are locked while they are read, so the projects
+     * finalised are exactly those that matched
+     *
+     * @param pool           the connection pool for executing queries
+     * @param today          the current date
+     * @param completionDate the date the projects were completed
+     * @return the number of projects finalised
+     * @throws SQLException if a database access error occurs (nothing is
+     *                      finalised)
+     */
+    public static int finaliseFullyPaidOverdue(ConnectionPool pool, LocalDate today, LocalDate completionDate)
+            throws SQLException {
+        int[] projectNumbers;
+        int updated;
+        List<Project> finalised = new ArrayList<>();
+        try (PooledConnection connection = pool.borrow()) {
+            connection.getConnection().setAutoCommit(false);
+
+            // find and lock the matching projects
+            List<Integer> matching = new ArrayList<>();
+            PreparedStatement select = connection.prepare("SELECT project_number FROM Projects WHERE "
+                    + FULLY_PAID_OVERDUE + " FOR UPDATE");
+            select.setDate(1, Date.valueOf(today));
+            try (ResultSet resultSet = select.executeQuery()) {
+                while (resultSet.next()) {
+                    matching.add(resultSet.getInt(1));
+                }
+            }
+            projectNumbers = matching.stream().mapToInt(Integer::intValue).toArray();
+
+            updated = finaliseIn(connection, projectNumbers, completionDate, finalised);
+            commit(connection);
+        }
+
+        // record the changes and notify listeners of the finalised projects
+        recordFinalised(finalised, completionDate);
+        for (int projectNumber : projectNumbers) {
+            ChangeNotifier.projectFinalised(projectNumber);
+        }
+        return updated;
+    }
+
+    /**
+     * method to read a project
+     *
+     * @param pool          the connection pool for executing queries
+     * @param projectNumber the number of the project
+     * @return the project, or null if it does not exist
+     * @throws SQLException if a database access error occurs
+     */
+    public static Project findProject(ConnectionPool pool, int projectNumber) throws SQLException {
+        try (PooledConnection connection = pool.borrow()) {
+            PreparedStatement select = connection.prepare(SELECT_PROJECT + "WHERE project_number = ?");
+            select.setInt(1, projectNumber);
+            try (ResultSet resultSet = select.executeQuery()) {
+                // check if the project exists
+                return resultSet.next() ? readProject(resultSet) : null;
+            }
+        }
+    }
+
+    /**
+     * method to read several projects by number, at most InList.MAX_SIZE per
+     * query
+     *
+     * @param pool           the connection pool for executing queries
+     * @param projectNumbers the numbers of the projects
+     * @return the projects in the order given (numbers that do not exist are
+     *         left out)
+     * @throws SQLException if a database access error occurs
+     */
+    public static List<Project> findProjects(ConnectionPool pool, List<Integer> projectNumbers)
+            throws SQLException {
+        int[] numbers = projectNumbers.stream().mapToInt(Integer::intValue).toArray();
+        Map<Integer, Project> found = new HashMap<>();
+        try (PooledConnection connection = pool.borrow()) {
+            for (int from = 0; from < numbers.length; from += InList.MAX_SIZE) {
+                int to = Math.min(from + InList.MAX_SIZE, numbers.length);
+                int slots = InList.slots(to - from);
+
+                PreparedStatement select = connection.prepare(SELECT_PROJECT + "WHERE project_number IN "
+                        + InList.placeholders(slots));
+                InList.bind(select, 1, numbers, from, to, slots);
+                try (ResultSet resultSet = select.executeQuery()) {
+                    while (resultSet.next()) {
+                        Project project = readProject(resultSet);
+                        found.put(project.projectNumber, project);
+                    }
+                }
+            }
+        }
+
+        // put the projects back in the order asked for
+        List<Project> projects = new ArrayList<>(found.size());
+        for (int projectNumber : numbers) {
+            Project project = found.get(projectNumber);
+            if (project != null) {
+                projects.add(project);
+            }
+        }
+        return projects;
+    }
+
+    /**
+     * method to read a page of projects in project number order
+     *
+     * @param pool  the connection pool for executing queries
+     * @param after the project number to continue after (0 for the first page)
+     * @param limit the maximum number of projects
+     * @return the projects
+     * @throws SQLException if a database access error occurs
+     */
+    public static List<Project> findProjectsAfter(ConnectionPool pool, int after, int limit) throws SQLException {
+        List<Project> projects = new ArrayList<>();
+        try (PooledConnection connection = pool.borrow()) {
+            PreparedStatement select = connection.prepare(SELECT_PROJECT
+                    + "WHERE project_number > ? ORDER BY project_number LIMIT ?");
+            select.setInt(1, after);
+            select.setInt(2, limit);
+            try (ResultSet resultSet = select.executeQuery()) {
+                while (resultSet.next()) {
+                    projects.add(readProject(resultSet));
+                }
+            }
+        }
+        return projects;
+    }
+
+    /**
+     * method to read a page of people in ID order
+     *
+     * @param pool        the connection pool for executing queries
+     * @param personTable the table of the people
+     * @param after       the ID to continue after (empty for the first page)
+     * @param limit       the maximum number of people
+     * @return the people's values by column, in ID order
+     * @throws SQLException if a database access error occurs
+     */
+    public static List<Map<String, Object>> findPeopleAfter(ConnectionPool pool, PersonTable personTable,
+            String after, int limit) throws SQLException {
+        String[] columns = personTable.getColumns();
+        List<Map<String, Object>> people = new ArrayList<>();
+        try (PooledConnection connection = pool.borrow()) {
+            PreparedStatement select = connection.prepare("SELECT " + String.join(", ", columns) + " FROM "
+                    + personTable.getTable() + " WHERE " + personTable.getIdColumn() + " > ? ORDER BY "
+                    + personTable.getIdColumn() + " LIMIT ?");
+            select.setString(1, after);
+            select.setInt(2, limit);
+            try (ResultSet resultSet = select.executeQuery()) {
+                while (resultSet.next()) {
+                    Map<String, Object> values = new LinkedHashMap<>();
+                    for (int i = 0; i < columns.length; i++) {
+                        values.put(columns[i], resultSet.getObject(i + 1));
+                    }
+                    people.add(values);
+                }
+            }
+        }
+        return people;
+    }
+
+    /**
+     * method to check if a project with a specific number exists
+     *
+     * @param pool          the connection pool for executing queries
+     * @param projectNumber the number of the project to look for
+     * @return true if the project exists
+     * @throws SQLException if a database access error occurs
+     */
+    public static boolean projectExists(ConnectionPool pool, int projectNumber) throws SQLException {
+        try (PooledConnection connection = pool.borrow()) {
+            // SQL query to select record with project number matched
+            PreparedStatement select = connection
+                    .prepare("SELECT project_number FROM Projects WHERE project_number = ?");
+            select.setInt(1, projectNumber);
+            try (ResultSet resultSet = select.executeQuery()) {
+                // project exists if there is a row in the result set
+                return resultSet.next();
+            }
+        }
+    }
+
+    /**
+     * method to insert a new person
+     *
+     * @param pool        the connection pool for executing queries
+     * @param personTable the table to insert into
+     * @param values      the ID followed by the details, in the order of
+     *                    PersonTable.getColumns()
+     * @throws SQLException if a database access error occurs
+     */
+    public static void insertPerson(ConnectionPool pool, PersonTable personTable, String... values)
+            throws SQLException {
+        String[] columns = personTable.getColumns();
+        try (PooledConnection connection = pool.borrow()) {
+            PreparedStatement insert = connection.prepare("INSERT INTO " + personTable.getTable() + " ("
+                    + String.join(", ", columns) + ") VALUES ("
+                    + String.join(", ", Collections.nCopies(columns.length, "?")) + ")");
+            for (int i = 0; i < columns.length; i++) {
+                insert.setString(i + 1, values[i]);
+            }
+            insert.executeUpdate();
+        }
+
+        // record the new person and notify listeners of them
+        ChangeJournal.record("insert", personTable.getTable(), values[0], null,
+                ChangeJournal.image(personTable, values));
+        ChangeNotifier.personChanged(pool, personTable.getIdColumn(), values[0]);
+    }
+
+    /**
+     * method to write the changes made to a person's details since they were
+     * read
+     *
+     * only the columns whose values differ are written, and only if the row's
+     * version is still the one read (as for updateProject); an edit that
+     * changes nothing writes nothing
+     *
+     * @param pool        the connection pool for executing queries
+     * @param personTable the table of the person
+     * @param current     the person's values by column as read (e.g. by
+     *                    PersonCache), including the version column
+     * @param details     the new details, in the order of
+     *                    PersonTable.getColumns() after the ID
+     * @return the outcome of the update
+     * @throws SQLException if a database access error occurs
+     */
+    public static UpdateResult updatePerson(ConnectionPool pool, PersonTable personTable,
+            Map<String, Object> current, String... details) throws SQLException {
+        String[] columns = personTable.getColumns();
+        String id = String.valueOf(current.get(columns[0]));
+        int version = ((Number) current.get(VERSION_COLUMN)).intValue();
+
+        // find the columns that changed
+        String[] before = new String[columns.length];
+        String[] after = new String[columns.length];
+        before[0] = id;
+        after[0] = id;
+        List<Integer> changed = new ArrayList<>();
+        for (int i = 1; i < columns.length; i++) {
+            before[i] = Objects.toString(current.get(columns[i]), null);
+            after[i] = details[i - 1];
+            if (!Objects.equals(before[i], after[i])) {
+                changed.add(i);
+            }
+        }
+        if (changed.isEmpty()) {
+            return UpdateResult.UNCHANGED;
+        }
+
+        // build the update from the changed columns
+        StringBuilder sql = new StringBuilder("UPDATE ").append(personTable.getTable()).append(" SET ");
+        for (int i : changed) {
+            sql.append(columns[i]).append(" = ?, ");
+        }
+        sql.append("version = version + 1 WHERE ").append(columns[0]).append(" = ? AND version = ?");
+
+        UpdateResult result;
+        try (PooledConnection connection = pool.borrow()) {
+            PreparedStatement update = connection.prepare(sql.toString());
+            int index = 1;
+            for (int i : changed) {
+                update.setString(index++, after[i]);
+            }
+            update.setString(index++, id);
+            update.setInt(index, version);
+            if (update.executeUpdate() > 0) {
+                result = UpdateResult.UPDATED;
+            } else {
+                // the person was changed or deleted after they were read
+                result = exists(connection, "SELECT " + columns[0] + " FROM " + personTable.getTable() + " WHERE "
+                        + columns[0] + " = ?", id) ? UpdateResult.CONFLICT : UpdateResult.NOT_FOUND;
+            }
+        }
+
+        // record the change (the row written was the one read, so it is the
+        // row before) and notify listeners; a person changed elsewhere is
+        // also reported, so stale cached copies are dropped
+        if (result == UpdateResult.UPDATED) {
+            ChangeJournal.record("update", personTable.getTable(), id, ChangeJournal.image(personTable, before),
+                    ChangeJournal.image(personTable, after));
+        }
+        ChangeNotifier.personChanged(pool, personTable.getIdColumn(), id);
+        return result;
+    }
+
+    /**
+     * method to find the details that an edit and a change made by someone
+     * else since the edit began both changed, to different values
+     *
+     * @param personTable the table of the person
+     * @param current     the person's values by column when the edit began
+     * @param details     the edited details, in the order of
+     *                    PersonTable.getColumns() after the ID
+     * @param latest      the person's values by column now
+     * @return each conflicting column as { column, edited value, value now }
+     */
+    public static List<Object[]> conflicts(PersonTable personTable, Map<String, Object> current, String[] details,
+            Map<String, Object> latest) {
+        String[] columns = personTable.getColumns();
+        String[] detailColumns = Arrays.copyOfRange(columns, 1, columns.length);
+        return conflicts(detailColumns, personDetails(columns, current), details, personDetails(columns, latest));
+    }
+
+    /**
+     * method to apply an edit to the latest details of a person, for saving
+     * an edit that conflicted with a change made by someone else
+     *
+     * @param personTable the table of the person
+     * @param current     the person's values by column when the edit began
+     * @param details     the edited details, in the order of
+     *                    PersonTable.getColumns() after the ID
+     * @param latest      the person's values by column now
+     * @param keepMine    true to keep the edited value of a detail both
+     *                    changed, false to keep the value it has now
+     * @return the latest details with the edited ones applied
+     */
+    public static String[] rebase(PersonTable personTable, Map<String, Object> current, String[] details,
+            Map<String, Object> latest, boolean keepMine) {
+        String[] columns = personTable.getColumns();
+        Object[] merged = rebase(personDetails(columns, current), details, personDetails(columns, latest),
+                keepMine);
+        return Arrays.copyOf(merged, merged.length, String[].class);
+    }
+
+    /**
+     * helper method to finalise projects by number, at most InList.MAX_SIZE
+     * per statement
+     *
+     * @param connection     the pooled connection (in a transaction)
+     * @param projectNumbers the numbers of the projects
+     * @param completionDate the date the projects were completed
+     * @param finalised      the list to add the projects finalised to, as they
+     *                       were before
+     * @return the number of projects finalised
+     * @throws SQLException if a database access error occurs
+     */
+    private static int finaliseIn(PooledConnection connection, int[] projectNumbers, LocalDate completionDate,
+            List<Project> finalised) throws SQLException {
+        ProjectSummary.Delta delta = finalisedDelta(connection, projectNumbers, finalised);
+
+        int updated = 0;
+        for (int from = 0; from < projectNumbers.length; from += InList.MAX_SIZE) {
+            int to = Math.min(from + InList.MAX_SIZE, projectNumbers.length);
+            int slots = InList.slots(to - from);
+
+            PreparedStatement update = connection.prepare("UPDATE Projects SET project_finalised = true, "
+                    + "completion_date = ?, version = version + 1 WHERE project_finalised = false AND "
+                    + "project_number IN "
+                    + InList.placeholders(slots));
+            update.setDate(1, Date.valueOf(completionDate));
+            InList.bind(update, 2, projectNumbers, from, to, slots);
+            updated += update.executeUpdate();
+        }
+        ProjectSummary.apply(connection, delta);
+        return updated;
+    }
+
+    /**
+     * helper method to lock the unfinalised projects given and collect the
+     * change finalising them makes to the summary figures
+     *
+     * @param connection     the pooled connection (in a transaction)
+     * @param projectNumbers the numbers of the projects
+     * @param finalised      the list to add the projects locked to, as they
+     *                       are before being finalised
+     * @return the change to the summary figures
+     * @throws SQLException if a database access error occurs
+     */
+    private static ProjectSummary.Delta finalisedDelta(PooledConnection connection, int[] projectNumbers,
+            List<Project> finalised) throws SQLException {
+        ProjectSummary.Delta delta = new ProjectSummary.Delta();
+        for (Project project : ProjectSummary.removeProjects(connection, delta, projectNumbers, true)) {
+            // the fees were read from DECIMAL(12, 2) columns, so their shortest
+            // decimal form is exact
+            delta.add(BigDecimal.valueOf(project.totalFee), BigDecimal.valueOf(project.amountPaid),
+                    project.projectDeadline, true);
+            finalised.add(project);
+        }
+        return delta;
+    }
+
+    /**
+     * helper method to record finalised projects in the change journal
+     *
+     * @param finalised      the projects, as they were before being finalised
+     * @param completionDate the date the projects were completed
+     */
+    private static void recordFinalised(List<Project> finalised, LocalDate completionDate) {
+        for (Project project : finalised) {
+            Map<String, String> before = ChangeJournal.image(project);
+            Map<String, String> after = new LinkedHashMap<>(before);
+            after.put("project_finalised", "true");
+            after.put("completion_date", completionDate.toString());
+            ChangeJournal.record("finalise", "Projects", project.projectNumber, before, after);
+        }
+    }
+
+    /**
+     * method to build the name of a project that was given none, from its
+     * building type and customer surname (e.g. "House Tyson")
+     *
+     * @param projectName     the name given (null or blank if none)
+     * @param buildingType    the project's building type
+     * @param customerSurname the customer's surname (null if unknown)
+     * @return the name given, or the built name (cut to the column width)
+     */
+    static String projectName(String projectName, String buildingType, String customerSurname) {
+        if ((projectName != null && !projectName.isBlank()) || customerSurname == null) {
+            return projectName;
+        }
+        String name = buildingType + " " + customerSurname;
+        return name.length() > PROJECT_NAME_LENGTH ? name.substring(0, PROJECT_NAME_LENGTH) : name;
+    }
+
+    /**
+     * method to read the surnames of several customers, at most
+     * InList.MAX_SIZE per query
+     *
+     * @param connection  the pooled connection
+     * @param customerIDs the customer IDs
+     * @return the surnames by customer ID (IDs that do not exist are left out)
+     * @throws SQLException if a database access error occurs
+     */
+    static Map<String, String> findCustomerSurnames(PooledConnection connection, List<String> customerIDs)
+            throws SQLException {
+        Map<String, String> surnames = new HashMap<>();
+        for (int from = 0; from < customerIDs.size(); from += InList.MAX_SIZE) {
+            int to = Math.min(from + InList.MAX_SIZE, customerIDs.size());
+            int slots = InList.slots(to - from);
+
+            PreparedStatement select = connection.prepare("SELECT customer_id, customer_surname FROM Customers "
+                    + "WHERE customer_id IN " + InList.placeholders(slots));
+            for (int i = from; i < to; i++) {
+                select.setString(i - from + 1, customerIDs.get(i));
+            }
+            for (int i = to - from; i < slots; i++) {
+                select.setNull(i + 1, Types.VARCHAR);
+            }
+            try (ResultSet resultSet = select.executeQuery()) {
+                while (resultSet.next()) {
+                    surnames.put(resultSet.getString(1), resultSet.getString(2));
+                }
+            }
+        }
+        return surnames;
+    }
+
+    /**
+     * helper method to name the projects that were given no name, reading the
+     * surnames of their customers with one query (in the write's transaction)
+     *
+     * projects whose customer does not exist are left unnamed (their write
+     * then fails on the foreign key)
+     *
+     * @param connection the pooled connection (in a transaction)
+     * @param projects   the projects being written
+     * @throws SQLException if a database access error occurs
+     */
+    private static void nameProjects(PooledConnection connection, List<Project> projects) throws SQLException {
+        List<String> customerIDs = new ArrayList<>();
+        for (Project project : projects) {
+            if (project.projectName == null || project.projectName.isBlank()) {
+                customerIDs.add(project.customerID);
+            }
+        }
+        if (customerIDs.isEmpty()) {
+            return;
+        }
+
+        Map<String, String> surnames = findCustomerSurnames(connection, customerIDs);
+        for (Project project : projects) {
+            project.projectName = projectName(project.projectName, project.buildingType,
+                    surnames.get(project.customerID));
+        }
+    }
+
+    /**
+     * helper method to find the values an edit and a later change both
+     * changed, to different values
+     *
+     * @param columns the column of each value
+     * @param base    the values when the edit began
+     * @param mine    the edited values
+     * @param latest  the values now
+     * @return each conflicting column as { column, edited value, value now }
+     */
+    private static List<Object[]> conflicts(String[] columns, Object[] base, Object[] mine, Object[] latest) {
+        List<Object[]> conflicts = new ArrayList<>();
+        for (int i = 0; i < columns.length; i++) {
+            if (!Objects.equals(base[i], mine[i]) && !Objects.equals(base[i], latest[i])
+                    && !Objects.equals(mine[i], latest[i])) {
+                conflicts.add(new Object[] { columns[i], mine[i], latest[i] });
+            }
+        }
+        return conflicts;
+    }
+
+    /**
+     * helper method to apply the values an edit changed to the values now
+     *
+     * @param base     the values when the edit began
+     * @param mine     the edited values
+     * @param latest   the values now
+     * @param keepMine true to keep the edited value where both changed
+     * @return the merged values
+     */
+    private static Object[] rebase(Object[] base, Object[] mine, Object[] latest, boolean keepMine) {
+        Object[] merged = latest.clone();
+        for (int i = 0; i < merged.length; i++) {
+            if (!Objects.equals(base[i], mine[i]) && (keepMine || Objects.equals(base[i], latest[i]))) {
+                merged[i] = mine[i];
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * helper method to get a person's details as text, in column order
+     *
+     * @param columns the ID column followed by the detail columns
+     * @param values  the person's values by column
+     * @return the details (without the ID)
+     */
+    private static String[] personDetails(String[] columns, Map<String, Object> values) {
+        String[] details = new String[columns.length - 1];
+        for (int i = 1; i < columns.length; i++) {
+            details[i - 1] = Objects.toString(values.get(columns[i]), null);
+        }
+        return details;
+    }
+
+    /**
+     * helper method to check if a query finds a row
+     *
+     * @param connection the pooled connection
+     * @param sql        the query, with one parameter
+     * @param key        the parameter value
+     * @return true if the query returns a row
+     * @throws SQLException if a database access error occurs
+     */
+    private static boolean exists(PooledConnection connection, String sql, Object key) throws SQLException {
+        PreparedStatement select = connection.prepare(sql);
+        select.setObject(1, key);
+        try (ResultSet resultSet = select.executeQuery()) {
+            return resultSet.next();
+        }
+    }
+
+    /**
+     * helper method to get the values of the columns an update can change, in
+     * the order of PROJECT_COLUMNS
+     *
+     * @param project the project
+     * @return the values
+     */
+    static Object[] projectValues(Project project) {
+        return new Object[] { project.architectID, project.contractorID, project.customerID, project.projectName,
+                project.buildingType, project.physicalAddress, project.erfNumber, project.totalFee,
+                project.amountPaid, project.projectDeadline, project.projectFinalised, project.completionDate };
+    }
+
+    /**
+     * helper method to set a parameter from one of projectValues
+     *
+     * @param statement the statement to set the parameter on
+     * @param index     the parameter index
+     * @param value     the value (null, text, a number, a boolean or a date)
+     * @param sqlType   the column's SQL type (used if the value is null)
+     * @throws SQLException if a database access error occurs
+     */
+    private static void setValue(PreparedStatement statement, int index, Object value, int sqlType)
+            throws SQLException {
+        if (value == null) {
+            statement.setNull(index, sqlType);
+        } else if (value instanceof LocalDate) {
+            statement.setDate(index, Date.valueOf((LocalDate) value));
+        } else {
+            statement.setObject(index, value);
+        }
+    }
+
+    /**
+     * helper method to read a project from the current row of a SELECT_PROJECT
+     * query
+     *
+     * @param resultSet the result set positioned on a row
+     * @return the project
+     * @throws SQLException if a database access error occurs
+     */
+    static Project readProject(ResultSet resultSet) throws SQLException {
+        Project project = new Project();
+        project.projectNumber = resultSet.getInt(1);
+        project.architectID = resultSet.getString(2);
+        project.contractorID = resultSet.getString(3);
+        project.customerID = resultSet.getString(4);
+        project.projectName = resultSet.getString(5);
+        project.buildingType = resultSet.getString(6);
+        project.physicalAddress = resultSet.getString(7);
+        project.erfNumber = resultSet.getString(8);
+        project.totalFee = resultSet.getDouble(9);
+        project.amountPaid = resultSet.getDouble(10);
+        project.projectDeadline = resultSet.getDate(11).toLocalDate();
+        project.projectFinalised = resultSet.getBoolean(12);
+        Date completionDate = resultSet.getDate(13);
+        project.completionDate = completionDate == null ? null : completionDate.toLocalDate();
+        project.version = resultSet.getInt(14);
+        return project;
+    }
+
+    /**
+     * helper method to set the twelve project columns of the insert statement
+     *
+     * @param statement the statement to set the parameters on
+     * @param project   the project values
+     * @throws SQLException if a database access error occurs
+     */
+    private static void setProjectColumns(PreparedStatement statement, Project project) throws SQLException {
+        statement.setString(1, project.architectID);
+        statement.setString(2, project.contractorID);
+        statement.setString(3, project.customerID);
+        statement.setString(4, project.projectName);
+        statement.setString(5, project.buildingType);
+        statement.setString(6, project.physicalAddress);
+        statement.setString(7, project.erfNumber);
+        statement.setDouble(8, project.totalFee);
+        statement.setDouble(9, project.amountPaid);
+        statement.setDate(10, Date.valueOf(project.projectDeadline));
+        statement.setBoolean(11, project.projectFinalised);
+        if (project.completionDate == null) {
+            statement.setNull(12, Types.DATE);
+        } else {
+            statement.setDate(12, Date.valueOf(project.completionDate));
+        }
+    }
+}
@@ -0,0 +1,694 @@
+
+// import Java packages
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * class for searching projects through an in-memory inverted index
+ *
+ * each project is split into lower-case word tokens taken from its number,
+ * name, building type, physical address, ERF number and the names of its
+ * customer, architect and contractor
+ *
+ * the index maps every token to the projects containing it (kept in a sorted
+ * map so a search word also matches longer tokens that start with it), and
+ * keeps each project's tokens by field so matches can be checked and ranked
+ * without going back to the database
+ *
+ * a search starts from the search word with the fewest matching projects and
+ * checks only those projects against the other words, so its cost depends on
+ * how selective the search is rather than on the number of projects
+ *
+ * the index is built at startup and kept up to date as a ChangeListener (and
+ * rebuilt by DataRefresher after writes made elsewhere); each change is read
+ * and applied under one lock, so a change read later is never overwritten by
+ * one read earlier, and projects changed while a rebuild reads every row are
+ * read again once it is swapped in
+ */
+public class ProjectSearchIndex implements ChangeListener {
+
+    /**
+     * default maximum number of results returned by a search
+     */
+    public static final int DEFAULT_RESULT_LIMIT = 50;
+
+    /**
+     * number of rows read per round trip while building the index
+     */
+    private static final int FETCH_SIZE = 1000;
+
+    // positions of the indexed fields
+    private static final int NUMBER = 0;
+    private static final int NAME = 1;
+    private static final int BUILDING_TYPE = 2;
+    private static final int ADDRESS = 3;
+    private static final int ERF = 4;
+    private static final int CUSTOMER = 5;
+    private static final int ARCHITECT = 6;
+    private static final int CONTRACTOR = 7;
+    private static final int FIELD_COUNT = 8;
+
+    /**
+     * score for a search word matching a whole token in each field (a word that
+     * only matches the start of a token scores half)
+     */
+    private static final int[] FIELD_WEIGHTS = { 20, 16, 6, 4, 8, 10, 8, 8 };
+
+    /**
+     * SQL query to read the indexed values of projects with the names of the
+     * linked people
+     */
+    private static final String SELECT_DOCUMENTS = "SELECT p.project_number, p.project_name, p.building_type, "
+            + "p.physical_address, p.erf_number, c.customer_fname, c.customer_surname, a.architect_name, "
+            + "t.contractor_name FROM Projects p "
+            + "LEFT JOIN Customers c ON c.customer_id = p.customer_id "
+            + "LEFT JOIN Architects a ON a.architect_id = p.architect_id "
+            + "LEFT JOIN Contractors t ON t.contractor_id = p.contractor_id";
+
+    // projects containing each token, sorted by token
+    private final TreeMap<String, Postings> terms = new TreeMap<>();
+
+    // indexed tokens of each project, by project number
+    private final HashMap<Integer, Document> documents = new HashMap<>();
+
+    // searches share the read lock, index changes take the write lock
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // held while a change is read and applied, so changes are applied in the
+    // order they were read (searches only take the lock above)
+    private final Object refreshLock = new Object();
+
+    // held for the whole of a build, so only one runs at a time
+    private final Object buildLock = new Object();
+
+    // projects changed while a build reads every row (null when not building;
+    // guarded by refreshLock)
+    private Set<Integer> changedDuringBuild;
+
+    /**
+     * method to (re)build the index from every project in the database
+     *
+     * @param pool the connection pool for executing queries
+     * @return the number of projects indexed
+     * @throws SQLException if a database access error occurs
+     */
+    public int build(ConnectionPool pool) throws SQLException {
+        synchronized (buildLock) {
+            // note the projects changed from here on
+            synchronized (refreshLock) {
+                changedDuringBuild = new HashSet<>();
+            }
+            try {
+                // read the projects into a fresh index first so searches keep
+                // working on the old one until the new one is complete
+                TreeMap<String, Postings> newTerms = new TreeMap<>();
+                HashMap<Integer, Document> newDocuments = new HashMap<>();
+
+                // a dedicated statement is used (rather than the statement
+                // cache) because its cursor settings only apply to this full read
+                try (PooledConnection connection = pool.borrow();
+                        PreparedStatement select = connection.getConnection().prepareStatement(SELECT_DOCUMENTS,
+                                ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                    // read rows in fixed-size batches through a server-side cursor
+                    select.setFetchSize(FETCH_SIZE);
+
+                    try (ResultSet resultSet = select.executeQuery()) {
+                        while (resultSet.next()) {
+                            Document document = readDocument(resultSet, newTerms);
+                            newDocuments.put(document.number, document);
+                            addPostings(newTerms, document);
+                        }
+                    }
+                }
+
+                synchronized (refreshLock) {
+                    // swap the new index in
+                    lock.writeLock().lock();
+                    try {
+                        terms.clear();
+                        terms.putAll(newTerms);
+                        documents.clear();
+                        documents.putAll(newDocuments);
+                    } finally {
+                        lock.writeLock().unlock();
+                    }
+
+                    // the rows read may be older than the changes made
+                    // meanwhile, so read those projects again
+                    for (int projectNumber : changedDuringBuild) {
+                        replace(Collections.singletonList(projectNumber), readDocuments(pool,
+                                SELECT_DOCUMENTS + " WHERE p.project_number = ?", Integer.toString(projectNumber)));
+                    }
+                    return size();
+                }
+            } finally {
+                synchronized (refreshLock) {
+                    changedDuringBuild = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * method to search for projects matching every word of a search
+     *
+     * @param query the search text (words are matched against the start of
+     *              indexed tokens, ignoring case and punctuation)
+     * @param limit the maximum number of results
+     * @return the matching project numbers, best match first
+     */
+    public List<Integer> search(String query, int limit) {
+        // split search text into distinct words
+        String[] words = new LinkedHashSet<>(tokenize(query)).toArray(new String[0]);
+        if (words.length == 0 || limit < 1) {
+            return new ArrayList<>();
+        }
+
+        lock.readLock().lock();
+        try {
+            // find the word matching the fewest projects to drive the search
+            Collection<Postings> driver = null;
+            String driverWord = null;
+            long driverSize = Long.MAX_VALUE;
+            for (String word : words) {
+                Collection<Postings> matches = termsStartingWith(terms, word);
+                long size = 0;
+                for (Postings postings : matches) {
+                    size += postings.size;
+                }
+
+                // no project can match every word
+                if (size == 0) {
+                    return new ArrayList<>();
+                }
+                if (size < driverSize) {
+                    driver = matches;
+                    driverWord = word;
+                    driverSize = size;
+                }
+            }
+
+            // keep the best results seen so far, worst result at the head
+            PriorityQueue<long[]> best = new PriorityQueue<>(limit + 1,
+                    (a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0]) : Long.compare(b[1], a[1]));
+
+            // a project can appear under several tokens starting with the same
+            // word, so it is only scored under the first of them
+            boolean checkRepeats = driver.size() > 1;
+
+            // check and score each candidate project against every word
+            for (Postings postings : driver) {
+                for (int i = 0; i < postings.size; i++) {
+                    Document document = documents.get(postings.numbers[i]);
+                    if (checkRepeats && document.firstTermStartingWith(driverWord) != postings.term) {
+                        continue;
+                    }
+
+                    long score = document.score(words);
+                    if (score > 0) {
+                        best.add(new long[] { score, document.number });
+                        if (best.size() > limit) {
+                            best.poll();
+                        }
+                    }
+                }
+            }
+
+            // return results in best-first order
+            Integer[] results = new Integer[best.size()];
+            for (int i = results.length - 1; i >= 0; i--) {
+                results[i] = (int) best.poll()[1];
+            }
+            return new ArrayList<>(Arrays.asList(results));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * method to get the number of indexed projects
+     *
+     * @return the number of projects in the index
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return documents.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * method to re-read a project after it has been added or changed
+     *
+     * @param pool          the connection pool for executing queries
+     * @param projectNumber the number of the project that changed
+     * @throws SQLException if a database access error occurs
+     */
+    @Override
+    public void projectChanged(ConnectionPool pool, int projectNumber) throws SQLException {
+        synchronized (refreshLock) {
+            noteChanged(projectNumber);
+            // a project deleted again since the write is dropped
+            replace(Collections.singletonList(projectNumber), readDocuments(pool,
+                    SELECT_DOCUMENTS + " WHERE p.project_number = ?", Integer.toString(projectNumber)));
+        }
+    }
+
+    /**
+     * method to add or replace a project from values already in memory (used
+     * by FileProjectStore, which holds the projects and people itself)
+     *
+     * @param project         the project
+     * @param customerFname   the customer's first name (null if unknown)
+     * @param customerSurname the customer's surname (null if unknown)
+     * @param architectName   the architect's name (null if unknown)
+     * @param contractorName  the contractor's name (null if unknown)
+     */
+    public void update(Project project, String customerFname, String customerSurname, String architectName,
+            String contractorName) {
+        String[] values = new String[FIELD_COUNT];
+        values[NUMBER] = Integer.toString(project.projectNumber);
+        values[NAME] = project.projectName;
+        values[BUILDING_TYPE] = project.buildingType;
+        values[ADDRESS] = project.physicalAddress;
+        values[ERF] = project.erfNumber;
+        values[CUSTOMER] = fullName(customerFname, customerSurname);
+        values[ARCHITECT] = architectName;
+        values[CONTRACTOR] = contractorName;
+
+        lock.writeLock().lock();
+        try {
+            removeDocument(project.projectNumber);
+            Document document = document(project.projectNumber, values, terms);
+            documents.put(document.number, document);
+            addPostings(terms, document);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * method to drop a deleted project from the index
+     *
+     * @param projectNumber the number of the deleted project
+     */
+    @Override
+    public void projectDeleted(int projectNumber) {
+        synchronized (refreshLock) {
+            noteChanged(projectNumber);
+            replace(Collections.singletonList(projectNumber), Collections.emptyList());
+        }
+    }
+
+    /**
+     * method called after a project has been finalised (the status is not
+     * indexed, so nothing changes)
+     *
+     * @param projectNumber the number of the finalised project
+     */
+    @Override
+    public void projectFinalised(int projectNumber) {
+        // nothing to re-read
+    }
+
+    /**
+     * method to re-read the projects linked to a person after the person has
+     * been added, changed or deleted
+     *
+     * @param pool   the connection pool for executing queries
+     * @param column the Projects column that links to the person
+     * @param id     the ID of the person
+     * @throws SQLException if a database access error occurs
+     */
+    @Override
+    public void personChanged(ConnectionPool pool, String column, String id) throws SQLException {
+        synchronized (refreshLock) {
+            List<Document> changed = readDocuments(pool, SELECT_DOCUMENTS + " WHERE p." + column + " = ?", id);
+            for (Document document : changed) {
+                noteChanged(document.number);
+            }
+            replace(Collections.emptyList(), changed);
+        }
+    }
+
+    /**
+     * method called after a person linked to no remaining project has been
+     * deleted (no indexed project refers to them)
+     *
+     * @param column the Projects column that linked to the person
+     * @param id     the ID of the deleted person
+     */
+    @Override
+    public void personDeleted(String column, String id) {
+        // nothing to re-read
+    }
+
+    /**
+     * helper method to note a project changed while a build is reading every
+     * row (caller holds refreshLock)
+     *
+     * @param projectNumber the number of the project that changed
+     */
+    private void noteChanged(int projectNumber) {
+        if (changedDuringBuild != null) {
+            changedDuringBuild.add(projectNumber);
+        }
+    }
+
+    /**
+     * helper method to read the current indexed values of the projects
+     * returned by a query
+     *
+     * @param pool  the connection pool for executing queries
+     * @param sql   the query selecting the projects to re-read
+     * @param value the value of the query parameter
+     * @return the projects' indexed tokens
+     * @throws SQLException if a database access error occurs
+     */
+    private static List<Document> readDocuments(ConnectionPool pool, String sql, String value)
+            throws SQLException {
+        List<Document> changed = new ArrayList<>();
+        try (PooledConnection connection = pool.borrow()) {
+            PreparedStatement select = connection.prepare(sql);
+            select.setString(1, value);
+
+            try (ResultSet resultSet = select.executeQuery()) {
+                // tokens are only read here, so a private dictionary is enough
+                TreeMap<String, Postings> scratch = new TreeMap<>();
+                while (resultSet.next()) {
+                    changed.add(readDocument(resultSet, scratch));
+                }
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * helper method to drop projects from the index and add or replace others
+     *
+     * @param removed the numbers of the projects to drop (those also in
+     *                changed are added back)
+     * @param changed the indexed tokens of the projects to add or replace
+     */
+    private void replace(Collection<Integer> removed, List<Document> changed) {
+        lock.writeLock().lock();
+        try {
+            for (int projectNumber : removed) {
+                removeDocument(projectNumber);
+            }
+            for (Document document : changed) {
+                removeDocument(document.number);
+                document.intern(terms);
+                documents.put(document.number, document);
+                addPostings(terms, document);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * helper method to remove a project's entries (caller holds the write lock)
+     *
+     * @param projectNumber the number of the project to remove
+     */
+    private void removeDocument(int projectNumber) {
+        Document document = documents.remove(projectNumber);
+        if (document == null) {
+            return;
+        }
+
+        for (String term : document.terms) {
+            Postings postings = terms.get(term);
+            if (postings != null) {
+                postings.remove(projectNumber);
+                // drop tokens no project uses any more
+                if (postings.size == 0) {
+                    terms.remove(term);
+                }
+            }
+        }
+    }
+
+    /**
+     * helper method to read the indexed values of the current row
+     *
+     * @param resultSet  the result set positioned on a project row
+     * @param dictionary the tokens already known (used to share token strings)
+     * @return the project's indexed tokens
+     * @throws SQLException if a database access error occurs
+     */
+    private static Document readDocument(ResultSet resultSet, TreeMap<String, Postings> dictionary)
+            throws SQLException {
+        int number = resultSet.getInt(1);
+
+        // read each field in the order of the field positions
+        String[] values = new String[FIELD_COUNT];
+        values[NUMBER] = Integer.toString(number);
+        values[NAME] = resultSet.getString(2);
+        values[BUILDING_TYPE] = resultSet.getString(3);
+        values[ADDRESS] = resultSet.getString(4);
+        values[ERF] = resultSet.getString(5);
+        values[CUSTOMER] = fullName(resultSet.getString(6), resultSet.getString(7));
+        values[ARCHITECT] = resultSet.getString(8);
+        values[CONTRACTOR] = resultSet.getString(9);
+        return document(number, values, dictionary);
+    }
+
+    /**
+     * helper method to split a project's indexed values into tokens
+     *
+     * @param number     the project number
+     * @param values     the value of each field, by field position
+     * @param dictionary the tokens already known (used to share token strings)
+     * @return the project's indexed tokens
+     */
+    private static Document document(int number, String[] values, TreeMap<String, Postings> dictionary) {
+        // split each field into tokens
+        String[][] fields = new String[FIELD_COUNT][];
+        for (int i = 0; i < FIELD_COUNT; i++) {
+            fields[i] = tokenize(values[i]).toArray(new String[0]);
+        }
+
+        Document document = new Document(number, fields);
+        document.intern(dictionary);
+        return document;
+    }
+
+    /**
+     * helper method to join a customer's first name and surname
+     *
+     * @param fname   the first name (may be null)
+     * @param surname the surname (may be null)
+     * @return the full name, or null if both are null
+     */
+    private static String fullName(String fname, String surname) {
+        return fname == null ? surname : surname == null ? fname : fname + " " + surname;
+    }
+
+    /**
+     * helper method to add a project to the postings of each of its tokens
+     *
+     * @param dictionary the token map to update
+     * @param document   the project's indexed tokens
+     */
+    private static void addPostings(TreeMap<String, Postings> dictionary, Document document) {
+        for (String term : document.terms) {
+            dictionary.computeIfAbsent(term, Postings::new).add(document.number);
+        }
+    }
+
+    /**
+     * helper method to find the postings of every token starting with a word
+     *
+     * @param dictionary the token map to search
+     * @param word       the search word
+     * @return the postings of the matching tokens
+     */
+    private static Collection<Postings> termsStartingWith(TreeMap<String, Postings> dictionary, String word) {
+        return dictionary.subMap(word, true, word + Character.MAX_VALUE, false).values();
+    }
+
+    /**
+     * helper method to split text into lower-case tokens of letters and digits
+     *
+     * @param text the text to split (may be null)
+     * @return the tokens in order of appearance
+     */
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+
+        // collect each run of letters and digits
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean letterOrDigit = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (letterOrDigit && start < 0) {
+                start = i;
+            } else if (!letterOrDigit && start >= 0) {
+                tokens.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * class for the list of projects containing one token
+     */
+    private static final class Postings {
+
+        // the token (shared by every project containing it)
+        final String term;
+
+        // project numbers (unordered) and the number in use
+        int[] numbers = new int[4];
+        int size;
+
+        /**
+         * constructor to create an empty postings list
+         *
+         * @param term the token
+         */
+        Postings(String term) {
+            this.term = term;
+        }
+
+        /**
+         * method to add a project
+         *
+         * @param number the project number
+         */
+        void add(int number) {
+            if (size == numbers.length) {
+                numbers = Arrays.copyOf(numbers, size * 2);
+            }
+            numbers[size++] = number;
+        }
+
+        /**
+         * method to remove a project (the last entry fills the gap)
+         *
+         * @param number the project number
+         */
+        void remove(int number) {
+            for (int i = 0; i < size; i++) {
+                if (numbers[i] == number) {
+                    numbers[i] = numbers[--size];
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * class for the indexed tokens of one project
+     */
+    private static final class Document {
+
+        // project number
+        final int number;
+
+        // tokens of each field, by field position
+        final String[][] fields;
+
+        // distinct tokens across all fields
+        String[] terms;
+
+        /**
+         * constructor to create a project's index entry
+         *
+         * @param number the project number
+         * @param fields the tokens of each field
+         */
+        Document(int number, String[][] fields) {
+            this.number = number;
+            this.fields = fields;
+        }
+
+        /**
+         * method to replace tokens with the copies already held in a dictionary
+         * (so a million projects share one string per distinct token) and work
+         * out the distinct tokens
+         *
+         * @param dictionary the tokens already known
+         */
+        void intern(TreeMap<String, Postings> dictionary) {
+            Set<String> distinct = new LinkedHashSet<>();
+            for (String[] tokens : fields) {
+                for (int i = 0; i < tokens.length; i++) {
+                    Postings postings = dictionary.get(tokens[i]);
+                    if (postings != null) {
+                        tokens[i] = postings.term;
+                    }
+                    distinct.add(tokens[i]);
+                }
+            }
+            terms = distinct.toArray(new String[0]);
+        }
+
+        /**
+         * method to find the first of the project's tokens starting with a word
+         *
+         * @param word the search word
+         * @return the shared token string, or null if none matches
+         */
+        String firstTermStartingWith(String word) {
+            for (String term : terms) {
+                if (term.startsWith(word)) {
+                    return term;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * method to score the project against the words of a search
+         *
+         * each word scores the weight of the best field it matches (half the
+         * weight if it only matches the start of a token)
+         *
+         * @param words the search words
+         * @return the total score, or 0 if any word does not match
+         */
+        long score(String[] words) {
+            long total = 0;
+            for (String word : words) {
+                int best = 0;
+                for (int field = 0; field < FIELD_COUNT; field++) {
+                    for (String token : fields[field]) {
+                        if (token.startsWith(word)) {
+                            best = Math.max(best, token.length() == word.length()
+                                    ? FIELD_WEIGHTS[field] : FIELD_WEIGHTS[field] / 2);
+                        }
+                    }
+                }
+
+                // every word must match somewhere
+                if (best == 0) {
+                    return 0;
+                }
+                total += best;
+            }
+            return total;
+        }
+    }
+}
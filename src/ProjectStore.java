@@ -0,0 +1,198 @@
+
+// import Java packages
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * interface for where projects and people are kept, so the batch commands
+ * (see BatchRunner) and the store benchmark can run against the MySQL
+ * database (JdbcProjectStore) or an embedded file that needs no server
+ * (FileProjectStore)
+ *
+ * both implementations follow the same rules: project numbers are generated
+ * in increasing order and never reused, a project must link to an existing
+ * architect, contractor and customer, a project given no name is named from
+ * its building type and customer surname, updates write only what changed
+ * and only if the version read is still current, and every write is recorded
+ * in the ChangeJournal; failures are reported as SQLException whichever
+ * store is used
+ */
+public interface ProjectStore extends AutoCloseable {
+
+    /**
+     * method to describe the store, e.g. for the benchmark output
+     *
+     * @return a short description
+     */
+    String describe();
+
+    /**
+     * method to count the projects
+     *
+     * @return the number of projects
+     * @throws SQLException if the store cannot be read
+     */
+    int countProjects() throws SQLException;
+
+    /**
+     * method to insert several projects together (all or none)
+     *
+     * @param projects the projects to insert (their project numbers are set,
+     *                 and their names if they have none)
+     * @throws SQLException if a project cannot be inserted (nothing is)
+     */
+    void insertProjects(List<Project> projects) throws SQLException;
+
+    /**
+     * method to read a project
+     *
+     * @param projectNumber the number of the project
+     * @return the project, or null if it does not exist
+     * @throws SQLException if the store cannot be read
+     */
+    Project findProject(int projectNumber) throws SQLException;
+
+    /**
+     * method to write the changes made to a project since it was read (see
+     * ProjectRepository.updateProject)
+     *
+     * @param current the project as it was read
+     * @param project the new values (its number and version are set from the
+     *                project written)
+     * @return the outcome of the update
+     * @throws SQLException if the store cannot be written
+     */
+    ProjectRepository.UpdateResult updateProject(Project current, Project project) throws SQLException;
+
+    /**
+     * method to finalise several projects together (projects finalised
+     * already keep their completion date)
+     *
+     * @param projectNumbers the numbers of the projects
+     * @param completionDate the date the projects were completed
+     * @return the number of projects finalised
+     * @throws SQLException if the store cannot be written (nothing is
+     *                      finalised)
+     */
+    int finaliseProjects(int[] projectNumbers, LocalDate completionDate) throws SQLException;
+
+    /**
+     * method to finalise every unfinalised project that is fully paid and
+     * past its deadline
+     *
+     * @param today          the current date
+     * @param completionDate the date the projects were completed
+     * @return the number of projects finalised
+     * @throws SQLException if the store cannot be written (nothing is
+     *                      finalised)
+     */
+    int finaliseFullyPaidOverdue(LocalDate today, LocalDate completionDate) throws SQLException;
+
+    /**
+     * method to read the projects to delete and their linked people (see
+     * ProjectDeleter.plan)
+     *
+     * @param projectNumbers the numbers of the projects to delete
+     * @return the plan (numbers that do not exist are left out)
+     * @throws SQLException if the store cannot be read
+     */
+    ProjectDeleter.DeletePlan planDelete(int... projectNumbers) throws SQLException;
+
+    /**
+     * method to delete the projects and the people linked only to them, as
+     * planned by planDelete (all or none)
+     *
+     * @param plan the plan
+     * @return the number of projects deleted
+     * @throws SQLException if the store cannot be written (nothing is
+     *                      deleted)
+     */
+    int delete(ProjectDeleter.DeletePlan plan) throws SQLException;
+
+    /**
+     * method to insert a new person
+     *
+     * @param personTable the table of the person
+     * @param values      the ID followed by the details, in the order of
+     *                    PersonTable.getColumns()
+     * @throws SQLException if the person cannot be inserted (e.g. the ID is
+     *                      taken)
+     */
+    void insertPerson(PersonTable personTable, String... values) throws SQLException;
+
+    /**
+     * method to read a person
+     *
+     * @param personTable the table of the person
+     * @param id          the ID of the person
+     * @return the person's values by column, including the version column,
+     *         or null if they do not exist
+     * @throws SQLException if the store cannot be read
+     */
+    Map<String, Object> findPerson(PersonTable personTable, String id) throws SQLException;
+
+    /**
+     * method to write the changes made to a person's details since they were
+     * read (see ProjectRepository.updatePerson)
+     *
+     * @param personTable the table of the person
+     * @param current     the person's values by column as read, including
+     *                    the version column
+     * @param details     the new details, in the order of
+     *                    PersonTable.getColumns() after the ID
+     * @return the outcome of the update
+     * @throws SQLException if the store cannot be written
+     */
+    ProjectRepository.UpdateResult updatePerson(PersonTable personTable, Map<String, Object> current,
+            String... details) throws SQLException;
+
+    /**
+     * method to search for projects matching every word of a search (see
+     * ProjectSearchIndex.search)
+     *
+     * @param query the search text
+     * @param limit the maximum number of results
+     * @return the matching project numbers, best match first
+     * @throws SQLException if the store cannot be read
+     */
+    List<Integer> search(String query, int limit) throws SQLException;
+
+    /**
+     * method to get every unfinalised project
+     *
+     * @return the project numbers, earliest deadline first
+     * @throws SQLException if the store cannot be read
+     */
+    List<Integer> incomplete() throws SQLException;
+
+    /**
+     * method to get the projects overdue on a given day
+     *
+     * @param today the current date
+     * @return the project numbers, earliest deadline first
+     * @throws SQLException if the store cannot be read
+     */
+    List<Integer> overdue(LocalDate today) throws SQLException;
+
+    /**
+     * method to get the projects not overdue yet that will be within a number
+     * of days
+     *
+     * @param today the current date
+     * @param days  the number of days to look ahead
+     * @return the project numbers, earliest deadline first
+     * @throws SQLException if the store cannot be read
+     */
+    List<Integer> dueWithin(LocalDate today, int days) throws SQLException;
+
+    /**
+     * method to release the store (a JDBC store leaves its connection pool
+     * open for its owner to close)
+     *
+     * @throws SQLException if the store cannot be closed cleanly
+     */
+    @Override
+    void close() throws SQLException;
+}
@@ -0,0 +1,601 @@
+
+// import Java packages
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * class for the summary tables holding the project counts and fee totals shown
+ * on dashboards, so they can be read without scanning the Projects table
+ *
+ * ProjectSummary holds the number of projects, open (unfinalised) projects,
+ * total fees, amount paid and outstanding balances; ProjectDeadlineSummary
+ * holds the number and outstanding balance of open projects per deadline date,
+ * so the overdue figures for any day are a sum over the (few thousand at most)
+ * deadline dates before it
+ *
+ * every method that writes projects collects the change to these figures in a
+ * Delta and applies it with apply() in the same transaction, so the summaries
+ * are always consistent with the committed projects; the totals are spread over
+ * SLOTS rows, each transaction updating one chosen at random, so concurrent
+ * writers do not queue on a single row lock
+ *
+ * verify() recomputes the figures from the Projects table to detect drift (e.g.
+ * rows changed outside the programme) and rebuild() replaces them; the
+ * summary command runs them (verify --repair rebuilds on drift and --every
+ * repeats the check), and initialise() fills the tables on the first start
+ * after an existing database is upgraded
+ */
+public class ProjectSummary {
+
+    /**
+     * number of rows the totals are spread over
+     */
+    public static final int SLOTS = 16;
+
+    // SQL statement to add a change to one row of the totals
+    private static final String ADD_TOTALS = "INSERT INTO ProjectSummary (slot, projects, open_projects, "
+            + "total_fee, amount_paid, outstanding, finalised_outstanding) VALUES (?, ?, ?, ?, ?, ?, ?) "
+            + "ON DUPLICATE KEY UPDATE projects = projects + VALUES(projects), "
+            + "open_projects = open_projects + VALUES(open_projects), total_fee = total_fee + VALUES(total_fee), "
+            + "amount_paid = amount_paid + VALUES(amount_paid), outstanding = outstanding + VALUES(outstanding), "
+            + "finalised_outstanding = finalised_outstanding + VALUES(finalised_outstanding)";
+
+    // SQL statement to add a change to the open projects of a deadline date
+    private static final String ADD_DEADLINE = "INSERT INTO ProjectDeadlineSummary (project_deadline, "
+            + "open_projects, open_outstanding) VALUES (?, ?, ?) ON DUPLICATE KEY UPDATE "
+            + "open_projects = open_projects + VALUES(open_projects), "
+            + "open_outstanding = open_outstanding + VALUES(open_outstanding)";
+
+    // SQL query to read the summary for a date (the deadline rows before it
+    // are read through the primary key)
+    private static final String READ_SUMMARY = "SELECT COALESCE(SUM(projects), 0), "
+            + "COALESCE(SUM(open_projects), 0), COALESCE(SUM(total_fee), 0), COALESCE(SUM(amount_paid), 0), "
+            + "COALESCE(SUM(outstanding), 0), COALESCE(SUM(finalised_outstanding), 0), "
+            + "(SELECT COALESCE(SUM(open_projects), 0) FROM ProjectDeadlineSummary WHERE project_deadline < ?), "
+            + "(SELECT COALESCE(SUM(open_outstanding), 0) FROM ProjectDeadlineSummary WHERE project_deadline < ?) "
+            + "FROM ProjectSummary";
+
+    // SQL queries to recompute the figures from the Projects table
+    private static final String COMPUTE_TOTALS = "SELECT COUNT(*), COALESCE(SUM(project_finalised = false), 0), "
+            + "COALESCE(SUM(total_fee), 0), COALESCE(SUM(amount_paid), 0), "
+            + "COALESCE(SUM(GREATEST(total_fee - amount_paid, 0)), 0), COALESCE(SUM(CASE WHEN project_finalised "
+            + "THEN GREATEST(total_fee - amount_paid, 0) ELSE 0 END), 0) FROM Projects";
+    private static final String COMPUTE_DEADLINES = "SELECT project_deadline, COUNT(*), "
+            + "SUM(GREATEST(total_fee - amount_paid, 0)) FROM Projects WHERE project_finalised = false "
+            + "GROUP BY project_deadline";
+
+    /**
+     * class for the figures read from the summary tables
+     */
+    public static final class Summary {
+
+        // project counts
+        public final long projects;
+        public final long open;
+        public final long finalised;
+        public final long overdue;
+
+        // amounts
+        public final BigDecimal totalFee;
+        public final BigDecimal amountPaid;
+        public final BigDecimal outstanding;
+        public final BigDecimal finalisedOutstanding;
+        public final BigDecimal overdueOutstanding;
+
+        /**
+         * constructor to read the figures from a READ_SUMMARY row
+         *
+         * @param resultSet the result set positioned on the row
+         * @throws SQLException if a database access error occurs
+         */
+        private Summary(ResultSet resultSet) throws SQLException {
+            projects = resultSet.getLong(1);
+            open = resultSet.getLong(2);
+            finalised = projects - open;
+            totalFee = resultSet.getBigDecimal(3);
+            amountPaid = resultSet.getBigDecimal(4);
+            outstanding = resultSet.getBigDecimal(5);
+            finalisedOutstanding = resultSet.getBigDecimal(6);
+            overdue = resultSet.getLong(7);
+            overdueOutstanding = resultSet.getBigDecimal(8);
+        }
+    }
+
+    /**
+     * class for the change a transaction makes to the summary figures
+     *
+     * amounts are kept in cents; project values are added when a project is
+     * written and removed (with their values before the change) when it is
+     * changed or deleted
+     */
+    public static final class Delta {
+
+        // change to the totals
+        private long projects;
+        private long open;
+        private long feeCents;
+        private long paidCents;
+        private long outstandingCents;
+        private long finalisedOutstandingCents;
+
+        // change to the open projects of each deadline date (count, cents),
+        // in date order so concurrent transactions lock the rows in one order
+        private final TreeMap<LocalDate, long[]> deadlines = new TreeMap<>();
+
+        /**
+         * method to add a project's values to the figures
+         *
+         * @param totalFee   the project's total fee
+         * @param amountPaid the amount paid
+         * @param deadline   the project deadline
+         * @param finalised  true if the project is finalised
+         */
+        public void add(BigDecimal totalFee, BigDecimal amountPaid, LocalDate deadline, boolean finalised) {
+            change(cents(totalFee), cents(amountPaid), deadline, finalised, 1);
+        }
+
+        /**
+         * method to add a project's values to the figures
+         *
+         * @param project the project (fees are rounded to cents as the
+         *                DECIMAL(12, 2) columns round them)
+         */
+        public void add(Project project) {
+            change(cents(project.totalFee), cents(project.amountPaid), project.projectDeadline,
+                    project.projectFinalised, 1);
+        }
+
+        /**
+         * method to remove a project's values from the figures
+         *
+         * @param totalFee   the project's total fee before the change
+         * @param amountPaid the amount paid before the change
+         * @param deadline   the project deadline before the change
+         * @param finalised  true if the project was finalised
+         */
+        public void remove(BigDecimal totalFee, BigDecimal amountPaid, LocalDate deadline, boolean finalised) {
+            change(cents(totalFee), cents(amountPaid), deadline, finalised, -1);
+        }
+
+        /**
+         * method to remove a project's values from the figures
+         *
+         * @param project the project as it was before the change (fees are
+         *                rounded to cents as in add)
+         */
+        public void remove(Project project) {
+            change(cents(project.totalFee), cents(project.amountPaid), project.projectDeadline,
+                    project.projectFinalised, -1);
+        }
+
+        /**
+         * method to check if the figures are unchanged
+         *
+         * @return true if there is nothing to apply
+         */
+        public boolean isEmpty() {
+            if (projects != 0 || open != 0 || feeCents != 0 || paidCents != 0 || outstandingCents != 0
+                    || finalisedOutstandingCents != 0) {
+                return false;
+            }
+            for (long[] deadline : deadlines.values()) {
+                if (deadline[0] != 0 || deadline[1] != 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * helper method to add or remove a project's values
+         *
+         * @param fee       the total fee in cents
+         * @param paid      the amount paid in cents
+         * @param deadline  the project deadline
+         * @param finalised true if the project is finalised
+         * @param sign      1 to add the values, -1 to remove them
+         */
+        private void change(long fee, long paid, LocalDate deadline, boolean finalised, int sign) {
+            long outstanding = Math.max(fee - paid, 0);
+            projects += sign;
+            feeCents += sign * fee;
+            paidCents += sign * paid;
+            outstandingCents += sign * outstanding;
+            if (finalised) {
+                finalisedOutstandingCents += sign * outstanding;
+            } else {
+                open += sign;
+                long[] deadlineChange = deadlines.computeIfAbsent(deadline, date -> new long[2]);
+                deadlineChange[0] += sign;
+                deadlineChange[1] += sign * outstanding;
+            }
+        }
+    }
+
+    /**
+     * method to apply a change to the summary tables
+     *
+     * must be called in the transaction that made the change (before it is
+     * committed)
+     *
+     * @param connection the pooled connection (auto-commit disabled)
+     * @param delta      the change to apply
+     * @throws SQLException if a database access error occurs
+     */
+    public static void apply(PooledConnection connection, Delta delta) throws SQLException {
+        if (delta.isEmpty()) {
+            return;
+        }
+
+        // the totals row is always written first (even if only deadlines
+        // changed), so rebuild() can hold back every writer by locking them
+        PreparedStatement addTotals = connection.prepare(ADD_TOTALS);
+        addTotals.setInt(1, ThreadLocalRandom.current().nextInt(SLOTS));
+        addTotals.setLong(2, delta.projects);
+        addTotals.setLong(3, delta.open);
+        addTotals.setBigDecimal(4, BigDecimal.valueOf(delta.feeCents, 2));
+        addTotals.setBigDecimal(5, BigDecimal.valueOf(delta.paidCents, 2));
+        addTotals.setBigDecimal(6, BigDecimal.valueOf(delta.outstandingCents, 2));
+        addTotals.setBigDecimal(7, BigDecimal.valueOf(delta.finalisedOutstandingCents, 2));
+        addTotals.executeUpdate();
+
+        // add the deadline changes in one batch
+        PreparedStatement addDeadline = connection.prepare(ADD_DEADLINE);
+        boolean batched = false;
+        for (Map.Entry<LocalDate, long[]> deadline : delta.deadlines.entrySet()) {
+            if (deadline.getValue()[0] != 0 || deadline.getValue()[1] != 0) {
+                addDeadline.setDate(1, Date.valueOf(deadline.getKey()));
+                addDeadline.setLong(2, deadline.getValue()[0]);
+                addDeadline.setBigDecimal(3, BigDecimal.valueOf(deadline.getValue()[1], 2));
+                addDeadline.addBatch();
+                batched = true;
+            }
+        }
+        if (batched) {
+            addDeadline.executeBatch();
+        }
+    }
+
+    /**
+     * method to lock projects and remove their current values from a change
+     * (before they are updated, finalised or deleted)
+     *
+     * the whole row is read, as it is the row before the change recorded in
+     * the change journal
+     *
+     * @param connection     the pooled connection (auto-commit disabled)
+     * @param delta          the change to remove the values from
+     * @param projectNumbers the numbers of the projects
+     * @param openOnly       true to only lock and remove unfinalised projects
+     * @return the projects found, as they were before the change, so callers
+     *         can add them back with changes
+     * @throws SQLException if a database access error occurs
+     */
+    public static List<Project> removeProjects(PooledConnection connection, Delta delta, int[] projectNumbers,
+            boolean openOnly) throws SQLException {
+        List<Project> removed = new ArrayList<>();
+        for (int from = 0; from < projectNumbers.length; from += InList.MAX_SIZE) {
+            int to = Math.min(from + InList.MAX_SIZE, projectNumbers.length);
+            int slots = InList.slots(to - from);
+
+            PreparedStatement select = connection.prepare(ProjectRepository.SELECT_PROJECT + "WHERE "
+                    + (openOnly ? "project_finalised = false AND " : "") + "project_number IN "
+                    + InList.placeholders(slots) + " FOR UPDATE");
+            InList.bind(select, 1, projectNumbers, from, to, slots);
+            try (ResultSet resultSet = select.executeQuery()) {
+                while (resultSet.next()) {
+                    Project project = ProjectRepository.readProject(resultSet);
+                    // the fees are read exactly for the figures
+                    delta.remove(resultSet.getBigDecimal(9), resultSet.getBigDecimal(10), project.projectDeadline,
+                            project.projectFinalised);
+                    removed.add(project);
+                }
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * method to read the summary figures
+     *
+     * @param pool  the connection pool for executing queries
+     * @param today the current date (projects due before it are overdue)
+     * @return the summary figures
+     * @throws SQLException if a database access error occurs
+     */
+    public static Summary read(ConnectionPool pool, LocalDate today) throws SQLException {
+        try (PooledConnection connection = pool.borrow()) {
+            return read(connection, today);
+        }
+    }
+
+    /**
+     * method to compare the summary tables with figures recomputed from the
+     * Projects table
+     *
+     * both are read from one consistent snapshot, so writes made meanwhile
+     * are not reported as drift
+     *
+     * @param pool the connection pool for executing queries
+     * @return a description of each difference (empty if there is no drift)
+     * @throws SQLException if a database access error occurs
+     */
+    public static List<String> verify(ConnectionPool pool) throws SQLException {
+        List<String> differences = new ArrayList<>();
+        try (PooledConnection connection = pool.borrow()) {
+            Connection databaseConnection = connection.getConnection();
+            databaseConnection.setAutoCommit(false);
+
+            // stored and recomputed totals (the overdue figures are sums of
+            // the deadline rows compared below)
+            Summary stored = read(connection, LocalDate.now());
+            try (ResultSet resultSet = connection.prepare(COMPUTE_TOTALS).executeQuery()) {
+                resultSet.next();
+                compare(differences, "projects", stored.projects, resultSet.getLong(1));
+                compare(differences, "open projects", stored.open, resultSet.getLong(2));
+                compare(differences, "total fee", stored.totalFee, resultSet.getBigDecimal(3));
+                compare(differences, "amount paid", stored.amountPaid, resultSet.getBigDecimal(4));
+                compare(differences, "outstanding", stored.outstanding, resultSet.getBigDecimal(5));
+                compare(differences, "owed on finalised", stored.finalisedOutstanding,
+                        resultSet.getBigDecimal(6));
+            }
+
+            // stored and recomputed open projects per deadline date
+            TreeMap<LocalDate, Object[]> deadlines = new TreeMap<>();
+            try (ResultSet resultSet = connection.prepare("SELECT project_deadline, open_projects, "
+                    + "open_outstanding FROM ProjectDeadlineSummary").executeQuery()) {
+                while (resultSet.next()) {
+                    deadlines.put(resultSet.getDate(1).toLocalDate(),
+                            new Object[] { resultSet.getLong(2), resultSet.getBigDecimal(3), 0L,
+                                    BigDecimal.ZERO });
+                }
+            }
+            try (ResultSet resultSet = connection.prepare(COMPUTE_DEADLINES).executeQuery()) {
+                while (resultSet.next()) {
+                    Object[] deadline = deadlines.computeIfAbsent(resultSet.getDate(1).toLocalDate(),
+                            date -> new Object[] { 0L, BigDecimal.ZERO, 0L, BigDecimal.ZERO });
+                    deadline[2] = resultSet.getLong(2);
+                    deadline[3] = resultSet.getBigDecimal(3);
+                }
+            }
+            for (Map.Entry<LocalDate, Object[]> deadline : deadlines.entrySet()) {
+                Object[] values = deadline.getValue();
+                compare(differences, "open projects due " + deadline.getKey(), values[0], values[2]);
+                compare(differences, "outstanding on open projects due " + deadline.getKey(), values[1],
+                        values[3]);
+            }
+        }
+        return differences;
+    }
+
+    /**
+     * method to replace the summary tables with figures recomputed from the
+     * Projects table
+     *
+     * every totals row is locked first, so writers that have not yet applied
+     * their change wait and apply it on top of the rebuilt figures, while the
+     * projects they have not committed are not yet visible to the rebuild
+     *
+     * @param pool the connection pool for executing queries
+     * @throws SQLException if a database access error occurs (nothing is
+     *                      changed)
+     */
+    public static void rebuild(ConnectionPool pool) throws SQLException {
+        try (PooledConnection connection = pool.borrow()) {
+            Connection databaseConnection = connection.getConnection();
+            databaseConnection.setAutoCommit(false);
+
+            // hold back writers (also locks the gaps, so no new slot appears)
+            try (ResultSet resultSet = connection.prepare("SELECT slot FROM ProjectSummary FOR UPDATE")
+                    .executeQuery()) {
+                while (resultSet.next()) {
+                    // rows are only read to lock them
+                }
+            }
+            connection.prepare("DELETE FROM ProjectSummary").executeUpdate();
+            connection.prepare("DELETE FROM ProjectDeadlineSummary").executeUpdate();
+
+            // recompute the totals into the first slot (the consistent reads
+            // start their snapshot now, after the locks are held)
+            try (ResultSet resultSet = connection.prepare(COMPUTE_TOTALS).executeQuery()) {
+                resultSet.next();
+                PreparedStatement addTotals = connection.prepare(ADD_TOTALS);
+                addTotals.setInt(1, 0);
+                addTotals.setLong(2, resultSet.getLong(1));
+                addTotals.setLong(3, resultSet.getLong(2));
+                for (int column = 3; column <= 6; column++) {
+                    addTotals.setBigDecimal(column + 1, resultSet.getBigDecimal(column));
+                }
+                addTotals.executeUpdate();
+            }
+
+            // recompute the open projects of each deadline date
+            PreparedStatement addDeadline = connection.prepare(ADD_DEADLINE);
+            try (ResultSet resultSet = connection.prepare(COMPUTE_DEADLINES).executeQuery()) {
+                while (resultSet.next()) {
+                    addDeadline.setDate(1, resultSet.getDate(1));
+                    addDeadline.setLong(2, resultSet.getLong(2));
+                    addDeadline.setBigDecimal(3, resultSet.getBigDecimal(3));
+                    addDeadline.addBatch();
+                }
+            }
+            addDeadline.executeBatch();
+
+            databaseConnection.commit();
+        }
+    }
+
+    /**
+     * method to rebuild the summary tables if they are empty while there are
+     * projects (e.g. on the first start after the tables were added)
+     *
+     * @param pool the connection pool for executing queries
+     * @return true if the tables were rebuilt
+     * @throws SQLException if a database access error occurs
+     */
+    public static boolean initialise(ConnectionPool pool) throws SQLException {
+        try (PooledConnection connection = pool.borrow();
+                ResultSet resultSet = connection.prepare("SELECT NOT EXISTS (SELECT 1 FROM ProjectSummary) "
+                        + "AND EXISTS (SELECT 1 FROM Projects)").executeQuery()) {
+            resultSet.next();
+            if (!resultSet.getBoolean(1)) {
+                return false;
+            }
+        }
+        rebuild(pool);
+        return true;
+    }
+
+    /**
+     * method to run a summary command from the command line arguments
+     * e.g. summary verify --every 60
+     *
+     * @param pool the connection pool for executing queries
+     * @param args the command arguments: summary [show|verify [--repair]
+     *             [--every minutes]|rebuild]
+     * @return false if drift was found and not repaired
+     * @throws SQLException if a database access error occurs
+     */
+    public static boolean run(ConnectionPool pool, String[] args) throws SQLException {
+        String action = args.length > 1 ? args[1] : "show";
+        boolean repair = false;
+        int everyMinutes = 0;
+        boolean valid = true;
+        for (int i = 2; i < args.length && valid; i++) {
+            if (args[i].equals("--repair")) {
+                repair = true;
+            } else if (args[i].equals("--every") && i + 1 < args.length) {
+                everyMinutes = InputValidation.parseInteger(args[++i]);
+                valid = everyMinutes > 0;
+            } else {
+                valid = false;
+            }
+        }
+
+        switch (valid ? action : "") {
+            // display the figures read from the summary tables
+            case "show":
+                print(read(pool, LocalDate.now()));
+                return true;
+            // recompute the figures and report any drift (repeatedly if asked)
+            case "verify":
+                boolean clean;
+                do {
+                    long start = System.nanoTime();
+                    List<String> differences = verify(pool);
+                    clean = differences.isEmpty();
+                    System.out.printf("%s Summary verified in %.0f ms: %s%n", java.time.LocalDateTime.now()
+                            .withNano(0), (System.nanoTime() - start) / 1e6,
+                            clean ? "no drift." : differences.size() + " difference(s).");
+                    for (String difference : differences) {
+                        System.out.println("  " + difference);
+                    }
+                    if (!clean && repair) {
+                        rebuild(pool);
+                        System.out.println("Summary tables rebuilt.");
+                        clean = true;
+                    }
+                    if (everyMinutes > 0) {
+                        try {
+                            Thread.sleep(everyMinutes * 60_000L);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            break;
+                        }
+                    }
+                } while (everyMinutes > 0);
+                return clean;
+            // replace the figures with recomputed ones
+            case "rebuild":
+                long start = System.nanoTime();
+                rebuild(pool);
+                System.out.printf("Summary tables rebuilt in %.0f ms.%n", (System.nanoTime() - start) / 1e6);
+                return true;
+            default:
+                System.out.println("Usage: PoisePMS summary [show | verify [--repair] [--every minutes] | rebuild]");
+                return false;
+        }
+    }
+
+    /**
+     * method to display the summary figures
+     *
+     * @param summary the figures read by read()
+     */
+    public static void print(Summary summary) {
+        System.out.println("Projects: " + summary.projects + " (" + summary.open + " incomplete, "
+                + summary.overdue + " overdue, " + summary.finalised + " finalised)");
+        System.out.println("Total fees: " + summary.totalFee + ", amount paid: " + summary.amountPaid);
+        System.out.println("Outstanding: " + summary.outstanding + " (" + summary.overdueOutstanding
+                + " on overdue projects, " + summary.finalisedOutstanding + " on finalised projects)");
+    }
+
+    /**
+     * helper method to read the summary figures on a borrowed connection
+     *
+     * @param connection the pooled connection
+     * @param today      the current date (projects due before it are overdue)
+     * @return the summary figures
+     * @throws SQLException if a database access error occurs
+     */
+    private static Summary read(PooledConnection connection, LocalDate today) throws SQLException {
+        PreparedStatement select = connection.prepare(READ_SUMMARY);
+        select.setDate(1, Date.valueOf(today));
+        select.setDate(2, Date.valueOf(today));
+        try (ResultSet resultSet = select.executeQuery()) {
+            resultSet.next();
+            return new Summary(resultSet);
+        }
+    }
+
+    /**
+     * helper method to record a difference between a stored and recomputed
+     * figure
+     *
+     * @param differences the differences found so far
+     * @param name        the name of the figure
+     * @param stored      the figure in the summary tables
+     * @param computed    the figure recomputed from the Projects table
+     */
+    private static void compare(List<String> differences, String name, Object stored, Object computed) {
+        boolean equal = stored instanceof BigDecimal && computed instanceof BigDecimal
+                ? ((BigDecimal) stored).compareTo((BigDecimal) computed) == 0
+                : stored.equals(computed);
+        if (!equal) {
+            differences.add(name + ": summary " + stored + ", projects " + computed);
+        }
+    }
+
+    /**
+     * helper method to convert an amount to whole cents, rounding as the
+     * DECIMAL(12, 2) columns do
+     *
+     * @param amount the amount
+     * @return the amount in cents
+     */
+    private static long cents(BigDecimal amount) {
+        return amount.setScale(2, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    /**
+     * helper method to convert an amount held as a double to whole cents,
+     * using the same decimal text the database driver sends
+     *
+     * @param amount the amount
+     * @return the amount in cents
+     */
+    private static long cents(double amount) {
+        return cents(BigDecimal.valueOf(amount));
+    }
+}
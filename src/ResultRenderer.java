@@ -0,0 +1,486 @@
+
+// import Java packages
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * class for displaying rows of records as an aligned table, tab-separated
+ * values (TSV) or JSON lines
+ *
+ * rows are appended to one reusable buffer that is written out in large
+ * chunks and flushed once per block (e.g. a page), instead of one
+ * concatenated string and one System.out.println call per row; result set
+ * columns are read by index with the column kinds taken once from the
+ * metadata
+ *
+ * a table is aligned per block: the rows of a block are held until
+ * endBlock(), and column widths only ever grow, so later blocks line up with
+ * earlier ones unless they hold longer values
+ */
+public class ResultRenderer {
+
+    /**
+     * output formats
+     */
+    public enum Format {
+        TABLE, TSV, JSON;
+
+        /**
+         * method to get a format from its name (any case)
+         *
+         * @param name the format name, e.g. table, tsv or json
+         * @return the format, or null if the name is not a format
+         */
+        public static Format parse(String name) {
+            for (Format format : values()) {
+                if (format.name().equalsIgnoreCase(name)) {
+                    return format;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * method to get the format chosen at startup with
+         * -Dpoisepms.format=table, tsv or json
+         *
+         * @return the chosen format (table if none or an unknown one is set)
+         */
+        public static Format configured() {
+            Format format = parse(System.getProperty("poisepms.format", ""));
+            return format != null ? format : TABLE;
+        }
+    }
+
+    /**
+     * number of buffered characters at which the buffer is written out
+     */
+    private static final int BUFFER_SIZE = 32 * 1024;
+
+    /**
+     * spaces between table columns
+     */
+    private static final String COLUMN_GAP = "  ";
+
+    // column kinds (how values are read and whether JSON quotes them)
+    private static final byte TEXT = 0;
+    private static final byte NUMBER = 1;
+    private static final byte BOOLEAN = 2;
+
+    // destination of the rendered text
+    private final Writer out;
+    // chosen output format
+    private final Format format;
+    // column names (TSV header and JSON keys) and table header labels
+    private final String[] names;
+    private final String[] labels;
+
+    // reusable buffer of rendered rows, and the chunk used to write it out
+    private final StringBuilder line = new StringBuilder(BUFFER_SIZE + 1024);
+    private final char[] chunk = new char[BUFFER_SIZE];
+    // JSON keys with their quotes and colon, e.g. "project_name":
+    private final String[] jsonKeys;
+    // table cells held until the end of the block
+    private final List<String[]> block = new ArrayList<>();
+    // current table column widths
+    private final int[] widths;
+    // column kinds of the result set being read (set by the first row)
+    private byte[] kinds;
+
+    // title to display before the first row, and whether the header is written
+    private String title;
+    private boolean headerWritten;
+
+    /**
+     * constructor to create a renderer
+     *
+     * @param out    the destination (flushed at the end of each block, never
+     *               closed)
+     * @param format the output format
+     * @param names  the column names (TSV header and JSON keys)
+     * @param labels the table header labels, in the same order
+     */
+    public ResultRenderer(Writer out, Format format, String[] names, String[] labels) {
+        this.out = out;
+        this.format = format;
+        this.names = names;
+        this.labels = labels;
+        this.widths = new int[names.length];
+        this.jsonKeys = new String[names.length];
+        for (int i = 0; i < names.length; i++) {
+            widths[i] = labels[i].length();
+            StringBuilder key = new StringBuilder();
+            appendJsonString(key, names[i]);
+            jsonKeys[i] = key.append(':').toString();
+        }
+    }
+
+    /**
+     * method to create a renderer writing to standard output
+     *
+     * @param format the output format
+     * @param names  the column names (TSV header and JSON keys)
+     * @param labels the table header labels, in the same order
+     * @return the renderer
+     */
+    public static ResultRenderer toConsole(Format format, String[] names, String[] labels) {
+        return new ResultRenderer(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), format, names,
+                labels);
+    }
+
+    /**
+     * method to start a new listing (the header is written again before its
+     * first row)
+     *
+     * @param title the title displayed above a table (or null for none)
+     */
+    public void start(String title) {
+        this.title = title;
+        this.headerWritten = false;
+    }
+
+    /**
+     * method to add a row of values (numbers and booleans are written
+     * unquoted in JSON)
+     *
+     * @param values the column values in order (null values allowed)
+     * @throws IOException if the output cannot be written
+     */
+    public void add(Object[] values) throws IOException {
+        if (format == Format.TABLE) {
+            String[] cells = new String[values.length];
+            for (int i = 0; i < values.length; i++) {
+                cells[i] = String.valueOf(values[i]);
+            }
+            addCells(cells);
+            return;
+        }
+
+        writeHeader();
+        for (int i = 0; i < values.length; i++) {
+            Object value = values[i];
+            byte kind = value instanceof Number ? NUMBER : value instanceof Boolean ? BOOLEAN : TEXT;
+            appendValue(i, value == null ? null : value.toString(), kind);
+        }
+        writeLine();
+    }
+
+    /**
+     * method to add the current row of a result set (columns are read by
+     * index, in select order)
+     *
+     * @param resultSet the result set positioned on a row
+     * @throws IOException  if the output cannot be written
+     * @throws SQLException if a database access error occurs
+     */
+    public void add(ResultSet resultSet) throws IOException, SQLException {
+        if (kinds == null) {
+            kinds = readKinds(resultSet.getMetaData());
+        }
+
+        if (format == Format.TABLE) {
+            String[] cells = new String[kinds.length];
+            for (int i = 0; i < kinds.length; i++) {
+                cells[i] = String.valueOf(read(resultSet, i));
+            }
+            addCells(cells);
+            return;
+        }
+
+        writeHeader();
+        for (int i = 0; i < kinds.length; i++) {
+            appendValue(i, read(resultSet, i), kinds[i]);
+        }
+        writeLine();
+    }
+
+    /**
+     * method to write the rows held so far (a table is aligned at this point)
+     * and flush the output
+     *
+     * @throws IOException if the output cannot be written
+     */
+    public void endBlock() throws IOException {
+        if (!block.isEmpty()) {
+            writeHeader();
+            for (String[] cells : block) {
+                for (int i = 0; i < cells.length; i++) {
+                    appendPadded(cells[i], i < cells.length - 1 ? widths[i] : 0, i == 0);
+                }
+                writeLine();
+            }
+            block.clear();
+        }
+        drain();
+        out.flush();
+    }
+
+    /**
+     * helper method to hold a table row and widen its columns to fit
+     *
+     * @param cells the cell text
+     */
+    private void addCells(String[] cells) {
+        for (int i = 0; i < cells.length; i++) {
+            widths[i] = Math.max(widths[i], cells[i].length());
+        }
+        block.add(cells);
+    }
+
+    /**
+     * helper method to write the title and column header once per listing
+     *
+     * @throws IOException if the output cannot be written
+     */
+    private void writeHeader() throws IOException {
+        if (headerWritten) {
+            return;
+        }
+        headerWritten = true;
+
+        switch (format) {
+            case TABLE:
+                if (title != null) {
+                    line.append(title).append('\n');
+                }
+                int width = 0;
+                for (int i = 0; i < labels.length; i++) {
+                    appendPadded(labels[i], i < labels.length - 1 ? widths[i] : 0, i == 0);
+                    width += widths[i] + (i > 0 ? COLUMN_GAP.length() : 0);
+                }
+                line.append('\n');
+                for (int i = 0; i < width; i++) {
+                    line.append('-');
+                }
+                break;
+            case TSV:
+                for (int i = 0; i < names.length; i++) {
+                    line.append(i > 0 ? "\t" : "").append(names[i]);
+                }
+                break;
+            default:
+                // JSON lines have no header
+                return;
+        }
+        writeLine();
+    }
+
+    /**
+     * helper method to append one TSV or JSON value to the row buffer
+     *
+     * @param column the zero-based column index
+     * @param value  the value text (or null)
+     * @param kind   the column kind
+     */
+    private void appendValue(int column, String value, byte kind) {
+        if (format == Format.TSV) {
+            if (column > 0) {
+                line.append('\t');
+            }
+            if (value != null) {
+                int start = line.length();
+                line.append(value);
+                // tabs and line breaks inside a value would break the layout
+                for (int i = start; i < line.length(); i++) {
+                    char c = line.charAt(i);
+                    if (c == '\t' || c == '\n' || c == '\r') {
+                        line.setCharAt(i, ' ');
+                    }
+                }
+            }
+            return;
+        }
+
+        line.append(column == 0 ? '{' : ',').append(jsonKeys[column]);
+        if (value == null) {
+            line.append("null");
+        } else if (kind == TEXT) {
+            appendJsonString(line, value);
+        } else {
+            line.append(value);
+        }
+        if (column == names.length - 1) {
+            line.append('}');
+        }
+    }
+
+    /**
+     * helper method to append a table cell followed by padding
+     *
+     * @param text  the cell text
+     * @param width the column width (0 for the last column, which is not
+     *              padded)
+     * @param first true for the first column (no gap before it)
+     */
+    private void appendPadded(String text, int width, boolean first) {
+        if (!first) {
+            line.append(COLUMN_GAP);
+        }
+        line.append(text);
+        for (int i = text.length(); i < width; i++) {
+            line.append(' ');
+        }
+    }
+
+    /**
+     * helper method to end the current line, writing the buffer out once it
+     * is full
+     *
+     * @throws IOException if the output cannot be written
+     */
+    private void writeLine() throws IOException {
+        line.append('\n');
+        if (line.length() >= BUFFER_SIZE) {
+            drain();
+        }
+    }
+
+    /**
+     * helper method to write out and empty the buffer (without copying it to
+     * a String)
+     *
+     * @throws IOException if the output cannot be written
+     */
+    private void drain() throws IOException {
+        for (int from = 0; from < line.length(); from += chunk.length) {
+            int to = Math.min(from + chunk.length, line.length());
+            line.getChars(from, to, chunk, 0);
+            out.write(chunk, 0, to - from);
+        }
+        line.setLength(0);
+    }
+
+    /**
+     * helper method to read one column of the current row by index
+     *
+     * @param resultSet the result set positioned on a row
+     * @param column    the zero-based column index
+     * @return the value text, or null if the value is NULL
+     * @throws SQLException if a database access error occurs
+     */
+    private String read(ResultSet resultSet, int column) throws SQLException {
+        if (kinds[column] == BOOLEAN) {
+            boolean value = resultSet.getBoolean(column + 1);
+            return resultSet.wasNull() ? null : value ? "true" : "false";
+        }
+        return resultSet.getString(column + 1);
+    }
+
+    /**
+     * helper method to work out the kind of each column from the metadata
+     *
+     * @param metaData the result set metadata
+     * @return the column kinds
+     * @throws SQLException if a database access error occurs
+     */
+    private static byte[] readKinds(ResultSetMetaData metaData) throws SQLException {
+        byte[] kinds = new byte[metaData.getColumnCount()];
+        for (int i = 0; i < kinds.length; i++) {
+            switch (metaData.getColumnType(i + 1)) {
+                case Types.BIT:
+                case Types.BOOLEAN:
+                    kinds[i] = BOOLEAN;
+                    break;
+                case Types.TINYINT:
+                case Types.SMALLINT:
+                case Types.INTEGER:
+                case Types.BIGINT:
+                case Types.DECIMAL:
+                case Types.NUMERIC:
+                case Types.REAL:
+                case Types.FLOAT:
+                case Types.DOUBLE:
+                    kinds[i] = NUMBER;
+                    break;
+                default:
+                    kinds[i] = TEXT;
+            }
+        }
+        return kinds;
+    }
+
+    /**
+     * helper method to append a value as JSON (numbers and booleans unquoted,
+     * lists as arrays, maps as objects, anything else as a string)
+     *
+     * @param json  the text to append to
+     * @param value the value (or null)
+     */
+    static void appendJsonValue(StringBuilder json, Object value) {
+        if (value == null) {
+            json.append("null");
+        } else if (value instanceof Number || value instanceof Boolean) {
+            json.append(value);
+        } else if (value instanceof List) {
+            json.append('[');
+            List<?> values = (List<?>) value;
+            for (int i = 0; i < values.size(); i++) {
+                json.append(i > 0 ? "," : "");
+                appendJsonValue(json, values.get(i));
+            }
+            json.append(']');
+        } else if (value instanceof Map) {
+            json.append('{');
+            boolean first = true;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                json.append(first ? "" : ",");
+                appendJsonString(json, String.valueOf(entry.getKey()));
+                json.append(':');
+                appendJsonValue(json, entry.getValue());
+                first = false;
+            }
+            json.append('}');
+        } else {
+            appendJsonString(json, value.toString());
+        }
+    }
+
+    /**
+     * helper method to append a quoted and escaped JSON string
+     *
+     * @param json  the text to append to
+     * @param value the string
+     */
+    static void appendJsonString(StringBuilder json, String value) {
+        json.append('"');
+        int from = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\' || c < 0x20) {
+                // append the plain run before the character, then its escape
+                json.append(value, from, i);
+                switch (c) {
+                    case '"':
+                        json.append("\\\"");
+                        break;
+                    case '\\':
+                        json.append("\\\\");
+                        break;
+                    case '\n':
+                        json.append("\\n");
+                        break;
+                    case '\r':
+                        json.append("\\r");
+                        break;
+                    case '\t':
+                        json.append("\\t");
+                        break;
+                    default:
+                        json.append(String.format("\\u%04x", (int) c));
+                }
+                from = i + 1;
+            }
+        }
+        json.append(value, from, value.length());
+        json.append('"');
+    }
+}
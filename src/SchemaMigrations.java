@@ -0,0 +1,817 @@
+
+// import Java packages
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * class for bringing the database schema up to date with numbered migrations
+ *
+ * each migration is applied once, in order, and recorded in the SchemaVersion
+ * table; a database created before migrations were introduced is recognised
+ * by its Projects table and recorded as being at the baseline (version 1), and
+ * PoisePMS.sql creates the latest schema directly and records every version
+ *
+ * MySQL commits each schema change as it runs, so a migration cannot be rolled
+ * back part way; instead every migration checks what is already in place
+ * before each change, so one that failed part way can simply be run again
+ *
+ * migrations run at startup under a named database lock, so two programmes
+ * started together do not migrate at the same time
+ */
+public class SchemaMigrations {
+
+    /**
+     * name of the database lock held while migrating
+     */
+    private static final String LOCK_NAME = "PoisePMS.migrate";
+
+    /**
+     * seconds to wait for another programme to finish migrating
+     */
+    private static final int LOCK_TIMEOUT_SECONDS = 600;
+
+    /**
+     * number of times each query is run when timing query plans (the fastest
+     * run is reported)
+     */
+    private static final int PLAN_RUNS = 3;
+
+    /**
+     * number of rows fetched per round trip when timing query plans
+     */
+    private static final int FETCH_SIZE = 10_000;
+
+    /**
+     * interface for the changes made by a migration
+     */
+    interface Step {
+
+        /**
+         * method to apply the changes
+         *
+         * @param schema the schema being migrated
+         * @throws SQLException if a database access error occurs
+         */
+        void apply(Schema schema) throws SQLException;
+    }
+
+    /**
+     * class for a numbered migration
+     */
+    static final class Migration {
+
+        // version reached once the migration is applied, and what it does
+        final int version;
+        final String description;
+        final Step step;
+
+        /**
+         * constructor to describe a migration
+         *
+         * @param version     the version reached once it is applied
+         * @param description what the migration does
+         * @param step        the changes it makes
+         */
+        Migration(int version, String description, Step step) {
+            this.version = version;
+            this.description = description;
+            this.step = step;
+        }
+    }
+
+    /**
+     * migrations in the order they are applied (new migrations are added to
+     * the end; released ones are never changed, as databases may already have
+     * them)
+     */
+    private static final Migration[] MIGRATIONS = {
+            new Migration(1, "baseline schema", SchemaMigrations::baseline),
+            new Migration(2, "paging, deadline and report indexes and summary tables",
+                    SchemaMigrations::indexesAndSummaries),
+            new Migration(3, "people tables as parents of Projects", SchemaMigrations::peopleAsParents),
+            new Migration(4, "covering index for the incomplete and overdue queries",
+                    SchemaMigrations::overdueIndex),
+            new Migration(5, "project naming moved from the AutoNameProject trigger to the programme",
+                    SchemaMigrations::dropNamingTrigger),
+            new Migration(6, "row versions for updates that check the row is unchanged",
+                    SchemaMigrations::rowVersions) };
+
+    /**
+     * class for a connection to the schema being migrated, with the checks
+     * migrations use to skip changes already in place
+     */
+    static final class Schema {
+
+        // pool and the connection holding the migration lock
+        final ConnectionPool pool;
+        final PooledConnection connection;
+
+        /**
+         * constructor to wrap the migrating connection
+         *
+         * @param pool       the connection pool
+         * @param connection the connection holding the migration lock
+         */
+        Schema(ConnectionPool pool, PooledConnection connection) {
+            this.pool = pool;
+            this.connection = connection;
+        }
+
+        /**
+         * method to run a schema change or update
+         *
+         * @param sql the statement
+         * @return the number of rows changed
+         * @throws SQLException if a database access error occurs
+         */
+        int execute(String sql) throws SQLException {
+            try (PreparedStatement statement = connection.getConnection().prepareStatement(sql)) {
+                return statement.executeUpdate();
+            }
+        }
+
+        /**
+         * method to check if a table exists
+         *
+         * @param table the table name
+         * @return true if it exists
+         * @throws SQLException if a database access error occurs
+         */
+        boolean tableExists(String table) throws SQLException {
+            return !names("SELECT TABLE_NAME FROM information_schema.TABLES WHERE TABLE_SCHEMA = DATABASE() "
+                    + "AND TABLE_NAME = ?", table).isEmpty();
+        }
+
+        /**
+         * method to check if a column exists
+         *
+         * @param table  the table name
+         * @param column the column name
+         * @return true if it exists
+         * @throws SQLException if a database access error occurs
+         */
+        boolean columnExists(String table, String column) throws SQLException {
+            return !names("SELECT COLUMN_NAME FROM information_schema.COLUMNS WHERE TABLE_SCHEMA = DATABASE() "
+                    + "AND TABLE_NAME = ? AND COLUMN_NAME = ?", table, column).isEmpty();
+        }
+
+        /**
+         * method to check if an index exists
+         *
+         * @param table the table name
+         * @param index the index name (PRIMARY for the primary key)
+         * @return true if it exists
+         * @throws SQLException if a database access error occurs
+         */
+        boolean indexExists(String table, String index) throws SQLException {
+            return !names("SELECT INDEX_NAME FROM information_schema.STATISTICS WHERE TABLE_SCHEMA = DATABASE() "
+                    + "AND TABLE_NAME = ? AND INDEX_NAME = ?", table, index).isEmpty();
+        }
+
+        /**
+         * method to get the unique indexes (other than the primary key) that
+         * cover a single column
+         *
+         * @param table  the table name
+         * @param column the column name
+         * @return the index names
+         * @throws SQLException if a database access error occurs
+         */
+        List<String> uniqueIndexes(String table, String column) throws SQLException {
+            return names("SELECT INDEX_NAME FROM information_schema.STATISTICS s WHERE TABLE_SCHEMA = DATABASE() "
+                    + "AND TABLE_NAME = ? AND COLUMN_NAME = ? AND NON_UNIQUE = 0 AND INDEX_NAME <> 'PRIMARY' "
+                    + "AND (SELECT COUNT(*) FROM information_schema.STATISTICS o WHERE o.TABLE_SCHEMA = "
+                    + "s.TABLE_SCHEMA AND o.TABLE_NAME = s.TABLE_NAME AND o.INDEX_NAME = s.INDEX_NAME) = 1",
+                    table, column);
+        }
+
+        /**
+         * method to get the foreign keys of a table that reference another
+         *
+         * @param table      the table holding the foreign keys
+         * @param referenced the referenced table
+         * @return the constraint names
+         * @throws SQLException if a database access error occurs
+         */
+        List<String> foreignKeys(String table, String referenced) throws SQLException {
+            return names("SELECT CONSTRAINT_NAME FROM information_schema.REFERENTIAL_CONSTRAINTS WHERE "
+                    + "CONSTRAINT_SCHEMA = DATABASE() AND TABLE_NAME = ? AND REFERENCED_TABLE_NAME = ?", table,
+                    referenced);
+        }
+
+        /**
+         * helper method to read the first column of a query's rows
+         *
+         * @param sql        the query
+         * @param parameters the text parameters
+         * @return the values
+         * @throws SQLException if a database access error occurs
+         */
+        private List<String> names(String sql, String... parameters) throws SQLException {
+            List<String> names = new ArrayList<>();
+            try (PreparedStatement select = connection.getConnection().prepareStatement(sql)) {
+                for (int i = 0; i < parameters.length; i++) {
+                    select.setString(i + 1, parameters[i]);
+                }
+                try (ResultSet resultSet = select.executeQuery()) {
+                    while (resultSet.next()) {
+                        names.add(resultSet.getString(1));
+                    }
+                }
+            }
+            return names;
+        }
+    }
+
+    /**
+     * method to get the version the migrations bring the schema to
+     *
+     * @return the latest version
+     */
+    public static int latestVersion() {
+        return MIGRATIONS[MIGRATIONS.length - 1].version;
+    }
+
+    /**
+     * method to apply every migration the database does not have yet
+     *
+     * @param pool the connection pool for executing queries
+     * @return the number of migrations applied
+     * @throws SQLException if a migration fails (those before it are kept)
+     */
+    public static int migrate(ConnectionPool pool) throws SQLException {
+        int applied = 0;
+        try (PooledConnection connection = pool.borrow()) {
+            Schema schema = new Schema(pool, connection);
+            lock(connection);
+            try {
+                int current = currentVersion(schema);
+                for (Migration migration : MIGRATIONS) {
+                    if (migration.version <= current) {
+                        continue;
+                    }
+                    System.out.println("Migrating schema to version " + migration.version + " ("
+                            + migration.description + ")...");
+                    long start = System.nanoTime();
+                    try {
+                        migration.step.apply(schema);
+                    } catch (SQLException e) {
+                        throw new SQLException("Migration " + migration.version + " (" + migration.description
+                                + ") failed; it can be run again once the cause is fixed: " + e.getMessage(),
+                                e.getSQLState(), e.getErrorCode(), e);
+                    }
+                    long millis = (System.nanoTime() - start) / 1_000_000;
+                    record(schema, migration, millis);
+                    System.out.println("Schema version " + migration.version + " applied in " + millis + " ms.");
+                    applied++;
+                }
+            } finally {
+                unlock(connection);
+            }
+        }
+        return applied;
+    }
+
+    /**
+     * method to run the migrate command from the command line arguments
+     * e.g. migrate --explain
+     *
+     * @param pool the connection pool for executing queries
+     * @param args the command arguments: migrate [status | --explain]
+     * @return false if the arguments are invalid
+     * @throws SQLException if a migration fails
+     */
+    public static boolean run(ConnectionPool pool, String[] args) throws SQLException {
+        String option = args.length > 1 ? args[1] : "";
+        if (args.length > 2 || !(option.isEmpty() || option.equals("status") || option.equals("--explain"))) {
+            System.out.println("Usage: PoisePMS migrate [status | --explain]");
+            return false;
+        }
+
+        // display the applied versions
+        if (option.equals("status")) {
+            printStatus(pool);
+            return true;
+        }
+
+        // time the main queries before and after migrating, if asked
+        boolean explain = option.equals("--explain");
+        List<Object[]> before = explain && hasProjects(pool) ? explain(pool) : null;
+        int applied = migrate(pool);
+        System.out.println(applied == 0 ? "Schema is up to date (version " + latestVersion() + ")."
+                : applied + " migration(s) applied; schema is at version " + latestVersion() + ".");
+        if (explain) {
+            printPlans(before, explain(pool));
+        }
+        return true;
+    }
+
+    /**
+     * method to describe how the main queries are run and time them
+     *
+     * each row holds the query name, the access method of each table (EXPLAIN
+     * type and index), the estimated rows examined, and the fastest of
+     * PLAN_RUNS runs in milliseconds
+     *
+     * @param pool the connection pool for executing queries
+     * @return the query plans
+     * @throws SQLException if a database access error occurs
+     */
+    public static List<Object[]> explain(ConnectionPool pool) throws SQLException {
+        List<Object[]> plans = new ArrayList<>();
+        try (PooledConnection connection = pool.borrow()) {
+            // sample values for the queries that look up one project or person
+            Object[] sample = { 0, "", "" };
+            try (ResultSet resultSet = connection.prepare("SELECT project_number, architect_id, customer_id "
+                    + "FROM Projects ORDER BY project_number LIMIT 1").executeQuery()) {
+                if (resultSet.next()) {
+                    sample = new Object[] { resultSet.getInt(1), resultSet.getString(2), resultSet.getString(3) };
+                }
+            }
+
+            // queries run by the menu, batch commands and API
+            Object[][] queries = {
+                    { "incomplete (deadline tracker load)",
+                            "SELECT project_number, project_deadline FROM Projects WHERE project_finalised = false" },
+                    { "fully paid overdue count", "SELECT COUNT(*) FROM Projects WHERE "
+                            + ProjectRepository.FULLY_PAID_OVERDUE.replace("?", "CURDATE()") },
+                    { "deadline page", "SELECT project_number, project_name FROM Projects "
+                            + "ORDER BY project_deadline, project_number LIMIT 50" },
+                    { "projects of an architect", "SELECT COUNT(*) FROM Projects WHERE architect_id = ?",
+                            sample[1] },
+                    { "projects of a customer", "SELECT project_number FROM Projects WHERE customer_id = ?",
+                            sample[2] },
+                    { "project details", "SELECT p.project_number, a.architect_name, t.contractor_name, "
+                            + "c.customer_surname FROM Projects p "
+                            + "LEFT JOIN Architects a ON a.architect_id = p.architect_id "
+                            + "LEFT JOIN Contractors t ON t.contractor_id = p.contractor_id "
+                            + "LEFT JOIN Customers c ON c.customer_id = p.customer_id WHERE p.project_number = ?",
+                            sample[0] },
+                    { "delete plan usage", "SELECT (SELECT COUNT(*) FROM Projects o WHERE o.architect_id = "
+                            + "p.architect_id), (SELECT COUNT(*) FROM Projects o WHERE o.customer_id = "
+                            + "p.customer_id) FROM Projects p WHERE p.project_number = ?", sample[0] } };
+
+            for (Object[] query : queries) {
+                Object[] parameters = Arrays.copyOfRange(query, 2, query.length);
+                plans.add(new Object[] { query[0], access(connection, (String) query[1], parameters),
+                        rowsExamined(connection, (String) query[1], parameters),
+                        time(connection, (String) query[1], parameters) });
+            }
+        }
+        return plans;
+    }
+
+    /**
+     * method to display query plans, side by side if plans from before a
+     * migration are given
+     *
+     * @param before the plans before migrating (null if not taken)
+     * @param after  the current plans
+     */
+    public static void printPlans(List<Object[]> before, List<Object[]> after) {
+        System.out.println();
+        for (int i = 0; i < after.size(); i++) {
+            Object[] plan = after.get(i);
+            System.out.println(plan[0] + ":");
+            if (before != null) {
+                Object[] old = before.get(i);
+                System.out.printf("  before: %-60s ~%10d rows %10.2f ms%n", old[1], old[2], old[3]);
+            }
+            System.out.printf("  %s %-60s ~%10d rows %10.2f ms%n", before != null ? "after: " : "plan:  ", plan[1],
+                    plan[2], plan[3]);
+        }
+    }
+
+    // migration steps
+
+    /**
+     * migration 1: the tables as first released (only created on an empty
+     * database; an existing database is recorded as being at this version)
+     *
+     * @param schema the schema being migrated
+     * @throws SQLException if a database access error occurs
+     */
+    private static void baseline(Schema schema) throws SQLException {
+        schema.execute("CREATE TABLE IF NOT EXISTS Projects (project_number INT PRIMARY KEY AUTO_INCREMENT NOT NULL, "
+                + "architect_id VARCHAR(50) UNIQUE NOT NULL, contractor_id VARCHAR(50) UNIQUE NOT NULL, "
+                + "customer_id VARCHAR(50) UNIQUE NOT NULL, project_name VARCHAR(50), "
+                + "building_type VARCHAR(50) NOT NULL, physical_address VARCHAR(60) NOT NULL, "
+                + "erf_number VARCHAR(20) NOT NULL, total_fee DECIMAL(12, 2) NOT NULL, "
+                + "amount_paid DECIMAL(12, 2) NOT NULL, project_deadline DATE NOT NULL, "
+                + "project_finalised BOOLEAN NOT NULL, completion_date DATE NULL)");
+        schema.execute("CREATE TABLE IF NOT EXISTS Architects (architect_id VARCHAR(50) UNIQUE NOT NULL, "
+                + "architect_name VARCHAR(50) NOT NULL, architect_email VARCHAR(50) NOT NULL, "
+                + "architect_address VARCHAR(60) NOT NULL, architect_tel VARCHAR(10) NOT NULL, "
+                + "FOREIGN KEY (architect_id) REFERENCES Projects(architect_id))");
+        schema.execute("CREATE TABLE IF NOT EXISTS Contractors (contractor_id VARCHAR(50) UNIQUE NOT NULL, "
+                + "contractor_name VARCHAR(50) NOT NULL, contractor_email VARCHAR(50) NOT NULL, "
+                + "contractor_address VARCHAR(60) NOT NULL, contractor_tel VARCHAR(10) NOT NULL, "
+                + "FOREIGN KEY (contractor_id) REFERENCES Projects(contractor_id))");
+        schema.execute("CREATE TABLE IF NOT EXISTS Customers (customer_id VARCHAR(50) UNIQUE NOT NULL, "
+                + "customer_fname VARCHAR(50) NOT NULL, customer_surname VARCHAR(50) NOT NULL, "
+                + "customer_email VARCHAR(50) NOT NULL, customer_address VARCHAR(60) NOT NULL, "
+                + "customer_tel VARCHAR(10) NOT NULL, FOREIGN KEY (customer_id) REFERENCES Projects(customer_id))");
+        schema.execute("CREATE TRIGGER AutoNameProject AFTER INSERT ON Customers FOR EACH ROW "
+                + "BEGIN DECLARE created_project_name VARCHAR(50); "
+                + "IF (SELECT project_name FROM Projects WHERE customer_id = NEW.customer_id) IS NULL "
+                + "OR (SELECT project_name FROM Projects WHERE customer_id = NEW.customer_id) = '' THEN "
+                + "SET created_project_name = CONCAT((SELECT Projects.building_type FROM Projects "
+                + "WHERE Projects.customer_id = NEW.customer_id), ' ', NEW.customer_surname); "
+                + "UPDATE Projects SET Projects.project_name = created_project_name "
+                + "WHERE Projects.customer_id = NEW.customer_id; END IF; END");
+    }
+
+    /**
+     * migration 2: the indexes and summary tables added to PoisePMS.sql since
+     * the baseline, for databases created before them
+     *
+     * @param schema the schema being migrated
+     * @throws SQLException if a database access error occurs
+     */
+    private static void indexesAndSummaries(Schema schema) throws SQLException {
+        // paging, deadline tracker and report indexes
+        String[][] indexes = { { "idx_projects_deadline", "project_deadline, project_number" },
+                { "idx_projects_fee", "total_fee, project_number" },
+                { "idx_projects_open_deadline", "project_finalised, project_deadline" },
+                { "idx_projects_type_fees", "building_type, total_fee, amount_paid, project_finalised" } };
+        List<String> missing = new ArrayList<>();
+        for (String[] index : indexes) {
+            if (!schema.indexExists("Projects", index[0])) {
+                missing.add("ADD INDEX " + index[0] + " (" + index[1] + ")");
+            }
+        }
+        // one statement builds the missing indexes in a single pass
+        if (!missing.isEmpty()) {
+            schema.execute("ALTER TABLE Projects " + String.join(", ", missing) + ", ALGORITHM = INPLACE, LOCK = NONE");
+        }
+
+        // summary tables (filled from the existing projects if just created)
+        boolean created = !schema.tableExists("ProjectSummary");
+        schema.execute("CREATE TABLE IF NOT EXISTS ProjectSummary (slot TINYINT UNSIGNED PRIMARY KEY NOT NULL, "
+                + "projects BIGINT NOT NULL DEFAULT 0, open_projects BIGINT NOT NULL DEFAULT 0, "
+                + "total_fee DECIMAL(20, 2) NOT NULL DEFAULT 0, amount_paid DECIMAL(20, 2) NOT NULL DEFAULT 0, "
+                + "outstanding DECIMAL(20, 2) NOT NULL DEFAULT 0, "
+                + "finalised_outstanding DECIMAL(20, 2) NOT NULL DEFAULT 0)");
+        schema.execute("CREATE TABLE IF NOT EXISTS ProjectDeadlineSummary (project_deadline DATE PRIMARY KEY NOT NULL, "
+                + "open_projects BIGINT NOT NULL DEFAULT 0, open_outstanding DECIMAL(20, 2) NOT NULL DEFAULT 0)");
+        if (created) {
+            ProjectSummary.initialise(schema.pool);
+        }
+    }
+
+    /**
+     * migration 3: make the people tables the parents of Projects
+     *
+     * the baseline had each person table reference Projects and made the
+     * person columns of Projects unique, so a person could only be linked to
+     * one project; now each person table has its ID as primary key, Projects
+     * references the three tables and the person columns have plain indexes,
+     * so a person can be linked to any number of projects
+     *
+     * @param schema the schema being migrated
+     * @throws SQLException if a database access error occurs
+     */
+    private static void peopleAsParents(Schema schema) throws SQLException {
+        List<String> projectChanges = new ArrayList<>();
+        for (PersonTable personTable : PersonTable.values()) {
+            String table = personTable.getTable();
+            String idColumn = personTable.getIdColumn();
+            String role = personTable.getRole();
+
+            // drop the person table's foreign key to Projects
+            for (String foreignKey : schema.foreignKeys(table, "Projects")) {
+                schema.execute("ALTER TABLE " + table + " DROP FOREIGN KEY " + foreignKey);
+            }
+
+            // make the ID the primary key in place of the unique index
+            if (!schema.indexExists(table, "PRIMARY")) {
+                List<String> changes = new ArrayList<>();
+                for (String index : schema.uniqueIndexes(table, idColumn)) {
+                    changes.add("DROP INDEX " + index);
+                }
+                changes.add("ADD PRIMARY KEY (" + idColumn + ")");
+                schema.execute("ALTER TABLE " + table + " " + String.join(", ", changes));
+            }
+
+            // add a placeholder for each person a project links to who is
+            // missing (the old foreign key ran the other way, so nothing
+            // required them), so the new foreign key holds for every project
+            String[] columns = personTable.getColumns();
+            StringBuilder values = new StringBuilder("p." + idColumn + ", 'Unknown'");
+            for (int i = 2; i < columns.length; i++) {
+                values.append(", ''");
+            }
+            int placeholders = schema.execute("INSERT INTO " + table + " (" + String.join(", ", columns)
+                    + ") SELECT DISTINCT " + values + " FROM Projects p LEFT JOIN " + table + " x ON x."
+                    + idColumn + " = p." + idColumn + " WHERE x." + idColumn + " IS NULL");
+            if (placeholders > 0) {
+                System.out.println("Added " + placeholders + " placeholder " + role + "(s) named 'Unknown' for "
+                        + "projects that linked to a missing " + role + ".");
+            }
+
+            // replace the unique index on Projects with a plain one, and add
+            // the foreign key
+            for (String index : schema.uniqueIndexes("Projects", idColumn)) {
+                projectChanges.add("DROP INDEX " + index);
+            }
+            if (!schema.indexExists("Projects", "idx_projects_" + role)) {
+                projectChanges.add("ADD INDEX idx_projects_" + role + " (" + idColumn + ")");
+            }
+            if (schema.foreignKeys("Projects", table).isEmpty()) {
+                projectChanges.add("ADD CONSTRAINT fk_projects_" + role + " FOREIGN KEY (" + idColumn
+                        + ") REFERENCES " + table + " (" + idColumn + ")");
+            }
+        }
+
+        // change Projects in one statement (one pass over the table); foreign
+        // key checks are off for it so the keys are added in place rather than
+        // by copying the table, which is safe as every linked person now exists
+        if (!projectChanges.isEmpty()) {
+            schema.execute("SET foreign_key_checks = 0");
+            try {
+                schema.execute("ALTER TABLE Projects " + String.join(", ", projectChanges));
+            } finally {
+                schema.execute("SET foreign_key_checks = 1");
+            }
+        }
+    }
+
+    /**
+     * migration 4: widen the unfinalised deadline index with the fee columns,
+     * so the fully paid overdue count and finalise read only the index (the
+     * deadline tracker load still reads only the first two columns)
+     *
+     * @param schema the schema being migrated
+     * @throws SQLException if a database access error occurs
+     */
+    private static void overdueIndex(Schema schema) throws SQLException {
+        List<String> changes = new ArrayList<>();
+        if (!schema.indexExists("Projects", "idx_projects_open_due")) {
+            changes.add("ADD INDEX idx_projects_open_due (project_finalised, project_deadline, amount_paid, "
+                    + "total_fee)");
+        }
+        if (schema.indexExists("Projects", "idx_projects_open_deadline")) {
+            changes.add("DROP INDEX idx_projects_open_deadline");
+        }
+        if (!changes.isEmpty()) {
+            schema.execute("ALTER TABLE Projects " + String.join(", ", changes) + ", ALGORITHM = INPLACE, LOCK = NONE");
+        }
+    }
+
+    /**
+     * migration 5: drop the AutoNameProject trigger (the programme now names
+     * unnamed projects as it writes them) and name the projects the trigger
+     * left unnamed, e.g. those whose customer was added before them
+     *
+     * @param schema the schema being migrated
+     * @throws SQLException if a database access error occurs
+     */
+    private static void dropNamingTrigger(Schema schema) throws SQLException {
+        schema.execute("DROP TRIGGER IF EXISTS AutoNameProject");
+
+        // one pass over Projects, joined to each customer by primary key
+        int named = schema.execute("UPDATE Projects p JOIN Customers c ON c.customer_id = p.customer_id "
+                + "SET p.project_name = LEFT(CONCAT(p.building_type, ' ', c.customer_surname), "
+                + ProjectRepository.PROJECT_NAME_LENGTH + ") WHERE p.project_name IS NULL OR p.project_name = ''");
+        if (named > 0) {
+            System.out.println("Named " + named + " unnamed project(s) from their building type and customer "
+                    + "surname.");
+        }
+    }
+
+    /**
+     * migration 6: add a version column to Projects and the people tables,
+     * which every write increments, so updates can write only the columns
+     * that changed and check the row was not changed after it was read
+     *
+     * MySQL adds a column at the end of a table without copying it, so this
+     * takes moments however many rows there are
+     *
+     * @param schema the schema being migrated
+     * @throws SQLException if a database access error occurs
+     */
+    private static void rowVersions(Schema schema) throws SQLException {
+        List<String> tables = new ArrayList<>();
+        tables.add("Projects");
+        for (PersonTable personTable : PersonTable.values()) {
+            tables.add(personTable.getTable());
+        }
+        for (String table : tables) {
+            if (!schema.columnExists(table, ProjectRepository.VERSION_COLUMN)) {
+                schema.execute("ALTER TABLE " + table + " ADD COLUMN " + ProjectRepository.VERSION_COLUMN
+                        + " INT NOT NULL DEFAULT 0");
+            }
+        }
+    }
+
+    // helpers
+
+    /**
+     * helper method to read the current schema version, creating the
+     * SchemaVersion table and recording the baseline for a database created
+     * before migrations were introduced
+     *
+     * @param schema the schema being migrated
+     * @return the current version (0 for an empty database)
+     * @throws SQLException if a database access error occurs
+     */
+    private static int currentVersion(Schema schema) throws SQLException {
+        boolean existing = schema.tableExists("Projects");
+        schema.execute("CREATE TABLE IF NOT EXISTS SchemaVersion (version INT PRIMARY KEY NOT NULL, "
+                + "description VARCHAR(100) NOT NULL, applied_on TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP, "
+                + "duration_ms BIGINT NOT NULL DEFAULT 0)");
+
+        int version = 0;
+        try (ResultSet resultSet = schema.connection.prepare("SELECT COALESCE(MAX(version), 0) FROM SchemaVersion")
+                .executeQuery()) {
+            resultSet.next();
+            version = resultSet.getInt(1);
+        }
+        if (version == 0 && existing) {
+            record(schema, MIGRATIONS[0], 0);
+            version = MIGRATIONS[0].version;
+        }
+        return version;
+    }
+
+    /**
+     * helper method to record an applied migration
+     *
+     * @param schema    the schema being migrated
+     * @param migration the migration
+     * @param millis    the time it took
+     * @throws SQLException if a database access error occurs
+     */
+    private static void record(Schema schema, Migration migration, long millis) throws SQLException {
+        PreparedStatement insert = schema.connection.prepare(
+                "INSERT INTO SchemaVersion (version, description, duration_ms) VALUES (?, ?, ?)");
+        insert.setInt(1, migration.version);
+        insert.setString(2, migration.description);
+        insert.setLong(3, millis);
+        insert.executeUpdate();
+    }
+
+    /**
+     * helper method to display the applied migrations and any still pending
+     *
+     * @param pool the connection pool for executing queries
+     * @throws SQLException if a database access error occurs
+     */
+    private static void printStatus(ConnectionPool pool) throws SQLException {
+        int current = 0;
+        try (PooledConnection connection = pool.borrow()) {
+            if (new Schema(pool, connection).tableExists("SchemaVersion")) {
+                try (ResultSet resultSet = connection.prepare("SELECT version, description, applied_on, "
+                        + "duration_ms FROM SchemaVersion ORDER BY version").executeQuery()) {
+                    while (resultSet.next()) {
+                        current = resultSet.getInt(1);
+                        System.out.printf("%3d  %-60s applied %s (%d ms)%n", current, resultSet.getString(2),
+                                resultSet.getTimestamp(3).toLocalDateTime().withNano(0), resultSet.getLong(4));
+                    }
+                }
+            }
+        }
+        for (Migration migration : MIGRATIONS) {
+            if (migration.version > current) {
+                System.out.printf("%3d  %-60s pending%n", migration.version, migration.description);
+            }
+        }
+    }
+
+    /**
+     * helper method to take the migration lock
+     *
+     * @param connection the connection to hold the lock on
+     * @throws SQLException if the lock is not granted in time
+     */
+    private static void lock(PooledConnection connection) throws SQLException {
+        PreparedStatement lock = connection.prepare("SELECT GET_LOCK(?, ?)");
+        lock.setString(1, LOCK_NAME);
+        lock.setInt(2, LOCK_TIMEOUT_SECONDS);
+        try (ResultSet resultSet = lock.executeQuery()) {
+            if (!resultSet.next() || resultSet.getInt(1) != 1) {
+                throw new SQLException("Timed out waiting for another programme to finish migrating the schema.");
+            }
+        }
+    }
+
+    /**
+     * helper method to release the migration lock
+     *
+     * @param connection the connection holding the lock
+     * @throws SQLException if a database access error occurs
+     */
+    private static void unlock(PooledConnection connection) throws SQLException {
+        PreparedStatement unlock = connection.prepare("SELECT RELEASE_LOCK(?)");
+        unlock.setString(1, LOCK_NAME);
+        unlock.executeQuery().close();
+    }
+
+    /**
+     * helper method to check if the Projects table exists yet
+     *
+     * @param pool the connection pool for executing queries
+     * @return true if it exists
+     * @throws SQLException if a database access error occurs
+     */
+    private static boolean hasProjects(ConnectionPool pool) throws SQLException {
+        try (PooledConnection connection = pool.borrow()) {
+            return new Schema(pool, connection).tableExists("Projects");
+        }
+    }
+
+    /**
+     * helper method to describe how each table of a query is read
+     *
+     * @param connection the pooled connection
+     * @param sql        the query
+     * @param parameters the query parameters
+     * @return the EXPLAIN type and index of each table, e.g. "p: ref
+     *         idx_projects_architect"
+     * @throws SQLException if a database access error occurs
+     */
+    private static String access(PooledConnection connection, String sql, Object[] parameters)
+            throws SQLException {
+        List<String> tables = new ArrayList<>();
+        try (ResultSet resultSet = explainQuery(connection, sql, parameters)) {
+            while (resultSet.next()) {
+                String key = resultSet.getString("key");
+                tables.add(resultSet.getString("table") + ": " + resultSet.getString("type")
+                        + (key == null ? "" : " " + key));
+            }
+        }
+        return String.join(", ", tables);
+    }
+
+    /**
+     * helper method to get the rows the optimiser expects a query to examine
+     *
+     * @param connection the pooled connection
+     * @param sql        the query
+     * @param parameters the query parameters
+     * @return the sum of the estimated rows of each table
+     * @throws SQLException if a database access error occurs
+     */
+    private static long rowsExamined(PooledConnection connection, String sql, Object[] parameters)
+            throws SQLException {
+        long rows = 0;
+        try (ResultSet resultSet = explainQuery(connection, sql, parameters)) {
+            while (resultSet.next()) {
+                rows += resultSet.getLong("rows");
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * helper method to run EXPLAIN for a query
+     *
+     * @param connection the pooled connection
+     * @param sql        the query
+     * @param parameters the query parameters
+     * @return the EXPLAIN rows (to be closed by the caller)
+     * @throws SQLException if a database access error occurs
+     */
+    private static ResultSet explainQuery(PooledConnection connection, String sql, Object[] parameters)
+            throws SQLException {
+        PreparedStatement explain = connection.prepare("EXPLAIN " + sql);
+        for (int i = 0; i < parameters.length; i++) {
+            explain.setObject(i + 1, parameters[i]);
+        }
+        return explain.executeQuery();
+    }
+
+    /**
+     * helper method to time a query, reading every row
+     *
+     * @param connection the pooled connection
+     * @param sql        the query
+     * @param parameters the query parameters
+     * @return the fastest of PLAN_RUNS runs in milliseconds
+     * @throws SQLException if a database access error occurs
+     */
+    private static double time(PooledConnection connection, String sql, Object[] parameters) throws SQLException {
+        long fastest = Long.MAX_VALUE;
+        // a dedicated statement is used so large results are streamed
+        try (PreparedStatement select = connection.getConnection().prepareStatement(sql)) {
+            select.setFetchSize(FETCH_SIZE);
+            for (int i = 0; i < parameters.length; i++) {
+                select.setObject(i + 1, parameters[i]);
+            }
+            for (int run = 0; run < PLAN_RUNS; run++) {
+                long start = System.nanoTime();
+                try (ResultSet resultSet = select.executeQuery()) {
+                    while (resultSet.next()) {
+                        // rows are only read to time the query
+                    }
+                }
+                fastest = Math.min(fastest, System.nanoTime() - start);
+            }
+        }
+        return fastest / 1e6;
+    }
+}
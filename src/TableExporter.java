@@ -0,0 +1,550 @@
+
+// import Java packages
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+
+/**
+ * class for exporting the PoisePMS tables to files with constant memory use
+ *
+ * each table is read through a forward-only, read-only cursor that fetches a
+ * fixed number of rows at a time from the server, and every row is written
+ * straight into a ChannelWriter buffer, so heap use does not grow with the
+ * number of rows
+ *
+ * supported formats:
+ * - csv: header row followed by one comma-separated row per record
+ * - jsonl: one JSON object per record
+ * - bin: compact binary format (see writeBinaryHeader and writeBinaryValue)
+ */
+public class TableExporter {
+
+    /**
+     * tables that can be exported
+     */
+    public static final String[] TABLES = { "Projects", "Customers", "Architects", "Contractors" };
+
+    /**
+     * number of rows fetched from the server per round trip
+     */
+    public static final int FETCH_SIZE = 1000;
+
+    /**
+     * first bytes of a binary export file
+     */
+    private static final int BINARY_MAGIC = 0x50504D53; // "PPMS"
+
+    /**
+     * version of the binary export format
+     */
+    private static final int BINARY_VERSION = 1;
+
+    /**
+     * supported export formats
+     */
+    enum Format {
+        CSV("csv"), JSONL("jsonl"), BINARY("bin");
+
+        // file extension (and command-line name) of the format
+        final String extension;
+
+        Format(String extension) {
+            this.extension = extension;
+        }
+
+        /**
+         * method to find a format by its command-line name
+         *
+         * @param name the format name (csv, jsonl or bin)
+         * @return the matching format
+         */
+        static Format fromName(String name) {
+            for (Format format : values()) {
+                if (format.extension.equalsIgnoreCase(name)) {
+                    return format;
+                }
+            }
+            throw new IllegalArgumentException("Unknown export format '" + name + "'. Use csv, jsonl or bin.");
+        }
+    }
+
+    /**
+     * method to run the export from the command line arguments
+     * e.g. export all csv exports
+     *
+     * @param pool the connection pool for executing queries
+     * @param args the command arguments (table or 'all', format and optional
+     *             output directory)
+     * @throws IOException  if an export file cannot be written
+     * @throws SQLException if a database access error occurs
+     */
+    public static void run(ConnectionPool pool, String[] args) throws IOException, SQLException {
+        // check that a table and format were given
+        if (args.length < 3) {
+            System.out.println("Usage: PoisePMS export <all|Projects|Customers|Architects|Contractors> <csv|jsonl|bin> [directory]");
+            return;
+        }
+
+        // get export options
+        Format format = Format.fromName(args[2]);
+        Path directory = Paths.get(args.length > 3 ? args[3] : ".");
+        Files.createDirectories(directory);
+
+        // choose tables to export
+        String[] tables = args[1].equalsIgnoreCase("all") ? TABLES : new String[] { tableName(args[1]) };
+
+        // declare totals
+        long totalRows = 0;
+        long totalBytes = 0;
+        long start = System.nanoTime();
+
+        // export each table in turn
+        for (String table : tables) {
+            Path file = directory.resolve(table + "." + format.extension);
+            long[] result = exportTable(pool, table, format, file);
+            totalRows += result[0];
+            totalBytes += result[1];
+        }
+
+        // display overall throughput when more than one table was exported
+        if (tables.length > 1) {
+            printThroughput("All tables", totalRows, totalBytes, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * method to export one table to a file
+     *
+     * @param pool   the connection pool for executing queries
+     * @param table  the name of the table to export
+     * @param format the export format
+     * @param file   the file to write
+     * @return the number of rows and bytes written
+     * @throws IOException  if the export file cannot be written
+     * @throws SQLException if a database access error occurs
+     */
+    public static long[] exportTable(ConnectionPool pool, String table, Format format, Path file)
+            throws IOException, SQLException {
+        long start = System.nanoTime();
+        long rows = 0;
+        long bytes;
+
+        // a dedicated statement is used (rather than the statement cache) because
+        // its cursor settings only apply to exports
+        try (PooledConnection connection = pool.borrow();
+                PreparedStatement select = connection.getConnection().prepareStatement("SELECT * FROM " + table,
+                        ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                ChannelWriter writer = new ChannelWriter(file, ChannelWriter.DEFAULT_BUFFER_SIZE)) {
+            // read rows in fixed-size batches through a server-side cursor
+            select.setFetchSize(FETCH_SIZE);
+
+            try (ResultSet resultSet = select.executeQuery()) {
+                // look up column names and types once
+                ResultSetMetaData metaData = resultSet.getMetaData();
+                int columnCount = metaData.getColumnCount();
+                String[] names = new String[columnCount + 1];
+                int[] types = new int[columnCount + 1];
+                for (int i = 1; i <= columnCount; i++) {
+                    names[i] = metaData.getColumnLabel(i);
+                    types[i] = metaData.getColumnType(i);
+                }
+
+                // write header
+                switch (format) {
+                    case CSV:
+                        writeCsvHeader(writer, names);
+                        break;
+                    case BINARY:
+                        writeBinaryHeader(writer, names, types);
+                        break;
+                    default:
+                        // JSON lines have no header
+                        break;
+                }
+
+                // stream rows to the file
+                while (resultSet.next()) {
+                    switch (format) {
+                        case CSV:
+                            writeCsvRow(writer, resultSet, types);
+                            break;
+                        case JSONL:
+                            writeJsonRow(writer, resultSet, names, types);
+                            break;
+                        default:
+                            writeBinaryRow(writer, resultSet, types);
+                    }
+                    rows++;
+                }
+
+                // mark end of binary data
+                if (format == Format.BINARY) {
+                    writer.writeByte(0);
+                }
+            }
+            bytes = writer.getBytesWritten();
+        }
+
+        printThroughput(table + " -> " + file, rows, bytes, System.nanoTime() - start);
+        return new long[] { rows, bytes };
+    }
+
+    /**
+     * helper method to match a table name given on the command line
+     *
+     * @param name the table name in any case
+     * @return the table name as used in the database
+     */
+    private static String tableName(String name) {
+        for (String table : TABLES) {
+            if (table.equalsIgnoreCase(name)) {
+                return table;
+            }
+        }
+        throw new IllegalArgumentException("Unknown table '" + name + "'.");
+    }
+
+    /**
+     * helper method to write the CSV header row
+     *
+     * @param writer the file writer
+     * @param names  the column names (index 1 onwards)
+     * @throws IOException if the file cannot be written
+     */
+    private static void writeCsvHeader(ChannelWriter writer, String[] names) throws IOException {
+        for (int i = 1; i < names.length; i++) {
+            if (i > 1) {
+                writer.writeByte(',');
+            }
+            writeCsvText(writer, names[i]);
+        }
+        writer.writeByte('\n');
+    }
+
+    /**
+     * helper method to write the current row as CSV
+     *
+     * @param writer    the file writer
+     * @param resultSet the result set positioned on the row
+     * @param types     the JDBC column types (index 1 onwards)
+     * @throws IOException  if the file cannot be written
+     * @throws SQLException if a database access error occurs
+     */
+    private static void writeCsvRow(ChannelWriter writer, ResultSet resultSet, int[] types)
+            throws IOException, SQLException {
+        for (int i = 1; i < types.length; i++) {
+            if (i > 1) {
+                writer.writeByte(',');
+            }
+            // null values are written as empty fields
+            String value = textValue(resultSet, i, types[i]);
+            if (value != null) {
+                writeCsvText(writer, value);
+            }
+        }
+        writer.writeByte('\n');
+    }
+
+    /**
+     * helper method to write a CSV field, quoting it if necessary
+     *
+     * @param writer the file writer
+     * @param value  the field value
+     * @throws IOException if the file cannot be written
+     */
+    private static void writeCsvText(ChannelWriter writer, String value) throws IOException {
+        // check if the value contains characters that need quoting
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+
+        if (!quote) {
+            writer.writeText(value);
+            return;
+        }
+
+        // enclose in quotes and double any quotes inside the value
+        writer.writeByte('"');
+        int from = 0;
+        int index;
+        while ((index = value.indexOf('"', from)) >= 0) {
+            writer.writeText(value.subSequence(from, index + 1));
+            writer.writeByte('"');
+            from = index + 1;
+        }
+        writer.writeText(value.subSequence(from, value.length()));
+        writer.writeByte('"');
+    }
+
+    /**
+     * helper method to write the current row as a JSON object
+     *
+     * @param writer    the file writer
+     * @param resultSet the result set positioned on the row
+     * @param names     the column names (index 1 onwards)
+     * @param types     the JDBC column types (index 1 onwards)
+     * @throws IOException  if the file cannot be written
+     * @throws SQLException if a database access error occurs
+     */
+    private static void writeJsonRow(ChannelWriter writer, ResultSet resultSet, String[] names, int[] types)
+            throws IOException, SQLException {
+        writer.writeByte('{');
+        for (int i = 1; i < types.length; i++) {
+            if (i > 1) {
+                writer.writeByte(',');
+            }
+            writeJsonString(writer, names[i]);
+            writer.writeByte(':');
+
+            String value = textValue(resultSet, i, types[i]);
+            if (value == null) {
+                writer.writeText("null");
+            } else if (isNumeric(types[i]) || isBoolean(types[i])) {
+                // numbers and booleans are written without quotes
+                writer.writeText(value);
+            } else {
+                writeJsonString(writer, value);
+            }
+        }
+        writer.writeText("}\n");
+    }
+
+    /**
+     * helper method to write a quoted and escaped JSON string
+     *
+     * @param writer the file writer
+     * @param value  the string value
+     * @throws IOException if the file cannot be written
+     */
+    static void writeJsonString(ChannelWriter writer, String value) throws IOException {
+        writer.writeByte('"');
+        int from = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\' || c < 0x20) {
+                // write the plain run before the character, then its escape
+                writer.writeText(value.subSequence(from, i));
+                switch (c) {
+                    case '"':
+                        writer.writeText("\\\"");
+                        break;
+                    case '\\':
+                        writer.writeText("\\\\");
+                        break;
+                    case '\n':
+                        writer.writeText("\\n");
+                        break;
+                    case '\r':
+                        writer.writeText("\\r");
+                        break;
+                    case '\t':
+                        writer.writeText("\\t");
+                        break;
+                    default:
+                        writer.writeText(String.format("\\u%04x", (int) c));
+                }
+                from = i + 1;
+            }
+        }
+        writer.writeText(value.subSequence(from, value.length()));
+        writer.writeByte('"');
+    }
+
+    /**
+     * helper method to write the binary file header
+     *
+     * layout: magic (int), version (byte), column count (varint), then for each
+     * column its name (length-prefixed UTF-8) and JDBC type (int)
+     *
+     * @param writer the file writer
+     * @param names  the column names (index 1 onwards)
+     * @param types  the JDBC column types (index 1 onwards)
+     * @throws IOException if the file cannot be written
+     */
+    private static void writeBinaryHeader(ChannelWriter writer, String[] names, int[] types) throws IOException {
+        writer.writeInt(BINARY_MAGIC);
+        writer.writeByte(BINARY_VERSION);
+        writer.writeVarInt(names.length - 1);
+        for (int i = 1; i < names.length; i++) {
+            writer.writeLengthPrefixedText(names[i]);
+            writer.writeInt(types[i]);
+        }
+    }
+
+    /**
+     * helper method to write the current row in the binary format
+     *
+     * layout: row marker (byte 1), then for each column a presence byte
+     * (0 = null, 1 = value) followed by the value; the file ends with a 0 byte
+     * in place of a row marker
+     *
+     * @param writer    the file writer
+     * @param resultSet the result set positioned on the row
+     * @param types     the JDBC column types (index 1 onwards)
+     * @throws IOException  if the file cannot be written
+     * @throws SQLException if a database access error occurs
+     */
+    private static void writeBinaryRow(ChannelWriter writer, ResultSet resultSet, int[] types)
+            throws IOException, SQLException {
+        writer.writeByte(1);
+        for (int i = 1; i < types.length; i++) {
+            writeBinaryValue(writer, resultSet, i, types[i]);
+        }
+    }
+
+    /**
+     * helper method to write one column value in the binary format
+     *
+     * - whole numbers: zig-zag varint
+     * - decimals: scale (varint) then unscaled value (zig-zag varint)
+     * - dates: days since 1970-01-01 (zig-zag varint)
+     * - booleans: one byte (0 or 1)
+     * - anything else: length-prefixed UTF-8 text
+     *
+     * @param writer    the file writer
+     * @param resultSet the result set positioned on the row
+     * @param column    the column index
+     * @param type      the JDBC column type
+     * @throws IOException  if the file cannot be written
+     * @throws SQLException if a database access error occurs
+     */
+    private static void writeBinaryValue(ChannelWriter writer, ResultSet resultSet, int column, int type)
+            throws IOException, SQLException {
+        switch (type) {
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+            case Types.BIGINT: {
+                long value = resultSet.getLong(column);
+                if (!writePresence(writer, resultSet)) {
+                    return;
+                }
+                writer.writeVarLong(value);
+                return;
+            }
+            case Types.DECIMAL:
+            case Types.NUMERIC: {
+                BigDecimal value = resultSet.getBigDecimal(column);
+                if (!writePresence(writer, resultSet)) {
+                    return;
+                }
+                writer.writeVarInt(value.scale());
+                writer.writeVarLong(value.unscaledValue().longValueExact());
+                return;
+            }
+            case Types.DATE: {
+                Date value = resultSet.getDate(column);
+                if (!writePresence(writer, resultSet)) {
+                    return;
+                }
+                writer.writeVarLong(value.toLocalDate().toEpochDay());
+                return;
+            }
+            case Types.BIT:
+            case Types.BOOLEAN: {
+                boolean value = resultSet.getBoolean(column);
+                if (!writePresence(writer, resultSet)) {
+                    return;
+                }
+                writer.writeByte(value ? 1 : 0);
+                return;
+            }
+            default: {
+                String value = resultSet.getString(column);
+                if (!writePresence(writer, resultSet)) {
+                    return;
+                }
+                writer.writeLengthPrefixedText(value);
+            }
+        }
+    }
+
+    /**
+     * helper method to write the presence byte of the value just read
+     *
+     * @param writer    the file writer
+     * @param resultSet the result set the value was read from
+     * @return true if the value was not null
+     * @throws IOException  if the file cannot be written
+     * @throws SQLException if a database access error occurs
+     */
+    private static boolean writePresence(ChannelWriter writer, ResultSet resultSet) throws IOException, SQLException {
+        boolean present = !resultSet.wasNull();
+        writer.writeByte(present ? 1 : 0);
+        return present;
+    }
+
+    /**
+     * helper method to read a column value as text
+     *
+     * @param resultSet the result set positioned on the row
+     * @param column    the column index
+     * @param type      the JDBC column type
+     * @return the value as text, or null if the value is null
+     * @throws SQLException if a database access error occurs
+     */
+    private static String textValue(ResultSet resultSet, int column, int type) throws SQLException {
+        switch (type) {
+            case Types.DECIMAL:
+            case Types.NUMERIC: {
+                BigDecimal value = resultSet.getBigDecimal(column);
+                return value == null ? null : value.toPlainString();
+            }
+            case Types.BIT:
+            case Types.BOOLEAN: {
+                boolean value = resultSet.getBoolean(column);
+                return resultSet.wasNull() ? null : String.valueOf(value);
+            }
+            default:
+                // whole numbers, dates (YYYY-MM-DD) and text
+                return resultSet.getString(column);
+        }
+    }
+
+    /**
+     * helper method to check if a column type is numeric
+     *
+     * @param type the JDBC column type
+     * @return true for whole number and decimal columns
+     */
+    private static boolean isNumeric(int type) {
+        return type == Types.TINYINT || type == Types.SMALLINT || type == Types.INTEGER || type == Types.BIGINT
+                || type == Types.DECIMAL || type == Types.NUMERIC;
+    }
+
+    /**
+     * helper method to check if a column type is boolean
+     *
+     * @param type the JDBC column type
+     * @return true for boolean columns
+     */
+    private static boolean isBoolean(int type) {
+        return type == Types.BIT || type == Types.BOOLEAN;
+    }
+
+    /**
+     * helper method to display the throughput of an export
+     *
+     * @param label        the label for the export
+     * @param rows         the number of rows written
+     * @param bytes        the number of bytes written
+     * @param elapsedNanos the time taken in nanoseconds
+     */
+    private static void printThroughput(String label, long rows, long bytes, long elapsedNanos) {
+        double seconds = elapsedNanos / 1_000_000_000.0;
+        double rowsPerSecond = seconds > 0 ? rows / seconds : 0;
+        double megabytesPerSecond = seconds > 0 ? bytes / (1024.0 * 1024.0) / seconds : 0;
+        System.out.printf("%s: %d rows, %.1f MB in %.2f s (%.0f rows/s, %.1f MB/s)%n", label, rows,
+                bytes / (1024.0 * 1024.0), seconds, rowsPerSecond, megabytesPerSecond);
+    }
+}